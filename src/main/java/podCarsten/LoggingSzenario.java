@@ -17,7 +17,7 @@ public class LoggingSzenario {
 
 
         // Use Audible Interface
-        Audible audible = Audible.of(audioStream.readAllBytes(), format)
+        Audible audible = Audible.of(audioStream, null)
                 .setEffects(AudioEffect.highPass(format.getSampleRate(), 200, 0.71),
                         AudioEffect.bell(format.getSampleRate(), 1000, 0.5, -6),
                         AudioEffect.bell(format.getSampleRate(), 4000, 0.5, -3),
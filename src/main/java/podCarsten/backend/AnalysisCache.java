@@ -0,0 +1,193 @@
+package podCarsten.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+
+import static podCarsten.backend.AudioProcessor.LOGGER;
+
+/**
+ * Zwischenspeicher für Analyseergebnisse auf der Festplatte, damit eine Datei beim erneuten Öffnen nicht
+ * vollständig analysiert werden muss. Pro Audiodatei wird eine kompakte Binärdatei (Sidecar) mit der
+ * WaveformPyramid (Peaks und RMS pro Block) und einer Karte der stillen Blöcke abgelegt.
+ *      <br><br>
+ * Der Schlüssel besteht aus Größe, Änderungszeitpunkt und einem Hash über den Anfang der Datei (Header) und
+ * einige gleichmäßig verteilte Blöcke. Er ist damit auch für Dateien mit mehreren Gigabyte in wenigen
+ * Millisekunden berechnet. Das Sidecar wird beim Laden in den Speicher abgebildet (memory-mapped), sodass die
+ * Übersicht bereits angezeigt werden kann, bevor das Signal dekodiert ist.
+ *      <br><br>
+ * Das Verzeichnis ist in seiner Größe begrenzt: Nach dem Speichern werden die am längsten nicht verwendeten
+ * Sidecars gelöscht (LRU). Als Zeitpunkt der letzten Verwendung dient der Änderungszeitpunkt des Sidecars,
+ * der bei jedem Treffer aktualisiert wird.
+ */
+public final class AnalysisCache {
+
+    static final int MAGIC = 0x50435343;        // "PCSC"
+    static final int VERSION = 1;
+    static final String SUFFIX = ".pcsc";
+
+    // Für den Hash gelesene Bereiche der Audiodatei
+    static final int HEADER_BYTES = 64 * 1024;
+    static final int SAMPLED_BLOCKS = 16;
+    static final int SAMPLED_BLOCK_BYTES = 4096;
+
+    // Blöcke, deren RMS darunter liegt, gelten als still
+    public static final double SILENCE_DBFS = -60;
+
+    private final CacheDirectory directory;
+
+
+    /**
+     * Schlüssel einer Audiodatei.
+     * @param size Größe der Datei in bytes
+     * @param modified Änderungszeitpunkt der Datei in Millisekunden
+     * @param hash Hash über Header und verteilte Blöcke der Datei
+     */
+    public record Key(long size, long modified, long hash) {
+
+        String fileName() {
+            return String.format("%016x-%x-%x", hash, size, modified);
+        }
+    }
+
+
+    /**
+     * Ein gespeichertes Analyseergebnis.
+     * @param waveform Die abgeschlossene Übersicht des Signals
+     * @param silence Die Blätter der Übersicht (je WaveformPyramid.LEAF_FRAMES Frames), die still sind
+     */
+    public record Entry(WaveformPyramid waveform, BitSet silence) {}
+
+
+    /**
+     * @param directory Verzeichnis der Sidecars; wird bei Bedarf angelegt
+     * @param maxBytes Maximale Größe aller Sidecars zusammen
+     */
+    public AnalysisCache(Path directory, long maxBytes) {
+        this.directory = new CacheDirectory(directory, maxBytes, SUFFIX);
+    }
+
+
+    /**
+     * Berechnet den Schlüssel einer Audiodatei. Liest dafür höchstens HEADER_BYTES und
+     * SAMPLED_BLOCKS * SAMPLED_BLOCK_BYTES bytes.
+     */
+    public static Key keyOf(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            digest.update(read(channel, 0, HEADER_BYTES));
+            for (int block = 0; block < SAMPLED_BLOCKS; block++)
+                digest.update(read(channel, size / SAMPLED_BLOCKS * block + size / (2 * SAMPLED_BLOCKS), SAMPLED_BLOCK_BYTES));
+
+            long hash = ByteBuffer.wrap(digest.digest()).getLong();
+            return new Key(size, file.lastModified(), hash);
+
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 muss von jeder Java-Plattform unterstützt werden
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(bytes, channel.size() - position)));
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0);
+        return buffer.flip();
+    }
+
+
+
+    // LADEN
+
+    /**
+     * @return Das gespeicherte Ergebnis oder null, falls es keines gibt oder das Sidecar nicht lesbar ist
+     */
+    public Entry load(Key key) {
+        Path path = directory.resolve(key.fileName());
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != key.size() || buffer.getLong() != key.modified() || buffer.getLong() != key.hash()) {
+                LOGGER.info("Das Sidecar {} passt nicht zur Datei und wird ignoriert", path.getFileName());
+                return null;
+            }
+
+            WaveformPyramid waveform = WaveformPyramid.readFrom(buffer);
+            long[] words = new long[buffer.getInt()];
+            buffer.asLongBuffer().get(words);
+
+            directory.touch(path);
+            return new Entry(waveform, BitSet.valueOf(words));
+
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Das Sidecar {} konnte nicht gelesen werden: {}", path.getFileName(), e.toString());
+            return null;
+        }
+    }
+
+
+
+    // SPEICHERN
+
+    /**
+     * Speichert die Analyse einer Datei und löscht danach die ältesten Sidecars, bis das Verzeichnis wieder
+     * in seine Größe passt (siehe CacheDirectory).
+     * @param waveform Die abgeschlossene Übersicht
+     * @return Das gespeicherte Ergebnis
+     */
+    public Entry store(Key key, WaveformPyramid waveform) throws IOException {
+        assert waveform.isFinished() : "Es können nur abgeschlossene Pyramiden gespeichert werden!";
+
+        BitSet silence = waveform.silence(SILENCE_DBFS);
+        long[] words = silence.toLongArray();
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + 3 * Long.BYTES + waveform.serializedBytes()
+                + Integer.BYTES + words.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(key.size()).putLong(key.modified()).putLong(key.hash());
+        waveform.writeTo(buffer);
+        buffer.putInt(words.length);
+        buffer.asLongBuffer().put(words);
+        buffer.position(buffer.limit()).flip();
+
+        Path temporary = directory.createTemporary();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        Path path = directory.commit(temporary, key.fileName());
+
+        LOGGER.info("Sidecar {} mit {} bytes gespeichert", path.getFileName(), buffer.limit());
+        return new Entry(waveform, silence);
+    }
+
+
+    /**
+     * @return Größe aller Sidecars im Verzeichnis in bytes
+     */
+    public long size() throws IOException {
+        return directory.size();
+    }
+
+    public Path getDirectory() {
+        return directory.getDirectory();
+    }
+
+    public long getMaxBytes() {
+        return directory.getMaxBytes();
+    }
+}
@@ -0,0 +1,276 @@
+package podCarsten.backend;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.IntStream;
+
+import static podCarsten.backend.AudioProcessor.CHUNK_FRAMES;
+import static podCarsten.backend.AudioProcessor.LOGGER;
+
+/**
+ * Berechnet mehrere SignalAnalyser in einem einzigen Durchlauf über die Samples. Das Signal wird dafür in
+ * Abschnitte von CHUNK_FRAMES Frames aufgeteilt, die parallel ausgewertet werden; die Teilergebnisse werden
+ * danach der Reihe nach zusammengeführt.
+ *      <br><br>
+ * Die Ergebnisse werden pro Audiosignal zwischengespeichert, sodass wiederholte Analysen (z.B.
+ * getPeakInDBFS() in normalize() und toString()) nur noch nachschlagen. Wie beim StageCache dient das Array,
+ * in dem die Samples liegen, als Schlüssel, sodass sich alle Instanzen mit denselben Samples (z.B. nach
+ * setEffects()) die Ergebnisse teilen. Beim Laden wird kein eigener Durchlauf gestartet: Die WaveformPyramid
+ * übergibt jeden Block, den sie ohnehin liest, an einen Run (siehe start()), der STANDARD abschnittsweise
+ * berechnet und die Ergebnisse am Ende speichert (siehe WaveformPyramid.shareAnalysis()).
+ */
+final class AnalysisPipeline {
+
+    /** Die Analysen, die beim Laden jeder Datei berechnet werden */
+    static final AnalysisPipeline STANDARD = new AnalysisPipeline(SignalAnalysers.PEAK, SignalAnalysers.BLOCK_RMS,
+            SignalAnalysers.DC_OFFSET, SignalAnalysers.CLIPPING, SignalAnalysers.HISTOGRAM);
+    /** Berechnet nur den höchsten Ausschlag, falls dieser noch nicht zwischengespeichert ist */
+    static final AnalysisPipeline PEAK = new AnalysisPipeline(SignalAnalysers.PEAK);
+
+    // Ergebnisse pro Array der Samples und Ausschnitt
+    private static final Map<Object, Map<Range, Map<SignalAnalyser<?>, Object>>> CACHE = new WeakHashMap<>();
+
+    // Puffer für Signale, deren Samples erst kopiert werden müssen; wird pro Thread wiederverwendet
+    private static final ThreadLocal<int[][]> BUFFER = ThreadLocal.withInitial(() -> new int[0][]);
+
+    private record Range(int offset, int length) {}
+
+    private final SignalAnalyser<?>[] analysers;
+
+
+    AnalysisPipeline(SignalAnalyser<?>... analysers) {
+        assert analysers.length > 0 : "Es muss mindestens eine Analyse angegeben werden!";
+        this.analysers = analysers.clone();
+    }
+
+
+    /**
+     * Die Ergebnisse einer AnalysisPipeline.
+     */
+    static final class Results {
+        private final Map<SignalAnalyser<?>, Object> values;
+
+        private Results(Map<SignalAnalyser<?>, Object> values) {
+            this.values = values;
+        }
+
+        /**
+         * @return Das Ergebnis der Analyse oder null, falls sie nicht Teil der Pipeline war
+         */
+        @SuppressWarnings("unchecked")
+        <R> R get(SignalAnalyser<R> analyser) {
+            return (R) values.get(analyser);
+        }
+    }
+
+
+    /**
+     * Gibt die Ergebnisse aller Analysen zurück. Nur die Analysen, deren Ergebnis für das Signal noch nicht
+     * zwischengespeichert ist, werden in einem gemeinsamen Durchlauf berechnet.
+     */
+    Results analyse(Audible audible) {
+        Map<SignalAnalyser<?>, Object> values = new HashMap<>();
+        Object storage = storageOf(audible);
+        Range range = rangeOf(audible);
+
+        if (storage != null) {
+            synchronized (CACHE) {
+                Map<SignalAnalyser<?>, Object> cached = CACHE.getOrDefault(storage, Map.of()).getOrDefault(range, Map.of());
+                for (SignalAnalyser<?> analyser : analysers) {
+                    if (cached.containsKey(analyser))
+                        values.put(analyser, cached.get(analyser));
+                }
+            }
+        }
+
+        SignalAnalyser<?>[] missing = Arrays.stream(analysers).filter(analyser -> !values.containsKey(analyser)).toArray(SignalAnalyser<?>[]::new);
+        if (missing.length > 0) {
+            int length = audible.getLength();
+            int channels = channelsOf(audible);
+            int chunks = Math.max(1, (length + CHUNK_FRAMES - 1) / CHUNK_FRAMES);
+
+            Object[] results = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> analyseChunk(missing, audible, channels, chunk * CHUNK_FRAMES, Math.min(length, (chunk + 1) * CHUNK_FRAMES)))
+                    .reduce((earlier, later) -> merge(missing, earlier, later)).orElseThrow();
+
+            for (int nr = 0; nr < missing.length; nr++)
+                values.put(missing[nr], results[nr]);
+            store(audible, values);
+        }
+
+        return new Results(values);
+    }
+
+
+    /**
+     * Startet die Analyse eines Signals, dessen Samples der Reihe nach übergeben werden.
+     */
+    Run start() {
+        return new Run();
+    }
+
+
+    /**
+     * Wertet die Samples eines Signals aus, während sie ein anderer Durchlauf liest (z.B. beim Aufbau der
+     * WaveformPyramid), sodass kein eigener Durchlauf nötig ist. Die übergebenen Blöcke dürfen beliebig lang
+     * sein: Vollständige Abschnitte werden direkt ausgewertet, alle anderen Samples erst in einen Abschnitt
+     * kopiert, damit die Abschnitte wie bei analyse() an einem Vielfachen von CHUNK_FRAMES beginnen.
+     *      <br><br>
+     * Wie die WaveformPyramid darf ein Run nur von einem Thread verwendet werden.
+     */
+    final class Run {
+        private Object[] results;           // Zusammengeführte Ergebnisse aller ausgewerteten Abschnitte
+        private int[][] chunk;              // Der angefangene Abschnitt (nur für Blöcke, die keinen Abschnitt füllen)
+        private int chunkFrames;            // Anzahl der Frames im angefangenen Abschnitt
+        private int chunks;                 // Anzahl der ausgewerteten Abschnitte
+        private int frames;                 // Anzahl aller übergebenen Frames
+
+        private Run() {}
+
+        /**
+         * Übernimmt die nächsten Samples des Signals.
+         * @param samples Die Samples pro Kanal ab Index 0; werden nach der Rückkehr nicht mehr gelesen
+         * @param length Anzahl der Samples pro Kanal
+         */
+        void append(int[][] samples, int length) {
+            int from = 0;
+            while (from < length) {
+                if (chunkFrames == 0 && length - from >= CHUNK_FRAMES) {
+                    add(analyse(analysers, samples, from, from + CHUNK_FRAMES));
+                    from += CHUNK_FRAMES;
+                    continue;
+                }
+
+                if (chunk == null || chunk.length != samples.length)
+                    chunk = new int[samples.length][CHUNK_FRAMES];
+                int copied = Math.min(length - from, CHUNK_FRAMES - chunkFrames);
+                for (int channel = 0; channel < samples.length; channel++)
+                    System.arraycopy(samples[channel], from, chunk[channel], chunkFrames, copied);
+                chunkFrames += copied;
+                from += copied;
+
+                if (chunkFrames == CHUNK_FRAMES) {
+                    add(analyse(analysers, chunk, 0, CHUNK_FRAMES));
+                    chunkFrames = 0;
+                }
+            }
+            frames += length;
+        }
+
+        /**
+         * Wertet den letzten, unvollständigen Abschnitt aus und speichert die Ergebnisse für das Signal.
+         * @param audible Das Signal, dessen Samples vollständig übergeben wurden
+         */
+        Results finish(Audible audible) {
+            assert frames == audible.getLength() : "Es wurden nicht alle Samples übergeben! Übergeben: " + frames + " | Länge: " + audible.getLength();
+
+            if (chunkFrames > 0 || results == null)
+                add(analyse(analysers, chunk != null ? chunk : new int[channelsOf(audible)][0], 0, chunkFrames));
+            chunk = null;
+            chunkFrames = 0;
+
+            Map<SignalAnalyser<?>, Object> values = new HashMap<>();
+            for (int nr = 0; nr < analysers.length; nr++)
+                values.put(analysers[nr], results[nr]);
+            store(audible, values);
+
+            LOGGER.info("{} Analysen wurden beim Laden in {} Abschnitten berechnet", analysers.length, chunks);
+            return new Results(values);
+        }
+
+        private void add(Object[] chunkResults) {
+            results = results == null ? chunkResults : merge(analysers, results, chunkResults);
+            chunks++;
+        }
+    }
+
+
+
+    // AUSWERTUNG
+
+    /**
+     * Wertet einen Abschnitt mit allen Analysen aus. Samples einer AudioProcessor-Instanz werden direkt
+     * gelesen, alle anderen zuerst in den Puffer des Threads kopiert.
+     */
+    private static Object[] analyseChunk(SignalAnalyser<?>[] analysers, Audible audible, int channels, int from, int to) {
+        int[][] samples;
+        if (audible instanceof AudioProcessor processor) {
+            samples = processor.channelSamples;
+            from += processor.offset;
+            to += processor.offset;
+        } else {
+            samples = BUFFER.get();
+            if (samples.length != channels || samples[0].length < to - from) {
+                samples = new int[channels][CHUNK_FRAMES];
+                BUFFER.set(samples);
+            }
+            audible.copySamples(from, to - from, samples);
+            to -= from;
+            from = 0;
+        }
+
+        return analyse(analysers, samples, from, to);
+    }
+
+    private static Object[] analyse(SignalAnalyser<?>[] analysers, int[][] samples, int from, int to) {
+        Object[] results = new Object[analysers.length];
+        for (int nr = 0; nr < analysers.length; nr++)
+            results[nr] = analysers[nr].analyse(samples, from, to);
+        return results;
+    }
+
+    private static Object[] merge(SignalAnalyser<?>[] analysers, Object[] earlier, Object[] later) {
+        Object[] results = new Object[analysers.length];
+        for (int nr = 0; nr < analysers.length; nr++)
+            results[nr] = merge(analysers[nr], earlier[nr], later[nr]);
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R merge(SignalAnalyser<R> analyser, Object earlier, Object later) {
+        return analyser.merge((R) earlier, (R) later);
+    }
+
+
+
+    // ZWISCHENSPEICHER
+
+    /**
+     * Speichert ein Ergebnis, das bereits an anderer Stelle über das gesamte Signal berechnet wurde.
+     */
+    static <R> void store(Audible audible, SignalAnalyser<R> analyser, R result) {
+        store(audible, Map.of(analyser, result));
+    }
+
+    /**
+     * Speichert die Ergebnisse für das Signal. Kurze Ausschnitte (z.B. beim blockweisen Abspielen) werden nicht
+     * gespeichert, da sie sich kaum wiederholen und schnell ausgewertet sind.
+     */
+    private static void store(Audible audible, Map<SignalAnalyser<?>, Object> values) {
+        Object storage = storageOf(audible);
+        if (storage == null || audible.getLength() < CHUNK_FRAMES)
+            return;
+
+        synchronized (CACHE) {
+            CACHE.computeIfAbsent(storage, k -> new HashMap<>()).computeIfAbsent(rangeOf(audible), k -> new HashMap<>()).putAll(values);
+        }
+    }
+
+    /**
+     * @return Das Array, in dem die Samples liegen, oder null, falls die Implementierung nicht unterstützt wird
+     */
+    private static Object storageOf(Audible audible) {
+        return audible instanceof AudioProcessor processor ? processor.channelSamples
+                : audible instanceof SegmentedAudible segmented ? segmented.storage() : null;
+    }
+
+    private static Range rangeOf(Audible audible) {
+        return new Range(audible instanceof AudioProcessor processor ? processor.offset : 0, audible.getLength());
+    }
+
+    private static int channelsOf(Audible audible) {
+        return audible instanceof AudioProcessor processor ? processor.channelSamples.length : audible.getAudioEffects().length;
+    }
+}
@@ -0,0 +1,229 @@
+package podCarsten.backend;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Abgriff für Analysen (Spektrum, Pegel, Lautheit, ...) am Audio-Thread. Der Audio-Thread legt jeden
+ * gespielten Block unverarbeitet (dry) und verarbeitet (wet) in einen Ringpuffer, beliebig viele Leser holen
+ * sich die Blöcke in ihrem eigenen Tempo ab.
+ *      <br><br>
+ * Der Audio-Thread wartet nie auf die Leser: Ist der Puffer voll, wird der älteste Block überschrieben. Ein
+ * Leser, der zu langsam ist, überspringt die überschriebenen Blöcke und zählt sie in skipped(). Alle Puffer
+ * werden im Konstruktor angelegt, beim Schreiben entstehen keine Objekte und es wird nichts gesperrt.
+ *      <br><br>
+ * Jedes Fach trägt einen Stempel nach dem Prinzip des Sequenz-Locks: ungerade, solange es beschrieben wird,
+ * danach 2 * (Nummer des Blocks + 1). Ein Leser prüft den Stempel vor und nach dem Kopieren und erhält so nur
+ * vollständige Blöcke, nie eine Mischung aus zwei Blöcken.
+ *      <br><br>
+ * Es darf nur ein Thread schreiben. Eine Instanz gilt für ein Format; nach dem Laden eines neuen Signals wird
+ * ein neuer Abgriff angelegt.
+ */
+public final class AnalysisTap {
+
+    private final int channels;
+    private final int blockFrames;
+    private final float sampleRate;
+
+    private final int[][][] dry;            // pro Fach, Kanal und Sample
+    private final int[][][] wet;
+    private final int[] lengths;
+    private final int[] positions;
+    private final AtomicLongArray stamps;
+    private final AtomicLong published = new AtomicLong();     // Anzahl der bisher geschriebenen Blöcke
+
+
+    /**
+     * @param capacity Anzahl der Blöcke, die ein Leser maximal zurückliegen darf
+     * @param channels Anzahl der Kanäle
+     * @param blockFrames Maximale Länge eines Blocks
+     * @param sampleRate SampleRate des Signals, für die Leser
+     */
+    public AnalysisTap(int capacity, int channels, int blockFrames, float sampleRate) {
+        assert capacity > 0 : "Der Abgriff muss mindestens einen Block fassen! Kapazität: " + capacity;
+        assert channels > 0 && blockFrames > 0 : "Das Format ist ungültig! Kanäle: " + channels + " | Länge: " + blockFrames;
+
+        this.channels = channels;
+        this.blockFrames = blockFrames;
+        this.sampleRate = sampleRate;
+        this.dry = new int[capacity][channels][blockFrames];
+        this.wet = new int[capacity][channels][blockFrames];
+        this.lengths = new int[capacity];
+        this.positions = new int[capacity];
+        this.stamps = new AtomicLongArray(capacity);
+    }
+
+
+
+    // SCHREIBEN
+
+    /**
+     * Legt einen Block in den Puffer und überschreibt dabei gegebenenfalls den ältesten.
+     * @param position Position des ersten Samples im Signal
+     * @param dry Das unverarbeitete Signal pro Kanal ab Index 0
+     * @param wet Das verarbeitete Signal pro Kanal ab Index 0
+     * @param length Anzahl der Samples pro Kanal
+     */
+    public void publish(int position, int[][] dry, int[][] wet, int length) {
+        assert dry.length == channels && wet.length == channels : "Die Anzahl der Kanäle stimmt nicht! Kanäle: " + dry.length + " | " + wet.length;
+        assert length >= 0 && length <= blockFrames : "Die Länge ist ungültig! Länge: " + length;
+
+        long sequence = published.get();
+        int slot = (int) (sequence % lengths.length);
+
+        stamps.set(slot, 2 * sequence + 1);
+        VarHandle.storeStoreFence();
+        for (int channel = 0; channel < channels; channel++) {
+            System.arraycopy(dry[channel], 0, this.dry[slot][channel], 0, length);
+            System.arraycopy(wet[channel], 0, this.wet[slot][channel], 0, length);
+        }
+        lengths[slot] = length;
+        positions[slot] = position;
+        stamps.set(slot, 2 * sequence + 2);
+
+        published.set(sequence + 1);
+    }
+
+
+
+    // LESEN
+
+    /**
+     * @return Ein neuer Leser, der ab dem nächsten geschriebenen Block liest
+     */
+    public Reader reader() {
+        return new Reader(published.get());
+    }
+
+    /**
+     * @return Ein Block, der groß genug für jeden Block dieses Abgriffs ist
+     */
+    public Block newBlock() {
+        return new Block(channels, blockFrames);
+    }
+
+
+    /**
+     * Lesezeiger eines einzelnen Lesers. Eine Instanz darf nur von einem Thread verwendet werden.
+     */
+    public final class Reader {
+
+        private long next;
+        private long skipped;
+
+        private Reader(long next) {
+            this.next = next;
+        }
+
+        /**
+         * Kopiert den nächsten Block in target. Wartet nie auf den Audio-Thread, außer höchstens für die Dauer
+         * des Kopierens eines Blocks, falls genau das gesuchte Fach gerade überschrieben wird.
+         * @return false, falls noch kein neuer Block geschrieben wurde
+         */
+        public boolean poll(Block target) {
+            assert target.dry.length == channels && target.dry[0].length >= blockFrames : "Der Block passt nicht zum Abgriff!";
+
+            while (true) {
+                long head = published.get();
+                if (next >= head)
+                    return false;
+
+                // Überschriebene Blöcke werden übersprungen
+                if (head - next > lengths.length) {
+                    skipped += head - lengths.length - next;
+                    next = head - lengths.length;
+                }
+
+                int slot = (int) (next % lengths.length);
+                long stamp = 2 * next + 2;
+                if (stamps.get(slot) == stamp) {
+                    int length = lengths[slot];
+                    for (int channel = 0; channel < channels; channel++) {
+                        System.arraycopy(dry[slot][channel], 0, target.dry[channel], 0, length);
+                        System.arraycopy(wet[slot][channel], 0, target.wet[channel], 0, length);
+                    }
+                    target.length = length;
+                    target.position = positions[slot];
+
+                    VarHandle.acquireFence();
+                    if (stamps.get(slot) == stamp) {
+                        target.sequence = next++;
+                        return true;
+                    }
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        /**
+         * @return Anzahl der Blöcke, die überschrieben wurden, bevor dieser Leser sie abgeholt hat
+         */
+        public long skipped() {
+            return skipped;
+        }
+    }
+
+
+    /**
+     * Wiederverwendbares Ziel für einen gelesenen Block. Die Arrays sind nur bis getLength() gültig und werden
+     * beim nächsten Lesen überschrieben.
+     */
+    public static final class Block {
+
+        private final int[][] dry;
+        private final int[][] wet;
+        private int length;
+        private int position;
+        private long sequence;
+
+        public Block(int channels, int blockFrames) {
+            this.dry = new int[channels][blockFrames];
+            this.wet = new int[channels][blockFrames];
+        }
+
+        public int[][] getDry() {
+            return dry;
+        }
+
+        public int[][] getWet() {
+            return wet;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * @return Fortlaufende Nummer des Blocks im Abgriff; eine Lücke bedeutet übersprungene Blöcke
+         */
+        public long getSequence() {
+            return sequence;
+        }
+    }
+
+
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return Anzahl der bisher geschriebenen Blöcke
+     */
+    public long published() {
+        return published.get();
+    }
+}
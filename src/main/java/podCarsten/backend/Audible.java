@@ -1,6 +1,10 @@
 package podCarsten.backend;
 
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
 
 public interface Audible {
 
@@ -18,6 +22,31 @@ public interface Audible {
         return new AudioProcessor().setInput(bytes, audioFormat).setEffects(audioEffects);
     }
 
+    /**
+     * Statische Factory-Methode, die das Audiosignal blockweise aus einem Stream dekodiert.
+     * Im Gegensatz zu of(byte[], ...) liegen dabei nie die gesamten Rohdaten und die
+     * dekodierten Samples gleichzeitig im Speicher.
+     * @param stream Stream des Audiosignals
+     * @param listener Wird nach jedem dekodierten Block aufgerufen (darf null sein)
+     * @param audioEffects Optionale Effekte
+     * @return eine vollständige Audible-Instanz
+     */
+    static Audible of(AudioInputStream stream, LoadListener listener, AudioEffect... audioEffects) throws IOException {
+        return new AudioProcessor().setInput(stream, listener).setEffects(audioEffects);
+    }
+
+    /**
+     * Statische Factory-Methode, die die PCM-Daten einer WAV- oder AIFF-Datei in den Speicher abbildet
+     * (memory-mapped), statt sie zu laden. Samples werden erst dekodiert, wenn ein Bereich verwendet wird,
+     * sodass auch sehr lange Aufnahmen nahezu sofort geöffnet werden können.
+     * @param file Die WAV- oder AIFF-Datei
+     * @param audioEffects Optionale Effekte
+     * @return eine vollständige Audible-Instanz
+     */
+    static Audible of(File file, AudioEffect... audioEffects) throws IOException, UnsupportedAudioFileException {
+        return MappedAudible.open(file).setEffects(audioEffects);
+    }
+
     /**
      * Errechne aus einem Wert in dB einen Faktor aus, mit dem alle Samples
      * des Audiosignals multipliziert werden können, sodass die gewünschte
@@ -39,9 +68,22 @@ public interface Audible {
     /** Lädt ein neues Audiosignal und dekodiert dieses */
     Audible setInput(byte[] bytes, AudioFormat audioFormat);
 
+    /** Lädt ein neues Audiosignal blockweise aus einem Stream und dekodiert dieses */
+    Audible setInput(AudioInputStream stream, LoadListener listener) throws IOException;
+
     /** Gibt einen Teilabschnitt des Audiosignals einer bereits bestehenden Instanz zurück */
     Audible splice(int fromSample, int numSamples, Audible lastAudible);
 
+    /**
+     * Gibt eine Instanz zurück, deren Änderungen aus Block 2 erst berechnet werden, wenn das Ergebnis
+     * benötigt wird (z.B. durch getOutput() oder beim Exportieren). Die Änderungen werden dabei in
+     * möglichst wenigen Durchläufen über das Signal zusammengefasst, ohne Zwischenergebnisse zu kopieren.
+     * @return Eine Instanz mit dem gleichen Audiosignal und leerem Plan
+     */
+    default Audible lazy() {
+        return LazyAudible.of(this);
+    }
+
 
 
     // BLOCK 2: Änderungen auf das Audiosignal abhängig von Voreinstellungen
@@ -89,6 +131,15 @@ public interface Audible {
     /** Gibt den höchsten Ausschlag des Audiosignals in dBFS zurück */
     double getPeakInDBFS();
 
+    /** Kopiert einen Teilabschnitt des Audiosignals in bereits bestehende Arrays (eines pro Kanal) */
+    void copySamples(int fromSample, int numSamples, int[][] target);
+
+    /** Gibt die Anzahl der Samples pro Kanal zurück */
+    int getLength();
+
+    /** Gibt die Samplerate des Audiosignals zurück */
+    float getSampleRate();
+
     /** Gibt die Intensität einer bestimmten Frequenz zurück */
     double getFFTdBFS(double frequency);
 
@@ -31,7 +31,7 @@ public interface AudioEffect {
         // Return new filter
         IIRFilter f = new IIRFilter(-2 * Math.cos(omega) / a0, (1 - alpha) / a0,
                 (1 + Math.cos(omega)) / (2 * a0), -(1 + Math.cos(omega)) / a0, (1 + Math.cos(omega)) / (2 * a0),
-                0, 0, null);
+                0, 0, 0, 0, null);
 
         AudioProcessor.LOGGER.info("Erstelle einen high-pass-IIR-Filter mit folgenden Parametern: a1: {}; a2: {}; b0: {}; b1: {}; b2: {}", f.a1(), f.a2(), f.b0(), f.b1(), f.b2());
 
@@ -54,7 +54,7 @@ public interface AudioEffect {
      */
     static AudioEffect bell(float sampleRate, double frequency, double q, double dBGain) {
         assertFilter(sampleRate, frequency, q);
-        if (dBGain == 0) return new IIRFilter(0, 0, 1, 0, 0, 0, 0, null);
+        if (dBGain == 0) return new IIRFilter(0, 0, 1, 0, 0, 0, 0, 0, 0, null);
 
         // Pre Calculations
         double omega = 2 * Math.PI * (frequency / sampleRate);
@@ -65,7 +65,7 @@ public interface AudioEffect {
         // Return new filter
         IIRFilter f = new IIRFilter((-2 * Math.cos(omega)) / a0, (1 - alpha / amount) / a0,
                 (1 + alpha * amount) / a0, -(2 * Math.cos(omega)) / a0, (1 - alpha * amount) / a0,
-                0, 0,  null
+                0, 0, 0, 0, null
         );
 
         AudioProcessor.LOGGER.info("Erstelle einen glockenförmigen IIR-Filter mit folgenden Parametern: a1: {}; a2: {}; b0: {}; b1: {}; b2: {}", f.a1(), f.a2(), f.b0(), f.b1(), f.b2());
@@ -81,7 +81,7 @@ public interface AudioEffect {
 
     static AudioEffect highShelf(float sampleRate, double frequency, double q, double dBGain) {
         assertFilter(sampleRate, frequency, q);
-        if (dBGain == 0) return new IIRFilter(0, 0, 1, 0, 0, 0, 0, null);
+        if (dBGain == 0) return new IIRFilter(0, 0, 1, 0, 0, 0, 0, 0, 0, null);
 
         // Pre Calculations
         double amount = Math.pow(10, dBGain / 40);
@@ -96,7 +96,7 @@ public interface AudioEffect {
                 amount * (amount + 1 + (amount - 1) * cos + 2 * Math.sqrt(amount) * alpha) / a0,
                 -2 * amount * (amount - 1 + (amount + 1) * cos) / a0,
                 amount * (amount + 1 + (amount - 1) * cos - 2 * Math.sqrt(amount) * alpha) / a0,
-                0, 0,  null);
+                0, 0, 0, 0, null);
     }
      */
 
@@ -124,14 +124,24 @@ public interface AudioEffect {
      * @param sampleRate Samplerate des Audiosignals
      */
     static RMSCompressor rmsCompressor(double ratio, double threshold, double attackSecond, double releaseSecond, float sampleRate) {
-        assert ratio > 0 && threshold <= 0 && attackSecond > 0 && releaseSecond > 0 : "Die Angaben sind fehlerhaft";
+        return rmsCompressor(ratio, threshold, attackSecond, releaseSecond, RMSCompressor.RMS_SECONDS, sampleRate);
+    }
+
+
+    /**
+     * Wie rmsCompressor(ratio, threshold, attackSecond, releaseSecond, sampleRate), aber mit einer eigenen
+     * Größe des RMS-Fensters. Größere Fenster reagieren träger auf einzelne Spitzen.
+     * @param rmsSeconds Größe des RMS-Fensters in Sekunden
+     */
+    static RMSCompressor rmsCompressor(double ratio, double threshold, double attackSecond, double releaseSecond, double rmsSeconds, float sampleRate) {
+        assert ratio > 0 && threshold <= 0 && attackSecond > 0 && releaseSecond > 0 && rmsSeconds > 0 : "Die Angaben sind fehlerhaft";
         assert sampleRate > 0 : "Die Samplerate muss eine positive Zahl sein!";
 
         RMSCompressor c = new RMSCompressor(1, ratio, AudioProcessor.dBFSToInt(threshold) / Math.sqrt(2),
                 AudioProcessor.timeFactor(attackSecond, sampleRate), AudioProcessor.timeFactor(releaseSecond, sampleRate),
-                0, new int[(int) (RMSCompressor.RMS_SECONDS * sampleRate)], new int[0]);
+                RMSDetector.ofSeconds(rmsSeconds, sampleRate), new int[0]);
 
-        AudioProcessor.LOGGER.info("Erstelle einen RMS-Kompressor mit folgenden Parametern: Thresholdwert: {}; Attack-Faktor: {}; Release-Faktor: {}; RMS-Fenstergröße: {}", c.thresholdValue(), c.attackFactor(), c.releaseFactor(), c.rmsWindow().length);
+        AudioProcessor.LOGGER.info("Erstelle einen RMS-Kompressor mit folgenden Parametern: Thresholdwert: {}; Attack-Faktor: {}; Release-Faktor: {}; RMS-Fenstergröße: {}", c.thresholdValue(), c.attackFactor(), c.releaseFactor(), c.detector().windowLength());
 
         return c;
     }
@@ -141,8 +151,14 @@ public interface AudioEffect {
     // METHODEN DES INTERFACES
 
     /** Gibt eine neue Instanz des Audioeffektes zurück,
-     *  aus der das verarbeitete Signal ausgelesen werden kann */
-    AudioEffect processSamples(int... samples);
+     *  aus der das verarbeitete Signal ausgelesen werden kann.
+     *  Baut auf der blockweisen Verarbeitung mit process() auf. */
+    default AudioEffect processSamples(int... samples) {
+        State state = createState();
+        int[] processedSamples = new int[samples.length];
+        process(samples, 0, processedSamples, 0, samples.length, state);
+        return withState(state, processedSamples);
+    }
 
     /** Gibt das als letztes verarbeitete Audiosignal zurück */
     int[] getProcessedSamples();
@@ -151,4 +167,60 @@ public interface AudioEffect {
      *  ungestörtesAustauschen von AudioEffect-Instanzen stattfinden kann */
     AudioEffect readFromPreviousEffect(AudioEffect audioEffect);
 
+
+
+    // BLOCKWEISE VERARBEITUNG
+
+    /**
+     * Veränderlicher Zustand eines Effektes (z.B. die letzten Samples eines Filters), der bei der
+     * blockweisen Verarbeitung von Block zu Block weitergegeben wird. Die Parameter des Effektes
+     * bleiben in der unveränderlichen AudioEffect-Instanz.
+     */
+    interface State {
+
+        /** Gibt eine unabhängige Kopie des Zustands zurück (z.B. zum Zwischenspeichern) */
+        State copy();
+
+        /** Übernimmt einen gleichartigen Zustand (z.B. aus dem StageCache), ohne dabei neue Objekte anzulegen */
+        void set(State state);
+    }
+
+    /** Erstellt einen neuen Zustand, der mit dem Zustand dieser Instanz beginnt */
+    State createState();
+
+    /**
+     * Verarbeitet einen Block von Samples, ohne dabei neue Objekte zu erzeugen. Der Zustand wird
+     * dabei fortgeschrieben, sodass der nächste Block lückenlos anschließt.
+     * @param input Zu verarbeitende Samples
+     * @param inputOffset Position des ersten Samples in input
+     * @param output Array für die verarbeiteten Samples (darf dasselbe Array wie input sein)
+     * @param outputOffset Position des ersten verarbeiteten Samples in output
+     * @param length Anzahl der Samples
+     * @param state Zustand, der mit createState() dieser oder einer gleichartigen Instanz erstellt wurde
+     */
+    void process(int[] input, int inputOffset, int[] output, int outputOffset, int length, State state);
+
+    /**
+     * Prüft, ob ein Zustand eines vorherigen Effektes mit dieser Instanz weiterverwendet werden kann
+     * (wie readFromPreviousEffect(), aber für veränderliche Zustände).
+     */
+    boolean acceptsState(State state);
+
+    /**
+     * Gibt eine unveränderliche Instanz mit den Parametern dieser Instanz und dem angegebenen Zustand zurück.
+     * Der Zustand wird dabei übernommen und darf danach nicht mehr verändert werden.
+     * @param state Der Zustand nach der Verarbeitung
+     * @param processedSamples Die verarbeiteten Samples (darf null sein)
+     */
+    AudioEffect withState(State state, int[] processedSamples);
+
+    /**
+     * Gibt einen Schlüssel zurück, der die Parameter und den Anfangszustand dieser Instanz beschreibt.
+     * Zwei Instanzen mit gleichem Schlüssel (equals()) liefern für dasselbe Signal exakt dieselben Samples.
+     * Wird verwendet, um bereits verarbeitete Blöcke wiederzuverwenden (siehe StageCache).
+     */
+    default Object cacheKey() {
+        return this;
+    }
+
 }
@@ -0,0 +1,81 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+
+import static podCarsten.backend.AudioProcessor.*;
+
+/**
+ * Exportiert ein Audiosignal in eine WAV- oder AIFF-Datei.
+ *      <br><br>
+ * Das Audiosignal wird dafür als Plan von LazyAudible ausgeführt (siehe Audible.lazy()): Das Signal wird
+ * blockweise verarbeitet und jeder Block direkt an seine Position in der Datei geschrieben. Der Speicherbedarf
+ * ist somit unabhängig von der Länge des Signals. Für processEffects().fade(...).normalize() wird das Signal
+ * zweimal verarbeitet: Im ersten Durchlauf wird nur der höchste Ausschlag ermittelt, im zweiten wird geschrieben.
+ * Bei der Normalisierung auf eine Lautheit misst der erste Durchlauf zusätzlich die Integrated Loudness
+ * (LoudnessMeter), ebenfalls mit konstantem Speicherbedarf.
+ */
+public final class AudioExporter {
+
+    private AudioExporter() {}
+
+
+    /**
+     * Exportiert das Audiosignal mit allen Effekten, Fades und Normalisierung, wie beim Speichern in der IL.
+     * @param audible Das Audiosignal mit den anzuwendenden Effekten
+     * @param file Die zu schreibende Datei
+     * @param type WAVE oder AIFF
+     * @param format Format der Samples; die Byte-Reihenfolge wird an den Dateityp angepasst
+     * @param fadeSeconds Dauer des Ein- und Ausfadens in Sekunden
+     */
+    public static void export(Audible audible, File file, AudioFileFormat.Type type, AudioFormat format, double fadeSeconds) throws IOException {
+        export(audible.lazy().processEffects().fade(fadeSeconds).normalize(), file, type, format);
+    }
+
+
+    /**
+     * Exportiert das Audiosignal mit allen Effekten und Fades und normalisiert es auf eine Lautheit nach
+     * EBU R128 statt auf den höchsten Ausschlag.
+     * @param audible Das Audiosignal mit den anzuwendenden Effekten
+     * @param file Die zu schreibende Datei
+     * @param type WAVE oder AIFF
+     * @param format Format der Samples; die Byte-Reihenfolge wird an den Dateityp angepasst
+     * @param fadeSeconds Dauer des Ein- und Ausfadens in Sekunden
+     * @param targetLUFS Die Ziel-Lautheit in LUFS; der höchste Ausschlag bleibt dabei unter RECOMMENDED_PEAK
+     */
+    public static void export(Audible audible, File file, AudioFileFormat.Type type, AudioFormat format, double fadeSeconds, double targetLUFS) throws IOException {
+        export(LazyAudible.of(audible.lazy().processEffects().fade(fadeSeconds)).normalizeLoudness(targetLUFS), file, type, format);
+    }
+
+
+    /**
+     * Exportiert das Audiosignal. Ist es eine mit Audible.lazy() erstellte Instanz, wird deren Plan
+     * blockweise ausgeführt, ansonsten werden die Samples unverändert geschrieben.
+     * @param audible Das Audiosignal
+     * @param file Die zu schreibende Datei
+     * @param type WAVE oder AIFF
+     * @param format Format der Samples; die Byte-Reihenfolge wird an den Dateityp angepasst
+     */
+    public static void export(Audible audible, File file, AudioFileFormat.Type type, AudioFormat format) throws IOException {
+        assertFormat(format);
+        assert format.getSampleRate() == audible.getSampleRate() : "Die Samplerate des Outputdatei muss gleich der Samplerate der Inputdatei sein";
+
+        AudioFormat fileFormat = new AudioFormat(format.getEncoding(), format.getSampleRate(), format.getSampleSizeInBits(),
+                format.getChannels(), format.getFrameSize(), format.getFrameRate(), type == AudioFileFormat.Type.AIFF);
+        LazyAudible plan = LazyAudible.of(audible);
+
+        LOGGER.info("Exportiere das Audiosignal mit {} Samples pro Kanal blockweise in die Datei {}", plan.getLength(), file.getName());
+
+        byte[] bytes = new byte[LazyAudible.BLOCK_FRAMES * fileFormat.getFrameSize()];
+        try (PcmFileWriter writer = new PcmFileWriter(file, type, fileFormat)) {
+            plan.render((block, position, frames) -> {
+                PcmCodec.encode(block, 0, frames, fileFormat, bytes);
+                writer.write(bytes, frames * fileFormat.getFrameSize(), position);
+            });
+        }
+
+        LOGGER.info("Das Audiosignal wurde erfolgreich exportiert!");
+    }
+}
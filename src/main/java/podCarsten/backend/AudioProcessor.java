@@ -1,12 +1,13 @@
 package podCarsten.backend;
 
 import org.apache.logging.log4j.*;
-import processing.core.*;
 
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.*;
-import java.util.function.IntUnaryOperator;
 import java.util.stream.*;
 
 class AudioProcessor implements Audible {
@@ -18,6 +19,11 @@ class AudioProcessor implements Audible {
     static final double NEEDED_FACTOR = 0.05;
     // Puffergröße in dB zum Übersteuerungsschutz
     static final int HEADROOM_DIVISOR = (int) Audible.dBToFactor(6);
+    // Anzahl der Frames, die beim blockweisen Laden auf einmal gelesen und dekodiert werden
+    static final int CHUNK_FRAMES = 1 << 16;
+    // Anzahl der Samples, die die gesamte Effektkette durchlaufen, bevor der nächste Abschnitt folgt.
+    // Ein Abschnitt bleibt so zwischen den Effekten im L1-Cache.
+    static final int TILE_SAMPLES = 512;
 
     // Statisches Logger-Objekt, dass von der AL verwendet wird
     public static final Logger LOGGER = LogManager.getLogger("monitoring");
@@ -33,6 +39,29 @@ class AudioProcessor implements Audible {
         return 1 - Math.pow(NEEDED_FACTOR, 1 / (seconds * sampleRate));
     }
 
+    /**
+     * Wendet eine Effektkette abschnittsweise (gekachelt) an: Jeder Abschnitt von TILE_SAMPLES Samples
+     * durchläuft alle Effekte, bevor der nächste Abschnitt gelesen wird. Da die Zustände der Effekte von
+     * Abschnitt zu Abschnitt weitergegeben werden, ist das Ergebnis identisch zur Verarbeitung des gesamten
+     * Signals durch einen Effekt nach dem anderen.
+     * @param effects Die Effektkette (mindestens ein Effekt)
+     * @param states Die Zustände der Effekte, werden fortgeschrieben
+     * @param input Das unverarbeitete Signal
+     * @param inputOffset Position des ersten Samples in input
+     * @param output Array für das verarbeitete Signal ab Index 0 (darf dasselbe Array wie input sein)
+     * @param length Anzahl der Samples
+     */
+    static void processTiled(AudioEffect[] effects, AudioEffect.State[] states, int[] input, int inputOffset, int[] output, int length) {
+        for (int from = 0; from < length; from += TILE_SAMPLES) {
+            int tile = Math.min(TILE_SAMPLES, length - from);
+
+            // Der erste Effekt liest aus dem Eingang, alle weiteren arbeiten direkt im Ausgang
+            effects[0].process(input, inputOffset + from, output, from, tile, states[0]);
+            for (int effectNr = 1; effectNr < effects.length; effectNr++)
+                effects[effectNr].process(output, from, output, from, tile, states[effectNr]);
+        }
+    }
+
     /**
      * Rechnet von int-Werten der Implementierung in standardisierte dBFS um.
      * Für die Begriffserklärung, siehe die Dokumentation.
@@ -49,6 +78,13 @@ class AudioProcessor implements Audible {
         return Math.log(Math.abs(intValue) / (double) Integer.MAX_VALUE) / Math.log(Math.pow(2, 1.0 / 6.0));
     }
 
+    /**
+     * Wie intTOdBFS(), aber ohne Rundung auf int, z.B. für die Beträge der Frequenzanalyse.
+     */
+    static double doubleTOdBFS(double value) {
+        return Math.log(Math.abs(value) / Integer.MAX_VALUE) / Math.log(Math.pow(2, 1.0 / 6.0));
+    }
+
     /**
      * Rechnet standardisierte dBFS in int-Wert der Implementierung um.
      * Für die Begriffserklärung, siehe die Dokumentation.
@@ -66,26 +102,20 @@ class AudioProcessor implements Audible {
     }
 
 
-    private static IntUnaryOperator bigEndianBitshift() {
-        return (byteNumber) -> (4 - 1 - byteNumber) * 8;
-        // Ungekürzte Version mit dem Parameter bytesPerSample
-        // return (byteNumber) -> (bytesPerSample - 1 - byteNumber + 4 - bytesPerSample) * 8;
-    }
-
-
-    private static IntUnaryOperator smallEndianBitshift(int bytesPerSample) {
-        return (byteNumber) -> (4 - bytesPerSample + byteNumber) * 8;
-    }
-
-
     /**
      * Samples of the audio file are stored in the int-Array channelSamples[][]
      * The samples are stored per channel, so the first dimension of the array
      * i.E. if there are 2 audio-channels, channelSamples.length would be 2.
      * The number of samples must be equal for every channel:
      * channelSamples[i] == channelSamples[j] is always true for existing i's and j's
+     *      <br><br>
+     * Eine Instanz kann auch nur einen Ausschnitt der Arrays verwenden (siehe splice()). Dann beginnt das
+     * Audiosignal bei offset und ist length Samples lang. Da die Arrays nie verändert werden, können sich
+     * mehrere Instanzen dieselben Arrays teilen. Erst Operationen, die Samples verändern, kopieren den Ausschnitt.
      */
     final int[][] channelSamples;
+    final int offset;                   // Position des ersten Samples in channelSamples
+    final int length;                   // Anzahl der Samples pro Kanal
     final float sampleRate;             // Stores the sampleRate
     final AudioEffect[][] audioEffects; // Chain of all audioEffects
 
@@ -94,6 +124,8 @@ class AudioProcessor implements Audible {
      */
     AudioProcessor() {
         channelSamples = new int[0][0];
+        offset = 0;
+        length = 0;
         sampleRate = Float.NaN;
         audioEffects = new AudioEffect[1][0];
     }
@@ -105,11 +137,34 @@ class AudioProcessor implements Audible {
      * @param audioEffects
      */
     AudioProcessor(int[][] channelSamples, float sampleRate, AudioEffect[][] audioEffects) {
+        this(channelSamples, channelSamples.length == 0 || channelSamples[0] == null ? 0 : channelSamples[0].length, 0, sampleRate, audioEffects);
+    }
+
+    /**
+     * Erstellt eine Instanz, die nur einen Ausschnitt der Arrays verwendet, ohne diesen zu kopieren.
+     * @param channelSamples Die Arrays, die mit anderen Instanzen geteilt werden
+     * @param length Anzahl der Samples pro Kanal
+     * @param offset Position des ersten Samples in den Arrays
+     */
+    AudioProcessor(int[][] channelSamples, int length, int offset, float sampleRate, AudioEffect[][] audioEffects) {
+        assert offset >= 0 && length >= 0 && (length == 0 || offset + length <= channelSamples[0].length) : "Der Ausschnitt liegt außerhalb der Arrays!";
+
         this.channelSamples = channelSamples;
+        this.length = length;
+        this.offset = offset;
         this.sampleRate = sampleRate;
         this.audioEffects = audioEffects;
     }
 
+
+    /**
+     * Kopiert den verwendeten Ausschnitt, bevor Samples verändert werden.
+     * @return Neue Arrays mit genau length Samples pro Kanal
+     */
+    private int[][] copySamples() {
+        return Arrays.stream(channelSamples).map(samples -> Arrays.copyOfRange(samples, offset, offset + length)).toArray(int[][]::new);
+    }
+
     /**
      * Set effect chain
      * @param audioEffects
@@ -120,7 +175,7 @@ class AudioProcessor implements Audible {
         assert audioEffects != null : "Das AudioEffect-Array darf nicht null sein!";
         assert Arrays.stream(audioEffects).noneMatch(Objects::isNull) : "Einzelne Effektgeräte dürfen nicht null sein!";
 
-        return new AudioProcessor(channelSamples, sampleRate,
+        return new AudioProcessor(channelSamples, length, offset, sampleRate,
                 Stream.generate(() -> audioEffects).limit(channelSamples.length).toArray(AudioEffect[][]::new)
         );
     }
@@ -140,67 +195,101 @@ class AudioProcessor implements Audible {
         assertFormat(format);
         assert bytes.length % format.getFrameSize() == 0 : "Jeder Channel muss gleich viele Samples pro Frame besitzen!";
 
-        // Hilfreiche Variablen
-        int bytesPerFrame = format.getFrameSize();
-        int bytesPerSample = format.getSampleSizeInBits() / 8;
-
         LOGGER.info("Lade Input mit der Länge von " + new DecimalFormat().format(bytes.length) + " bytes und einer Framerate von " + format.getFrameRate() + " Hz");
 
         // Array in das alle Samples gespeichert werden
-        int[][] inputSamples = new int[format.getChannels()][bytes.length / bytesPerFrame];
+        int[][] inputSamples = new int[format.getChannels()][bytes.length / format.getFrameSize()];
 
         LOGGER.info("Das Signal wird in {} Kanälen mit einer Länge von {} Samples gespeichert", inputSamples.length, inputSamples[0].length);
 
-        // Ein UnaryOperator wird abhängig von der Kodierung mit der Information aktuellen bytesPerSample gespeichert,
-        // der beim Herauslesen der Bytes die Anzahl an zu verschiebenen bits liefert.
-        IntUnaryOperator bitShifter = format.isBigEndian() ? bigEndianBitshift() : smallEndianBitshift(bytesPerSample);
-
-        // Hier wird das Audiosignal dekodiert und in einfach verarbeitbarer Form abgespeichert.
-        // Der Stream ähnelt dabei mehr einer for-Schleife, statt einer klassischen Anwendung
-        // von Streams, da es keinen Rückgabewert gibt und in ein außerhalb deklariertes Array befüllt.
-        // Diese Implementierung ist notwendig, da gleichzeitig Positionen in zwei verschiedenen
-        // Arrays bekannt sein müssen. Ich den folgenden Codeblock trotzdem als Stream implementiert,
-        // um Parallelität nutzen zu können, die das Laden eines Signals um grob 30 % beschleunigt.
-        IntStream.range(0, inputSamples.length * inputSamples[0].length).parallel().forEach(i -> {
-            // Errechne die Positionen in den beiden Arrays
-            int channel = i / inputSamples[0].length;
-            int sample = i % inputSamples[0].length;
-            int byteIndex = channel * bytesPerSample + sample * bytesPerFrame;
-
-            for (int byteNr = 0; byteNr < bytesPerSample; byteNr++) {
-
-                /*
-                Verfahren in dieser Zeile
-
-                 1. Errechnet die aktuelle Position des zu lesenden Bytes und liest dieses.
-                 2. Entfernt unnötige Bits, die durch das automatische eingefügte Vorzeichen entstanden sind
-                    mithilfe von &0xff
-                 3. Ermittle mithilfe des UnaryOperators die richtige Anzahl für den Bitshift
-                    und führe diesen durch.
-                 4. Füge die Bits an der nun richtigen Position zu dem Sample mithilfe von |= hinzu.
-
-                 Das Ergebnis nach dieser Schleife ist ein vollständig zusammengesetztes Sample.
-                 Mehr Informationen zur Kodierung sind in der Dokumentation.
-                 */
-
-                inputSamples[channel][sample] |= (bytes[byteIndex + byteNr] & 0xff) << bitShifter.applyAsInt(byteNr);
+        PcmCodec.decode(bytes, inputSamples[0].length, format, inputSamples, 0);
+
+        LOGGER.info("Das gesamte Audiosignal wurde erfolgreich dekodiert!");
+
+        //LOGGER.info("Übersicht der Erstellten Instanz:\n{}", audible);
+
+        return withInput(inputSamples, format.getSampleRate());
+    }
+
+
+    /**
+     * Lädt ein Audiosignal blockweise aus einem Stream. Pro Block werden CHUNK_FRAMES Frames in einen
+     * wiederverwendeten Puffer gelesen und direkt in die Kanal-Arrays dekodiert, sodass neben den
+     * dekodierten Samples nur ein einzelner Block an Rohdaten im Speicher liegt.
+     *      <br><br>
+     * Ist die Länge des Streams bekannt (bei WAV und AIFF immer der Fall), werden die Kanal-Arrays sofort
+     * in voller Größe angelegt und der listener nach jedem Block mit der endgültigen Instanz aufgerufen.
+     * Andernfalls wachsen die Arrays mit und der listener wird erst am Ende einmalig aufgerufen.
+     * @param stream Der Stream, aus dem das Audiosignal gelesen wird
+     * @param listener Wird nach jedem dekodierten Block aufgerufen (darf null sein)
+     * @return eine neue Audible-Instanz, die das dekodierte Audiosignal enthält
+     */
+    public Audible setInput(AudioInputStream stream, LoadListener listener) throws IOException {
+        assert stream != null : "Der Stream darf nicht null sein!";
+        AudioFormat format = stream.getFormat();
+        assertFormat(format);
+
+        long frameLength = stream.getFrameLength();
+        boolean knownLength = frameLength != AudioSystem.NOT_SPECIFIED;
+        assert frameLength <= Integer.MAX_VALUE : "Das Audiosignal ist zu lang! (" + frameLength + " Samples)";
+
+        int[][] inputSamples = new int[format.getChannels()][knownLength ? (int) frameLength : CHUNK_FRAMES];
+        byte[] chunk = new byte[CHUNK_FRAMES * format.getFrameSize()];
+
+        LOGGER.info("Lade Input blockweise mit einer Blockgröße von {} Samples und einer Framerate von {} Hz", CHUNK_FRAMES, format.getFrameRate());
+
+        // Die Instanz teilt sich die Kanal-Arrays mit dem Dekodiervorgang, sodass bereits
+        // dekodierte Teile sofort über den listener verwendet werden können.
+        Audible audible = withInput(inputSamples, format.getSampleRate());
+        int loadedSamples = 0;
+        int readBytes;
+
+        while ((readBytes = stream.readNBytes(chunk, 0, chunk.length)) > 0) {
+            int frames = readBytes / format.getFrameSize();
+
+            // Bei unbekannter Länge oder einem zu kurzen Header: Verdopple die Größe der Arrays. Die Instanz
+            // muss danach die neuen Arrays verwenden, sonst sähe der listener nur den Stand vor dem Kopieren.
+            if (loadedSamples + frames > inputSamples[0].length) {
+                int newLength = (int) Math.min(Math.max(2L * inputSamples[0].length, loadedSamples + frames), Integer.MAX_VALUE);
+                inputSamples = Arrays.stream(inputSamples).map(samples -> Arrays.copyOf(samples, newLength)).toArray(int[][]::new);
+                audible = withInput(inputSamples, format.getSampleRate());
             }
 
-            // Verringert die Lautstärke des internen Signals, um Übersteuern zu verhindern.
-            inputSamples[channel][sample] /= HEADROOM_DIVISOR;
+            PcmCodec.decode(chunk, frames, format, inputSamples, loadedSamples);
+            loadedSamples += frames;
 
+            if (knownLength && listener != null)
+                listener.loaded(audible, loadedSamples);
+        }
 
-        });
+        // Kürze die Arrays, falls der Stream weniger Samples enthielt als angegeben bzw. die Arrays gewachsen sind
+        boolean trimmed = loadedSamples != inputSamples[0].length;
+        if (trimmed) {
+            int length = loadedSamples;
+            inputSamples = Arrays.stream(inputSamples).map(samples -> Arrays.copyOf(samples, length)).toArray(int[][]::new);
+            audible = withInput(inputSamples, format.getSampleRate());
+        }
 
-        LOGGER.info("Das gesamte Audiosignal wurde erfolgreich dekodiert!");
+        // Bei unbekannter Länge erfährt der listener erst hier von der Instanz, nach dem Kürzen von der neuen
+        if (listener != null && (trimmed || !knownLength))
+            listener.loaded(audible, loadedSamples);
 
-        // Erstelle eine neue Instanz zum Zurückgeben
-        Audible audible = new AudioProcessor(inputSamples, format.getSampleRate(), audioEffects);
+        LOGGER.info("Das gesamte Audiosignal wurde erfolgreich mit {} Samples pro Kanal dekodiert!", loadedSamples);
 
-        //LOGGER.info("Übersicht der Erstellten Instanz:\n{}", audible);
+        return audible;
+    }
+
+
+    /**
+     * Erstellt eine Instanz mit neuen Samples und behält die Effekte bei, solange sich das Audioformat
+     * nicht geändert hat.
+     */
+    private Audible withInput(int[][] inputSamples, float sampleRate) {
+        // Erstelle eine neue Instanz zum Zurückgeben
+        Audible audible = new AudioProcessor(inputSamples, sampleRate, audioEffects);
 
         // Leere audioEffects, falls Änderungen im Audioformat aufgetreten sind
-        if (inputSamples.length != audioEffects.length || sampleRate != format.getSampleRate())
+        if (inputSamples.length != audioEffects.length || this.sampleRate != sampleRate)
             audible = audible.setEffects();
 
         return audible;
@@ -209,28 +298,45 @@ class AudioProcessor implements Audible {
 
     /**
      * Wendet alle Effekte auf den einzelnen Kanälen in der richtigen Reihenfolge an.
-     * Dazu werden die neuen AudioEffect-Instanzen zwischengespeichert und die verarbeiteten
-     * Samples herausgelesen.
+     * Jeder Kanal erhält dafür genau ein neues Array, in dem die Effektkette mit processTiled() abschnittsweise
+     * angewendet wird. Der erste Effekt liest dabei direkt aus dem (evtl. geteilten) Ausschnitt.
+     * Danach werden die neuen Zustände der Effekte in unveränderliche AudioEffect-Instanzen übernommen.
+     * Die IIR-Filter werden hier einzeln angewendet, damit jeder seinen eigenen Zustand erhält; zu einer
+     * BiquadCascade zusammengefasst werden sie beim blockweisen Verarbeiten im BlockRenderer (z.B. über lazy()).
      * Auch hier ist eine implementierung mit der vorgesehenen Verwendung von Streams nicht möglich, da das
      * Ergebnis des vorausgehenden Effektes Ausgangspunkt für die nächste Berechnung ist. Die äußere
      * for-Schleife habe ich dennoch aus Effizienzgründen mit einem parallelen Stream implementiert.
      * @return
      */
     public Audible processEffects() {
-        int[][] processedChannelSamples = channelSamples.clone();
+        int[][] processedChannelSamples = new int[channelSamples.length][];
+        AudioEffect[][] audioEffects = getAudioEffects();
 
-        if (channelSamples[0].length > 4096)
+        if (length > 4096)
             LOGGER.info("Wende Effekte auf das Audiosignal an...");
 
         IntStream.range(0, channelSamples.length).parallel().forEach(channel -> {
-            for (int effectNr = 0; effectNr < audioEffects[0].length; effectNr++) {
-                audioEffects[channel][effectNr] = audioEffects[channel][effectNr].processSamples(processedChannelSamples[channel]);
-                processedChannelSamples[channel] = audioEffects[channel][effectNr].getProcessedSamples();
+            AudioEffect[] effects = audioEffects[channel];
+            int[] processed = new int[length];
+            if (effects.length == 0) {
+                System.arraycopy(channelSamples[channel], offset, processed, 0, length);
+                processedChannelSamples[channel] = processed;
+                return;
             }
+
+            AudioEffect.State[] states = Arrays.stream(effects).map(AudioEffect::createState).toArray(AudioEffect.State[]::new);
+
+            processTiled(effects, states, channelSamples[channel], offset, processed, length);
+
+            // Nur der letzte Effekt besitzt danach noch genau seine verarbeiteten Samples
+            for (int effectNr = 0; effectNr < effects.length; effectNr++)
+                effects[effectNr] = effects[effectNr].withState(states[effectNr], effectNr == effects.length - 1 ? processed : null);
+
+            processedChannelSamples[channel] = processed;
         });
 
         // Logge nur, wenn ein längerer Verarbeitungszeitraum vorhanden ist um Konsolen-Spam zu vermeiden
-        if (channelSamples[0].length > 4096)
+        if (length > 4096)
             LOGGER.info("Das Audiosignal wurde mit {} Effekten pro Kanal verarbeitet.", audioEffects[0].length);
 
         return new AudioProcessor(processedChannelSamples, sampleRate, audioEffects);
@@ -249,8 +355,8 @@ class AudioProcessor implements Audible {
         LOGGER.info("Normalisiere das Audiosignal mit einem gain-Faktor von: {}", factor);
 
         // Multipliziert jedes Sample mit dem errechneten Faktor und gibt eine neue Instanz zurück
-        return new AudioProcessor(Arrays.stream(channelSamples).map(samples ->
-                Arrays.stream(samples).map(s -> (int) (s * factor)).toArray()).toArray(int[][]::new), sampleRate, audioEffects);
+        return new AudioProcessor(Arrays.stream(copySamples()).peek(samples ->
+                SampleKernels.INSTANCE.gain(samples, 0, samples.length, factor)).toArray(int[][]::new), sampleRate, audioEffects);
     }
 
 
@@ -259,7 +365,7 @@ class AudioProcessor implements Audible {
      * @return Eine neue Instanz mit dem gewünschten Effect
      */
     public Audible reverse() {
-        return new AudioProcessor(Arrays.stream(channelSamples).map(samples -> IntStream.rangeClosed(1, samples.length).map(i -> samples[samples.length - i]).toArray()).toArray(int[][]::new), sampleRate, audioEffects);
+        return new AudioProcessor(Arrays.stream(channelSamples).map(samples -> IntStream.rangeClosed(1, length).map(i -> samples[offset + length - i]).toArray()).toArray(int[][]::new), sampleRate, audioEffects);
     }
 
 
@@ -270,53 +376,94 @@ class AudioProcessor implements Audible {
      * @return eine neue Instanz mit dem gewünschten Effekt
      */
     public Audible fadeIn(double seconds) {
-        assert seconds > 0 && seconds < channelSamples[0].length / sampleRate : "Die Fade-Zeit muss im Verarbeitungszeitraum liegen! | Angegeben: " + seconds + "s von " + channelSamples[0].length / sampleRate + "s | Länge: " + channelSamples[0].length + " Samples";
+        assertFade(seconds);
+
+        // Der exponentielle Verlauf der Lautstärke wird einmal im Voraus berechnet und dann auf alle Kanäle angewendet.
+        FadeEnvelope envelope = FadeEnvelope.of(seconds, sampleRate, getLength());
+
+        return new AudioProcessor(Arrays.stream(copySamples()).peek(samples ->
+                envelope.applyIn(samples, 0, samples.length, 0)).toArray(int[][]::new), sampleRate, audioEffects);
+    }
 
-        // Errechne den Faktor, um die das Audiosignal pro Sekunde exponentiell lauter/leiser wird.
-        double timeFactor = AudioProcessor.timeFactor(seconds, sampleRate);
 
-        return new AudioProcessor(Arrays.stream(channelSamples).map(int[]::clone).peek(samples -> {
-            double gainFactor = 0;
+    /**
+     * Lässt das Audiosignal am Ende eine bestimmte Zeit lang ausfaden. Ergibt das gleiche Signal wie
+     * reverse().fadeIn(seconds).reverse(), ohne das Signal dafür zweimal umzukehren.
+     * @param seconds Dauer des Ausfadens in Sekunden
+     * @return Eine neue Instanz mit dem gewünschten Effekt
+     */
+    public Audible fadeOut(double seconds) {
+        assertFade(seconds);
+        FadeEnvelope envelope = FadeEnvelope.of(seconds, sampleRate, getLength());
+
+        return new AudioProcessor(Arrays.stream(copySamples()).peek(samples ->
+                envelope.applyOut(samples, 0, samples.length, 0, samples.length)).toArray(int[][]::new), sampleRate, audioEffects);
+    }
+
 
-            // Rechne den Faktor auf die aktuelle Lautstärke dazu und wende das Lautstärkelevel an.
-            for (int i = 0; i < samples.length; i++)
-                samples[i] = (int) (samples[i] * (gainFactor += (1 - gainFactor) * timeFactor));
+    /**
+     * Lasst das Audiosignal am Anfang und am Ende eine bestimmte Zeit lang aus-/einfaden.
+     * Ergibt das gleiche Signal wie fadeIn(seconds).fadeOut(seconds), kopiert die Samples aber nur einmal.
+     * @param seconds Dauer in Sekunden
+     * @return Eine neue Instanz mit dem gewünschten Effekt
+     */
+    public Audible fade(double seconds) {
+        assertFade(seconds);
+        FadeEnvelope envelope = FadeEnvelope.of(seconds, sampleRate, getLength());
 
+        return new AudioProcessor(Arrays.stream(copySamples()).peek(samples -> {
+            envelope.applyIn(samples, 0, samples.length, 0);
+            envelope.applyOut(samples, 0, samples.length, 0, samples.length);
         }).toArray(int[][]::new), sampleRate, audioEffects);
     }
 
 
+    private void assertFade(double seconds) {
+        assert seconds > 0 && seconds < length / sampleRate : "Die Fade-Zeit muss im Verarbeitungszeitraum liegen! | Angegeben: " + seconds + "s von " + length / sampleRate + "s | Länge: " + length + " Samples";
+    }
+
+
     /**
      * Erstellt eine neue Instanz, die nur ein Teil des Audiosignals enthält. Zudem kann eine Instanz
      * übergeben werden, woraus die zwischengespeicherten Zustände der Effektgeräte entnommen werden können.
+     * Die Samples werden dabei nicht kopiert: Die neue Instanz ist ein Ausschnitt derselben Arrays.
      * @param fromSample Startposition
      * @param numSamples Länge des Teilabschnitts
      * @param lastAudible Instanz aus der die Zustände der Effektgeräte gelesen werden sollen
      * @return Eine neue Instanz mit nur einem Teilabschnitt des Audiosignals
      */
     public Audible splice(int fromSample, int numSamples, Audible lastAudible) {
-        assert fromSample >= 0 && fromSample < channelSamples[0].length : "Die angegebene Startzeit ist ungültig! Startzeit: " + fromSample;
-        assert numSamples > 0 && fromSample + numSamples <= channelSamples[0].length : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples + " | Anzahl aller Samples: " + channelSamples[0].length;
+        assert fromSample >= 0 && fromSample < length : "Die angegebene Startzeit ist ungültig! Startzeit: " + fromSample;
+        assert numSamples > 0 && fromSample + numSamples <= length : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples + " | Anzahl aller Samples: " + length;
 
-        // Erstelle einen Teilabschnitt des channelSamples-Arrays
-        int[][] spicedSamples = Arrays.stream(channelSamples).map(samples ->
-                Arrays.stream(samples, fromSample, fromSample + numSamples).toArray()).toArray(int[][]::new);
+        return new AudioProcessor(channelSamples, numSamples, offset + fromSample, sampleRate, readEffectsFrom(audioEffects, lastAudible));
+    }
+
+
+    /**
+     * Übernimmt die zwischengespeicherten Zustände der Effektgeräte einer vorherigen Instanz, sofern
+     * diese die gleiche Anzahl an Kanälen und Effekten besitzt.
+     * @param audioEffects Die Effekte mit den aktuellen Parametern
+     * @param lastAudible Instanz aus der die Zustände der Effektgeräte gelesen werden sollen (darf null sein)
+     * @return Effekte mit den aktuellen Parametern und den Zuständen der vorherigen Instanz
+     */
+    static AudioEffect[][] readEffectsFrom(AudioEffect[][] audioEffects, Audible lastAudible) {
+        // Kopie, damit die Zustände der Effekte nicht in die ursprüngliche Instanz zurückgeschrieben werden
+        if (lastAudible == null)
+            return Arrays.stream(audioEffects).map(AudioEffect[]::clone).toArray(AudioEffect[][]::new);
 
         // Übernehme den Puffer der letzten Audioeffekte.
-        if (lastAudible != null) {
-            AudioEffect[][] lastEffects = lastAudible.getAudioEffects();
-            return new AudioProcessor(spicedSamples, sampleRate, audioEffects.length == lastEffects.length && audioEffects[0].length == lastEffects[0].length ?
-                    IntStream.range(0, audioEffects.length).mapToObj(i -> IntStream.range(0, audioEffects[i].length)
-                                    .mapToObj(j -> audioEffects[i][j].readFromPreviousEffect(lastEffects[i][j]))
-                                    .toArray(AudioEffect[]::new))
-                            .toArray(AudioEffect[][]::new) : audioEffects);
-
-        } else return new AudioProcessor(spicedSamples, sampleRate, audioEffects);
+        AudioEffect[][] lastEffects = lastAudible.getAudioEffects();
+        return audioEffects.length == lastEffects.length && audioEffects[0].length == lastEffects[0].length ?
+                IntStream.range(0, audioEffects.length).mapToObj(i -> IntStream.range(0, audioEffects[i].length)
+                                .mapToObj(j -> audioEffects[i][j].readFromPreviousEffect(lastEffects[i][j]))
+                                .toArray(AudioEffect[]::new))
+                        .toArray(AudioEffect[][]::new) : readEffectsFrom(audioEffects, null);
     }
 
 
     /**
-     * Das Konvertieren in eine abspeicherbare Form funktioniert genauso, wie das dekodieren in setBuffer().
+     * Kodiert das Audiosignal im gewünschten Format. Die Kodierung übernimmt PcmCodec.
      * @param format Das gewünschte AudioFormat
      * @return Das Audiosignal kodiert in einem einzelnen byte-Array
      */
@@ -324,31 +471,13 @@ class AudioProcessor implements Audible {
         assertFormat(format);
         assert format.getSampleRate() == sampleRate : "Die Samplerate des Outputdatei muss gleich der Samplerate der Inputdatei sein";
 
-        int bytesPerFrame = format.getFrameSize();
-        int bytesPerSample = format.getSampleSizeInBits() / 8;
-        // Speichere einen UnaryOperator, der dynamisch die Anzahl der zu verschiebenen bits errechnet.
-        IntUnaryOperator bitShifter = format.isBigEndian() ? bigEndianBitshift() : smallEndianBitshift(bytesPerSample);
-
         // Errechne die Länge des byte-Arrays durch die Anzahl der Kanäle * die Anzahl der Samples pro Kanal *
         // der Größe eines Frames in bytes.
-        byte[] bytes = new byte[channelSamples[0].length * format.getFrameSize()];
+        byte[] bytes = new byte[length * format.getFrameSize()];
 
         LOGGER.info("Speichere das Audiosignals in einem byte-Array mit einer Länge von {} bytes und einer Framegröße von {} bytes", bytes.length, format.getFrameSize());
 
-        // Sehr ähnliche Implementierung, wie bei setBuffer() mit feinen Unterschieden
-        IntStream.range(0, channelSamples.length * channelSamples[0].length).parallel().forEach(i -> {
-            // Errechne die Positionen in den beiden Arrays
-            int channel = i / channelSamples[0].length;
-            int sample = i % channelSamples[0].length;
-            int byteIndex = channel * bytesPerSample + sample * bytesPerFrame;
-            int sampleData = channelSamples[channel][sample] * HEADROOM_DIVISOR;
-
-            // Zerlege die Sampledaten in bytes und speichere diese an der richtigen Position.
-            // Mehr Informationen zur Kodierung sind in der Dokumentation.
-            for (int byteNr = 0; byteNr < bytesPerSample; byteNr++) {
-                bytes[byteIndex + byteNr] = (byte) (sampleData >>> bitShifter.applyAsInt(byteNr));
-            }
-        });
+        PcmCodec.encode(channelSamples, offset, length, format, bytes);
 
         LOGGER.info("Audiosignal erfolgreich kodiert!");
 
@@ -359,16 +488,59 @@ class AudioProcessor implements Audible {
     /**
      * Errechnet den maximalen Ausschlag in dBFS.
      * Dazu wird aus allen Samples der Wert mit dem höchsten Betrag ausgewählt und in dBFS umgerechnet.
+     * Bei längeren Signalen wird das Ergebnis zwischengespeichert bzw. stammt bereits aus der Übersicht,
+     * die beim Laden aufgebaut wurde (siehe AnalysisPipeline und WaveformPyramid.shareAnalysis()).
      * @return eine neue Instanz mit dem gewünschten Effekt
      */
     public double getPeakInDBFS() {
-        return intTOdBFS(Arrays.stream(channelSamples).parallel().flatMapToInt(Arrays::stream).map(Math::abs).max().orElse(1) * HEADROOM_DIVISOR);
+        int chunks = (length + CHUNK_FRAMES - 1) / CHUNK_FRAMES;
+
+        // Kurze Ausschnitte (z.B. eine Spalte der Übersicht) werden ohne Stream ausgewertet
+        if (chunks == 1) {
+            int peak = 0;
+            for (int[] samples : channelSamples)
+                peak = Math.max(peak, SampleKernels.INSTANCE.maxAbs(samples, offset, offset + length));
+            return intTOdBFS(peak * HEADROOM_DIVISOR);
+        }
+
+        // Das Signal wird in Blöcke aufgeteilt, die parallel ausgewertet werden
+        return intTOdBFS(AnalysisPipeline.PEAK.analyse(this).get(SignalAnalysers.PEAK) * HEADROOM_DIVISOR);
+    }
+
+
+    /**
+     * Kopiert einen Teilabschnitt in bereits bestehende Arrays, ohne eine neue Instanz zu erstellen.
+     */
+    public void copySamples(int fromSample, int numSamples, int[][] target) {
+        assert fromSample >= 0 && numSamples >= 0 && fromSample + numSamples <= getLength() : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples;
+        assert target.length == channelSamples.length : "Die Anzahl der Kanäle stimmt nicht überein!";
+
+        for (int channel = 0; channel < channelSamples.length; channel++)
+            System.arraycopy(channelSamples[channel], offset + fromSample, target[channel], 0, numSamples);
+    }
+
+
+    /**
+     * @return Anzahl der Samples pro Kanal
+     */
+    public int getLength() {
+        return length;
+    }
+
+
+    /**
+     * @return Samplerate des Audiosignals in Hz
+     */
+    public float getSampleRate() {
+        return sampleRate;
     }
 
 
     /**
-     * Errechnet die Intensität einer bestimmten Frequenz mithilfe des Fast-Fourier-Transforms, eine
-     * recheneffiziente implementierung des Discrete-Fourier-Transforms.
+     * Errechnet die Intensität einer bestimmten Frequenz mithilfe des Goertzel-Algorithmus, einer
+     * recheneffizienten Implementierung des Discrete-Fourier-Transforms für eine einzelne Frequenz.
+     * Für das gesamte Spektrum sind der SpectrumAnalyzer (FFT, gleichmäßige Auflösung) bzw. für
+     * logarithmisch verteilte Frequenzen wie in der Anzeige der FilterBankAnalyzer deutlich schneller.
      *
      * Hinweise:
      *   - Je länger der aktualisierte Buffer, desto enger wird die analysierte Frequenz,
@@ -380,37 +552,9 @@ class AudioProcessor implements Audible {
      * @return die Intensität der angegebenen Frequenz
      */
     public double getFFTdBFS(double frequency) {
-        assert frequency > 0 && frequency <= sampleRate * 0.5 : "Die Frequenz muss > 0 sein und darf das Nyquist-Limit nicht übersteigen! (" + frequency + ")";
-
-        //      k = Phasen pro Sample
-        //  <=> k = Pufferlänge * SamplesProPhase
-        //  <=> k = Pufferlänge * Frequenz / SampleRate
-        //
-        // vom Typen float, da mit der Klasse PVector gearbeitet wird
-        float k = (float) (channelSamples[0].length * frequency / sampleRate);
-
-        // Jeder Kanal wird einzeln analysiert und am Ende der Durchschnitt der Kanäle errechnet
-        double fftValue = Arrays.stream(channelSamples)
-                .map(samples -> IntStream.range(0, channelSamples[1].length)
-                        // Jedes Sample wird als komplexe Zahl mithilfe eines zweidimensionalen PVectors dargestellt.
-                        // Der Winkel der Komplexen Zahl entspricht dem Phasenwinkel (deswegen PVector.fromAngle(Phasenwinkel))
-                        // und die Länge bzw. der Betrag stellt den Ausschlag des Samples dar.
-                        // (Entstandener Vektor der Länge 1 wird mit dem Ausschlag des Samples multipliziert)
-                        .mapToObj(i -> PVector.fromAngle(2 * PConstants.PI * k * i / channelSamples[0].length).mult(channelSamples[1][i]))
-                        // Alle entstandenen komplexen Werte werden addiert
-                        .reduce(new PVector(), (complex1, complex2) -> PVector.add(complex1, complex2)))
-                // Die Intensität der Testfrequenz ist nun proportional zum Betrag
-                // der komplexen Zahl.
-                // (PVector::mag errechnet die Länge des Vektors bzw. den Betrag der komplexen Zahl)
-                .mapToDouble(PVector::mag).average().orElse(0);
-
-        // Damit ist der Vorschlag für ein ganzes Abschlussprojekt aus Hr. Herzbergs Projektideen
-        // "Frequenzanalyse mit der Diskreten Fourier Transformation"
-        // praktisch in einem einzigen (verschachtelten) Stream gelöst ;-)
-
-        // Zum Zurückgeben wird der errechnete Wert noch mit dem Proportionalitätsfaktor
-        // verrechnet und in die Einheit dBFS umgerechnet
-        return intTOdBFS((int) (HEADROOM_DIVISOR * fftValue * 2.0 / channelSamples[0].length));
+        Goertzel goertzel = new Goertzel(frequency, sampleRate, channelSamples.length);
+        goertzel.process(channelSamples, offset, offset + length);
+        return goertzel.dBFS();
     }
 
     /**
@@ -428,7 +572,7 @@ class AudioProcessor implements Audible {
         String s = "\n";
 
         s += " - AudioProcessor -\n";
-        s += "Länge: " + String.format("%.2f", channelSamples[0].length / sampleRate) + " s\n";
+        s += "Länge: " + String.format("%.2f", length / sampleRate) + " s\n";
         s += "Kanäle: " + channelSamples.length + "\n";
         s += "Höchster Ausschlag: " + String.format("%.1f dBFS", getPeakInDBFS()) + "\n";
 
@@ -460,7 +604,7 @@ class AudioProcessor implements Audible {
      * Überprüfe die Bedingungen, die ein AudioFormat erfüllen muss.
      * @param format
      */
-    private void assertFormat(AudioFormat format) {
+    static void assertFormat(AudioFormat format) {
         assert format != null : "Das Audioformat darf nicht null sein!";
         assert format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED) : "Es wird nur die Kodierung 'PCM_SIGNED' unterstützt!";
         assert format.getChannels() >= 1 : "Die Audiodatei benötigt mindestens 1 Kanal!";
@@ -0,0 +1,171 @@
+package podCarsten.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static podCarsten.backend.AudioProcessor.LOGGER;
+
+/**
+ * Mehrere hintereinander geschaltete IIR-Filter (second-order sections), die in einem einzigen Durchlauf
+ * angewendet werden. Jedes Sample durchläuft alle Abschnitte direkt nacheinander, die Zwischenergebnisse
+ * bleiben dabei als double erhalten und werden erst am Ende einmal in ein int umgewandelt. Im Gegensatz zu
+ * einzelnen IIRFilter-Instanzen wird das Signal also nur einmal gelesen und einmal geschrieben.
+ *      <br><br>
+ * Die Abschnitte werden in der "transposed direct form II" berechnet, die pro Abschnitt nur zwei
+ * Zustandswerte benötigt. Instanzen entstehen durch fuse(), das der BlockRenderer
+ * beim Verarbeiten aufruft; getAudioEffects() gibt weiterhin die einzelnen Filter zurück.
+ * @param coefficients Pro Abschnitt b0, b1, b2, a1, a2
+ * @param state Pro Abschnitt die beiden Zustandswerte z1, z2
+ * @param processedSamples Die zuletzt verarbeiteten Samples (darf null sein)
+ */
+record BiquadCascade(double[] coefficients, double[] state, int[] processedSamples) implements AudioEffect {
+    // Da das record package-private ist, erhält die IL keinen Zugriff auf die Daten.
+
+    static final int COEFFICIENTS_PER_SECTION = 5;
+    static final int STATES_PER_SECTION = 2;
+
+
+    /**
+     * Fasst alle direkt aufeinanderfolgenden IIR-Filter zu je einer BiquadCascade zusammen.
+     * Einzelne Filter und alle anderen Effekte bleiben unverändert.
+     * @param audioEffects Die Effektkette
+     * @return Die Effektkette mit zusammengefassten Filtern
+     */
+    static AudioEffect[] fuse(AudioEffect... audioEffects) {
+        List<AudioEffect> fused = new ArrayList<>();
+
+        for (int start = 0; start < audioEffects.length; ) {
+            int end = start;
+            while (end < audioEffects.length && audioEffects[end] instanceof IIRFilter)
+                end++;
+
+            if (end - start >= 2) {
+                fused.add(of(Arrays.copyOfRange(audioEffects, start, end, IIRFilter[].class)));
+                start = end;
+            } else {
+                fused.add(audioEffects[start]);
+                start = Math.max(start + 1, end);
+            }
+        }
+
+        return fused.size() == audioEffects.length ? audioEffects : fused.toArray(AudioEffect[]::new);
+    }
+
+
+    /**
+     * Erstellt eine Kaskade aus den Koeffizienten und Zuständen der Filter. Die Zustände der Filter
+     * (letzte Ein- und Ausgangswerte) werden dabei in die Zustände der transponierten Form umgerechnet,
+     * sodass die Kaskade lückenlos an die einzelnen Filter anschließt.
+     */
+    static BiquadCascade of(IIRFilter... filters) {
+        double[] coefficients = new double[filters.length * COEFFICIENTS_PER_SECTION];
+        double[] state = new double[filters.length * STATES_PER_SECTION];
+
+        for (int section = 0; section < filters.length; section++) {
+            IIRFilter f = filters[section];
+            int c = section * COEFFICIENTS_PER_SECTION;
+            int z = section * STATES_PER_SECTION;
+
+            coefficients[c] = f.b0();
+            coefficients[c + 1] = f.b1();
+            coefficients[c + 2] = f.b2();
+            coefficients[c + 3] = f.a1();
+            coefficients[c + 4] = f.a2();
+
+            state[z] = f.b1() * f.dry1() + f.b2() * f.dry2() - f.a1() * f.wet1() - f.a2() * f.wet2();
+            state[z + 1] = f.b2() * f.dry1() - f.a2() * f.wet1();
+        }
+
+        LOGGER.info("Fasse {} IIR-Filter zu einer Kaskade zusammen", filters.length);
+
+        return new BiquadCascade(coefficients, state, null);
+    }
+
+
+    /**
+     * Die Zustandswerte aller Abschnitte.
+     */
+    static final class CascadeState implements State {
+        double[] z;
+
+        public State copy() {
+            CascadeState copy = new CascadeState();
+            copy.z = z.clone();
+            return copy;
+        }
+
+        public void set(State state) {
+            double[] other = ((CascadeState) state).z;
+            if (other.length == z.length)
+                System.arraycopy(other, 0, z, 0, z.length);
+            else z = other.clone();
+        }
+    }
+
+
+    public State createState() {
+        CascadeState cascadeState = new CascadeState();
+        cascadeState.z = state.clone();
+        return cascadeState;
+    }
+
+
+    public void process(int[] input, int inputOffset, int[] output, int outputOffset, int length, State state) {
+        assert input != null && output != null;
+        double[] z = ((CascadeState) state).z;
+        double[] c = coefficients;
+        int sections = z.length / STATES_PER_SECTION;
+
+        for (int i = 0; i < length; i++) {
+            double sample = input[inputOffset + i];
+
+            // Der Ausgang jedes Abschnitts ist der Eingang des nächsten
+            for (int section = 0, ci = 0, zi = 0; section < sections; section++, ci += COEFFICIENTS_PER_SECTION, zi += STATES_PER_SECTION) {
+                double processed = c[ci] * sample + z[zi];
+                z[zi] = c[ci + 1] * sample - c[ci + 3] * processed + z[zi + 1];
+                z[zi + 1] = c[ci + 2] * sample - c[ci + 4] * processed;
+                sample = processed;
+            }
+
+            output[outputOffset + i] = (int) sample;
+        }
+
+        if (length > 4096)
+            LOGGER.info("Eine Kaskade aus {} IIR-Filtern wurde auf das Audiosignal angewendet", sections);
+    }
+
+
+    public boolean acceptsState(State state) {
+        return state instanceof CascadeState other && other.z.length == this.state.length;
+    }
+
+
+    public Object cacheKey() {
+        return List.of(BiquadCascade.class, Arrays.stream(coefficients).boxed().toList(), Arrays.stream(state).boxed().toList());
+    }
+
+
+    public AudioEffect withState(State state, int[] processedSamples) {
+        return new BiquadCascade(coefficients, ((CascadeState) state).z, processedSamples);
+    }
+
+
+    /**
+     * @return Die zuletzt verarbeiteten Samples
+     */
+    public int[] getProcessedSamples() {
+        return processedSamples;
+    }
+
+
+    /**
+     * Übernimmt die Zustände einer vorherigen Kaskade mit gleich vielen Abschnitten.
+     * @param audioEffect Instanz, die den alten Zustand enthält
+     */
+    public AudioEffect readFromPreviousEffect(AudioEffect audioEffect) {
+        if (audioEffect instanceof BiquadCascade other && other.state.length == state.length)
+            return new BiquadCascade(coefficients, other.state, other.processedSamples);
+        return this;
+    }
+}
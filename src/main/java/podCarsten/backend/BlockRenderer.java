@@ -0,0 +1,420 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Verarbeitet ein Audiosignal blockweise mit seinen Effekten. Die Zustände der Effektgeräte werden dabei
+ * von Block zu Block weitergegeben, sodass aufeinanderfolgende Blöcke ein lückenloses Signal ergeben.
+ *      <br><br>
+ * Die Effekte werden über die blockweise Schnittstelle von AudioEffect mit veränderlichen Zuständen
+ * angewendet, aufeinanderfolgende IIR-Filter dabei als eine BiquadCascade. Die Puffer für das Eingangs- und Ausgangssignal werden wiederverwendet, sodass pro Block
+ * keine neuen Objekte entstehen.
+ *      <br><br>
+ * Die Ausgabe jedes Effektes wird pro Block im StageCache des Audiosignals gespeichert. Wurde ein Block
+ * mit denselben vorderen Effekten bereits verarbeitet (z.B. beim erneuten Abspielen nach einer Änderung am
+ * Kompressor), werden diese Effekte übersprungen und nur die folgenden neu berechnet.
+ *      <br><br>
+ * Werden die Effekte mit withAudible(audible, crossfadeSamples) ausgetauscht, läuft die vorherige Effektkette
+ * mit einer Kopie ihrer Zustände noch crossfadeSamples Samples lang weiter und es wird linear in die neue
+ * Kette übergeblendet. So entstehen auch bei schnellen Änderungen der Parameter keine Sprünge im Signal.
+ *      <br><br>
+ * Eine Instanz gehört immer zu genau einem Durchlauf durch das Signal (z.B. Abspielen oder Exportieren)
+ * und ist nicht threadsicher.
+ */
+public final class BlockRenderer {
+
+    // Ab dieser Blockgröße werden die Kanäle parallel verarbeitet
+    static final int PARALLEL_SAMPLES = PcmCodec.RANGE_FRAMES;
+
+    private final Audible audible;
+    private final AudioEffect[][] configuredEffects;   // Wie von getAudioEffects() zurückgegeben
+    private final AudioEffect[][] audioEffects;         // Mit zusammengefassten IIR-Filtern
+    private final AudioEffect.State[][] states;
+
+    // Zwischenspeicher der Stufen (null, falls das Audiosignal nicht unterstützt wird oder dieser nicht verwendet wird)
+    private final boolean cached;
+    private final StageCache cache;
+    private final int inputOffset;
+    // Verlauf der Position im Signal und jeder Stufe, siehe StageCache
+    private Object sourceLineage;
+    private final Object[][] lineages;
+    // Position, an der der nächste Block lückenlos anschließt (-1 vor dem ersten Block)
+    private int nextSample = -1;
+
+    private int[][] input;
+    private int[][] output;
+    private int[][][] stageOutputs;     // Ausgabe jeder Stufe außer der letzten, pro Kanal
+    private int blockStart;
+    private int blockLength;
+
+    // Vorherige Effektkette, aus der übergeblendet wird (null, falls keine Überblendung läuft)
+    private AudioEffect[][] fadeEffects;
+    private AudioEffect.State[][] fadeStates;
+    private int[][] fadeOutput;
+    private int fadeLength;
+    private int fadePosition;
+    // Signal ab der bisherigen Position bei einem Sprung, siehe renderJump()
+    private int[][] jumpOutput;
+    // Verlauf von fadeOutput() für Blöcke der Länge fadeEnvelopeLength
+    private FadeEnvelope fadeEnvelope;
+    private int fadeEnvelopeLength;
+
+
+    /**
+     * @param audible Das Audiosignal mit den anzuwendenden Effekten
+     */
+    public BlockRenderer(Audible audible) {
+        this(audible, true);
+    }
+
+
+    /**
+     * @param audible Das Audiosignal mit den anzuwendenden Effekten
+     * @param cached false, falls der StageCache nicht verwendet werden soll (z.B. bei einmaligen Durchläufen)
+     */
+    BlockRenderer(Audible audible, boolean cached) {
+        this(audible, null, 0, cached);
+    }
+
+
+    /**
+     * Erstellt eine Instanz, die die Zustände der Effekte einer vorherigen Instanz übernimmt, sofern der
+     * Effekt an gleicher Stelle den Zustand weiterverwenden kann. So können z.B. die Parameter der Effekte während
+     * des Abspielens ohne Störgeräusche ausgetauscht werden.
+     * @param audible Das Audiosignal mit den anzuwendenden Effekten
+     * @param previous Instanz, deren Zustände übernommen werden sollen (darf null sein)
+     * @param crossfadeSamples Länge der Überblendung aus den Effekten der vorherigen Instanz
+     * @param cached false, falls der StageCache nicht verwendet werden soll
+     */
+    private BlockRenderer(Audible audible, BlockRenderer previous, int crossfadeSamples, boolean cached) {
+        assert audible != null : "Das Audiosignal darf nicht null sein!";
+
+        this.audible = audible;
+        this.configuredEffects = audible.getAudioEffects();
+        // Aufeinanderfolgende IIR-Filter werden in einem einzigen Durchlauf angewendet
+        this.audioEffects = Arrays.stream(configuredEffects).map(BiquadCascade::fuse).toArray(AudioEffect[][]::new);
+        this.states = new AudioEffect.State[audioEffects.length][];
+        this.lineages = new Object[audioEffects.length][];
+        this.cached = cached;
+        this.cache = cached ? StageCache.of(audible) : null;
+        this.inputOffset = StageCache.inputOffset(audible);
+
+        boolean sameInput = previous != null && previous.cache == cache && previous.inputOffset == inputOffset;
+        if (sameInput) {
+            sourceLineage = previous.sourceLineage;
+            nextSample = previous.nextSample;
+        }
+
+        for (int channel = 0; channel < audioEffects.length; channel++) {
+            states[channel] = new AudioEffect.State[audioEffects[channel].length];
+            lineages[channel] = new Object[audioEffects[channel].length];
+
+            for (int effectNr = 0; effectNr < states[channel].length; effectNr++) {
+                if (previous != null && previous.hasCompatibleState(channel, effectNr, audioEffects[channel][effectNr])) {
+                    states[channel][effectNr] = previous.states[channel][effectNr];
+                    // Ein übernommener Zustand setzt den Verlauf der vorherigen Instanz fort
+                    lineages[channel][effectNr] = sameInput ? previous.lineages[channel][effectNr] : new Object();
+                } else states[channel][effectNr] = audioEffects[channel][effectNr].createState();
+            }
+        }
+
+        this.input = previous != null && previous.input.length == audioEffects.length ? previous.input : new int[audioEffects.length][0];
+        this.output = previous != null && previous.output.length == audioEffects.length ? previous.output : new int[audioEffects.length][0];
+        this.stageOutputs = new int[audioEffects.length][][];
+        for (int channel = 0; channel < audioEffects.length; channel++)
+            stageOutputs[channel] = new int[Math.max(0, audioEffects[channel].length - 1)][input[0].length];
+
+        relink();
+
+        // Die vorherige Kette rechnet mit Kopien weiter, da übernommene Zustände nun von der neuen Kette verändert werden
+        if (crossfadeSamples > 0 && previous != null && previous.audioEffects.length == audioEffects.length
+                && !Arrays.deepEquals(previous.configuredEffects, configuredEffects)) {
+            this.fadeEffects = previous.audioEffects;
+            this.fadeStates = Arrays.stream(previous.states)
+                    .map(channelStates -> Arrays.stream(channelStates).map(AudioEffect.State::copy).toArray(AudioEffect.State[]::new))
+                    .toArray(AudioEffect.State[][]::new);
+            this.fadeOutput = previous.fadeOutput != null ? previous.fadeOutput : new int[audioEffects.length][0];
+            this.fadeLength = crossfadeSamples;
+        }
+    }
+
+
+    /**
+     * Aktualisiert den Verlauf aller Stufen, nachdem sich die Position im Signal oder die Effekte geändert haben.
+     * Eine Stufe behält ihren Verlauf, wenn sie ihren eigenen Zustand mit demselben Effekt und derselben
+     * Eingabe fortsetzt; andernfalls beginnt ein neuer Verlauf, der auf den alten verweist.
+     */
+    private void relink() {
+        for (int channel = 0; channel < audioEffects.length; channel++) {
+            Object inputLineage = sourceLineage;
+
+            for (int effectNr = 0; effectNr < audioEffects[channel].length; effectNr++) {
+                Object key = audioEffects[channel][effectNr].cacheKey();
+                Object old = lineages[channel][effectNr];
+
+                if (!StageCache.continues(old, inputLineage, key))
+                    lineages[channel][effectNr] = StageCache.lineage(inputLineage, key, old);
+                inputLineage = lineages[channel][effectNr];
+            }
+        }
+    }
+
+
+    private boolean hasCompatibleState(int channel, int effectNr, AudioEffect audioEffect) {
+        return channel < states.length && effectNr < states[channel].length
+                && audioEffect.acceptsState(states[channel][effectNr]);
+    }
+
+
+    /**
+     * Gibt eine Instanz für ein anderes Audiosignal (bzw. andere Effekte) zurück, die die Zustände
+     * und Puffer dieser Instanz übernimmt. Diese Instanz darf danach nicht mehr verwendet werden.
+     */
+    public BlockRenderer withAudible(Audible audible) {
+        return withAudible(audible, 0);
+    }
+
+
+    /**
+     * Wie withAudible(), blendet aber über die angegebene Anzahl Samples aus den bisherigen Effekten in die
+     * neuen über. Die Überblendung sollte kürzer als ein Block sein, da eine laufende Überblendung bei einem
+     * erneuten Wechsel abgebrochen wird.
+     * @param crossfadeSamples Länge der Überblendung (0 für einen sofortigen Wechsel)
+     */
+    public BlockRenderer withAudible(Audible audible, int crossfadeSamples) {
+        assert crossfadeSamples >= 0 : "Die Länge der Überblendung darf nicht negativ sein! Länge: " + crossfadeSamples;
+
+        return audible == this.audible ? this : new BlockRenderer(audible, this, crossfadeSamples, cached);
+    }
+
+
+    /**
+     * Verarbeitet den nächsten Block. Folgt der Block nicht direkt auf den vorherigen, wird trotzdem
+     * mit den Zuständen des vorherigen Blocks weitergerechnet (wie beim Springen während des Abspielens).
+     * @param fromSample Startposition des Blocks
+     * @param numSamples Länge des Blocks
+     * @return Die verarbeiteten Samples pro Kanal ab Index 0. Die Arrays werden beim nächsten Aufruf
+     *         wiederverwendet und können länger als der Block sein.
+     */
+    public int[][] renderBlock(int fromSample, int numSamples) {
+        assert numSamples > 0 && fromSample >= 0 && fromSample + numSamples <= audible.getLength() : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples;
+
+        if (input[0].length < numSamples) {
+            input = new int[input.length][numSamples];
+            output = new int[output.length][numSamples];
+            for (int channel = 0; channel < stageOutputs.length; channel++)
+                stageOutputs[channel] = new int[stageOutputs[channel].length][numSamples];
+        }
+
+        // Nach einem Sprung hängen die Zustände zusätzlich von der neuen Position ab
+        if (fromSample != nextSample) {
+            sourceLineage = StageCache.lineage(inputOffset + fromSample, null, sourceLineage);
+            relink();
+        }
+        nextSample = fromSample + numSamples;
+
+        audible.copySamples(fromSample, numSamples, input);
+        blockStart = inputOffset + fromSample;
+        blockLength = numSamples;
+
+        if (numSamples >= PARALLEL_SAMPLES)
+            IntStream.range(0, input.length).parallel().forEach(this::processChannel);
+        else for (int channel = 0; channel < input.length; channel++)
+            processChannel(channel);
+
+        if (fadeEffects != null)
+            crossfade();
+
+        return output;
+    }
+
+
+    /**
+     * Verarbeitet den Block zusätzlich mit der vorherigen Effektkette und blendet linear von deren Ausgabe
+     * in die Ausgabe der neuen Kette über.
+     */
+    private void crossfade() {
+        int samples = Math.min(blockLength, fadeLength - fadePosition);
+
+        for (int channel = 0; channel < output.length; channel++) {
+            if (fadeOutput[channel].length < blockLength)
+                fadeOutput[channel] = new int[input[channel].length];
+
+            if (fadeEffects[channel].length == 0)
+                System.arraycopy(input[channel], 0, fadeOutput[channel], 0, blockLength);
+            else AudioProcessor.processTiled(fadeEffects[channel], fadeStates[channel], input[channel], 0, fadeOutput[channel], blockLength);
+
+            blend(fadeOutput[channel], output[channel], samples, fadePosition, fadeLength);
+        }
+
+        fadePosition += samples;
+        if (fadePosition >= fadeLength) {
+            fadeEffects = null;
+            fadeStates = null;
+        }
+    }
+
+
+    /**
+     * Blendet linear von einem Signal in ein anderes über, das dabei überschrieben wird.
+     * @param fadePosition Anzahl der Samples der Überblendung, die bereits in vorherigen Blöcken lagen
+     */
+    private static void blend(int[] from, int[] into, int samples, int fadePosition, int fadeLength) {
+        for (int i = 0; i < samples; i++) {
+            double amount = (fadePosition + i + 1) / (double) (fadeLength + 1);
+            into[i] = (int) Math.round(from[i] + (into[i] - (double) from[i]) * amount);
+        }
+    }
+
+
+    /**
+     * Setzt die Zustände aller Effekte zurück, sodass der nächste Block wie bei einer neuen Instanz berechnet
+     * wird, z.B. wenn das Abspielen an einer anderen Position fortgesetzt wird. Eine laufende Überblendung aus
+     * vorherigen Effekten wird abgebrochen.
+     */
+    public void reset() {
+        for (int channel = 0; channel < audioEffects.length; channel++) {
+            for (int effectNr = 0; effectNr < audioEffects[channel].length; effectNr++) {
+                states[channel][effectNr] = audioEffects[channel][effectNr].createState();
+                lineages[channel][effectNr] = null;
+            }
+        }
+        sourceLineage = null;
+        nextSample = -1;
+        fadeEffects = null;
+        fadeStates = null;
+    }
+
+
+    /**
+     * Springt an eine neue Position, z.B. wenn während des Abspielens an eine andere Stelle geklickt wird.
+     * Das Signal ab der bisherigen Position wird dabei noch crossfadeSamples Samples lang berechnet und linear
+     * in das Signal ab der neuen Position übergeblendet. Ab der neuen Position beginnen die Effekte mit neuen
+     * Zuständen (siehe reset()), da die bisherigen zu einer anderen Stelle im Signal gehören.
+     * @param previousSample Position, an der das Signal ohne den Sprung weitergegangen wäre
+     * @param fromSample Startposition des Blocks
+     * @param numSamples Länge des Blocks
+     * @param crossfadeSamples Länge der Überblendung
+     * @return Die verarbeiteten Samples wie bei renderBlock()
+     */
+    public int[][] renderJump(int previousSample, int fromSample, int numSamples, int crossfadeSamples) {
+        assert previousSample >= 0 && crossfadeSamples >= 0 : "Die Überblendung ist ungültig! Position: " + previousSample + " | Länge: " + crossfadeSamples;
+
+        int samples = Math.min(crossfadeSamples, Math.min(numSamples, audible.getLength() - previousSample));
+        if (samples > 0) {
+            renderBlock(previousSample, samples);
+            if (jumpOutput == null || jumpOutput.length != output.length || jumpOutput[0].length < samples)
+                jumpOutput = new int[output.length][samples];
+            for (int channel = 0; channel < output.length; channel++)
+                System.arraycopy(output[channel], 0, jumpOutput[channel], 0, samples);
+        }
+
+        reset();
+        renderBlock(fromSample, numSamples);
+        for (int channel = 0; channel < output.length && samples > 0; channel++)
+            blend(jumpOutput[channel], output[channel], samples, 0, samples);
+
+        return output;
+    }
+
+
+    /**
+     * Wendet alle Effekte eines Kanals abschnittsweise vom Eingangs- in den Ausgangspuffer an.
+     */
+    private void processChannel(int channel) {
+        if (audioEffects[channel].length == 0)
+            System.arraycopy(input[channel], 0, output[channel], 0, blockLength);
+        else if (cache == null)
+            AudioProcessor.processTiled(audioEffects[channel], states[channel], input[channel], 0, output[channel], blockLength);
+        else processCached(channel);
+    }
+
+
+    /**
+     * Übernimmt die vorderen Stufen, die bereits im Cache liegen, samt ihrer Zustände und verarbeitet nur die
+     * restlichen Stufen. Wie bei processTiled() durchläuft jeder Abschnitt alle restlichen Stufen nacheinander,
+     * jede Stufe schreibt dabei aber in ihren eigenen Puffer, damit ihre Ausgabe gespeichert werden kann.
+     */
+    private void processCached(int channel) {
+        AudioEffect[] effects = audioEffects[channel];
+        AudioEffect.State[] channelStates = states[channel];
+        Object[] channelLineages = lineages[channel];
+        int last = effects.length - 1;
+
+        // Die gespeicherten Stufen werden in ihre eigenen Puffer kopiert und ihre Zustände auf den Stand nach dem Block gesetzt
+        int cached = 0;
+        int[] cachedOutput = input[channel];
+        while (cached <= last && cache.get(channelLineages[cached], channel, blockStart, blockLength, stageOutput(channel, cached), channelStates[cached]))
+            cachedOutput = stageOutput(channel, cached++);
+
+        if (cached > last)
+            return;
+
+        for (int from = 0; from < blockLength; from += AudioProcessor.TILE_SAMPLES) {
+            int tile = Math.min(AudioProcessor.TILE_SAMPLES, blockLength - from);
+            for (int effectNr = cached; effectNr <= last; effectNr++)
+                effects[effectNr].process(effectNr == cached ? cachedOutput : stageOutputs[channel][effectNr - 1], from,
+                        stageOutput(channel, effectNr), from, tile, channelStates[effectNr]);
+        }
+
+        for (int effectNr = cached; effectNr <= last; effectNr++)
+            cache.put(channelLineages[effectNr], channel, blockStart, stageOutput(channel, effectNr), blockLength, channelStates[effectNr]);
+    }
+
+
+    private int[] stageOutput(int channel, int effectNr) {
+        return effectNr == audioEffects[channel].length - 1 ? output[channel] : stageOutputs[channel][effectNr];
+    }
+
+
+    /**
+     * Kodiert das verarbeitete Signal des letzten Blocks, ohne eine neue Instanz oder ein neues Array anzulegen.
+     * @param bytes Ziel der kodierten Frames ab Index 0; muss mindestens einen Block fassen
+     */
+    public void encodeOutput(AudioFormat audioFormat, byte[] bytes) {
+        assert bytes.length >= blockLength * audioFormat.getFrameSize() : "Das byte-Array ist zu klein! Länge: " + bytes.length;
+
+        PcmCodec.encode(output, 0, blockLength, audioFormat, bytes);
+    }
+
+
+    /**
+     * @return Das unverarbeitete Signal des letzten Blocks pro Kanal ab Index 0. Die Arrays werden beim nächsten
+     *         Aufruf von renderBlock() wiederverwendet und dürfen nicht verändert werden.
+     */
+    public int[][] getInput() {
+        return input;
+    }
+
+
+    /**
+     * Blendet das verarbeitete Signal des letzten Blocks direkt in den Puffern ein bzw. aus, wie
+     * fadeIn()/fadeOut() über den gesamten Block. Der Verlauf wird nur bei einer neuen Blocklänge neu berechnet.
+     * @param in true zum Einblenden, false zum Ausblenden
+     */
+    public void fadeOutput(boolean in) {
+        if (blockLength < 2)
+            return;
+
+        if (fadeEnvelope == null || fadeEnvelopeLength != blockLength) {
+            fadeEnvelope = FadeEnvelope.of((blockLength - 1) / audible.getSampleRate(), audible.getSampleRate(), blockLength);
+            fadeEnvelopeLength = blockLength;
+        }
+
+        for (int[] samples : output) {
+            if (in)
+                fadeEnvelope.applyIn(samples, 0, blockLength, 0);
+            else fadeEnvelope.applyOut(samples, 0, blockLength, 0, blockLength);
+        }
+    }
+
+
+    /**
+     * @return Das Audiosignal, das verarbeitet wird
+     */
+    public Audible getAudible() {
+        return audible;
+    }
+}
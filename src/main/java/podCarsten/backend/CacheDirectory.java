@@ -0,0 +1,140 @@
+package podCarsten.backend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static podCarsten.backend.AudioProcessor.LOGGER;
+
+/**
+ * Verzeichnis für Cache-Dateien mit begrenzter Größe, gemeinsam genutzt von AnalysisCache und DecodedCache.
+ *      <br><br>
+ * Neue Dateien werden zuerst unter einem temporären Namen geschrieben und dann atomar an ihren Platz
+ * verschoben, sodass ein gleichzeitiger Leser nie eine halb geschriebene Datei sieht. Danach werden die am
+ * längsten nicht verwendeten Dateien gelöscht, bis das Verzeichnis wieder in seine Größe passt (LRU). Als
+ * Zeitpunkt der letzten Verwendung dient der Änderungszeitpunkt der Datei, der mit touch() aktualisiert wird.
+ */
+final class CacheDirectory {
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String suffix;
+
+
+    /**
+     * @param directory Das Verzeichnis; wird bei Bedarf angelegt
+     * @param maxBytes Maximale Größe aller Dateien mit der Endung zusammen
+     * @param suffix Endung der Dateien, die zu diesem Cache gehören
+     */
+    CacheDirectory(Path directory, long maxBytes, String suffix) {
+        assert maxBytes > 0 : "Die maximale Größe ist ungültig! Größe: " + maxBytes;
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.suffix = suffix;
+    }
+
+
+    /**
+     * @param name Name der Datei ohne Endung
+     */
+    Path resolve(String name) {
+        return directory.resolve(name + suffix);
+    }
+
+    /**
+     * Markiert eine Datei als gerade verwendet.
+     */
+    void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * @return Eine neue, leere Datei im Verzeichnis, die danach mit commit() an ihren Platz verschoben wird
+     */
+    Path createTemporary() throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "cache", ".tmp");
+    }
+
+    /**
+     * Verschiebt eine fertig geschriebene temporäre Datei an ihren Platz und löscht danach die am längsten
+     * nicht verwendeten Dateien, bis alle zusammen höchstens maxBytes groß sind.
+     * @param name Name der Datei ohne Endung
+     * @return Der Pfad der Datei
+     */
+    Path commit(Path temporary, String name) throws IOException {
+        Path path = resolve(name);
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        evict(path);
+        return path;
+    }
+
+
+    /**
+     * @param keep Wird nie gelöscht (die gerade gespeicherte Datei)
+     */
+    private void evict(Path keep) throws IOException {
+        List<Path> files = list();
+
+        long total = 0;
+        Map<Path, FileTime> used = new HashMap<>();
+        for (Path file : files) {
+            total += Files.size(file);
+            used.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+
+        for (Path file : files) {
+            if (total <= maxBytes)
+                break;
+            if (file.equals(keep))
+                continue;
+
+            total -= Files.size(file);
+            Files.deleteIfExists(file);
+            LOGGER.info("{} wurde aus dem Cache entfernt", file.getFileName());
+        }
+    }
+
+    private List<Path> list() throws IOException {
+        if (!Files.isDirectory(directory))
+            return new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).collect(Collectors.toList());
+        }
+    }
+
+
+    /**
+     * @return Größe aller Dateien des Caches in bytes
+     */
+    long size() throws IOException {
+        long total = 0;
+        for (Path file : list())
+            total += Files.size(file);
+        return total;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+}
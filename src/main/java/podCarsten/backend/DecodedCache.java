@@ -0,0 +1,179 @@
+package podCarsten.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static podCarsten.backend.AudioProcessor.CHUNK_FRAMES;
+import static podCarsten.backend.AudioProcessor.LOGGER;
+
+/**
+ * Zwischenspeicher für bereits dekodierte Audiosignale auf der Festplatte. Eine Datei muss so nur beim ersten
+ * Öffnen dekodiert werden; danach wird die Cache-Datei in den Speicher abgebildet (memory-mapped) und direkt
+ * als PlanarAudible verwendet.
+ *      <br><br>
+ * Die Samples liegen Kanal für Kanal (planar) als int32 (little endian) in der internen Darstellung von
+ * AudioProcessor hinter einem Header von HEADER_BYTES bytes. Der Header enthält den Schlüssel der Audiodatei
+ * (siehe AnalysisCache.Key), die Anzahl der Kanäle, die Samplerate und die Anzahl der Samples pro Kanal.
+ *      <br><br>
+ * Der Name der Cache-Datei wird aus dem Pfad der Audiodatei berechnet. Wurde die Audiodatei seitdem verändert,
+ * passt der Schlüssel im Header nicht mehr und die veraltete Cache-Datei wird gelöscht. Das Verzeichnis ist
+ * wie beim AnalysisCache in seiner Größe begrenzt (siehe CacheDirectory).
+ */
+public final class DecodedCache {
+
+    static final int MAGIC = 0x50434443;        // "PCDC"
+    static final int VERSION = 1;
+    static final String SUFFIX = ".pcdc";
+    static final int HEADER_BYTES = 64;
+
+    private final CacheDirectory directory;
+
+
+    /**
+     * @param directory Verzeichnis der Cache-Dateien; wird bei Bedarf angelegt
+     * @param maxBytes Maximale Größe aller Cache-Dateien zusammen
+     */
+    public DecodedCache(Path directory, long maxBytes) {
+        this.directory = new CacheDirectory(directory, maxBytes, SUFFIX);
+    }
+
+
+    /**
+     * Name der Cache-Datei, berechnet aus dem absoluten Pfad der Audiodatei.
+     */
+    static String fileName(File source) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(source.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            return String.format("%016x", ByteBuffer.wrap(hash).getLong());
+
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 muss von jeder Java-Plattform unterstützt werden
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+
+    // LADEN
+
+    /**
+     * @param source Die Audiodatei
+     * @param key Der aktuelle Schlüssel der Audiodatei
+     * @return Das abgebildete Signal ohne Effekte oder null, falls es keines gibt oder die Cache-Datei veraltet
+     * oder nicht lesbar ist
+     */
+    public Audible open(File source, AnalysisCache.Key key) {
+        Path path = directory.resolve(fileName(source));
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (header.hasRemaining() && channel.read(header) >= 0);
+            }
+            header.flip();
+
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getLong() != key.size() || header.getLong() != key.modified() || header.getLong() != key.hash()) {
+                LOGGER.info("Die Cache-Datei {} ist veraltet und wird gelöscht", path.getFileName());
+                Files.deleteIfExists(path);
+                return null;
+            }
+
+            int channels = header.getInt();
+            float sampleRate = header.getFloat();
+            int length = header.getInt();
+            if (Files.size(path) != HEADER_BYTES + (long) channels * length * Integer.BYTES) {
+                LOGGER.info("Die Cache-Datei {} ist unvollständig und wird gelöscht", path.getFileName());
+                Files.deleteIfExists(path);
+                return null;
+            }
+
+            Audible audible = PlanarAudible.open(path, HEADER_BYTES, channels, length, sampleRate);
+            directory.touch(path);
+            LOGGER.info("Dekodiertes Signal aus {} abgebildet", path.getFileName());
+            return audible;
+
+        } catch (IOException | RuntimeException e) {
+            LOGGER.info("Die Cache-Datei {} konnte nicht gelesen werden: {}", path.getFileName(), e.toString());
+            return null;
+        }
+    }
+
+
+
+    // SPEICHERN
+
+    /**
+     * Schreibt das Signal blockweise in eine neue Cache-Datei und löscht danach die ältesten Cache-Dateien,
+     * bis das Verzeichnis wieder in seine Größe passt. Effekte des Signals werden nicht angewendet.
+     * @param source Die Audiodatei
+     * @param key Der Schlüssel der Audiodatei, wie er vor dem Dekodieren berechnet wurde
+     * @param audible Das vollständig dekodierte Signal
+     */
+    public void store(File source, AnalysisCache.Key key, Audible audible) throws IOException {
+        int channels = audible.getAudioEffects().length;
+        int length = audible.getLength();
+        assert channels > 0 && length > 0 : "Ein leeres Signal kann nicht gespeichert werden!";
+
+        Path temporary = directory.createTemporary();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(key.size()).putLong(key.modified()).putLong(key.hash());
+            header.putInt(channels).putFloat(audible.getSampleRate()).putInt(length);
+            write(channel, header.clear(), 0);
+
+            // Blockweise, damit auch sehr lange Signale nur einen Block im Speicher benötigen
+            int[][] samples = new int[channels][CHUNK_FRAMES];
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_FRAMES * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int from = 0; from < length; from += CHUNK_FRAMES) {
+                int frames = Math.min(CHUNK_FRAMES, length - from);
+                audible.copySamples(from, frames, samples);
+
+                for (int c = 0; c < channels; c++) {
+                    chunk.clear();
+                    chunk.asIntBuffer().put(samples[c], 0, frames);
+                    chunk.limit(frames * Integer.BYTES);
+                    write(channel, chunk, HEADER_BYTES + ((long) c * length + from) * Integer.BYTES);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Path path = directory.commit(temporary, fileName(source));
+
+        LOGGER.info("Dekodiertes Signal mit {} bytes in {} gespeichert", Files.size(path), path.getFileName());
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+
+    /**
+     * @return Größe aller Cache-Dateien im Verzeichnis in bytes
+     */
+    public long size() throws IOException {
+        return directory.size();
+    }
+
+    public Path getDirectory() {
+        return directory.getDirectory();
+    }
+
+    public long getMaxBytes() {
+        return directory.getMaxBytes();
+    }
+}
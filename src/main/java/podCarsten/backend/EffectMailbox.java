@@ -0,0 +1,94 @@
+package podCarsten.backend;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Briefkasten für die Effekte zwischen der Oberfläche und dem Thread, der das Signal abspielt.
+ * Die Oberfläche legt bei jeder Bewegung eines Reglers nur den neuen Effekt in das Fach seiner Stelle in der
+ * Effektkette. Dabei wird nichts gesperrt und es entstehen weder ein neues Audible noch neue Arrays.
+ *      <br><br>
+ * Der Audio-Thread fragt an jeder Blockgrenze über changedSince() nach, ob sich etwas geändert hat, und
+ * übernimmt nur dann den neuesten Stand über snapshot(). Mehrere Änderungen zwischen zwei Blöcken werden so
+ * zu einer einzigen zusammengefasst.
+ *      <br><br>
+ * Es darf nur ein Thread schreiben (die Oberfläche), lesen dürfen beliebig viele. Die Versionsnummer ist
+ * ungerade, solange geschrieben wird (Sequenz-Lock). Ein Leser wiederholt das Lesen, bis er einen Stand
+ * erhält, während dem nicht geschrieben wurde.
+ */
+public final class EffectMailbox {
+
+    private final AtomicReferenceArray<AudioEffect> slots;
+    private final AtomicLong version = new AtomicLong();
+    private volatile boolean bypassed = false;
+
+
+    /**
+     * Ein vollständiger Stand des Briefkastens.
+     * @param version Die Version, zu der der Stand gelesen wurde
+     * @param audioEffects Die Effektkette; leer, falls die Effekte umgangen werden oder noch nicht alle Fächer belegt sind
+     */
+    public record Snapshot(long version, AudioEffect[] audioEffects) {}
+
+
+    /**
+     * @param size Anzahl der Stellen in der Effektkette
+     */
+    public EffectMailbox(int size) {
+        assert size >= 0 : "Die Anzahl der Effekte darf nicht negativ sein! Anzahl: " + size;
+
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+
+    /**
+     * Legt einen Effekt in das Fach der angegebenen Stelle und ersetzt den vorherigen Effekt.
+     */
+    public void publish(int index, AudioEffect audioEffect) {
+        assert index >= 0 && index < slots.length() : "Die Stelle ist ungültig! Stelle: " + index;
+        assert audioEffect != null : "Der Effekt darf nicht null sein!";
+
+        version.incrementAndGet();
+        slots.set(index, audioEffect);
+        version.incrementAndGet();
+    }
+
+
+    /**
+     * @param bypass true, falls die Effekte umgangen werden sollen
+     */
+    public void bypass(boolean bypass) {
+        version.incrementAndGet();
+        bypassed = bypass;
+        version.incrementAndGet();
+    }
+
+
+    /**
+     * @return true, falls seit der angegebenen Version etwas veröffentlicht wurde. Erzeugt keine Objekte.
+     */
+    public boolean changedSince(long version) {
+        return this.version.get() != version;
+    }
+
+
+    /**
+     * Liest einen zusammenhängenden Stand aller Fächer.
+     */
+    public Snapshot snapshot() {
+        AudioEffect[] audioEffects = new AudioEffect[slots.length()];
+
+        while (true) {
+            long start = version.get();
+            if ((start & 1) == 0) {
+                boolean complete = !bypassed;
+                for (int i = 0; i < audioEffects.length && complete; i++)
+                    complete = (audioEffects[i] = slots.get(i)) != null;
+
+                if (version.get() == start)
+                    return new Snapshot(start, complete ? audioEffects : new AudioEffect[0]);
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package podCarsten.backend;
+
+import java.util.Arrays;
+
+/**
+ * Der im Voraus berechnete Lautstärkeverlauf von fadeIn(). Die exponentielle Annäherung an die volle
+ * Lautstärke wird nur so lange berechnet, bis sie sich nicht mehr ändert; danach gilt der letzte Wert.
+ * Damit können Fades mit SampleKernels.multiply() vektorisiert und auch blockweise angewendet werden.
+ * Die Ergebnisse sind identisch zur schrittweisen Berechnung in fadeIn().
+ *      <br><br>
+ * Ein Verlauf wird von dem berechnet, der den Fade anwendet (z.B. einmal pro Ausführung eines LazyAudible-Plans
+ * für alle Durchläufe), und nicht global zwischengespeichert.
+ */
+final class FadeEnvelope {
+
+    final double[] gains;           // gains[k]: Faktor des k-ten Samples ab Beginn des Fades
+    final double[] reversedGains;   // Für fadeOut() in umgekehrter Reihenfolge
+
+
+    private FadeEnvelope(double[] gains) {
+        this.gains = gains;
+        this.reversedGains = new double[gains.length];
+        for (int i = 0; i < gains.length; i++)
+            reversedGains[i] = gains[gains.length - 1 - i];
+    }
+
+
+    /**
+     * Errechnet den Verlauf, bis dieser konvergiert oder die maximale Länge erreicht ist.
+     * @param seconds Dauer des Fades
+     * @param sampleRate SampleRate des Signals
+     * @param maxLength Länge des Signals, auf das der Fade angewendet wird
+     */
+    static FadeEnvelope of(double seconds, float sampleRate, int maxLength) {
+        double timeFactor = AudioProcessor.timeFactor(seconds, sampleRate);
+        double[] gains = new double[(int) Math.min(seconds * sampleRate + 1, Math.max(maxLength, 1))];
+        double gainFactor = 0;
+        int length = 0;
+
+        // Gleiche Rechnung wie in fadeIn(), sodass die Ergebnisse exakt übereinstimmen
+        while (length < maxLength) {
+            double next = gainFactor + (1 - gainFactor) * timeFactor;
+            if (next == gainFactor)
+                break;
+
+            if (length == gains.length)
+                gains = Arrays.copyOf(gains, (int) Math.min((long) gains.length * 2, maxLength));
+            gains[length++] = gainFactor = next;
+        }
+
+        return new FadeEnvelope(Arrays.copyOf(gains, Math.max(length, 1)));
+    }
+
+
+    /**
+     * Wendet den Fade am Anfang des Signals an.
+     * @param samples Array mit dem zu verarbeitenden Bereich
+     * @param offset Position des Bereichs im Array
+     * @param length Länge des Bereichs
+     * @param position Position des ersten Samples im gesamten Signal
+     */
+    void applyIn(int[] samples, int offset, int length, int position) {
+        int last = gains.length - 1;
+        int inEnvelope = Math.max(0, Math.min(length, last - position));
+
+        if (inEnvelope > 0)
+            SampleKernels.INSTANCE.multiply(samples, offset, gains, position, inEnvelope);
+        if (gains[last] != 1)
+            SampleKernels.INSTANCE.gain(samples, offset + inEnvelope, offset + length, gains[last]);
+    }
+
+
+    /**
+     * Wendet den Fade am Ende des Signals an (wie reverse().fadeIn().reverse()).
+     * @param samples Array mit dem zu verarbeitenden Bereich
+     * @param offset Position des Bereichs im Array
+     * @param length Länge des Bereichs
+     * @param position Position des ersten Samples im gesamten Signal
+     * @param signalLength Länge des gesamten Signals
+     */
+    void applyOut(int[] samples, int offset, int length, int position, int signalLength) {
+        int last = gains.length - 1;
+        // Ab dieser Position liegen die Samples innerhalb des (umgekehrten) Verlaufs
+        int envelopeStart = signalLength - 1 - last;
+        int beforeEnvelope = Math.max(0, Math.min(length, envelopeStart - position));
+
+        if (gains[last] != 1)
+            SampleKernels.INSTANCE.gain(samples, offset, offset + beforeEnvelope, gains[last]);
+        if (beforeEnvelope < length)
+            SampleKernels.INSTANCE.multiply(samples, offset + beforeEnvelope, reversedGains,
+                    position + beforeEnvelope - envelopeStart, length - beforeEnvelope);
+    }
+}
@@ -0,0 +1,121 @@
+package podCarsten.backend;
+
+import static podCarsten.backend.AudioProcessor.HEADROOM_DIVISOR;
+import static podCarsten.backend.AudioProcessor.doubleTOdBFS;
+
+/**
+ * Misst den Pegel beliebig verteilter Frequenzen (z.B. der logarithmisch verteilten Balken der Anzeige) mit
+ * einer Bank aus komplexen Resonatoren. Jeder Resonator ist ein gleitender Goertzel-Filter mit exponentiellem
+ * Fenster: z = r * e^(i omega) * z + x. Die Bandbreite jedes Resonators ergibt sich aus dem Abstand zu den
+ * benachbarten Frequenzen, sodass tiefe Frequenzen wie bei einer Constant-Q-Analyse schmaler aufgelöst werden
+ * als hohe; eine FFT (SpectrumAnalyzer) hätte dagegen überall dieselbe Auflösung.
+ *      <br><br>
+ * Die Zustände laufen von Block zu Block weiter, jedes Sample wird also nur einmal und ohne Fenster oder
+ * Kopie verarbeitet (O(Anzahl der Frequenzen) pro Sample). Eine Instanz ist nicht threadsicher.
+ */
+public final class FilterBankAnalyzer {
+
+    private final double[] frequencies;
+    private final double[] rotationReal;        // r * cos(omega)
+    private final double[] rotationImaginary;   // r * sin(omega)
+    private final double[] gain;                // Umrechnung des Betrags in die Amplitude: 2 * (1 - r)
+
+    // Zustand pro Kanal und Frequenz
+    private double[][] real = new double[0][];
+    private double[][] imaginary = new double[0][];
+
+
+    /**
+     * @param frequencies Aufsteigende Mittenfrequenzen; ab dem Nyquist-Limit ist der Pegel immer -Infinity
+     * @param sampleRate SampleRate des Signals
+     */
+    public FilterBankAnalyzer(double[] frequencies, float sampleRate) {
+        assert frequencies.length > 0 : "Es muss mindestens eine Frequenz analysiert werden!";
+
+        this.frequencies = frequencies.clone();
+        this.rotationReal = new double[frequencies.length];
+        this.rotationImaginary = new double[frequencies.length];
+        this.gain = new double[frequencies.length];
+
+        for (int bin = 0; bin < frequencies.length; bin++) {
+            assert frequencies[bin] > 0 : "Die Frequenz ist ungültig: " + frequencies[bin];
+
+            // Frequenzen ab dem Nyquist-Limit (z.B. bei niedrigen SampleRates) werden nicht gemessen
+            if (frequencies[bin] >= sampleRate * 0.5)
+                continue;
+
+            // Das Band reicht bis zur Mitte zwischen den benachbarten Frequenzen
+            double lower = bin > 0 ? frequencies[bin - 1] : frequencies[bin] * frequencies[bin] / frequencies[Math.min(1, frequencies.length - 1)];
+            double upper = bin < frequencies.length - 1 ? frequencies[bin + 1] : frequencies[bin] * frequencies[bin] / lower;
+            double bandwidth = Math.max((upper - lower) / 2, 1);
+
+            double decay = Math.exp(-Math.PI * bandwidth / sampleRate);
+            double omega = 2 * Math.PI * frequencies[bin] / sampleRate;
+            rotationReal[bin] = decay * Math.cos(omega);
+            rotationImaginary[bin] = decay * Math.sin(omega);
+            gain[bin] = 2 * (1 - decay);
+        }
+    }
+
+
+    /**
+     * Führt die Resonatoren mit dem nächsten Block weiter.
+     * @param samples Die Samples pro Kanal ab Index 0
+     * @param length Anzahl der Samples pro Kanal
+     */
+    public void process(int[][] samples, int length) {
+        if (real.length != samples.length) {
+            real = new double[samples.length][frequencies.length];
+            imaginary = new double[samples.length][frequencies.length];
+        }
+
+        for (int channel = 0; channel < samples.length; channel++) {
+            int[] channelSamples = samples[channel];
+
+            for (int bin = 0; bin < frequencies.length; bin++) {
+                double cos = rotationReal[bin];
+                double sin = rotationImaginary[bin];
+                double re = real[channel][bin];
+                double im = imaginary[channel][bin];
+
+                for (int i = 0; i < length; i++) {
+                    double nextRe = re * cos - im * sin + channelSamples[i];
+                    im = re * sin + im * cos;
+                    re = nextRe;
+                }
+
+                real[channel][bin] = re;
+                imaginary[channel][bin] = im;
+            }
+        }
+    }
+
+
+    /**
+     * @param target Ziel für den aktuellen Pegel pro Frequenz in dBFS, gemittelt über alle Kanäle
+     */
+    public void levels(double[] target) {
+        assert target.length == frequencies.length : "Das Array muss so lang sein wie die Anzahl der Frequenzen!";
+
+        for (int bin = 0; bin < frequencies.length; bin++) {
+            double magnitude = 0;
+            for (int channel = 0; channel < real.length; channel++)
+                magnitude += Math.hypot(real[channel][bin], imaginary[channel][bin]) / real.length;
+
+            target[bin] = doubleTOdBFS(HEADROOM_DIVISOR * magnitude * gain[bin]);
+        }
+    }
+
+
+    /**
+     * Setzt alle Resonatoren zurück, z.B. nach dem Laden eines neuen Signals.
+     */
+    public void reset() {
+        real = new double[0][];
+        imaginary = new double[0][];
+    }
+
+    public int size() {
+        return frequencies.length;
+    }
+}
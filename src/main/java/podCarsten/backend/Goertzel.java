@@ -0,0 +1,99 @@
+package podCarsten.backend;
+
+import static podCarsten.backend.AudioProcessor.*;
+
+/**
+ * Der Goertzel-Algorithmus für getFFTdBFS(), der das Signal blockweise verarbeitet. Die Zustände jedes Kanals
+ * werden von Block zu Block weitergegeben, sodass das Ergebnis identisch zur Berechnung über das gesamte
+ * Signal ist, ohne dass dieses vollständig im Speicher liegen muss.
+ */
+final class Goertzel {
+
+    private final double coefficient;
+    private final double[] previous;        // Pro Kanal
+    private final double[] beforePrevious;  // Pro Kanal
+    private long length;
+
+
+    /**
+     * @param frequency Frequenz der Analyse
+     * @param sampleRate SampleRate des Signals
+     * @param channels Anzahl der Kanäle
+     */
+    Goertzel(double frequency, float sampleRate, int channels) {
+        assert frequency > 0 && frequency <= sampleRate * 0.5 : "Die Frequenz muss > 0 sein und darf das Nyquist-Limit nicht übersteigen! (" + frequency + ")";
+
+        // Winkel zwischen zwei Samples:
+        //      k = Phasen pro Sample
+        //  <=> k = Pufferlänge * Frequenz / SampleRate
+        //  =>  omega = 2 * PI * k / Pufferlänge
+        double omega = 2 * Math.PI * frequency / sampleRate;
+        this.coefficient = 2 * Math.cos(omega);
+        this.previous = new double[channels];
+        this.beforePrevious = new double[channels];
+    }
+
+
+    /**
+     * Analysiert das Signal blockweise über copySamples(), z.B. für Instanzen, deren Samples nicht im
+     * Speicher liegen.
+     */
+    static double of(Audible audible, double frequency) {
+        int length = audible.getLength();
+        int[][] block = new int[audible.getAudioEffects().length][Math.min(length, CHUNK_FRAMES)];
+        Goertzel goertzel = new Goertzel(frequency, audible.getSampleRate(), block.length);
+
+        for (int from = 0; from < length; from += CHUNK_FRAMES) {
+            int frames = Math.min(CHUNK_FRAMES, length - from);
+            audible.copySamples(from, frames, block);
+            goertzel.process(block, 0, frames);
+        }
+        return goertzel.dBFS();
+    }
+
+
+    /**
+     * Verarbeitet die nächsten Frames des Signals.
+     * @param samples Die Samples pro Kanal
+     * @param from Position des ersten Frames in den Arrays
+     * @param to Position nach dem letzten Frame
+     */
+    void process(int[][] samples, int from, int to) {
+        assert samples.length == previous.length : "Die Anzahl der Kanäle stimmt nicht überein!";
+
+        // Jeder Kanal wird einzeln mit der Rekursion analysiert. Diese berechnet dieselbe Summe wie die
+        // Diskrete Fourier Transformation an einer einzelnen Frequenz, aber mit nur einer Multiplikation
+        // pro Sample und ohne für jedes Sample eine komplexe Zahl anzulegen.
+        for (int channel = 0; channel < samples.length; channel++) {
+            double p = previous[channel];
+            double bp = beforePrevious[channel];
+            for (int i = from; i < to; i++) {
+                double current = samples[channel][i] + coefficient * p - bp;
+                bp = p;
+                p = current;
+            }
+            previous[channel] = p;
+            beforePrevious[channel] = bp;
+        }
+        length += to - from;
+    }
+
+
+    /**
+     * @return Die Intensität der Frequenz im bisher verarbeiteten Signal in dBFS (Durchschnitt der Kanäle)
+     */
+    double dBFS() {
+        // Die Intensität der Testfrequenz ist proportional zum Betrag der komplexen Summe
+        double fftValue = 0;
+        for (int channel = 0; channel < previous.length; channel++) {
+            double p = previous[channel];
+            double bp = beforePrevious[channel];
+            fftValue += Math.sqrt(Math.max(0, p * p + bp * bp - coefficient * p * bp));
+        }
+        fftValue /= previous.length;
+
+        // Zum Zurückgeben wird der errechnete Wert noch mit dem Proportionalitätsfaktor
+        // verrechnet und in die Einheit dBFS umgerechnet
+        return intTOdBFS((int) (HEADROOM_DIVISOR * fftValue * 2.0 / length));
+    }
+}
@@ -1,54 +1,108 @@
 package podCarsten.backend;
 
+import java.util.List;
+
 import static podCarsten.backend.AudioProcessor.LOGGER;
 
-record IIRFilter(double a1, double a2, double b0, double b1, double b2, int dry1, int dry2,
+record IIRFilter(double a1, double a2, double b0, double b1, double b2, int dry1, int dry2, int wet1, int wet2,
                         int[] processedSamples) implements AudioEffect {
     // Da das record package-private ist, erhält die IL keinen Zugriff auf die Daten.
 
     // Constructor-asserts durch statische Factory-Methode nicht nötig
 
+
+    /**
+     * Die letzten beiden Eingangs- (dry) und Ausgangswerte (wet) des Filters.
+     */
+    static final class FilterState implements State {
+        int dry1, dry2, wet1, wet2;
+
+        public State copy() {
+            FilterState copy = new FilterState();
+            copy.dry1 = dry1;
+            copy.dry2 = dry2;
+            copy.wet1 = wet1;
+            copy.wet2 = wet2;
+            return copy;
+        }
+
+        public void set(State state) {
+            FilterState other = (FilterState) state;
+            dry1 = other.dry1;
+            dry2 = other.dry2;
+            wet1 = other.wet1;
+            wet2 = other.wet2;
+        }
+    }
+
+
+    public State createState() {
+        FilterState state = new FilterState();
+        state.dry1 = dry1;
+        state.dry2 = dry2;
+        state.wet1 = wet1;
+        state.wet2 = wet2;
+        return state;
+    }
+
+
     /**
-     * Verarbeitet die mitgegeben Samples und speichert diese in der zurückgegebenen Instanz.
+     * Verarbeitet die mitgegeben Samples blockweise und schreibt den Zustand in state fort.
      *      <br><br>
      * Die Implementierung der IIR-Filter habe ich aus der mathematischen Darstellung aus dem Buch
      * Audio EQ Cookbook von Robert Bristow-Johnson entwickelt.
      * Link: http://shepazu.github.io/Audio-EQ-Cookbook/audio-eq-cookbook.html
      *      <br><br>
      * Mehr Informationen zur Funktionsweise von IIR-Filtern in der Dokumentation.
-     * @param samples Zu verarbeitende Samples
-     * @return Neue Instanz, die die verarbeiteten Samples enthält.
      */
-    public AudioEffect processSamples(int... samples) {
-        assert samples != null;
-
-        int dry1 = this.dry1;
-        int dry2 = this.dry2;
-        int wet1 = processedSamples != null && processedSamples.length >= 1 ? processedSamples[processedSamples.length - 1] : 0;
-        int wet2 = processedSamples != null && processedSamples.length >= 2 ? processedSamples[processedSamples.length - 2] : 0;
+    public void process(int[] input, int inputOffset, int[] output, int outputOffset, int length, State state) {
+        assert input != null && output != null;
+        FilterState filterState = (FilterState) state;
 
-        int[] processedSamples = new int[samples.length];
+        int dry1 = filterState.dry1;
+        int dry2 = filterState.dry2;
+        int wet1 = filterState.wet1;
+        int wet2 = filterState.wet2;
 
         // Mit dieser Schleife werden alle Samples hintereinander verarbeitet.
         // Da alle Samples in der richtigen Reihenfolge abhängig von den Werten davor
         // berechnet werden, habe ich mich gegen eine Implementierung mit Streams entschieden.
-        for (int i = 0; i < samples.length; i++) {
+        for (int i = 0; i < length; i++) {
+            // Das Eingangssample wird zuerst gelesen, da input und output dasselbe Array sein dürfen
+            int sample = input[inputOffset + i];
+
             // Errechne das neue Sample und speichere die letzten Werte für die zukünftigen Berechnungen ab.
-            processedSamples[i] = (int) (-a2 * wet2 - a1 * wet1 + b2 * dry2 + b1 * dry1 + b0 * samples[i]);
+            int processed = (int) (-a2 * wet2 - a1 * wet1 + b2 * dry2 + b1 * dry1 + b0 * sample);
+            output[outputOffset + i] = processed;
             wet2 = wet1;
-            wet1 = processedSamples[i];
+            wet1 = processed;
             dry2 = dry1;
-            dry1 = samples[i];
-
-            // Sehr kompakte Version, die ich aus Übersichtlichkeitsgründen leider nicht verwende,
-            // die aber die gleiche Funktion erfüllt.
-            // processedSamples[i] = wet1 = (int) (-a2 * wet2 - a1 * (wet2 = wet1) + b2 * dry2 + b1 * (dry2 = dry1) + b0 * (dry1 = samples[i]));
+            dry1 = sample;
         }
 
-        if (samples.length > 4096)
+        filterState.dry1 = dry1;
+        filterState.dry2 = dry2;
+        filterState.wet1 = wet1;
+        filterState.wet2 = wet2;
+
+        if (length > 4096)
             LOGGER.info("Ein IIR-Filter wurde auf das Audiosignal angewendet");
+    }
+
+
+    public boolean acceptsState(State state) {
+        return state instanceof FilterState;
+    }
+
+
+    public Object cacheKey() {
+        return List.of(IIRFilter.class, a1, a2, b0, b1, b2, dry1, dry2, wet1, wet2);
+    }
+
 
-        return new IIRFilter(a1, a2, b0, b1, b2, dry1, dry2, processedSamples);
+    public AudioEffect withState(State state, int[] processedSamples) {
+        FilterState filterState = (FilterState) state;
+        return new IIRFilter(a1, a2, b0, b1, b2, filterState.dry1, filterState.dry2, filterState.wet1, filterState.wet2, processedSamples);
     }
 
 
@@ -67,7 +121,7 @@ record IIRFilter(double a1, double a2, double b0, double b1, double b2, int dry1
      */
     public AudioEffect readFromPreviousEffect(AudioEffect audioEffect) {
         if (audioEffect instanceof IIRFilter other) // Impliziert: audioEffect != null
-            return new IIRFilter(a1, a2, b0, b1, b2, other.dry1, other.dry2, other.processedSamples);
+            return new IIRFilter(a1, a2, b0, b1, b2, other.dry1, other.dry2, other.wet1, other.wet2, other.processedSamples);
         return this;
     }
 }
@@ -0,0 +1,117 @@
+package podCarsten.backend;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramm für Zeiten (z.B. in Nanosekunden) mit begrenztem relativen Fehler, nach dem Vorbild von
+ * HdrHistogram. Jede Zweierpotenz wird in SUB_BUCKETS gleich breite Fächer aufgeteilt, sodass ein Wert
+ * unabhängig von seiner Größe auf etwa 1 / SUB_BUCKETS genau gespeichert wird. Werte unter SUB_BUCKETS
+ * werden exakt gespeichert.
+ *      <br><br>
+ * record() legt keine Objekte an und sperrt nichts, sodass es auch im Audio-Thread aufgerufen werden kann.
+ * Alle Methoden sind threadsicher; ein gleichzeitig gelesenes Perzentil kann jedoch einzelne gerade
+ * eingetragene Werte noch nicht enthalten.
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * @param value Der Wert; negative Werte werden als 0 gezählt
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return Der größte Wert, der im Fach mit dem angegebenen Index gespeichert wird
+     */
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+
+    /**
+     * @param percentile Perzentil zwischen 0 und 100
+     * @return Der Wert, unter dem der angegebene Anteil aller Werte liegt (0, falls noch nichts gespeichert wurde)
+     */
+    public long percentile(double percentile) {
+        assert percentile >= 0 && percentile <= 100 : "Das Perzentil ist ungültig: " + percentile;
+
+        long total = count.get();
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(highestValueAt(i), max.get());
+        }
+        return max.get();
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long total = count.get();
+        return total == 0 ? 0 : sum.get() / (double) total;
+    }
+
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+
+    /**
+     * @param unit Anzahl der gespeicherten Einheiten pro ausgegebener Einheit (z.B. 1e6 für ns → ms)
+     */
+    public String toString(double unit) {
+        return String.format("n=%d, Mittel=%.2f, p50=%.2f, p99=%.2f, p99.9=%.2f, Max=%.2f", count(), mean() / unit,
+                percentile(50) / unit, percentile(99) / unit, percentile(99.9) / unit, max() / unit);
+    }
+
+    public String toString() {
+        return toString(1);
+    }
+}
@@ -0,0 +1,483 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static podCarsten.backend.AudioProcessor.*;
+
+/**
+ * Audible-Implementierung, die Änderungen nicht sofort berechnet, sondern als Plan speichert. Erst eine
+ * abschließende Operation (getOutput(), getPeakInDBFS() oder AudioExporter.export()) führt den Plan aus.
+ * Instanzen entstehen über Audible.lazy().
+ *      <br><br>
+ * Der Plan wird dabei in möglichst wenige Durchläufe über das Signal übersetzt:
+ *   - processEffects() wird blockweise mit einem BlockRenderer angewendet
+ *   - reverse() wird zu einer Umrechnung der Positionen: Jeder Block wird umgedreht und an die
+ *     gespiegelte Position geschrieben. Fades, die vor dem Umkehren hinzugefügt wurden, wechseln
+ *     dabei das Ende des Signals (fadeIn() wird zu fadeOut() und umgekehrt).
+ *   - Fades werden als positionsabhängige Verstärkung direkt im Puffer des Blocks angewendet
+ *   - normalize() benötigt den höchsten Ausschlag aller vorherigen Schritte und damit einen
+ *     zusätzlichen Durchlauf, in dem nur dieser ermittelt wird
+ *   - normalizeLoudness() misst im zusätzlichen Durchlauf die Lautheit (LoudnessMeter) und den
+ *     höchsten Ausschlag zugleich
+ * Für processEffects().fade(...).normalize() wird das Signal also genau zweimal gelesen.
+ *      <br><br>
+ * Die Schritte werden in der gleichen Reihenfolge und mit den gleichen Rundungen berechnet wie in
+ * AudioProcessor, sodass die Ergebnisse identisch sind. processEffects() ist nur als erster Schritt
+ * im Plan möglich.
+ *      <br><br>
+ * Ohne processEffects() hängt jedes Sample nur von seiner Position ab. copySamples() und splice() berechnen
+ * dann nur den angeforderten Bereich (die Faktoren von normalize() werden dafür einmal pro Instanz ermittelt),
+ * getFFTdBFS() läuft immer blockweise über den Plan. Den gesamten Plan im Speicher ausführen (materialize())
+ * müssen nur noch:
+ *   - copySamples() und splice() nach processEffects(), da die Zustände der Effekte vom gesamten
+ *     vorherigen Signal abhängen
+ *   - setEffects() und processEffects() auf einem nicht leeren Plan, die auf dem Ergebnis weiterarbeiten
+ * Das Ergebnis wird pro Instanz nur einmal berechnet.
+ */
+final class LazyAudible implements Audible {
+
+    // Anzahl der Frames, die pro Block verarbeitet werden
+    static final int BLOCK_FRAMES = CHUNK_FRAMES;
+
+    /**
+     * Ein Schritt des Plans, der nach den Effekten und dem Umkehren auf jeden Block angewendet wird.
+     * Die Positionen beziehen sich immer auf das endgültige Signal.
+     * @param fadeSeconds Dauer des Fades (NaN für normalize() und normalizeLoudness())
+     * @param atEnd true, falls der Fade am Ende des Signals liegt
+     * @param targetLUFS Ziel von normalizeLoudness() (NaN für alle anderen Schritte)
+     */
+    private record Step(double fadeSeconds, boolean atEnd, double targetLUFS) {
+
+        static final Step NORMALIZE = new Step(Double.NaN, false, Double.NaN);
+
+        static Step fade(double seconds, boolean atEnd) {
+            return new Step(seconds, atEnd, Double.NaN);
+        }
+
+        /**
+         * @return true für normalize() und normalizeLoudness(), die beide das Signal mit einem Faktor verstärken
+         */
+        boolean isNormalize() {
+            return Double.isNaN(fadeSeconds);
+        }
+
+        boolean isLoudness() {
+            return !Double.isNaN(targetLUFS);
+        }
+
+        Step reversed() {
+            return isNormalize() ? this : fade(fadeSeconds, !atEnd);
+        }
+    }
+
+
+    /**
+     * Empfängt die verarbeiteten Blöcke eines Durchlaufs.
+     */
+    @FunctionalInterface
+    interface BlockSink<E extends Exception> {
+
+        /**
+         * @param block Die Samples pro Kanal ab Index 0; die Arrays werden danach wiederverwendet
+         * @param position Position des ersten Samples im endgültigen Signal
+         * @param length Länge des Blocks
+         */
+        void accept(int[][] block, int position, int length) throws E;
+    }
+
+
+    final Audible source;       // Das unveränderte Signal mit seinen Effekten
+    final boolean processed;    // Ob die Effekte des Signals angewendet werden
+    final boolean reversed;     // Ob das Signal umgekehrt wird
+    final Step[] steps;         // Fades, normalize() und normalizeLoudness() in der Reihenfolge des Aufrufs
+
+    // Das ausgeführte Ergebnis für Operationen, die wahlfreien Zugriff benötigen
+    volatile AudioProcessor materialized;
+    // Die Verläufe und Faktoren für Bereiche, damit diese bei wiederholten Aufrufen nur einmal ermittelt werden (siehe renderRange())
+    private volatile FadeEnvelope[] rangeEnvelopes;
+    private volatile double[] rangeFactors;
+
+
+    private LazyAudible(Audible source, boolean processed, boolean reversed, Step[] steps) {
+        this.source = source;
+        this.processed = processed;
+        this.reversed = reversed;
+        this.steps = steps;
+    }
+
+
+    /**
+     * @param audible Das Audiosignal, auf dem der Plan aufbaut
+     * @return Eine Instanz mit leerem Plan (bzw. die übergebene Instanz, falls sie bereits verzögert arbeitet)
+     */
+    static LazyAudible of(Audible audible) {
+        assert audible != null : "Das Audiosignal darf nicht null sein!";
+        return audible instanceof LazyAudible lazy ? lazy : new LazyAudible(audible, false, false, new Step[0]);
+    }
+
+
+    private boolean isEmptyPlan() {
+        return !processed && !reversed && steps.length == 0;
+    }
+
+
+    private LazyAudible withStep(Step step) {
+        Step[] newSteps = Arrays.copyOf(steps, steps.length + 1);
+        newSteps[steps.length] = step;
+        return new LazyAudible(source, processed, reversed, newSteps);
+    }
+
+
+    /**
+     * Führt den Plan ein einziges Mal vollständig im Speicher aus.
+     */
+    AudioProcessor materialize() {
+        AudioProcessor result = materialized;
+        if (result != null)
+            return result;
+
+        LOGGER.info("Führe den Plan für das gesamte Audiosignal mit {} Samples pro Kanal im Speicher aus", getLength());
+
+        int[][] samples = new int[source.getAudioEffects().length][getLength()];
+        render((block, position, length) -> {
+            for (int channel = 0; channel < samples.length; channel++)
+                System.arraycopy(block[channel], 0, samples[channel], position, length);
+        });
+
+        return materialized = new AudioProcessor(samples, getSampleRate(), source.getAudioEffects());
+    }
+
+
+    /**
+     * Führt den gesamten Plan aus: Zuerst wird für jedes normalize() der Faktor ermittelt (je ein
+     * Durchlauf), danach werden alle Blöcke an den Empfänger übergeben. Die Blöcke kommen dabei in der
+     * Reihenfolge des unveränderten Signals an, bei reverse() also von hinten nach vorne.
+     * @param sink Empfänger der verarbeiteten Blöcke
+     */
+    <E extends Exception> void render(BlockSink<E> sink) throws E {
+        FadeEnvelope[] envelopes = envelopes();
+        renderPass(steps.length, normalizeFactors(envelopes), envelopes, sink);
+    }
+
+
+    /**
+     * Berechnet die Verläufe aller Fades einmal pro Ausführung, sodass alle Durchläufe dieselben verwenden.
+     * @return Pro Schritt der Verlauf (null für normalize() und normalizeLoudness())
+     */
+    private FadeEnvelope[] envelopes() {
+        return Arrays.stream(steps).map(step -> step.isNormalize() ? null : FadeEnvelope.of(step.fadeSeconds(), getSampleRate(), getLength()))
+                .toArray(FadeEnvelope[]::new);
+    }
+
+
+    /**
+     * Ermittelt die Faktoren aller normalize()-Schritte nacheinander, da jeder Faktor von den vorherigen abhängt.
+     * @return Pro Schritt der Faktor (0 für Fades)
+     */
+    private double[] normalizeFactors(FadeEnvelope[] envelopes) {
+        double[] factors = new double[steps.length];
+
+        for (int stepNr = 0; stepNr < steps.length; stepNr++) {
+            if (!steps[stepNr].isNormalize())
+                continue;
+
+            if (steps[stepNr].isLoudness()) {
+                factors[stepNr] = loudnessFactor(steps[stepNr].targetLUFS(), stepNr, factors, envelopes);
+                continue;
+            }
+
+            // Gleiche Berechnung wie in normalize()
+            factors[stepNr] = Audible.dBToFactor(RECOMMENDED_PEAK - intTOdBFS(peak(stepNr, factors, envelopes, null) * HEADROOM_DIVISOR));
+            LOGGER.info("Normalisiere das Audiosignal mit einem gain-Faktor von: {}", factors[stepNr]);
+        }
+
+        return factors;
+    }
+
+
+    /**
+     * Ermittelt den Faktor, mit dem das Signal nach den ersten Schritten des Plans die Ziel-Lautheit erreicht.
+     * Der Faktor wird so begrenzt, dass der höchste Ausschlag RECOMMENDED_PEAK nicht überschreitet, da das
+     * Signal sonst übersteuern würde.
+     */
+    private double loudnessFactor(double targetLUFS, int stepCount, double[] factors, FadeEnvelope[] envelopes) {
+        LoudnessMeter meter = new LoudnessMeter(source.getAudioEffects().length, getSampleRate());
+        int peak = peak(stepCount, factors, envelopes, meter);
+        double loudness = meter.result().integrated();
+
+        double peakFactor = Audible.dBToFactor(RECOMMENDED_PEAK - intTOdBFS(peak * HEADROOM_DIVISOR));
+        double factor = Double.isInfinite(loudness) ? 1 : Math.pow(10, (targetLUFS - loudness) / 20);
+        LOGGER.info("Die Lautheit beträgt {} LUFS, Ziel: {} LUFS", String.format("%.1f", loudness), targetLUFS);
+
+        if (factor > peakFactor) {
+            LOGGER.info("Die Ziel-Lautheit wird nicht erreicht, da der höchste Ausschlag sonst über {} dBFS liegen würde", RECOMMENDED_PEAK);
+            factor = peakFactor;
+        }
+        LOGGER.info("Normalisiere das Audiosignal mit einem gain-Faktor von: {}", factor);
+        return factor;
+    }
+
+
+    /**
+     * Ermittelt den höchsten Ausschlag nach den ersten Schritten des Plans.
+     * @param meter Misst im selben Durchlauf die Lautheit (darf null sein). Bei reverse() werden die Blöcke
+     *              in ihrer ursprünglichen Richtung gemessen, da sie in dieser Reihenfolge ankommen; die
+     *              Lautheit ändert sich dadurch nur um die Ausrichtung der Messblöcke.
+     */
+    private int peak(int stepCount, double[] factors, FadeEnvelope[] envelopes, LoudnessMeter meter) {
+        // Wie in getPeakInDBFS() von AudioProcessor gilt 1, falls das Signal leer ist
+        int[] peak = {getLength() == 0 ? 1 : 0};
+        renderPass(stepCount, factors, envelopes, (block, position, length) -> {
+            for (int[] samples : block) {
+                peak[0] = Math.max(peak[0], SampleKernels.INSTANCE.maxAbs(samples, 0, length));
+                if (meter != null && reversed)
+                    reverse(samples, length);
+            }
+            if (meter != null)
+                meter.process(block, 0, length);
+        });
+        return peak[0];
+    }
+
+
+    /**
+     * Ein Durchlauf über das gesamte Signal, der die ersten Schritte des Plans auf jeden Block anwendet.
+     * Der BlockRenderer verwendet dabei keinen StageCache: Jeder Block wird nur einmal gelesen, seine Einträge
+     * würden nur die des Abspielens verdrängen.
+     * @param stepCount Anzahl der anzuwendenden Schritte
+     * @param factors Die bereits ermittelten Faktoren der normalize()-Schritte
+     * @param envelopes Die Verläufe der Fades (siehe envelopes())
+     */
+    private <E extends Exception> void renderPass(int stepCount, double[] factors, FadeEnvelope[] envelopes, BlockSink<E> sink) throws E {
+        int length = getLength();
+        BlockRenderer renderer = new BlockRenderer(processed ? source : source.setEffects(), false);
+
+        for (int from = 0; from < length; from += BLOCK_FRAMES) {
+            int frames = Math.min(BLOCK_FRAMES, length - from);
+            int[][] block = renderer.renderBlock(from, frames);
+            int position = reversed ? length - from - frames : from;
+
+            for (int[] samples : block) {
+                if (reversed)
+                    reverse(samples, frames);
+                applySteps(samples, frames, position, stepCount, factors, envelopes);
+            }
+
+            sink.accept(block, position, frames);
+        }
+    }
+
+
+    /**
+     * Wendet die ersten Schritte des Plans auf einen Bereich des endgültigen Signals an.
+     * @param samples Der Bereich ab Index 0
+     * @param position Position des ersten Samples im endgültigen Signal
+     */
+    private void applySteps(int[] samples, int frames, int position, int stepCount, double[] factors, FadeEnvelope[] envelopes) {
+        for (int stepNr = 0; stepNr < stepCount; stepNr++) {
+            if (steps[stepNr].isNormalize())
+                SampleKernels.INSTANCE.gain(samples, 0, frames, factors[stepNr]);
+            else if (steps[stepNr].atEnd())
+                envelopes[stepNr].applyOut(samples, 0, frames, position, getLength());
+            else envelopes[stepNr].applyIn(samples, 0, frames, position);
+        }
+    }
+
+
+    /**
+     * Berechnet nur einen Bereich des endgültigen Signals. Nur ohne processEffects() möglich, da dann jedes
+     * Sample nur von seiner Position abhängt.
+     * @param target Ziel der Samples pro Kanal ab Index 0
+     */
+    private void renderRange(int fromSample, int numSamples, int[][] target) {
+        assert !processed : "Nach processEffects() hängt ein Bereich vom gesamten vorherigen Signal ab!";
+
+        // Die Verläufe werden vor den Faktoren veröffentlicht und danach gelesen
+        double[] factors = rangeFactors;
+        FadeEnvelope[] envelopes = rangeEnvelopes;
+        if (factors == null) {
+            rangeEnvelopes = envelopes = envelopes();
+            rangeFactors = factors = normalizeFactors(envelopes);
+        }
+
+        source.copySamples(reversed ? getLength() - fromSample - numSamples : fromSample, numSamples, target);
+        for (int[] samples : target) {
+            if (reversed)
+                reverse(samples, numSamples);
+            applySteps(samples, numSamples, fromSample, steps.length, factors, envelopes);
+        }
+    }
+
+
+    private static void reverse(int[] samples, int length) {
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int sample = samples[i];
+            samples[i] = samples[j];
+            samples[j] = sample;
+        }
+    }
+
+
+
+    // BLOCK 1
+
+    public Audible setEffects(AudioEffect... audioEffects) {
+        return isEmptyPlan() ? of(source.setEffects(audioEffects)) : of(materialize().setEffects(audioEffects));
+    }
+
+    public Audible setInput(byte[] bytes, AudioFormat audioFormat) {
+        return of(source.setInput(bytes, audioFormat));
+    }
+
+    public Audible setInput(AudioInputStream stream, LoadListener listener) throws IOException {
+        return of(source.setInput(stream, listener));
+    }
+
+    public Audible splice(int fromSample, int numSamples, Audible lastAudible) {
+        if (isEmptyPlan() || processed)
+            return of((isEmptyPlan() ? source : materialize()).splice(fromSample, numSamples, lastAudible));
+
+        assert fromSample >= 0 && numSamples > 0 && fromSample + numSamples <= getLength() : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples;
+        int[][] samples = new int[source.getAudioEffects().length][numSamples];
+        renderRange(fromSample, numSamples, samples);
+        return of(new AudioProcessor(samples, getSampleRate(), readEffectsFrom(source.getAudioEffects(), lastAudible)));
+    }
+
+
+
+    // BLOCK 2
+
+    /**
+     * Ist nur als erster Schritt verzögert möglich, da die Effekte ihre Zustände von Sample zu Sample
+     * weitergeben und daher das Signal in seiner ursprünglichen Reihenfolge benötigen.
+     */
+    public Audible processEffects() {
+        return isEmptyPlan() ? new LazyAudible(source, true, false, steps) : of(materialize().processEffects());
+    }
+
+    public Audible normalize() {
+        return withStep(Step.NORMALIZE);
+    }
+
+    /**
+     * Verstärkt das Audiosignal so, dass seine Integrated Loudness nach EBU R128 dem Ziel entspricht, höchstens
+     * aber bis der höchste Ausschlag RECOMMENDED_PEAK erreicht.
+     * @param targetLUFS Die Ziel-Lautheit in LUFS (z.B. -16 für Podcasts)
+     */
+    LazyAudible normalizeLoudness(double targetLUFS) {
+        assert targetLUFS < 0 : "Die Ziel-Lautheit muss negativ sein! (" + targetLUFS + ")";
+        return withStep(new Step(Double.NaN, false, targetLUFS));
+    }
+
+    public Audible reverse() {
+        return new LazyAudible(source, processed, !reversed, Arrays.stream(steps).map(Step::reversed).toArray(Step[]::new));
+    }
+
+    public Audible fadeIn(double seconds) {
+        assertFade(seconds);
+        return withStep(Step.fade(seconds, false));
+    }
+
+    public Audible fadeOut(double seconds) {
+        assertFade(seconds);
+        return withStep(Step.fade(seconds, true));
+    }
+
+    public Audible fade(double seconds) {
+        return fadeIn(seconds).fadeOut(seconds);
+    }
+
+    private void assertFade(double seconds) {
+        assert seconds > 0 && seconds < getLength() / getSampleRate() : "Die Fade-Zeit muss im Verarbeitungszeitraum liegen! | Angegeben: " + seconds + "s";
+    }
+
+
+
+    // BLOCK 3
+
+    /**
+     * Kodiert jeden Block direkt an seine endgültige Position im byte-Array.
+     */
+    public byte[] getOutput(AudioFormat audioFormat) {
+        assertFormat(audioFormat);
+        assert audioFormat.getSampleRate() == getSampleRate() : "Die Samplerate des Outputdatei muss gleich der Samplerate der Inputdatei sein";
+
+        int frameSize = audioFormat.getFrameSize();
+        byte[] bytes = new byte[getLength() * frameSize];
+        byte[] blockBytes = new byte[BLOCK_FRAMES * frameSize];
+
+        render((block, position, length) -> {
+            PcmCodec.encode(block, 0, length, audioFormat, blockBytes);
+            System.arraycopy(blockBytes, 0, bytes, position * frameSize, length * frameSize);
+        });
+
+        return bytes;
+    }
+
+    public double getPeakInDBFS() {
+        return isEmptyPlan() ? source.getPeakInDBFS() : peakInDBFS();
+    }
+
+    private double peakInDBFS() {
+        FadeEnvelope[] envelopes = envelopes();
+        return intTOdBFS(peak(steps.length, normalizeFactors(envelopes), envelopes, null) * HEADROOM_DIVISOR);
+    }
+
+    public void copySamples(int fromSample, int numSamples, int[][] target) {
+        if (isEmptyPlan())
+            source.copySamples(fromSample, numSamples, target);
+        else if (!processed)
+            renderRange(fromSample, numSamples, target);
+        else materialize().copySamples(fromSample, numSamples, target);
+    }
+
+    public int getLength() {
+        return source.getLength();
+    }
+
+    public float getSampleRate() {
+        return source.getSampleRate();
+    }
+
+    /**
+     * Analysiert die Blöcke während eines Durchlaufs über den Plan. Bei reverse() werden sie in ihrer
+     * ursprünglichen Richtung analysiert; der Betrag an einer Frequenz ist für das umgekehrte Signal derselbe.
+     */
+    public double getFFTdBFS(double frequency) {
+        if (isEmptyPlan())
+            return source.getFFTdBFS(frequency);
+
+        Goertzel goertzel = new Goertzel(frequency, getSampleRate(), source.getAudioEffects().length);
+        render((block, position, length) -> {
+            if (reversed)
+                for (int[] samples : block)
+                    reverse(samples, length);
+            goertzel.process(block, 0, length);
+        });
+        return goertzel.dBFS();
+    }
+
+    public AudioEffect[][] getAudioEffects() {
+        return source.getAudioEffects();
+    }
+
+    public Audible lazy() {
+        return this;
+    }
+
+
+    public String toString() {
+        String s = "\n";
+
+        s += " - LazyAudible -\n";
+        s += "Effekte: " + (processed ? "ja" : "nein") + "\n";
+        s += "Umgekehrt: " + (reversed ? "ja" : "nein") + "\n";
+        s += "Schritte: " + steps.length + "\n";
+        s += "Quelle:" + source;
+
+        return s;
+    }
+}
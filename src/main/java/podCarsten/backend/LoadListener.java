@@ -0,0 +1,18 @@
+package podCarsten.backend;
+
+/**
+ * Wird beim blockweisen Laden eines Audiosignals nach jedem dekodierten Block aufgerufen,
+ * sodass die IL bereits geladene Teile anzeigen und abspielen kann, bevor die Datei
+ * vollständig eingelesen wurde.
+ */
+@FunctionalInterface
+public interface LoadListener {
+
+    /**
+     * @param audible Instanz, deren Samples bis loadedSamples bereits dekodiert sind.
+     *                Die restlichen Samples sind bis zum nächsten Aufruf noch 0.
+     * @param loadedSamples Anzahl der bereits dekodierten Samples pro Kanal
+     */
+    void loaded(Audible audible, int loadedSamples);
+
+}
@@ -0,0 +1,406 @@
+package podCarsten.backend;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static podCarsten.backend.AudioProcessor.*;
+
+/**
+ * Misst die Lautheit nach EBU R128 bzw. ITU-R BS.1770 in LUFS: Momentary (400 ms), Short-Term (3 s) und
+ * Integrated (gesamtes Signal mit absolutem und relativem Gate).
+ *      <br><br>
+ * Die Samples werden zuerst mit zwei Biquads K-gewichtet (Shelf bei ca. 1,7 kHz und Hochpass bei 38 Hz),
+ * danach wird die mittlere Leistung aller Kanäle pro 100 ms (ein Hop) gebildet. Ein Messblock von 400 ms
+ * besteht aus vier Hops, aufeinanderfolgende Blöcke überlappen sich also zu 75 %. Für das Gating werden die
+ * Blöcke nicht gespeichert, sondern in ein Histogramm fester Größe einsortiert, das pro Klasse die Anzahl und
+ * die Summe der Leistungen enthält. Der Speicherbedarf ist damit unabhängig von der Länge des Signals, und
+ * die Summen bleiben exakt; nur die Grenze des relativen Gates wird auf HISTOGRAM_RESOLUTION gerundet.
+ *      <br><br>
+ * Ein Meter verarbeitet ein Signal fortlaufend (process()). Für ein vollständiges Signal teilt measure() das
+ * Signal in Abschnitte, die parallel gemessen werden; die Ergebnisse (Loudness) werden danach assoziativ
+ * zusammengeführt. Damit die Filter zu Beginn eines Abschnitts eingeschwungen sind, verarbeitet jeder
+ * Abschnitt vorher PREROLL_HOPS Hops, ohne diese zu messen.
+ */
+final class LoudnessMeter {
+
+    static final double HOP_SECONDS = 0.1;
+    static final int BLOCK_HOPS = 4;                    // Momentary und Gating: 400 ms
+    static final int SHORT_TERM_HOPS = 30;              // Short-Term: 3 s
+    static final double ABSOLUTE_GATE_LUFS = -70;
+    static final double RELATIVE_GATE_LU = -10;
+
+    // Histogramm der Blöcke von ABSOLUTE_GATE_LUFS bis HISTOGRAM_MAX_LUFS
+    static final double HISTOGRAM_MAX_LUFS = 10;
+    static final double HISTOGRAM_RESOLUTION = 0.02;
+    static final int HISTOGRAM_BINS = (int) Math.round((HISTOGRAM_MAX_LUFS - ABSOLUTE_GATE_LUFS) / HISTOGRAM_RESOLUTION);
+
+    // Länge eines parallel gemessenen Abschnitts und des Vorlaufs in Hops
+    static final int CHUNK_HOPS = 300;
+    static final int PREROLL_HOPS = 10;
+
+    private final int channels;
+    private final int hopFrames;
+    private final double[] weights;             // Gewichtung der Kanäle
+    private final Biquad shelf;
+    private final Biquad highPass;
+    private final double[][] filterStates;      // Pro Kanal die Zustände beider Biquads
+
+    // Der laufende Hop
+    private double hopEnergy;
+    private int hopFill;
+
+    // Alle abgeschlossenen Hops
+    private long hops;
+    private final double[] head = new double[Loudness.EDGE_HOPS];   // Die ersten Hops
+    private final double[] recent = new double[Loudness.EDGE_HOPS]; // Die letzten Hops als Ringpuffer
+    private final long[] counts = new long[HISTOGRAM_BINS];
+    private final double[] energies = new double[HISTOGRAM_BINS];
+    private double maxMomentary;
+    private double maxShortTerm;
+
+
+    /**
+     * Die Koeffizienten eines Biquads (a0 = 1), angewendet in der transponierten Direktform II.
+     */
+    private record Biquad(double b0, double b1, double b2, double a1, double a2) {}
+
+
+    /**
+     * @param channels Anzahl der Kanäle
+     * @param sampleRate Samplerate in Hz
+     */
+    LoudnessMeter(int channels, float sampleRate) {
+        assert channels > 0 : "Es muss mindestens einen Kanal geben!";
+        assert sampleRate > 0 : "Die Samplerate ist ungültig! (" + sampleRate + ")";
+
+        this.channels = channels;
+        this.hopFrames = Math.max(1, (int) Math.round(sampleRate * HOP_SECONDS));
+        this.weights = IntStream.range(0, channels).mapToDouble(channel -> weight(channel, channels)).toArray();
+        this.filterStates = new double[channels][4];
+
+        // Die Koeffizienten aus BS.1770 gelten für 48 kHz und werden hier für die Samplerate neu berechnet
+        double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        shelf = new Biquad((vh + vb * k / q + k * k) / a0, 2 * (k * k - vh) / a0, (vh - vb * k / q + k * k) / a0,
+                2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0);
+
+        k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        highPass = new Biquad(1, -2, 1, 2 * (k * k - 1) / a0, (1 - k / q + k * k) / a0);
+    }
+
+
+    /**
+     * Gewichtung nach BS.1770: 1 für die vorderen Kanäle, 1,41 für die Surround-Kanäle und 0 für den LFE-Kanal
+     * (Reihenfolge L, R, C, LFE, Ls, Rs bei sechs bzw. L, R, C, Ls, Rs bei fünf Kanälen).
+     */
+    private static double weight(int channel, int channels) {
+        if (channels == 6)
+            return channel == 3 ? 0 : channel >= 4 ? 1.41 : 1;
+        if (channels == 5)
+            return channel >= 3 ? 1.41 : 1;
+        return 1;
+    }
+
+
+
+    // MESSEN
+
+    /**
+     * Verarbeitet die nächsten Frames des Signals.
+     * @param samples Die Samples pro Kanal
+     * @param from Position des ersten Frames in den Arrays
+     * @param to Position nach dem letzten Frame
+     */
+    void process(int[][] samples, int from, int to) {
+        filter(samples, from, to, true);
+    }
+
+    /**
+     * @param measure false, falls die Filter nur mit den Frames vor dem gemessenen Bereich einschwingen sollen
+     */
+    private void filter(int[][] samples, int from, int to, boolean measure) {
+        assert samples.length == channels : "Die Anzahl der Kanäle stimmt nicht überein!";
+        double scale = (double) HEADROOM_DIVISOR / Integer.MAX_VALUE;
+
+        // Jeder Abschnitt endet spätestens am Ende des laufenden Hops
+        for (int position = from; position < to; ) {
+            int end = measure ? Math.min(to, position + hopFrames - hopFill) : to;
+            double energy = 0;
+
+            for (int channel = 0; channel < channels; channel++) {
+                double[] state = filterStates[channel];
+                double s1 = state[0], s2 = state[1], h1 = state[2], h2 = state[3];
+                double sum = 0;
+
+                for (int i = position; i < end; i++) {
+                    double x = samples[channel][i] * scale;
+                    double y = shelf.b0 * x + s1;
+                    s1 = shelf.b1 * x - shelf.a1 * y + s2;
+                    s2 = shelf.b2 * x - shelf.a2 * y;
+
+                    double z = highPass.b0 * y + h1;
+                    h1 = highPass.b1 * y - highPass.a1 * z + h2;
+                    h2 = highPass.b2 * y - highPass.a2 * z;
+                    sum += z * z;
+                }
+
+                state[0] = s1;
+                state[1] = s2;
+                state[2] = h1;
+                state[3] = h2;
+                energy += weights[channel] * sum;
+            }
+
+            if (measure) {
+                hopEnergy += energy;
+                hopFill += end - position;
+                if (hopFill == hopFrames) {
+                    addHop(hopEnergy / hopFrames);
+                    hopEnergy = 0;
+                    hopFill = 0;
+                }
+            }
+            position = end;
+        }
+    }
+
+
+    /**
+     * @param power Die mittlere gewichtete Leistung des Hops
+     */
+    private void addHop(double power) {
+        if (hops < Loudness.EDGE_HOPS)
+            head[(int) hops] = power;
+        recent[(int) (hops % Loudness.EDGE_HOPS)] = power;
+        hops++;
+
+        if (hops >= BLOCK_HOPS) {
+            double block = recentPower(BLOCK_HOPS);
+            addBlock(counts, energies, block);
+            maxMomentary = Math.max(maxMomentary, block);
+        }
+        if (hops >= SHORT_TERM_HOPS)
+            maxShortTerm = Math.max(maxShortTerm, recentPower(SHORT_TERM_HOPS));
+    }
+
+    private double recentPower(int count) {
+        double sum = 0;
+        for (long hop = hops - count; hop < hops; hop++)
+            sum += recent[(int) (hop % Loudness.EDGE_HOPS)];
+        return sum / count;
+    }
+
+    /**
+     * Sortiert einen Block in das Histogramm ein, falls er das absolute Gate überschreitet.
+     */
+    private static void addBlock(long[] counts, double[] energies, double power) {
+        double lufs = toLUFS(power);
+        if (lufs < ABSOLUTE_GATE_LUFS)
+            return;
+
+        int bin = binOf(lufs);
+        counts[bin]++;
+        energies[bin] += power;
+    }
+
+    private static int binOf(double lufs) {
+        return (int) Math.max(0, Math.min(HISTOGRAM_BINS - 1, Math.floor((lufs - ABSOLUTE_GATE_LUFS) / HISTOGRAM_RESOLUTION)));
+    }
+
+    static double toLUFS(double power) {
+        return -0.691 + 10 * Math.log10(power);
+    }
+
+
+
+    // ERGEBNISSE
+
+    /**
+     * @return Die Lautheit der letzten 400 ms in LUFS (-Infinity, solange diese noch nicht verarbeitet wurden)
+     */
+    double momentary() {
+        return hops < BLOCK_HOPS ? Double.NEGATIVE_INFINITY : toLUFS(recentPower(BLOCK_HOPS));
+    }
+
+    /**
+     * @return Die Lautheit der letzten 3 s in LUFS (-Infinity, solange diese noch nicht verarbeitet wurden)
+     */
+    double shortTerm() {
+        return hops < SHORT_TERM_HOPS ? Double.NEGATIVE_INFINITY : toLUFS(recentPower(SHORT_TERM_HOPS));
+    }
+
+    /**
+     * @return Die Messung aller bisher verarbeiteten Frames (ein unvollständiger letzter Hop zählt nicht)
+     */
+    Loudness result() {
+        int edge = (int) Math.min(hops, Loudness.EDGE_HOPS);
+        double[] tail = new double[edge];
+        for (int nr = 0; nr < edge; nr++)
+            tail[nr] = recent[(int) ((hops - edge + nr) % Loudness.EDGE_HOPS)];
+
+        return new Loudness(hops, Arrays.copyOf(head, edge), tail, counts.clone(), energies.clone(), maxMomentary, maxShortTerm);
+    }
+
+
+    /**
+     * Misst ein vollständiges Signal. Die Abschnitte von CHUNK_HOPS Hops werden parallel gemessen und danach
+     * der Reihe nach zusammengeführt. Effekte des Signals werden nicht angewendet.
+     */
+    static Loudness measure(Audible audible) {
+        int length = audible.getLength();
+        int channels = audible.getAudioEffects().length;
+        float sampleRate = audible.getSampleRate();
+        int chunkFrames = new LoudnessMeter(channels, sampleRate).hopFrames * CHUNK_HOPS;
+        int chunks = Math.max(1, (length + chunkFrames - 1) / chunkFrames);
+
+        return IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            LoudnessMeter meter = new LoudnessMeter(channels, sampleRate);
+            int from = chunk * chunkFrames;
+            int to = Math.min(length, from + chunkFrames);
+            int[][] buffer = new int[channels][CHUNK_FRAMES];
+
+            // Zuerst der Vorlauf, danach der Abschnitt selbst, jeweils blockweise über einen Puffer
+            int position = Math.max(0, from - PREROLL_HOPS * meter.hopFrames);
+            while (position < to) {
+                int end = Math.min(position + CHUNK_FRAMES, position < from ? from : to);
+                audible.copySamples(position, end - position, buffer);
+                meter.filter(buffer, 0, end - position, position >= from);
+                position = end;
+            }
+            return meter.result();
+        }).reduce(Loudness::merge).orElseThrow();
+    }
+
+
+
+    /**
+     * Unveränderliches Ergebnis einer Messung. Zwei Ergebnisse direkt aufeinanderfolgender Abschnitte können
+     * mit merge() zusammengeführt werden. Dafür werden neben dem Histogramm die ersten und letzten EDGE_HOPS
+     * Hops behalten, aus denen die Blöcke über die Grenze der Abschnitte gebildet werden.
+     */
+    static final class Loudness {
+
+        static final int EDGE_HOPS = SHORT_TERM_HOPS;
+
+        private final long hops;
+        private final double[] head;
+        private final double[] tail;
+        private final long[] counts;
+        private final double[] energies;
+        private final double maxMomentary;
+        private final double maxShortTerm;
+
+
+        private Loudness(long hops, double[] head, double[] tail, long[] counts, double[] energies, double maxMomentary, double maxShortTerm) {
+            this.hops = hops;
+            this.head = head;
+            this.tail = tail;
+            this.counts = counts;
+            this.energies = energies;
+            this.maxMomentary = maxMomentary;
+            this.maxShortTerm = maxShortTerm;
+        }
+
+
+        /**
+         * Führt die Messungen zweier direkt aufeinanderfolgender Abschnitte zusammen. Ist assoziativ.
+         * @param later Die Messung des direkt anschließenden Abschnitts
+         */
+        Loudness merge(Loudness later) {
+            long[] counts = this.counts.clone();
+            double[] energies = this.energies.clone();
+            for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+                counts[bin] += later.counts[bin];
+                energies[bin] += later.energies[bin];
+            }
+            double maxMomentary = Math.max(this.maxMomentary, later.maxMomentary);
+            double maxShortTerm = Math.max(this.maxShortTerm, later.maxShortTerm);
+
+            // Blöcke, die mindestens einen Hop aus beiden Abschnitten enthalten
+            double[] joint = new double[tail.length + later.head.length];
+            System.arraycopy(tail, 0, joint, 0, tail.length);
+            System.arraycopy(later.head, 0, joint, tail.length, later.head.length);
+            for (int start = Math.max(0, tail.length - BLOCK_HOPS + 1); start < tail.length && start + BLOCK_HOPS <= joint.length; start++) {
+                double block = power(joint, start, BLOCK_HOPS);
+                addBlock(counts, energies, block);
+                maxMomentary = Math.max(maxMomentary, block);
+            }
+            for (int start = Math.max(0, tail.length - SHORT_TERM_HOPS + 1); start < tail.length && start + SHORT_TERM_HOPS <= joint.length; start++)
+                maxShortTerm = Math.max(maxShortTerm, power(joint, start, SHORT_TERM_HOPS));
+
+            // Anfang und Ende der zusammengeführten Abschnitte; ist ein Abschnitt kürzer als EDGE_HOPS, sind
+            // seine ersten und letzten Hops jeweils alle seine Hops
+            long total = hops + later.hops;
+            int edge = (int) Math.min(total, EDGE_HOPS);
+            double[] head = Arrays.copyOf(this.head, edge);
+            for (int nr = this.head.length; nr < edge; nr++)
+                head[nr] = later.head[nr - this.head.length];
+            double[] tail = new double[edge];
+            for (int nr = 0; nr < edge; nr++) {
+                int fromEnd = edge - nr;
+                tail[nr] = fromEnd <= later.tail.length ? later.tail[later.tail.length - fromEnd] : this.tail[this.tail.length - (fromEnd - later.tail.length)];
+            }
+
+            return new Loudness(total, head, tail, counts, energies, maxMomentary, maxShortTerm);
+        }
+
+        private static double power(double[] hops, int from, int count) {
+            double sum = 0;
+            for (int hop = from; hop < from + count; hop++)
+                sum += hops[hop];
+            return sum / count;
+        }
+
+
+        /**
+         * Errechnet die Integrated Loudness: Mittelwert aller Blöcke über dem absoluten Gate, davon nur die
+         * Blöcke, die höchstens 10 LU leiser als dieser Mittelwert sind.
+         * @return Die Lautheit in LUFS (-Infinity, falls kein Block das absolute Gate überschreitet)
+         */
+        double integrated() {
+            long count = 0;
+            double energy = 0;
+            for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+                count += counts[bin];
+                energy += energies[bin];
+            }
+            if (count == 0)
+                return Double.NEGATIVE_INFINITY;
+
+            int relativeGate = binOf(toLUFS(energy / count) + RELATIVE_GATE_LU);
+            count = 0;
+            energy = 0;
+            for (int bin = relativeGate; bin < HISTOGRAM_BINS; bin++) {
+                count += counts[bin];
+                energy += energies[bin];
+            }
+            return toLUFS(energy / count);
+        }
+
+        /**
+         * @return Die höchste Momentary Loudness in LUFS
+         */
+        double maxMomentary() {
+            return toLUFS(maxMomentary);
+        }
+
+        /**
+         * @return Die höchste Short-Term Loudness in LUFS
+         */
+        double maxShortTerm() {
+            return toLUFS(maxShortTerm);
+        }
+
+        /**
+         * @return Anzahl der gemessenen Hops von HOP_SECONDS
+         */
+        long getHops() {
+            return hops;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static podCarsten.backend.AudioProcessor.*;
+
+/**
+ * Audible-Implementierung, deren Samples nicht im Speicher liegen, sondern direkt aus den in den Speicher
+ * abgebildeten PCM-Daten einer WAV- oder AIFF-Datei gelesen werden. Dekodiert wird erst, wenn ein Bereich
+ * verwendet wird. Das erneute Lesen übernimmt dabei der Page-Cache des Betriebssystems.
+ *      <br><br>
+ * Alle Operationen außer copySamples() stammen aus SegmentedAudible; das gesamte Signal wird damit nie
+ * dekodiert im Speicher gehalten.
+ */
+final class MappedAudible extends SegmentedAudible {
+
+    // Maximale Größe eines abgebildeten Segments, da ein MappedByteBuffer höchstens 2 GB groß sein kann
+    static final int SEGMENT_BYTES = 1 << 30;
+
+    // Puffer für kodierte Frames, der pro Thread wiederverwendet wird
+    private static final ThreadLocal<byte[]> FRAME_BUFFER = ThreadLocal.withInitial(() -> new byte[0]);
+
+    final PcmFile pcmFile;
+    final MappedByteBuffer[] segments;
+    final int segmentFrames;            // Anzahl der Frames pro Segment
+
+
+    MappedAudible(PcmFile pcmFile, MappedByteBuffer[] segments, AudioEffect[][] audioEffects) {
+        super((int) pcmFile.frames(), audioEffects);
+        this.pcmFile = pcmFile;
+        this.segments = segments;
+        this.segmentFrames = SEGMENT_BYTES / pcmFile.format().getFrameSize();
+    }
+
+
+    /**
+     * Liest den Header der Datei und bildet die PCM-Daten segmentweise in den Speicher ab.
+     * @param file Die WAV- oder AIFF-Datei
+     * @return eine Instanz ohne Effekte
+     */
+    static MappedAudible open(File file) throws IOException, UnsupportedAudioFileException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            PcmFile pcmFile = PcmFile.read(channel);
+            AudioFormat format = pcmFile.format();
+
+            if (pcmFile.frames() <= 0 || pcmFile.frames() > Integer.MAX_VALUE)
+                throw new UnsupportedAudioFileException("Ungültige Länge des Audiosignals: " + pcmFile.frames() + " Samples");
+
+            long segmentLength = (long) (SEGMENT_BYTES / format.getFrameSize()) * format.getFrameSize();
+            long dataLength = pcmFile.frames() * format.getFrameSize();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((dataLength + segmentLength - 1) / segmentLength)];
+
+            // Die Abbildung bleibt auch nach dem Schließen des Channels gültig
+            for (int i = 0; i < segments.length; i++)
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, pcmFile.dataOffset() + i * segmentLength,
+                        Math.min(segmentLength, dataLength - i * segmentLength));
+
+            LOGGER.info("Die Datei {} wurde mit {} Samples pro Kanal in {} Segmenten in den Speicher abgebildet", file.getName(), pcmFile.frames(), segments.length);
+
+            return new MappedAudible(pcmFile, segments,
+                    Stream.generate(() -> new AudioEffect[0]).limit(format.getChannels()).toArray(AudioEffect[][]::new));
+        }
+    }
+
+
+    /**
+     * Kopiert kodierte Frames aus den abgebildeten Segmenten in ein byte-Array.
+     * Nutzt absolute Zugriffe, sodass mehrere Threads gleichzeitig lesen können.
+     */
+    private void readFrames(int fromFrame, int frames, byte[] target) {
+        int frameSize = pcmFile.format().getFrameSize();
+        int copied = 0;
+
+        while (copied < frames) {
+            int frame = fromFrame + copied;
+            int frameInSegment = frame % segmentFrames;
+            int count = Math.min(frames - copied, segmentFrames - frameInSegment);
+
+            segments[frame / segmentFrames].get(frameInSegment * frameSize, target, copied * frameSize, count * frameSize);
+            copied += count;
+        }
+    }
+
+
+    Object storage() {
+        return segments;
+    }
+
+    SegmentedAudible withEffects(AudioEffect[][] audioEffects) {
+        return new MappedAudible(pcmFile, segments, audioEffects);
+    }
+
+
+
+    // BLOCK 3
+
+    /**
+     * Dekodiert den Bereich direkt in die übergebenen Arrays. Der Puffer für die kodierten Frames wird
+     * pro Thread wiederverwendet, sodass beim blockweisen Abspielen keine neuen Arrays entstehen.
+     */
+    public void copySamples(int fromSample, int numSamples, int[][] target) {
+        assert fromSample >= 0 && numSamples >= 0 && fromSample + numSamples <= length : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples;
+
+        int byteLength = numSamples * pcmFile.format().getFrameSize();
+        byte[] bytes = FRAME_BUFFER.get();
+        if (bytes.length < byteLength)
+            FRAME_BUFFER.set(bytes = new byte[byteLength]);
+
+        readFrames(fromSample, numSamples, bytes);
+        PcmCodec.decode(bytes, numSamples, pcmFile.format(), target, 0);
+    }
+
+    public float getSampleRate() {
+        return pcmFile.format().getSampleRate();
+    }
+
+
+    public String toString() {
+        String s = "\n";
+
+        s += " - MappedAudible -\n";
+        s += "Länge: " + String.format("%.2f", length / pcmFile.format().getSampleRate()) + " s\n";
+        s += "Kanäle: " + audioEffects.length + "\n";
+        s += "Datenbeginn: " + pcmFile.dataOffset() + " bytes\n";
+
+        return s;
+    }
+}
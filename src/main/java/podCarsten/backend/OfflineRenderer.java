@@ -0,0 +1,121 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import static podCarsten.backend.AudioProcessor.LOGGER;
+
+/**
+ * Verarbeitet ein Audiosignal ohne Soundkarte mit derselben blockweisen Pipeline wie beim Abspielen
+ * (BlockRenderer und Kodierung jedes Blocks), gibt die kodierten Blöcke aber an eine Senke weiter, die alles
+ * sofort annimmt. Gemessen wird der Echtzeitfaktor: wie viele Sekunden Audio pro Sekunde verarbeitet werden.
+ *      <br><br>
+ * Der StageCache wird dabei nicht verwendet, da sonst ab dem zweiten Durchlauf nur noch der Cache gemessen würde.
+ * So ergibt sich eine reproduzierbare Zahl für jede Effektkette, die z.B. in Tests mit einer Untergrenze
+ * verglichen werden kann.
+ */
+public final class OfflineRenderer {
+
+    private final AudioFormat format;
+    private final int blockFrames;
+    // Wird von der Senke verändert, damit die Kodierung nicht wegoptimiert werden kann
+    private long checksum;
+
+
+    /**
+     * Ergebnis einer Messung.
+     * @param name Beschreibung der gemessenen Effektkette
+     * @param audioSeconds Länge des verarbeiteten Signals in Sekunden
+     * @param nanos Benötigte Zeit in Nanosekunden
+     */
+    public record Result(String name, double audioSeconds, long nanos) {
+
+        /**
+         * @return Sekunden Audio, die pro Sekunde verarbeitet werden
+         */
+        public double realTimeFactor() {
+            return audioSeconds / (nanos / 1e9);
+        }
+
+        public String toString() {
+            return String.format("%s: %.1fx Echtzeit (%.2f s Audio in %d ms)", name, realTimeFactor(), audioSeconds, nanos / 1_000_000);
+        }
+    }
+
+
+    /**
+     * @param format Kodierung der Blöcke, wie beim Abspielen
+     * @param blockFrames Länge eines Blocks, wie beim Abspielen
+     */
+    public OfflineRenderer(AudioFormat format, int blockFrames) {
+        assert blockFrames > 0 : "Die Länge eines Blocks ist ungültig! Länge: " + blockFrames;
+
+        this.format = format;
+        this.blockFrames = blockFrames;
+    }
+
+
+    /**
+     * Verarbeitet das gesamte Signal einmal blockweise mit seinen Effekten.
+     * @param name Beschreibung für das Ergebnis
+     */
+    public Result render(String name, Audible audible) {
+        BlockRenderer renderer = new BlockRenderer(audible, false);
+        byte[] bytes = new byte[blockFrames * format.getFrameSize()];
+        int length = audible.getLength();
+
+        long start = System.nanoTime();
+        for (int from = 0; from < length; from += blockFrames) {
+            renderer.renderBlock(from, Math.min(blockFrames, length - from));
+            renderer.encodeOutput(format, bytes);
+            checksum += bytes[0];
+        }
+        long nanos = System.nanoTime() - start;
+
+        return new Result(name, length / audible.getSampleRate(), nanos);
+    }
+
+
+    /**
+     * Misst die gesamte Effektkette, jeden ihrer Effekte einzeln und das Signal ohne Effekte (nur Kopieren
+     * und Kodieren). Jede Messung wird mehrmals wiederholt; der schnellste Durchlauf zählt, da langsamere
+     * Durchläufe vor allem vom JIT-Compiler und anderen Prozessen beeinflusst werden.
+     *      <br><br>
+     * Gemessen werden die gesetzten Effekte (getAudioEffects()). Die gesamte Kette läuft dabei wie beim
+     * Abspielen mit zusammengefassten IIR-Filtern, die einzelnen Filter jeweils für sich; die Summe der
+     * Einzelmessungen kann daher über der Zeit der gesamten Kette liegen.
+     * @param runs Anzahl der Durchläufe pro Messung
+     * @return Die Ergebnisse in der Reihenfolge: gesamte Kette, ohne Effekte, einzelne Effekte
+     */
+    public List<Result> profile(Audible audible, int runs) {
+        assert runs > 0 : "Es muss mindestens ein Durchlauf stattfinden! Anzahl: " + runs;
+
+        AudioEffect[] chain = audible.getAudioEffects().length == 0 ? new AudioEffect[0] : audible.getAudioEffects()[0];
+        List<Result> results = new ArrayList<>();
+
+        results.add(fastest("Gesamte Kette", audible, runs));
+        results.add(fastest("Ohne Effekte", audible.setEffects(), runs));
+        for (int effectNr = 0; effectNr < chain.length; effectNr++)
+            results.add(fastest((effectNr + 1) + ". " + chain[effectNr].getClass().getSimpleName(), audible.setEffects(chain[effectNr]), runs));
+
+        results.forEach(result -> LOGGER.info("{}", result));
+        return results;
+    }
+
+
+    private Result fastest(String name, Audible audible, int runs) {
+        Result fastest = null;
+        for (int run = 0; run < runs; run++) {
+            Result result = render(name, audible);
+            if (fastest == null || result.nanos() < fastest.nanos())
+                fastest = result;
+        }
+        return fastest;
+    }
+
+
+    public String toString() {
+        return "OfflineRenderer: " + blockFrames + " Frames pro Block, " + format + " (Prüfsumme " + checksum + ")";
+    }
+}
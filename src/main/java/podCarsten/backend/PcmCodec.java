@@ -0,0 +1,182 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFormat;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.stream.IntStream;
+
+import static podCarsten.backend.AudioProcessor.HEADROOM_DIVISOR;
+
+/**
+ * Wandelt kodierte PCM-Frames in die interne Darstellung (ein int-Array pro Kanal) um und zurück.
+ * Mehr Informationen zu der Kodierung von Audiodateien sind in der README zu finden.
+ *      <br><br>
+ * Für jedes unterstützte Sampleformat (16, 24 und 32 Bit, jeweils little und big endian) gibt es eine eigene
+ * Schleife, die die Samples eines Kanals linear durchläuft und über VarHandle-Ansichten auf das byte-Array
+ * mehrere bytes auf einmal liest bzw. schreibt. Längere Signale werden in zusammenhängende Bereiche
+ * von Frames aufgeteilt, die parallel verarbeitet werden.
+ */
+final class PcmCodec {
+
+    // Anzahl der Frames, die von einem Thread am Stück verarbeitet werden. Ab der doppelten Anzahl
+    // lohnt sich die Parallelisierung. Ein Block beim Abspielen wird daher nicht aufgeteilt.
+    static final int RANGE_FRAMES = 1 << 14;
+
+    // Der Headroom wird als Bitshift umgesetzt; das funktioniert nur bei Zweierpotenzen
+    private static final int HEADROOM_SHIFT = Integer.numberOfTrailingZeros(HEADROOM_DIVISOR);
+    private static final int HEADROOM_MASK = HEADROOM_DIVISOR - 1;
+
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    static {
+        assert Integer.bitCount(HEADROOM_DIVISOR) == 1 : "HEADROOM_DIVISOR muss eine Zweierpotenz sein!";
+    }
+
+    private PcmCodec() {}
+
+
+    /**
+     * Dekodiert eine bestimmte Anzahl an Frames aus einem byte-Array in die Kanal-Arrays.
+     * @param bytes Die kodierten Frames, beginnend bei Index 0
+     * @param frames Anzahl der zu dekodierenden Frames
+     * @param format Die Kodierung des Audiosignals
+     * @param target Die Kanal-Arrays, in die dekodiert wird
+     * @param targetOffset Position in den Kanal-Arrays, an die das erste Frame geschrieben wird
+     */
+    static void decode(byte[] bytes, int frames, AudioFormat format, int[][] target, int targetOffset) {
+        forEachRange(frames, (from, to) -> {
+            for (int channel = 0; channel < target.length; channel++)
+                decodeChannel(bytes, format, channel, target[channel], targetOffset, from, to);
+        });
+    }
+
+
+    /**
+     * Kodiert eine bestimmte Anzahl an Frames aus den Kanal-Arrays in ein byte-Array.
+     * @param source Die Kanal-Arrays
+     * @param sourceOffset Position des ersten zu kodierenden Samples in den Kanal-Arrays
+     * @param frames Anzahl der zu kodierenden Frames
+     * @param format Die gewünschte Kodierung
+     * @param bytes Das byte-Array, in das ab Index 0 geschrieben wird
+     */
+    static void encode(int[][] source, int sourceOffset, int frames, AudioFormat format, byte[] bytes) {
+        forEachRange(frames, (from, to) -> {
+            for (int channel = 0; channel < source.length; channel++)
+                encodeChannel(source[channel], sourceOffset, format, channel, bytes, from, to);
+        });
+    }
+
+
+    private static void forEachRange(int frames, RangeKernel kernel) {
+        if (frames < 2 * RANGE_FRAMES) {
+            kernel.process(0, frames);
+        } else {
+            IntStream.range(0, (frames + RANGE_FRAMES - 1) / RANGE_FRAMES).parallel()
+                    .forEach(range -> kernel.process(range * RANGE_FRAMES, Math.min(frames, (range + 1) * RANGE_FRAMES)));
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeKernel {
+        void process(int fromFrame, int toFrame);
+    }
+
+
+    /**
+     * Dekodiert die Frames [from, to) eines Kanals. Das Sample wird zuerst so zusammengesetzt, dass das höchste
+     * Bit des Samples dem höchsten Bit des ints entspricht, und danach um den Headroom verringert.
+     */
+    private static void decodeChannel(byte[] bytes, AudioFormat format, int channel, int[] samples, int offset, int from, int to) {
+        int frameSize = format.getFrameSize();
+        int index = from * frameSize + channel * (format.getSampleSizeInBits() / 8);
+        int sample = offset + from;
+        int end = offset + to;
+
+        switch (format.getSampleSizeInBits() * (format.isBigEndian() ? -1 : 1)) {
+            case 16 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    samples[sample] = headroom((short) SHORT_LE.get(bytes, index) << 16);
+            }
+            case -16 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    samples[sample] = headroom((short) SHORT_BE.get(bytes, index) << 16);
+            }
+            case 24 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    samples[sample] = headroom((short) SHORT_LE.get(bytes, index + 1) << 16 | (bytes[index] & 0xff) << 8);
+            }
+            case -24 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    samples[sample] = headroom((short) SHORT_BE.get(bytes, index) << 16 | (bytes[index + 2] & 0xff) << 8);
+            }
+            case 32 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    samples[sample] = headroom((int) INT_LE.get(bytes, index));
+            }
+            case -32 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    samples[sample] = headroom((int) INT_BE.get(bytes, index));
+            }
+            default -> throw new IllegalArgumentException("Nicht unterstützte Samplegröße: " + format.getSampleSizeInBits());
+        }
+    }
+
+
+    /**
+     * Kodiert die Frames [from, to) eines Kanals. Der Headroom wird dabei wieder ausgeglichen und
+     * die niederwertigsten bits werden bei kleineren Samplegrößen verworfen.
+     */
+    private static void encodeChannel(int[] samples, int offset, AudioFormat format, int channel, byte[] bytes, int from, int to) {
+        int frameSize = format.getFrameSize();
+        int index = from * frameSize + channel * (format.getSampleSizeInBits() / 8);
+        int sample = offset + from;
+        int end = offset + to;
+
+        switch (format.getSampleSizeInBits() * (format.isBigEndian() ? -1 : 1)) {
+            case 16 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    SHORT_LE.set(bytes, index, (short) (samples[sample] << HEADROOM_SHIFT >>> 16));
+            }
+            case -16 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    SHORT_BE.set(bytes, index, (short) (samples[sample] << HEADROOM_SHIFT >>> 16));
+            }
+            case 24 -> {
+                for (; sample < end; sample++, index += frameSize) {
+                    int sampleData = samples[sample] << HEADROOM_SHIFT;
+                    bytes[index] = (byte) (sampleData >>> 8);
+                    SHORT_LE.set(bytes, index + 1, (short) (sampleData >>> 16));
+                }
+            }
+            case -24 -> {
+                for (; sample < end; sample++, index += frameSize) {
+                    int sampleData = samples[sample] << HEADROOM_SHIFT;
+                    SHORT_BE.set(bytes, index, (short) (sampleData >>> 16));
+                    bytes[index + 2] = (byte) (sampleData >>> 8);
+                }
+            }
+            case 32 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    INT_LE.set(bytes, index, samples[sample] << HEADROOM_SHIFT);
+            }
+            case -32 -> {
+                for (; sample < end; sample++, index += frameSize)
+                    INT_BE.set(bytes, index, samples[sample] << HEADROOM_SHIFT);
+            }
+            default -> throw new IllegalArgumentException("Nicht unterstützte Samplegröße: " + format.getSampleSizeInBits());
+        }
+    }
+
+
+    /**
+     * Verringert die Lautstärke des internen Signals, um Übersteuern zu verhindern.
+     * Entspricht sample / HEADROOM_DIVISOR (Rundung in Richtung 0), aber ohne Division.
+     */
+    private static int headroom(int sample) {
+        return (sample + (sample >> 31 & HEADROOM_MASK)) >> HEADROOM_SHIFT;
+    }
+}
@@ -0,0 +1,253 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Liest den Header einer WAV- oder AIFF-Datei direkt aus, um das Audioformat und die Position der
+ * PCM-Daten innerhalb der Datei zu ermitteln, ohne die Daten dabei durch javax.sound kopieren zu lassen.
+ *      <br><br>
+ * Unterstützt werden unkomprimierte Dateien mit 16, 24 oder 32 Bit pro Sample
+ * (WAV: PCM und WAVE_FORMAT_EXTENSIBLE mit PCM; AIFF und AIFF-C mit 'NONE' bzw. 'twos').
+ * Zum Schreiben wird mit header() ein minimaler WAV- bzw. AIFF-Header erstellt.
+ * @param format Das Audioformat der PCM-Daten
+ * @param dataOffset Position des ersten Frames in der Datei in bytes
+ * @param frames Anzahl der Frames
+ */
+public record PcmFile(AudioFormat format, long dataOffset, long frames) {
+
+    // Format-Kennungen aus dem fmt-Chunk einer WAV-Datei
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+
+    /**
+     * Liest nur den Header einer Datei, z.B. für das Format einer Datei, die in den Speicher abgebildet wird.
+     * @param file Die WAV- oder AIFF-Datei
+     * @return Format und Position der PCM-Daten
+     * @throws UnsupportedAudioFileException falls die Datei keine unterstützte WAV- oder AIFF-Datei ist
+     */
+    public static PcmFile read(File file) throws IOException, UnsupportedAudioFileException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+
+    /**
+     * Liest den Header der Datei ab dem Anfang des Channels.
+     * @param channel Der Channel der Datei
+     * @return Format und Position der PCM-Daten
+     * @throws UnsupportedAudioFileException falls die Datei keine unterstützte WAV- oder AIFF-Datei ist
+     */
+    static PcmFile read(FileChannel channel) throws IOException, UnsupportedAudioFileException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        readFully(channel, header, 0);
+
+        String id = fourCC(header, 0);
+        String type = fourCC(header, 8);
+
+        if (id.equals("RIFF") && type.equals("WAVE"))
+            return readWave(channel);
+        if (id.equals("FORM") && (type.equals("AIFF") || type.equals("AIFC")))
+            return readAiff(channel, type.equals("AIFC"));
+
+        throw new UnsupportedAudioFileException("Die Datei ist weder eine WAV- noch eine AIFF-Datei!");
+    }
+
+
+    private static PcmFile readWave(FileChannel channel) throws IOException, UnsupportedAudioFileException {
+        AudioFormat format = null;
+        long position = 12;
+
+        // Durchlaufe alle Chunks, bis der data-Chunk gefunden wurde
+        while (position + 8 <= channel.size()) {
+            ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, chunkHeader, position);
+            String chunkId = fourCC(chunkHeader, 0);
+            long chunkSize = Integer.toUnsignedLong(chunkHeader.getInt(4));
+
+            if (chunkId.equals("fmt ")) {
+                ByteBuffer fmt = ByteBuffer.allocate((int) Math.min(chunkSize, 40)).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, fmt, position + 8);
+
+                int formatTag = Short.toUnsignedInt(fmt.getShort(0));
+                // Bei WAVE_FORMAT_EXTENSIBLE stehen die ersten beiden bytes der SubFormat-GUID an Position 24
+                if (formatTag == WAVE_FORMAT_EXTENSIBLE && fmt.capacity() >= 26)
+                    formatTag = Short.toUnsignedInt(fmt.getShort(24));
+                if (formatTag != WAVE_FORMAT_PCM)
+                    throw new UnsupportedAudioFileException("Es werden nur unkomprimierte WAV-Dateien unterstützt!");
+
+                format = pcmFormat(fmt.getInt(4), Short.toUnsignedInt(fmt.getShort(2)),
+                        Short.toUnsignedInt(fmt.getShort(14)), false);
+
+                // Samples, die nicht dicht gepackt sind (z.B. 24 Bit in 32-Bit-Containern), werden nicht unterstützt
+                if (Short.toUnsignedInt(fmt.getShort(12)) != format.getFrameSize())
+                    throw new UnsupportedAudioFileException("Die Framegröße der WAV-Datei wird nicht unterstützt!");
+
+            } else if (chunkId.equals("data")) {
+                if (format == null)
+                    throw new UnsupportedAudioFileException("Der fmt-Chunk fehlt vor dem data-Chunk!");
+
+                // Manche Programme schreiben beim Streamen eine ungültige Länge, dann gilt das Dateiende
+                long dataLength = Math.min(chunkSize, channel.size() - position - 8);
+                return new PcmFile(format, position + 8, dataLength / format.getFrameSize());
+            }
+
+            // Chunks werden immer auf eine gerade Anzahl an bytes aufgefüllt
+            position += 8 + chunkSize + (chunkSize & 1);
+        }
+
+        throw new UnsupportedAudioFileException("Die WAV-Datei enthält keinen data-Chunk!");
+    }
+
+
+    private static PcmFile readAiff(FileChannel channel, boolean compressed) throws IOException, UnsupportedAudioFileException {
+        AudioFormat format = null;
+        long frames = 0;
+        long position = 12;
+
+        while (position + 8 <= channel.size()) {
+            ByteBuffer chunkHeader = ByteBuffer.allocate(8);
+            readFully(channel, chunkHeader, position);
+            String chunkId = fourCC(chunkHeader, 0);
+            long chunkSize = Integer.toUnsignedLong(chunkHeader.getInt(4));
+
+            if (chunkId.equals("COMM")) {
+                ByteBuffer comm = ByteBuffer.allocate((int) Math.min(chunkSize, 22));
+                readFully(channel, comm, position + 8);
+
+                if (compressed && comm.capacity() >= 22) {
+                    String compression = fourCC(comm, 18);
+                    if (!compression.equals("NONE") && !compression.equals("twos"))
+                        throw new UnsupportedAudioFileException("Es werden nur unkomprimierte AIFF-Dateien unterstützt!");
+                }
+
+                frames = Integer.toUnsignedLong(comm.getInt(2));
+                format = pcmFormat(Math.round(extendedToDouble(comm, 8)), Short.toUnsignedInt(comm.getShort(0)),
+                        Short.toUnsignedInt(comm.getShort(6)), true);
+
+            } else if (chunkId.equals("SSND")) {
+                if (format == null)
+                    throw new UnsupportedAudioFileException("Der COMM-Chunk fehlt vor dem SSND-Chunk!");
+
+                ByteBuffer ssnd = ByteBuffer.allocate(4);
+                readFully(channel, ssnd, position + 8);
+                long dataOffset = position + 16 + Integer.toUnsignedLong(ssnd.getInt(0));
+
+                return new PcmFile(format, dataOffset, Math.min(frames, (channel.size() - dataOffset) / format.getFrameSize()));
+            }
+
+            position += 8 + chunkSize + (chunkSize & 1);
+        }
+
+        throw new UnsupportedAudioFileException("Die AIFF-Datei enthält keinen SSND-Chunk!");
+    }
+
+
+    /**
+     * Erstellt einen Header für eine WAV- (little endian) oder AIFF-Datei (big endian), auf den direkt
+     * die PCM-Daten folgen. Der Header hat unabhängig von der Anzahl der Frames immer die gleiche Länge,
+     * sodass er nach dem Schreiben der Daten mit der endgültigen Länge überschrieben werden kann.
+     * @param type WAVE oder AIFF
+     * @param format Format der PCM-Daten; die Byte-Reihenfolge muss zum Dateityp passen
+     * @param frames Anzahl der Frames
+     * @return Der Header, bereit zum Schreiben
+     */
+    static ByteBuffer header(AudioFileFormat.Type type, AudioFormat format, long frames) {
+        assert type == AudioFileFormat.Type.WAVE || type == AudioFileFormat.Type.AIFF : "Es werden nur WAV- und AIFF-Dateien unterstützt!";
+        assert format.isBigEndian() == (type == AudioFileFormat.Type.AIFF) : "WAV-Dateien sind little endian, AIFF-Dateien big endian!";
+
+        long dataLength = frames * format.getFrameSize();
+        // Chunks werden immer auf eine gerade Anzahl an bytes aufgefüllt
+        long padding = dataLength & 1;
+
+        if (type == AudioFileFormat.Type.WAVE) {
+            ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(fourCC("RIFF")).putInt((int) (36 + dataLength + padding)).put(fourCC("WAVE"));
+            header.put(fourCC("fmt ")).putInt(16)
+                    .putShort((short) WAVE_FORMAT_PCM)
+                    .putShort((short) format.getChannels())
+                    .putInt((int) format.getSampleRate())
+                    .putInt((int) format.getSampleRate() * format.getFrameSize())
+                    .putShort((short) format.getFrameSize())
+                    .putShort((short) format.getSampleSizeInBits());
+            header.put(fourCC("data")).putInt((int) dataLength);
+            return header.flip();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(54);
+        header.put(fourCC("FORM")).putInt((int) (46 + dataLength + padding)).put(fourCC("AIFF"));
+        header.put(fourCC("COMM")).putInt(18)
+                .putShort((short) format.getChannels())
+                .putInt((int) frames)
+                .putShort((short) format.getSampleSizeInBits());
+        putExtended(header, format.getSampleRate());
+        // Der SSND-Chunk enthält vor den Daten noch offset und blockSize, beide hier 0
+        header.put(fourCC("SSND")).putInt((int) (8 + dataLength)).putInt(0).putInt(0);
+        return header.flip();
+    }
+
+
+    /**
+     * Erstellt das AudioFormat und prüft dabei, ob es von der AL unterstützt wird.
+     */
+    private static AudioFormat pcmFormat(float sampleRate, int channels, int bitsPerSample, boolean bigEndian) throws UnsupportedAudioFileException {
+        if (bitsPerSample != 16 && bitsPerSample != 24 && bitsPerSample != 32)
+            throw new UnsupportedAudioFileException("Es werden nur 16-, 24- und 32-Bit-Dateien unterstützt! (" + bitsPerSample + " Bit)");
+        if (channels < 1 || !(sampleRate > 0))
+            throw new UnsupportedAudioFileException("Ungültiger Header: " + channels + " Kanäle, " + sampleRate + " Hz");
+
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, bitsPerSample, channels,
+                channels * bitsPerSample / 8, sampleRate, bigEndian);
+    }
+
+
+    /**
+     * AIFF speichert die Samplerate als 80-Bit-Gleitkommazahl (IEEE 754 extended precision).
+     */
+    private static double extendedToDouble(ByteBuffer buffer, int index) {
+        int exponent = ((buffer.get(index) & 0x7F) << 8) | (buffer.get(index + 1) & 0xFF);
+        long mantissa = buffer.getLong(index + 2);
+        // Die Mantisse enthält das führende Bit explizit und ist vorzeichenlos
+        double value = ((double) (mantissa >>> 1) * 2 + (mantissa & 1)) * Math.pow(2, exponent - 16383 - 63);
+        return (buffer.get(index) & 0x80) != 0 ? -value : value;
+    }
+
+
+    /**
+     * Schreibt eine positive Zahl als 80-Bit-Gleitkommazahl (Gegenstück zu extendedToDouble()).
+     */
+    private static void putExtended(ByteBuffer buffer, double value) {
+        // Die Mantisse von double hat ein implizites führendes Bit, das hier explizit gesetzt wird
+        long mantissa = ((Double.doubleToLongBits(value) & ((1L << 52) - 1)) | (1L << 52)) << 11;
+        buffer.putShort((short) (Math.getExponent(value) + 16383)).putLong(mantissa);
+    }
+
+
+    private static byte[] fourCC(String id) {
+        return id.getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    private static String fourCC(ByteBuffer buffer, int index) {
+        return new String(new byte[]{buffer.get(index), buffer.get(index + 1), buffer.get(index + 2), buffer.get(index + 3)},
+                StandardCharsets.US_ASCII);
+    }
+
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException, UnsupportedAudioFileException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new UnsupportedAudioFileException("Die Datei endet unerwartet!");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Schreibt PCM-Daten direkt in eine WAV- oder AIFF-Datei. Der Header wird zu Beginn mit der Länge 0
+ * geschrieben und beim Schließen mit der tatsächlichen Länge überschrieben, sodass die Länge
+ * vorher nicht bekannt sein muss und nie das gesamte Signal im Speicher liegt.
+ * Frames können angehängt oder an eine bestimmte Position geschrieben werden (z.B. bei reverse()).
+ */
+final class PcmFileWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final AudioFileFormat.Type type;
+    private final AudioFormat format;
+    private final int headerLength;
+    private long frames;
+
+
+    /**
+     * Erstellt die Datei (bzw. überschreibt eine bestehende) und schreibt den vorläufigen Header.
+     * @param file Die zu schreibende Datei
+     * @param type WAVE oder AIFF
+     * @param format Format der PCM-Daten; die Byte-Reihenfolge muss zum Dateityp passen
+     */
+    PcmFileWriter(File file, AudioFileFormat.Type type, AudioFormat format) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.type = type;
+        this.format = format;
+
+        ByteBuffer header = PcmFile.header(type, format, 0);
+        this.headerLength = header.remaining();
+
+        try {
+            writeFully(header);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Hängt kodierte Frames an die Datei an.
+     * @param bytes Die kodierten Frames, beginnend bei Index 0
+     * @param length Anzahl der zu schreibenden bytes; muss ein Vielfaches der Framegröße sein
+     */
+    void write(byte[] bytes, int length) throws IOException {
+        assert length % format.getFrameSize() == 0 : "Es können nur vollständige Frames geschrieben werden!";
+
+        write(bytes, length, frames);
+    }
+
+
+    /**
+     * Schreibt kodierte Frames an eine bestimmte Position der Datei. Lücken werden vom Dateisystem mit 0 gefüllt.
+     * @param bytes Die kodierten Frames, beginnend bei Index 0
+     * @param length Anzahl der zu schreibenden bytes; muss ein Vielfaches der Framegröße sein
+     * @param frame Position des ersten Frames innerhalb der PCM-Daten
+     */
+    void write(byte[] bytes, int length, long frame) throws IOException {
+        assert length % format.getFrameSize() == 0 : "Es können nur vollständige Frames geschrieben werden!";
+        assert frame >= 0 : "Die Position darf nicht negativ sein!";
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        long position = headerLength + frame * format.getFrameSize();
+        while (buffer.hasRemaining())
+            channel.write(buffer, position + buffer.position());
+
+        frames = Math.max(frames, frame + length / format.getFrameSize());
+    }
+
+
+    /**
+     * Füllt den Daten-Chunk auf eine gerade Länge auf und überschreibt den Header mit der endgültigen Länge.
+     */
+    public void close() throws IOException {
+        try {
+            if ((frames * format.getFrameSize() & 1) != 0)
+                channel.write(ByteBuffer.allocate(1), headerLength + frames * format.getFrameSize());
+
+            ByteBuffer header = PcmFile.header(type, format, frames);
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+
+            AudioProcessor.LOGGER.info("Es wurden {} Frames in die Datei geschrieben", frames);
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,134 @@
+package podCarsten.backend;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ringpuffer für kodierte PCM-Blöcke zwischen genau einem Thread, der die Blöcke berechnet (Produzent), und
+ * genau einem Thread, der sie an die Soundkarte weitergibt (Konsument). Alle Puffer werden im Konstruktor
+ * angelegt, danach entstehen keine neuen Objekte und es wird nichts gesperrt.
+ *      <br><br>
+ * Beide Seiten arbeiten mit dem Index eines Fachs: Der Produzent holt sich mit claim() ein freies Fach,
+ * schreibt die kodierten Frames in bytes() und gibt das Fach mit publish() frei. Der Konsument holt sich mit
+ * peek() das älteste Fach und gibt es nach dem Lesen mit release() wieder zurück. Jedes Fach trägt außerdem die
+ * Position des Blocks im Signal und eine Generation, anhand derer der Konsument nach einem Sprung veraltete
+ * Blöcke verwerfen kann, ohne dass der Produzent den Puffer leeren muss.
+ *      <br><br>
+ * Der Zähler für Unterläufe wird vom Konsumenten erhöht, wenn er keinen Block vorfindet, obwohl er einen
+ * hätte ausgeben müssen.
+ */
+public final class PcmRing {
+
+    private final byte[][] blocks;
+    private final int[] frames;
+    private final int[] positions;
+    private final int[] generations;
+
+    // Anzahl der bisher freigegebenen (head) bzw. gelesenen (tail) Blöcke; jeweils nur von einer Seite geschrieben
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+
+
+    /**
+     * @param capacity Anzahl der Blöcke, die im Voraus berechnet werden können
+     * @param blockBytes Maximale Größe eines kodierten Blocks in bytes
+     */
+    public PcmRing(int capacity, int blockBytes) {
+        assert capacity > 0 : "Der Ringpuffer muss mindestens einen Block fassen! Kapazität: " + capacity;
+        assert blockBytes > 0 : "Die Größe eines Blocks ist ungültig! Größe: " + blockBytes;
+
+        this.blocks = new byte[capacity][blockBytes];
+        this.frames = new int[capacity];
+        this.positions = new int[capacity];
+        this.generations = new int[capacity];
+    }
+
+
+
+    // PRODUZENT
+
+    /**
+     * @return Das nächste freie Fach oder -1, falls der Puffer voll ist
+     */
+    public int claim() {
+        long next = head.get();
+        return next - tail.get() < blocks.length ? (int) (next % blocks.length) : -1;
+    }
+
+    /**
+     * Gibt das zuvor mit claim() geholte Fach für den Konsumenten frei.
+     * @param frames Anzahl der Frames im Block
+     * @param position Position des ersten Frames im Signal
+     * @param generation Generation, zu der der Block berechnet wurde
+     */
+    public void publish(int slot, int frames, int position, int generation) {
+        assert slot == head.get() % blocks.length : "Es wurde ein anderes Fach beschrieben als das von claim()! Fach: " + slot;
+
+        this.frames[slot] = frames;
+        this.positions[slot] = position;
+        this.generations[slot] = generation;
+        head.lazySet(head.get() + 1);
+    }
+
+
+
+    // KONSUMENT
+
+    /**
+     * @return Das älteste freigegebene Fach oder -1, falls der Puffer leer ist
+     */
+    public int peek() {
+        long next = tail.get();
+        return next < head.get() ? (int) (next % blocks.length) : -1;
+    }
+
+    /**
+     * Gibt das zuletzt mit peek() gelesene Fach an den Produzenten zurück.
+     */
+    public void release() {
+        assert tail.get() < head.get() : "Es gibt kein Fach, das zurückgegeben werden kann!";
+
+        tail.lazySet(tail.get() + 1);
+    }
+
+    public void recordUnderrun() {
+        underruns.incrementAndGet();
+    }
+
+
+
+    // FÄCHER
+
+    public byte[] bytes(int slot) {
+        return blocks[slot];
+    }
+
+    public int frames(int slot) {
+        return frames[slot];
+    }
+
+    public int position(int slot) {
+        return positions[slot];
+    }
+
+    public int generation(int slot) {
+        return generations[slot];
+    }
+
+
+
+    /**
+     * @return Anzahl der Blöcke, die berechnet, aber noch nicht gelesen wurden
+     */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    public int capacity() {
+        return blocks.length;
+    }
+
+    public long underruns() {
+        return underruns.get();
+    }
+}
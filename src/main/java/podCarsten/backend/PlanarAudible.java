@@ -0,0 +1,114 @@
+package podCarsten.backend;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * Audible-Implementierung, deren Samples bereits dekodiert in einer Datei des DecodedCache liegen: Kanal für
+ * Kanal (planar) als int32 in der internen Darstellung von AudioProcessor. Die Datei wird in den Speicher
+ * abgebildet (memory-mapped); copySamples() ist damit ein reines Kopieren ohne Dekodierung oder Umrechnung
+ * des Formats, das erneute Lesen übernimmt der Page-Cache des Betriebssystems.
+ *      <br><br>
+ * Alle Operationen außer copySamples() stammen wie bei MappedAudible aus SegmentedAudible.
+ */
+final class PlanarAudible extends SegmentedAudible {
+
+    // Maximale Anzahl der Samples eines abgebildeten Segments, da ein MappedByteBuffer höchstens 2 GB groß sein kann
+    static final int SEGMENT_SAMPLES = 1 << 28;
+
+    final IntBuffer[][] segments;       // Pro Kanal und Segment
+    final float sampleRate;
+
+
+    PlanarAudible(IntBuffer[][] segments, int length, float sampleRate, AudioEffect[][] audioEffects) {
+        super(length, audioEffects);
+        this.segments = segments;
+        this.sampleRate = sampleRate;
+    }
+
+
+    /**
+     * Bildet die Samples aller Kanäle segmentweise in den Speicher ab.
+     * @param path Die Datei
+     * @param dataOffset Position des ersten Samples des ersten Kanals in bytes; die Kanäle folgen direkt aufeinander
+     * @param channels Anzahl der Kanäle
+     * @param length Anzahl der Samples pro Kanal
+     * @return eine Instanz ohne Effekte
+     */
+    static PlanarAudible open(Path path, long dataOffset, int channels, int length, float sampleRate) throws IOException {
+        assert channels > 0 && length > 0 : "Ungültiges Format! Kanäle: " + channels + " | Länge: " + length;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int segmentCount = (length + SEGMENT_SAMPLES - 1) / SEGMENT_SAMPLES;
+            IntBuffer[][] segments = new IntBuffer[channels][segmentCount];
+
+            // Die Abbildung bleibt auch nach dem Schließen des Channels gültig
+            for (int c = 0; c < channels; c++) {
+                for (int s = 0; s < segmentCount; s++) {
+                    long from = dataOffset + ((long) c * length + (long) s * SEGMENT_SAMPLES) * Integer.BYTES;
+                    int samples = Math.min(SEGMENT_SAMPLES, length - s * SEGMENT_SAMPLES);
+                    segments[c][s] = channel.map(FileChannel.MapMode.READ_ONLY, from, (long) samples * Integer.BYTES)
+                            .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                }
+            }
+
+            return new PlanarAudible(segments, length, sampleRate,
+                    Stream.generate(() -> new AudioEffect[0]).limit(channels).toArray(AudioEffect[][]::new));
+        }
+    }
+
+
+    Object storage() {
+        return segments;
+    }
+
+    SegmentedAudible withEffects(AudioEffect[][] audioEffects) {
+        return new PlanarAudible(segments, length, sampleRate, audioEffects);
+    }
+
+
+
+    // BLOCK 3
+
+    /**
+     * Kopiert den Bereich mit absoluten Zugriffen direkt in die übergebenen Arrays, sodass mehrere Threads
+     * gleichzeitig lesen können und beim blockweisen Abspielen keine neuen Arrays entstehen.
+     */
+    public void copySamples(int fromSample, int numSamples, int[][] target) {
+        assert fromSample >= 0 && numSamples >= 0 && fromSample + numSamples <= length : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples;
+        assert target.length == segments.length : "Die Anzahl der Kanäle stimmt nicht überein!";
+
+        for (int channel = 0; channel < segments.length; channel++) {
+            int copied = 0;
+            while (copied < numSamples) {
+                int sample = fromSample + copied;
+                int sampleInSegment = sample % SEGMENT_SAMPLES;
+                int count = Math.min(numSamples - copied, SEGMENT_SAMPLES - sampleInSegment);
+
+                segments[channel][sample / SEGMENT_SAMPLES].get(sampleInSegment, target[channel], copied, count);
+                copied += count;
+            }
+        }
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+
+    public String toString() {
+        String s = "\n";
+
+        s += " - PlanarAudible -\n";
+        s += "Länge: " + String.format("%.2f", length / sampleRate) + " s\n";
+        s += "Kanäle: " + audioEffects.length + "\n";
+        s += "Segmente pro Kanal: " + segments[0].length + "\n";
+
+        return s;
+    }
+}
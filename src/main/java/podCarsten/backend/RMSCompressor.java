@@ -1,54 +1,77 @@
 package podCarsten.backend;
 
-import java.util.Arrays;
+import java.util.List;
 
 import static podCarsten.backend.AudioProcessor.LOGGER;
 
 record RMSCompressor(double reductionFactor, double ratio, double thresholdValue, double attackFactor, double releaseFactor,
-                     int rmsIndex, int[] rmsWindow, int[] processedSamples) implements AudioEffect {
+                     RMSDetector detector, int[] processedSamples) implements AudioEffect {
     // Da das record package-private ist, erhält die IL keinen Zugriff auf die Daten.
 
 
-    // Die Größe des RMS-Fensters ist zeitlich vordefiniert.
+    // Standardgröße des RMS-Fensters in Sekunden
     static final double RMS_SECONDS = 0.002;
 
 
 
     /**
-     * Verarbeitet die mitgegeben Samples und speichert diese in der zurückgegebenen Instanz.
-     * In rmsWindow[] werden die letzten Samples gespeichert, um daraus den aktuellen RMS-Wert zu
-     * errechnen, aus dem das Level der Kompression hervorgeht.
+     * Aktueller Stand der Kompression und der RMS-Detektor mit den letzten Samples.
+     */
+    static final class CompressorState implements State {
+        double reductionFactor;
+        RMSDetector detector;
+
+        public State copy() {
+            CompressorState copy = new CompressorState();
+            copy.reductionFactor = reductionFactor;
+            copy.detector = detector.copy();
+            return copy;
+        }
+
+        public void set(State state) {
+            CompressorState other = (CompressorState) state;
+            reductionFactor = other.reductionFactor;
+            if (!detector.set(other.detector))
+                detector = other.detector.copy();
+        }
+    }
+
+
+    public State createState() {
+        CompressorState state = new CompressorState();
+        state.reductionFactor = reductionFactor;
+        state.detector = detector.copy();
+        return state;
+    }
+
+
+    /**
+     * Verarbeitet die mitgegeben Samples blockweise und schreibt den Zustand in state fort.
+     * Der RMSDetector speichert die letzten Samples und liefert daraus für jedes Sample den aktuellen
+     * RMS-Wert, aus dem das Level der Kompression hervorgeht.
      *      <br><br>
      * Die Implementierung des Kompressors habe ich vollständig selber entwickelt (mit Vorwissen
      * aus der Musiktechnik zu Themen, wie RMS und grundlegenden Funktionen von Kompressoren).
      *      <br><br>
      * Mehr Informationen zur Funktionsweise von RMS-Kompressoren in der Dokumentation.
-     *      <br><br>
-     * @param samples Zu verarbeitende Samples
-     * @return Neue Instanz, die die verarbeiteten Samples enthält.
      */
-    public AudioEffect processSamples(int... samples) {
+    public void process(int[] input, int inputOffset, int[] output, int outputOffset, int length, State state) {
+        CompressorState compressorState = (CompressorState) state;
+
         // Speichere alle sich ändernden Werte in Variablen
-        double reductionFactor = this.reductionFactor;
-        int rmsIndex = this.rmsIndex;
-        int[] rmsWindow = this.rmsWindow.clone();
-        int[] processedSamples = new int[samples.length];
+        double reductionFactor = compressorState.reductionFactor;
+        RMSDetector detector = compressorState.detector;
 
         // Da Kompression das Lautstärkelevel stark verändern kann, wird das gesamte Signal
         // nach der Kompression verstärkt, um das Durchschnittslevel approximiert konstant zu halten.
         double autoGain = 0.175 * ratio * Math.pow(2, -20 * thresholdValue / Integer.MAX_VALUE) + 1;
 
-        for (int i = 0; i < samples.length; i++) {
-            // Ersetzte den ältesten Wert aus dem array mit dem Aktuellen.
-            // Funktionsweise ähnlich zu Moving-Average-Algorithmen.
-            rmsWindow[rmsIndex = (rmsIndex + 1) % rmsWindow.length] = samples[i];
+        for (int i = 0; i < length; i++) {
+            int sample = input[inputOffset + i];
 
-            // Errechne den aktuellen Lautstärkewert.
-            // Da die hohen Zahlen schnell einen Overflow erzeugen, wird erst durch die Fenstergröße geteilt
-            // und dann erneut multipliziert:
-            //      s² / windowLength  <=>  (s / windowLength) * s
-            double rmsValue = Math.sqrt((double) Arrays.stream(this.rmsWindow)
-                    .mapToLong(s -> ((long) s / this.rmsWindow.length) * s).sum());
+            // Ersetzte den ältesten Wert im Fenster mit dem Aktuellen und errechne den aktuellen Lautstärkewert.
+            // Funktionsweise ähnlich zu Moving-Average-Algorithmen.
+            double rmsValue = detector.add(sample);
 
             // Errechne den Ziellautstärkewert für die Eingabe
             double targetValue = rmsValue < thresholdValue ? rmsValue : thresholdValue + (rmsValue - thresholdValue) / ratio;
@@ -60,13 +83,35 @@ record RMSCompressor(double reductionFactor, double ratio, double thresholdValue
             else reductionFactor += (1 - reductionFactor) * releaseFactor;
 
             // Wende die Kompression und die Lautstärkekompensation an
-            processedSamples[i] = (int) (samples[i] * reductionFactor * autoGain);
+            output[outputOffset + i] = (int) (sample * reductionFactor * autoGain);
         }
 
-        if (samples.length > 4096)
+        compressorState.reductionFactor = reductionFactor;
+
+        if (length > 4096)
             LOGGER.info("Ein RMS-Compressor wurde auf das Audiosignal angewendet. Aktueller gain-Reduktion: {}; Aktueller auto-gain: {}", reductionFactor, autoGain);
+    }
+
+
+    public boolean acceptsState(State state) {
+        return state instanceof CompressorState other && other.detector.windowLength() == detector.windowLength();
+    }
+
+
+    /**
+     * Der Inhalt des RMS-Fensters gehört zum Anfangszustand. Ist es nicht leer, wird der Detektor selbst
+     * (also seine Identität) Teil des Schlüssels.
+     */
+    public Object cacheKey() {
+        return List.of(RMSCompressor.class, reductionFactor, ratio, thresholdValue, attackFactor, releaseFactor,
+                detector.isSilent() ? detector.windowLength() : detector);
+    }
+
 
-        return new RMSCompressor(reductionFactor, ratio, thresholdValue, attackFactor, releaseFactor, rmsIndex, rmsWindow, processedSamples);
+    public AudioEffect withState(State state, int[] processedSamples) {
+        CompressorState compressorState = (CompressorState) state;
+        return new RMSCompressor(compressorState.reductionFactor, ratio, thresholdValue, attackFactor, releaseFactor,
+                compressorState.detector, processedSamples);
     }
 
 
@@ -84,9 +129,10 @@ record RMSCompressor(double reductionFactor, double ratio, double thresholdValue
      * @param audioEffect Instanz, die den alten Zustand enthält
      */
     public AudioEffect readFromPreviousEffect(AudioEffect audioEffect) {
+        // Das RMS-Fenster wird nur bei gleicher Größe übernommen
         if (audioEffect instanceof RMSCompressor other) // Impliziert: audioEffect != null
             return new RMSCompressor(other.reductionFactor, ratio, thresholdValue, attackFactor, releaseFactor,
-                    other.rmsIndex, other.rmsWindow, other.processedSamples);
+                    other.detector.windowLength() == detector.windowLength() ? other.detector : detector, other.processedSamples);
         return this;
     }
 }
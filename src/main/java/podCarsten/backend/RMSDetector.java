@@ -0,0 +1,133 @@
+package podCarsten.backend;
+
+/**
+ * Errechnet den RMS-Wert (quadratischer Mittelwert) über ein gleitendes Fenster der letzten Samples.
+ *      <br><br>
+ * Statt bei jedem Sample über das gesamte Fenster zu summieren, wird eine laufende Summe der Quadrate
+ * geführt: Das neue Sample wird addiert, das aus dem Fenster fallende subtrahiert. Der Aufwand pro Sample
+ * ist dadurch unabhängig von der Fenstergröße. Da sich bei diesem Vorgehen Rundungsfehler aufsummieren,
+ * wird die Summe in regelmäßigen Abständen vollständig neu berechnet.
+ *      <br><br>
+ * Eine Instanz ist veränderlich und nicht threadsicher. Sie wird vom RMS-Kompressor verwendet, eignet
+ * sich aber auch für Pegelanzeigen oder die Übersicht des Audiosignals.
+ */
+public final class RMSDetector {
+
+    // Anzahl der Samples, nach denen die Summe spätestens neu berechnet wird
+    static final int RESYNC_SAMPLES = 1 << 16;
+
+    private final int[] window;
+    private int index;
+    private double squareSum;
+    private int sinceResync;
+
+
+    /**
+     * @param windowLength Größe des Fensters in Samples
+     */
+    public RMSDetector(int windowLength) {
+        assert windowLength > 0 : "Das RMS-Fenster muss mindestens ein Sample lang sein!";
+        this.window = new int[windowLength];
+    }
+
+
+    /**
+     * @param seconds Größe des Fensters in Sekunden
+     * @param sampleRate Samplerate des Signals
+     */
+    public static RMSDetector ofSeconds(double seconds, float sampleRate) {
+        return new RMSDetector(Math.max(1, (int) (seconds * sampleRate)));
+    }
+
+
+    private RMSDetector(RMSDetector other) {
+        this.window = other.window.clone();
+        this.index = other.index;
+        this.squareSum = other.squareSum;
+        this.sinceResync = other.sinceResync;
+    }
+
+
+    /**
+     * @return Eine unabhängige Kopie mit demselben Fensterinhalt
+     */
+    public RMSDetector copy() {
+        return new RMSDetector(this);
+    }
+
+
+    /**
+     * Übernimmt den Fensterinhalt eines anderen Detektors, ohne ein neues Fenster anzulegen.
+     * @return false, falls die Fenster unterschiedlich groß sind und nichts übernommen wurde
+     */
+    public boolean set(RMSDetector other) {
+        if (other.window.length != window.length)
+            return false;
+
+        System.arraycopy(other.window, 0, window, 0, window.length);
+        index = other.index;
+        squareSum = other.squareSum;
+        sinceResync = other.sinceResync;
+        return true;
+    }
+
+
+    /**
+     * Ersetzt das älteste Sample im Fenster durch das neue.
+     * @param sample Das neue Sample
+     * @return Der RMS-Wert inklusive des neuen Samples
+     */
+    public double add(int sample) {
+        int oldest = window[index];
+        window[index] = sample;
+        if (++index == window.length)
+            index = 0;
+
+        if (++sinceResync >= RESYNC_SAMPLES && sinceResync >= window.length)
+            resync();
+        else squareSum += (double) sample * sample - (double) oldest * oldest;
+
+        return rms();
+    }
+
+
+    /**
+     * @return Der aktuelle RMS-Wert des Fensters
+     */
+    public double rms() {
+        // Durch Rundungsfehler kann die Summe bei Stille knapp unter 0 fallen
+        return Math.sqrt(Math.max(0, squareSum) / window.length);
+    }
+
+
+    /**
+     * @return true, falls das Fenster nur Nullen enthält (z.B. bei einem neuen Detektor)
+     */
+    public boolean isSilent() {
+        for (int s : window)
+            if (s != 0)
+                return false;
+        return true;
+    }
+
+
+    /**
+     * @return Größe des Fensters in Samples
+     */
+    public int windowLength() {
+        return window.length;
+    }
+
+
+    /**
+     * Berechnet die Summe der Quadrate vollständig neu, um aufsummierte Rundungsfehler zu verwerfen.
+     */
+    private void resync() {
+        double sum = 0;
+        for (int s : window)
+            sum += (double) s * s;
+
+        squareSum = sum;
+        sinceResync = 0;
+    }
+}
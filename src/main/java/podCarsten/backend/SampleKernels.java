@@ -0,0 +1,58 @@
+package podCarsten.backend;
+
+import static podCarsten.backend.AudioProcessor.LOGGER;
+
+/**
+ * Grundlegende Rechenoperationen auf Samples, die bei jedem Export und jeder Analyse über das gesamte
+ * Signal laufen (Verstärken, Fades, höchster Ausschlag).
+ *      <br><br>
+ * Ist das Modul jdk.incubator.vector verfügbar (Start mit --add-modules jdk.incubator.vector), werden die
+ * Operationen, bei denen es sich lohnt, mit SIMD-Befehlen umgesetzt (VectorKernels), ansonsten skalar (ScalarKernels). Beide
+ * Implementierungen liefern exakt die gleichen Ergebnisse wie die entsprechenden Java-Ausdrücke.
+ *      <br><br>
+ * VectorKernels liegt im optionalen Quellordner src/vector/java, da es nur mit dem Modul kompiliert werden kann
+ * (javac --add-modules jdk.incubator.vector). Ohne diesen Ordner bleibt der Rest des Projekts kompilierbar und
+ * es wird ScalarKernels verwendet.
+ */
+interface SampleKernels {
+
+    /** Die beim Start ausgewählte Implementierung */
+    SampleKernels INSTANCE = load();
+
+
+    /**
+     * Lädt die Vector-Implementierung über Reflection, damit ihre Klasse ohne das Modul nie geladen wird und
+     * ohne den Quellordner src/vector/java nicht vorhanden sein muss.
+     */
+    private static SampleKernels load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                SampleKernels kernels = (SampleKernels) Class.forName("podCarsten.backend.VectorKernels").getDeclaredConstructor().newInstance();
+                LOGGER.info("Nutze SIMD-Operationen für die Verarbeitung der Samples: {}", kernels);
+                return kernels;
+            } catch (ClassNotFoundException e) {
+                LOGGER.info("Die SIMD-Operationen wurden nicht mitkompiliert (src/vector/java)");
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LOGGER.warn("Die SIMD-Operationen konnten nicht geladen werden: {}", e.toString());
+            }
+        }
+        return new ScalarKernels();
+    }
+
+
+    /**
+     * Entspricht max(Math.abs(samples[i])) für alle i in [from, to).
+     * @return Integer.MIN_VALUE, falls der Bereich leer ist
+     */
+    int maxAbs(int[] samples, int from, int to);
+
+    /**
+     * Entspricht samples[i] = (int) (samples[i] * factor) für alle i in [from, to).
+     */
+    void gain(int[] samples, int from, int to, double factor);
+
+    /**
+     * Entspricht samples[offset + i] = (int) (samples[offset + i] * gains[gainOffset + i]) für alle i in [0, length).
+     */
+    void multiply(int[] samples, int offset, double[] gains, int gainOffset, int length);
+}
@@ -0,0 +1,29 @@
+package podCarsten.backend;
+
+/**
+ * Skalare Umsetzung von SampleKernels, falls jdk.incubator.vector nicht verfügbar ist.
+ * Dient außerdem als Grundlage für VectorKernels.
+ */
+class ScalarKernels implements SampleKernels {
+
+    public int maxAbs(int[] samples, int from, int to) {
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++)
+            max = Math.max(max, Math.abs(samples[i]));
+        return max;
+    }
+
+    public void gain(int[] samples, int from, int to, double factor) {
+        for (int i = from; i < to; i++)
+            samples[i] = (int) (samples[i] * factor);
+    }
+
+    public void multiply(int[] samples, int offset, double[] gains, int gainOffset, int length) {
+        for (int i = 0; i < length; i++)
+            samples[offset + i] = (int) (samples[offset + i] * gains[gainOffset + i]);
+    }
+
+    public String toString() {
+        return "ScalarKernels";
+    }
+}
@@ -0,0 +1,140 @@
+package podCarsten.backend;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static podCarsten.backend.AudioProcessor.*;
+
+/**
+ * Gemeinsame Grundlage der Audible-Implementierungen, deren Samples nicht im Speicher liegen, sondern in
+ * Segmenten aus einer in den Speicher abgebildeten Datei gelesen werden (MappedAudible, PlanarAudible). Die
+ * Unterklassen legen nur fest, wie copySamples() einen Bereich aus ihren Segmenten liest.
+ *      <br><br>
+ * splice(), copySamples(), getPeakInDBFS() und getFFTdBFS() arbeiten direkt auf den abgebildeten Daten.
+ * Die Operationen aus Block 2 und getOutput() werden als Plan über lazy() ausgeführt, der das Signal
+ * blockweise mit einem BlockRenderer liest und verarbeitet. Das gesamte Signal liegt damit nie im Speicher.
+ */
+abstract sealed class SegmentedAudible implements Audible permits MappedAudible, PlanarAudible {
+
+    final int length;                   // Anzahl der Samples pro Kanal
+    final AudioEffect[][] audioEffects; // Chain of all audioEffects
+
+
+    SegmentedAudible(int length, AudioEffect[][] audioEffects) {
+        this.length = length;
+        this.audioEffects = audioEffects;
+    }
+
+
+    /**
+     * @return Das Objekt, in dem die Segmente liegen. Alle Instanzen mit denselben Samples (z.B. nach
+     * setEffects()) geben dasselbe Objekt zurück, es dient daher als Schlüssel für StageCache und AnalysisPipeline.
+     */
+    abstract Object storage();
+
+    /**
+     * @return Eine Instanz mit denselben Segmenten und den angegebenen Effekten
+     */
+    abstract SegmentedAudible withEffects(AudioEffect[][] audioEffects);
+
+
+    /**
+     * Liest einen Bereich in neue Kanal-Arrays.
+     */
+    private int[][] readRange(int fromSample, int numSamples) {
+        int[][] samples = new int[audioEffects.length][numSamples];
+        copySamples(fromSample, numSamples, samples);
+        return samples;
+    }
+
+
+
+    // BLOCK 1
+
+    public Audible setEffects(AudioEffect... audioEffects) {
+        assert audioEffects != null : "Das AudioEffect-Array darf nicht null sein!";
+        assert Arrays.stream(audioEffects).noneMatch(Objects::isNull) : "Einzelne Effektgeräte dürfen nicht null sein!";
+
+        AudioEffect[][] perChannel = new AudioEffect[this.audioEffects.length][];
+        Arrays.fill(perChannel, audioEffects);
+        return withEffects(perChannel);
+    }
+
+    public Audible setInput(byte[] bytes, AudioFormat audioFormat) {
+        return new AudioProcessor(new int[audioEffects.length][0], getSampleRate(), audioEffects).setInput(bytes, audioFormat);
+    }
+
+    public Audible setInput(AudioInputStream stream, LoadListener listener) throws IOException {
+        return new AudioProcessor(new int[audioEffects.length][0], getSampleRate(), audioEffects).setInput(stream, listener);
+    }
+
+    /**
+     * Liest nur den angeforderten Bereich. Dadurch bleibt das Abspielen und das Erstellen
+     * der Übersicht unabhängig von der Länge der Datei.
+     */
+    public Audible splice(int fromSample, int numSamples, Audible lastAudible) {
+        assert fromSample >= 0 && fromSample < length : "Die angegebene Startzeit ist ungültig! Startzeit: " + fromSample;
+        assert numSamples > 0 && fromSample + numSamples <= length : "Der angegebene Zeitraum ist ungültig! Startzeit: " + fromSample + " | Länge: " + numSamples + " | Anzahl aller Samples: " + length;
+
+        return new AudioProcessor(readRange(fromSample, numSamples), getSampleRate(), readEffectsFrom(audioEffects, lastAudible));
+    }
+
+
+
+    // BLOCK 2
+
+    public Audible processEffects() {
+        return lazy().processEffects();
+    }
+
+    public Audible normalize() {
+        return lazy().normalize();
+    }
+
+    public Audible reverse() {
+        return lazy().reverse();
+    }
+
+    public Audible fadeIn(double seconds) {
+        return lazy().fadeIn(seconds);
+    }
+
+    public Audible fadeOut(double seconds) {
+        return lazy().fadeOut(seconds);
+    }
+
+    public Audible fade(double seconds) {
+        return lazy().fade(seconds);
+    }
+
+
+
+    // BLOCK 3
+
+    public byte[] getOutput(AudioFormat audioFormat) {
+        return lazy().getOutput(audioFormat);
+    }
+
+    /**
+     * Errechnet den maximalen Ausschlag blockweise und parallel (siehe AnalysisPipeline), ohne das gesamte
+     * Signal zu lesen.
+     */
+    public double getPeakInDBFS() {
+        return intTOdBFS(AnalysisPipeline.PEAK.analyse(this).get(SignalAnalysers.PEAK) * HEADROOM_DIVISOR);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public double getFFTdBFS(double frequency) {
+        return Goertzel.of(this, frequency);
+    }
+
+    public AudioEffect[][] getAudioEffects() {
+        return Arrays.stream(audioEffects).map(AudioEffect[]::clone).toArray(AudioEffect[][]::new);
+    }
+}
@@ -0,0 +1,31 @@
+package podCarsten.backend;
+
+/**
+ * Eine Analyse über das gesamte Signal, die in beliebige aufeinanderfolgende Abschnitte aufgeteilt werden
+ * kann. Jeder Abschnitt wird unabhängig ausgewertet, die Teilergebnisse werden danach der Reihe nach mit
+ * merge() zusammengeführt. Dadurch kann die AnalysisPipeline mehrere Analysen in einem einzigen Durchlauf
+ * über die Samples berechnen, die Abschnitte auf alle Kerne verteilen oder sie nebenbei beim Aufbau der
+ * WaveformPyramid auswerten.
+ *      <br><br>
+ * Ergebnisse müssen unveränderlich sein. Die Abschnitte beginnen immer an einem Vielfachen von CHUNK_FRAMES
+ * (gezählt ab dem Anfang des Signals); nur der letzte Abschnitt darf kürzer sein.
+ * @param <R> Typ des Ergebnisses
+ */
+interface SignalAnalyser<R> {
+
+    /**
+     * Wertet einen Abschnitt aus.
+     * @param samples Die Samples pro Kanal; dürfen nicht verändert werden
+     * @param from Position des ersten Samples des Abschnitts in den Arrays
+     * @param to Position nach dem letzten Sample des Abschnitts
+     */
+    R analyse(int[][] samples, int from, int to);
+
+    /**
+     * Führt die Ergebnisse zweier direkt aufeinanderfolgender Abschnitte zusammen. Muss assoziativ sein,
+     * d.h. merge(merge(a, b), c) ergibt dasselbe wie merge(a, merge(b, c)).
+     * @param earlier Das Ergebnis des vorderen Abschnitts
+     * @param later Das Ergebnis des direkt anschließenden Abschnitts
+     */
+    R merge(R earlier, R later);
+}
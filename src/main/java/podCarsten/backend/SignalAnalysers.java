@@ -0,0 +1,247 @@
+package podCarsten.backend;
+
+import java.util.Arrays;
+
+import static podCarsten.backend.AudioProcessor.*;
+
+/**
+ * Die Analysen, die beim Laden jeder Datei im selben Durchlauf wie die WaveformPyramid berechnet werden
+ * (siehe AnalysisPipeline.STANDARD): höchster Ausschlag, RMS pro Block, Gleichanteil, übersteuerte Stellen
+ * und ein Histogramm der Amplituden.
+ */
+final class SignalAnalysers {
+
+    // Länge eines Blocks der RMS-Analyse, teilt CHUNK_FRAMES ohne Rest
+    static final int RMS_BLOCK_FRAMES = 4096;
+    // Ab diesem Betrag gilt ein Sample als übersteuert (-0,1 dBFS)
+    static final int CLIP_LEVEL = (int) (Integer.MAX_VALUE / HEADROOM_DIVISOR * Audible.dBToFactor(-0.1));
+    // Mindestanzahl aufeinanderfolgender übersteuerter Frames, damit diese als Übersteuerung zählen
+    static final int CLIP_RUN_FRAMES = 3;
+    // Anzahl der Klassen des Histogramms: eine pro Bit des Betrags (ca. 6 dB), dazu eine für 0
+    static final int HISTOGRAM_BINS = Integer.SIZE;
+
+    private SignalAnalysers() {}
+
+
+
+    // HÖCHSTER AUSSCHLAG
+
+    /**
+     * Der größte Betrag aller Samples (wie SampleKernels.maxAbs(), Integer.MIN_VALUE für ein leeres Signal).
+     * Das ist der Sample-Peak: Spitzen zwischen zwei Samples, die erst bei der Digital-Analog-Wandlung
+     * entstehen (True Peak nach ITU-R BS.1770, per Überabtastung gemessen), werden nicht erfasst. Diese liegen
+     * bei Sprache meist weniger als 1 dB darüber; dafür lässt RECOMMENDED_PEAK Reserve.
+     */
+    static final SignalAnalyser<Integer> PEAK = new SignalAnalyser<>() {
+        public Integer analyse(int[][] samples, int from, int to) {
+            int peak = Integer.MIN_VALUE;
+            for (int[] channel : samples)
+                peak = Math.max(peak, SampleKernels.INSTANCE.maxAbs(channel, from, to));
+            return peak;
+        }
+
+        public Integer merge(Integer earlier, Integer later) {
+            return Math.max(earlier, later);
+        }
+    };
+
+
+
+    // RMS PRO BLOCK
+
+    /**
+     * Summe der Quadrate aller Kanäle pro Block von RMS_BLOCK_FRAMES Frames.
+     * @param squares Summe der Quadrate pro Block; nur der letzte Block darf kürzer sein
+     * @param frames Anzahl der ausgewerteten Frames
+     * @param channels Anzahl der Kanäle
+     */
+    record BlockEnergy(double[] squares, int frames, int channels) {
+
+        /**
+         * @return Der RMS eines Blocks in dBFS
+         */
+        double rmsInDBFS(int block) {
+            int blockFrames = Math.min(RMS_BLOCK_FRAMES, frames - block * RMS_BLOCK_FRAMES);
+            return doubleTOdBFS(Math.sqrt(squares[block] / ((double) blockFrames * channels)) * HEADROOM_DIVISOR);
+        }
+
+        /**
+         * @return Der RMS des gesamten Signals in dBFS
+         */
+        double totalRmsInDBFS() {
+            return doubleTOdBFS(Math.sqrt(Arrays.stream(squares).sum() / ((double) frames * channels)) * HEADROOM_DIVISOR);
+        }
+    }
+
+    static final SignalAnalyser<BlockEnergy> BLOCK_RMS = new SignalAnalyser<>() {
+        public BlockEnergy analyse(int[][] samples, int from, int to) {
+            double[] squares = new double[(to - from + RMS_BLOCK_FRAMES - 1) / RMS_BLOCK_FRAMES];
+            for (int[] channel : samples) {
+                for (int block = 0; block < squares.length; block++) {
+                    double sum = 0;
+                    for (int i = from + block * RMS_BLOCK_FRAMES; i < Math.min(to, from + (block + 1) * RMS_BLOCK_FRAMES); i++)
+                        sum += (double) channel[i] * channel[i];
+                    squares[block] += sum;
+                }
+            }
+            return new BlockEnergy(squares, to - from, samples.length);
+        }
+
+        public BlockEnergy merge(BlockEnergy earlier, BlockEnergy later) {
+            assert earlier.frames() % RMS_BLOCK_FRAMES == 0 : "Nur der letzte Abschnitt darf einen unvollständigen Block enthalten!";
+
+            double[] squares = Arrays.copyOf(earlier.squares(), earlier.squares().length + later.squares().length);
+            System.arraycopy(later.squares(), 0, squares, earlier.squares().length, later.squares().length);
+            return new BlockEnergy(squares, earlier.frames() + later.frames(), earlier.channels());
+        }
+    };
+
+
+
+    // GLEICHANTEIL
+
+    /**
+     * @param sums Summe aller Samples pro Kanal
+     * @param frames Anzahl der ausgewerteten Frames
+     */
+    record DcOffset(long[] sums, long frames) {
+
+        /**
+         * @return Der Mittelwert eines Kanals relativ zur Vollaussteuerung (0 = kein Gleichanteil)
+         */
+        double factor(int channel) {
+            return frames == 0 ? 0 : (double) sums[channel] / frames * HEADROOM_DIVISOR / Integer.MAX_VALUE;
+        }
+    }
+
+    static final SignalAnalyser<DcOffset> DC_OFFSET = new SignalAnalyser<>() {
+        public DcOffset analyse(int[][] samples, int from, int to) {
+            long[] sums = new long[samples.length];
+            for (int channel = 0; channel < samples.length; channel++) {
+                long sum = 0;
+                for (int i = from; i < to; i++)
+                    sum += samples[channel][i];
+                sums[channel] = sum;
+            }
+            return new DcOffset(sums, to - from);
+        }
+
+        public DcOffset merge(DcOffset earlier, DcOffset later) {
+            long[] sums = earlier.sums().clone();
+            for (int channel = 0; channel < sums.length; channel++)
+                sums[channel] += later.sums()[channel];
+            return new DcOffset(sums, earlier.frames() + later.frames());
+        }
+    };
+
+
+
+    // ÜBERSTEUERUNG
+
+    /**
+     * Übersteuerte Frames (mindestens ein Kanal erreicht CLIP_LEVEL) und die Anzahl der Stellen mit mindestens
+     * CLIP_RUN_FRAMES aufeinanderfolgenden übersteuerten Frames. Stellen am Rand eines Abschnitts können sich
+     * im nächsten fortsetzen und werden daher erst beim Zusammenführen gezählt.
+     * @param frames Anzahl der ausgewerteten Frames
+     * @param clippedFrames Anzahl der übersteuerten Frames
+     * @param innerRuns Anzahl der Stellen, die keinen Rand des Abschnitts berühren
+     * @param leading Anzahl der übersteuerten Frames am Anfang des Abschnitts
+     * @param trailing Anzahl der übersteuerten Frames am Ende des Abschnitts
+     */
+    record Clipping(long frames, long clippedFrames, long innerRuns, long leading, long trailing) {
+
+        /**
+         * @return Anzahl aller übersteuerten Stellen
+         */
+        long runs() {
+            if (leading == frames)
+                return frames >= CLIP_RUN_FRAMES ? 1 : 0;
+            return innerRuns + (leading >= CLIP_RUN_FRAMES ? 1 : 0) + (trailing >= CLIP_RUN_FRAMES ? 1 : 0);
+        }
+    }
+
+    static final SignalAnalyser<Clipping> CLIPPING = new SignalAnalyser<>() {
+        public Clipping analyse(int[][] samples, int from, int to) {
+            long clippedFrames = 0;
+            long innerRuns = 0;
+            long leading = -1;
+            long run = 0;
+
+            for (int i = from; i < to; i++) {
+                boolean clipped = false;
+                for (int[] channel : samples)
+                    clipped |= Math.abs(channel[i]) >= CLIP_LEVEL;
+
+                if (clipped) {
+                    clippedFrames++;
+                    run++;
+                    continue;
+                }
+                if (leading < 0)
+                    leading = run;
+                else if (run >= CLIP_RUN_FRAMES)
+                    innerRuns++;
+                run = 0;
+            }
+
+            // Der gesamte Abschnitt ist übersteuert
+            if (leading < 0)
+                return new Clipping(to - from, clippedFrames, 0, run, run);
+            return new Clipping(to - from, clippedFrames, innerRuns, leading, run);
+        }
+
+        public Clipping merge(Clipping earlier, Clipping later) {
+            long frames = earlier.frames() + later.frames();
+            long clippedFrames = earlier.clippedFrames() + later.clippedFrames();
+            boolean earlierClipped = earlier.leading() == earlier.frames();
+            boolean laterClipped = later.leading() == later.frames();
+
+            if (earlierClipped && laterClipped)
+                return new Clipping(frames, clippedFrames, 0, frames, frames);
+            if (earlierClipped)
+                return new Clipping(frames, clippedFrames, later.innerRuns(), earlier.frames() + later.leading(), later.trailing());
+            if (laterClipped)
+                return new Clipping(frames, clippedFrames, earlier.innerRuns(), earlier.leading(), earlier.trailing() + later.frames());
+
+            long junction = earlier.trailing() + later.leading();
+            return new Clipping(frames, clippedFrames, earlier.innerRuns() + later.innerRuns() + (junction >= CLIP_RUN_FRAMES ? 1 : 0),
+                    earlier.leading(), later.trailing());
+        }
+    };
+
+
+
+    // HISTOGRAMM
+
+    /**
+     * Anzahl der Samples aller Kanäle pro Klasse. Klasse k enthält die Beträge mit genau k Bits, d.h. aus
+     * [2^(k-1), 2^k); Klasse 0 enthält die Samples mit dem Wert 0.
+     */
+    record Histogram(long[] counts) {
+
+        /**
+         * @return Die obere Grenze einer Klasse in dBFS
+         */
+        double upperDBFS(int bin) {
+            return doubleTOdBFS(Math.pow(2, bin) * HEADROOM_DIVISOR);
+        }
+    }
+
+    static final SignalAnalyser<Histogram> HISTOGRAM = new SignalAnalyser<>() {
+        public Histogram analyse(int[][] samples, int from, int to) {
+            long[] counts = new long[HISTOGRAM_BINS];
+            for (int[] channel : samples) {
+                for (int i = from; i < to; i++)
+                    counts[Math.min(HISTOGRAM_BINS - 1, Integer.SIZE - Integer.numberOfLeadingZeros(Math.abs(channel[i])))]++;
+            }
+            return new Histogram(counts);
+        }
+
+        public Histogram merge(Histogram earlier, Histogram later) {
+            long[] counts = earlier.counts().clone();
+            for (int bin = 0; bin < counts.length; bin++)
+                counts[bin] += later.counts()[bin];
+            return new Histogram(counts);
+        }
+    };
+}
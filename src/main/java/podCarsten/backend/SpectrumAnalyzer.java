@@ -0,0 +1,236 @@
+package podCarsten.backend;
+
+import java.util.Arrays;
+
+import static podCarsten.backend.AudioProcessor.HEADROOM_DIVISOR;
+import static podCarsten.backend.AudioProcessor.doubleTOdBFS;
+
+/**
+ * Errechnet das gesamte Spektrum eines kurzen Audiosignals (z.B. eines Blocks beim Abspielen) mit einer
+ * reellen Radix-2-FFT in O(N log N). Das reelle Signal der Länge N wird dafür als komplexes Signal der Länge
+ * N / 2 transformiert (gerade Samples als Real-, ungerade als Imaginärteil) und danach in die N / 2 + 1
+ * Frequenzen des reellen Signals aufgeteilt.
+ *      <br><br>
+ * Twiddle-Faktoren, Bitumkehr und Hann-Fenster werden im Konstruktor vorberechnet, alle Puffer werden
+ * wiederverwendet. Nach dem ersten Aufruf entstehen daher keine neuen Objekte mehr.
+ * Eine Instanz ist nicht threadsicher.
+ */
+public final class SpectrumAnalyzer {
+
+    private final int size;                 // Anzahl der analysierten Samples (Zweierpotenz)
+    private final float sampleRate;
+    private final double[] window;          // Hann-Fenster, ersetzt den vorherigen fade()
+    private final double windowSum;
+    private final double[] cos;             // cos(2 pi k / size) für k < size / 2
+    private final double[] sin;
+    private final int[] bitReversed;        // Bitumkehr für die komplexe FFT der Länge size / 2
+
+    private final double[] real;
+    private final double[] imaginary;
+    private final double[] magnitudes;      // Durchschnittlicher Betrag aller Kanäle pro Frequenz
+    private int[][] samples = new int[0][0];
+
+
+    /**
+     * @param size Anzahl der analysierten Samples, muss eine Zweierpotenz und mindestens 4 sein
+     * @param sampleRate SampleRate des Signals
+     */
+    public SpectrumAnalyzer(int size, float sampleRate) {
+        assert size >= 4 && Integer.bitCount(size) == 1 : "Die Länge muss eine Zweierpotenz sein! Länge: " + size;
+
+        this.size = size;
+        this.sampleRate = sampleRate;
+
+        int half = size / 2;
+        this.window = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++)
+            sum += window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size);
+        this.windowSum = sum;
+
+        this.cos = new double[half];
+        this.sin = new double[half];
+        for (int k = 0; k < half; k++) {
+            cos[k] = Math.cos(2 * Math.PI * k / size);
+            sin[k] = Math.sin(2 * Math.PI * k / size);
+        }
+
+        int bits = Integer.numberOfTrailingZeros(half);
+        this.bitReversed = new int[half];
+        for (int i = 0; i < half; i++)
+            bitReversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (Integer.SIZE - bits);
+
+        this.real = new double[half];
+        this.imaginary = new double[half];
+        this.magnitudes = new double[half + 1];
+    }
+
+
+    /**
+     * Analysiert die letzten size Samples des Signals bzw. das gesamte, mit Nullen aufgefüllte Signal, falls
+     * dieses kürzer ist. Die Beträge aller Kanäle werden gemittelt.
+     */
+    public void analyze(Audible audible) {
+        int length = Math.min(size, audible.getLength());
+        int channels = audible.getAudioEffects().length;
+        if (samples.length != channels)
+            samples = new int[channels][size];
+
+        audible.copySamples(audible.getLength() - length, length, samples);
+        analyze(samples, length);
+    }
+
+
+    /**
+     * @param samples Die Samples pro Kanal ab Index 0
+     * @param length Anzahl der Samples pro Kanal; fehlende Samples bis size werden als 0 gewertet
+     */
+    public void analyze(int[][] samples, int length) {
+        assert length >= 0 && length <= size : "Die Länge ist ungültig! Länge: " + length;
+
+        Arrays.fill(magnitudes, 0);
+        for (int[] channel : samples) {
+            load(channel, length);
+            transform();
+            addMagnitudes(1.0 / samples.length);
+        }
+    }
+
+
+    /**
+     * Schreibt die gefensterten Samples verschränkt in die komplexen Puffer und sortiert sie dabei in die
+     * Reihenfolge der Bitumkehr.
+     */
+    private void load(int[] channel, int length) {
+        for (int i = 0; i < real.length; i++) {
+            int even = 2 * i;
+            int target = bitReversed[i];
+            real[target] = even < length ? channel[even] * window[even] : 0;
+            imaginary[target] = even + 1 < length ? channel[even + 1] * window[even + 1] : 0;
+        }
+    }
+
+
+    /**
+     * Iterative komplexe Radix-2-FFT der Länge size / 2 auf den bereits umsortierten Puffern.
+     * Die Twiddle-Faktoren der halben Länge sind jeder zweite Eintrag der vorberechneten Tabelle.
+     */
+    private void transform() {
+        int n = real.length;
+        for (int length = 2; length <= n; length *= 2) {
+            int halfLength = length / 2;
+            int stride = 2 * (n / length);
+
+            for (int start = 0; start < n; start += length) {
+                for (int j = 0; j < halfLength; j++) {
+                    double wr = cos[j * stride];
+                    double wi = -sin[j * stride];
+                    int a = start + j;
+                    int b = a + halfLength;
+
+                    double br = real[b] * wr - imaginary[b] * wi;
+                    double bi = real[b] * wi + imaginary[b] * wr;
+                    real[b] = real[a] - br;
+                    imaginary[b] = imaginary[a] - bi;
+                    real[a] += br;
+                    imaginary[a] += bi;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Teilt das Ergebnis der komplexen FFT in die Frequenzen des reellen Signals auf:
+     * X[k] = E[k] + W^k * O[k] mit E[k] = (Z[k] + Z*[N/2 - k]) / 2 und O[k] = (Z[k] - Z*[N/2 - k]) / 2i
+     */
+    private void addMagnitudes(double weight) {
+        int n = real.length;
+        for (int k = 0; k <= n; k++) {
+            int a = k % n;
+            int b = (n - k) % n;
+
+            double evenReal = 0.5 * (real[a] + real[b]);
+            double evenImaginary = 0.5 * (imaginary[a] - imaginary[b]);
+            double oddReal = 0.5 * (imaginary[a] + imaginary[b]);
+            double oddImaginary = -0.5 * (real[a] - real[b]);
+
+            // W^k = exp(-2 pi i k / size); für k = n gilt W^k = -1
+            double wr = k < n ? cos[k] : -1;
+            double wi = k < n ? -sin[k] : 0;
+            double x = evenReal + wr * oddReal - wi * oddImaginary;
+            double y = evenImaginary + wr * oddImaginary + wi * oddReal;
+
+            magnitudes[k] += weight * Math.sqrt(x * x + y * y);
+        }
+    }
+
+
+    /**
+     * @return Der Pegel der angegebenen Frequenz in dBFS, linear zwischen den benachbarten Frequenzen der FFT interpoliert
+     */
+    public double dBFSAt(double frequency) {
+        return toDBFS(magnitudeAt(frequency));
+    }
+
+
+    /**
+     * Ordnet das Spektrum Frequenzbändern zu, z.B. den logarithmisch verteilten Balken der Anzeige. Ein Band
+     * reicht jeweils bis zur Mitte (geometrisches Mittel) zwischen seiner und der benachbarten Frequenz.
+     * Liegen Frequenzen der FFT im Band, zählt die lauteste; andernfalls wird wie bei dBFSAt() interpoliert.
+     * @param frequencies Aufsteigende Mittenfrequenzen der Bänder
+     * @param target Ziel für den Pegel pro Band in dBFS
+     */
+    public void toBands(double[] frequencies, double[] target) {
+        assert frequencies.length == target.length : "Die Arrays müssen gleich lang sein!";
+
+        double binWidth = sampleRate / size;
+        for (int i = 0; i < frequencies.length; i++) {
+            double lower = i > 0 ? Math.sqrt(frequencies[i - 1] * frequencies[i]) : frequencies[i];
+            double upper = i < frequencies.length - 1 ? Math.sqrt(frequencies[i] * frequencies[i + 1]) : frequencies[i];
+            int fromBin = (int) Math.ceil(lower / binWidth);
+            int toBin = Math.min((int) Math.floor(upper / binWidth), magnitudes.length - 1);
+
+            double magnitude = 0;
+            if (fromBin <= toBin) {
+                for (int bin = fromBin; bin <= toBin; bin++)
+                    magnitude = Math.max(magnitude, magnitudes[bin]);
+            } else magnitude = magnitudeAt(frequencies[i]);
+
+            target[i] = toDBFS(magnitude);
+        }
+    }
+
+
+    private double magnitudeAt(double frequency) {
+        double bin = Math.max(0, Math.min(frequency * size / sampleRate, magnitudes.length - 1));
+        int lower = (int) bin;
+        int upper = Math.min(lower + 1, magnitudes.length - 1);
+        return magnitudes[lower] + (magnitudes[upper] - magnitudes[lower]) * (bin - lower);
+    }
+
+
+    /**
+     * Rechnet den Betrag in den Ausschlag einer Sinusschwingung um (der Betrag einer Frequenz entspricht der
+     * halben Amplitude mal der Summe des Fensters) und diesen in dBFS.
+     */
+    private double toDBFS(double magnitude) {
+        return doubleTOdBFS(HEADROOM_DIVISOR * magnitude * 2 / windowSum);
+    }
+
+
+    /**
+     * @return Die Beträge pro Frequenz der letzten Analyse (Index k entspricht k * sampleRate / size Hz); darf nicht verändert werden
+     */
+    double[] magnitudes() {
+        return magnitudes;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+}
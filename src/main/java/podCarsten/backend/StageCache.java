@@ -0,0 +1,225 @@
+package podCarsten.backend;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * Speichert die Ausgabe jeder Stufe der Effektkette (eines Effektes) pro Block zwischen, damit bei einer
+ * Änderung der Parameter nur der geänderte Effekt und alle folgenden neu berechnet werden müssen.
+ * Wird z.B. nur der Kompressor verändert, übernimmt der BlockRenderer die Ausgabe der davorliegenden
+ * Filter aus dem Cache. Verwendet wird er nur beim Abspielen; Durchläufe, die jeden Block nur einmal lesen
+ * (Exportieren, materialize(), OfflineRenderer), würden die Einträge des Abspielens nur verdrängen.
+ *      <br><br>
+ * Pro Audiosignal (d.h. pro Sample-Array, siehe of()) gibt es einen Cache. Ein Eintrag ist über den
+ * Verlauf der Stufe (lineage), den Kanal und den Block eindeutig bestimmt. Der Verlauf beschreibt alles,
+ * wovon der Zustand der Stufe zu Beginn eines Blocks abhängt: die Schlüssel der Effekte bis zu dieser Stufe
+ * (AudioEffect.cacheKey()), die Startposition und alle Sprünge bzw. Wechsel der Effekte seitdem.
+ * Neben den Samples wird daher auch der Zustand der Stufe nach dem Block gespeichert, sodass der nächste
+ * Block lückenlos anschließt.
+ *      <br><br>
+ * Die Einträge werden nach dem LRU-Prinzip verworfen, sobald der Speicherbedarf BUDGET_BYTES übersteigt.
+ * Alle Methoden sind threadsicher. Es dürfen nur Blöcke verarbeitet werden, die bereits vollständig geladen
+ * sind, da sich die Samples danach nicht mehr ändern dürfen (siehe LoadListener).
+ */
+final class StageCache {
+
+    // Maximaler Speicherbedarf der zwischengespeicherten Samples pro Audiosignal
+    static final long BUDGET_BYTES = 64L << 20;
+    // Größe eines Verlaufs, ab der dieser nicht mehr verglichen, sondern als einmalig betrachtet wird
+    static final int MAX_LINEAGE_SIZE = 64;
+
+    private static final Map<Object, StageCache> CACHES = new WeakHashMap<>();
+
+
+    /**
+     * Beschreibt, wovon der Zustand einer Stufe (bzw. die Position im Signal) abhängt.
+     * @param input Verlauf der vorherigen Stufe bzw. die Startposition im Signal
+     * @param effect Schlüssel des Effektes (null für das Signal selbst)
+     * @param previous Verlauf, von dem der Zustand übernommen wurde (null bei einem neuen Zustand)
+     * @param size Anzahl der enthaltenen Verläufe, begrenzt den Aufwand für equals() und hashCode()
+     */
+    private record Lineage(Object input, Object effect, Object previous, int size) {}
+
+    /**
+     * Schlüssel eines Eintrags. Ist veränderlich, damit weder das Nachschlagen noch ein wiederverwendeter
+     * Eintrag ein neues Objekt benötigt; ein Schlüssel wird nur verändert, solange er nicht in der Map liegt.
+     */
+    private static final class Key {
+        Object lineage;
+        int channel;
+        int from;
+        int length;
+
+        Key set(Object lineage, int channel, int from, int length) {
+            this.lineage = lineage;
+            this.channel = channel;
+            this.from = from;
+            this.length = length;
+            return this;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Key key && channel == key.channel && from == key.from && length == key.length
+                    && Objects.equals(lineage, key.lineage);
+        }
+
+        public int hashCode() {
+            return ((Objects.hashCode(lineage) * 31 + channel) * 31 + from) * 31 + length;
+        }
+    }
+
+    /**
+     * Ein Platz für einen Block. Verworfene Plätze werden für neue Blöcke gleicher Länge wiederverwendet,
+     * sodass beim fortlaufenden Abspielen keine neuen Arrays entstehen, sobald das Budget ausgeschöpft ist.
+     */
+    private static final class Slot {
+        final Key key = new Key();
+        int[] output;                   // Die Samples nach dieser Stufe
+        AudioEffect.State endState;     // Der Zustand der Stufe nach dem Block
+    }
+
+
+    private final LinkedHashMap<Key, Slot> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Key probe = new Key();    // Zum Nachschlagen
+    private final long budgetBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+
+    StageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+
+    /**
+     * Gibt den Cache des Audiosignals zurück. Als Schlüssel dient das Array, in dem die Samples liegen,
+     * sodass sich alle Instanzen mit denselben Samples (z.B. nach setEffects() oder splice()) einen Cache
+     * teilen. Wird das Array nicht mehr verwendet, wird auch der Cache freigegeben.
+     * @return Der Cache oder null, falls die Implementierung nicht unterstützt wird
+     */
+    static StageCache of(Audible audible) {
+        Object input = audible instanceof AudioProcessor processor ? processor.channelSamples
+                : audible instanceof SegmentedAudible segmented ? segmented.storage() : null;
+        if (input == null)
+            return null;
+
+        synchronized (CACHES) {
+            return CACHES.computeIfAbsent(input, k -> new StageCache(BUDGET_BYTES));
+        }
+    }
+
+
+    /**
+     * @return Position des ersten Samples des Audiosignals im Array, das als Schlüssel von of() dient
+     */
+    static int inputOffset(Audible audible) {
+        return audible instanceof AudioProcessor processor ? processor.offset : 0;
+    }
+
+
+    /**
+     * Erstellt einen Verlauf, der sich aus den angegebenen Teilen ergibt. Zu große Verläufe werden durch
+     * ein einmaliges Objekt ersetzt, da sie sich praktisch nie wiederholen.
+     */
+    static Object lineage(Object input, Object effect, Object previous) {
+        int size = 1 + sizeOf(input) + sizeOf(previous);
+        return size > MAX_LINEAGE_SIZE ? new Object() : new Lineage(input, effect, previous, size);
+    }
+
+    /**
+     * @return true, falls der Verlauf bereits auf der angegebenen Eingabe mit dem angegebenen Effekt beruht
+     */
+    static boolean continues(Object lineage, Object input, Object effect) {
+        return lineage instanceof Lineage l && Objects.equals(l.input(), input) && Objects.equals(l.effect(), effect);
+    }
+
+    private static int sizeOf(Object lineage) {
+        return lineage instanceof Lineage l ? l.size() : 1;
+    }
+
+
+    /**
+     * Kopiert einen gespeicherten Block in die Puffer des Aufrufers. Da verworfene Plätze wiederverwendet
+     * werden, wird unter der Sperre kopiert, statt die gespeicherten Arrays herauszugeben.
+     * @param output Ziel der Samples ab Index 0
+     * @param endState Ziel des Zustands nach dem Block (gleichartig zum gespeicherten Zustand)
+     * @return false, falls der Eintrag nicht (mehr) vorhanden ist
+     */
+    synchronized boolean get(Object lineage, int channel, int from, int length, int[] output, AudioEffect.State endState) {
+        Slot slot = entries.get(probe.set(lineage, channel, from, length));
+        probe.lineage = null;
+
+        if (slot == null) {
+            misses++;
+            return false;
+        }
+
+        System.arraycopy(slot.output, 0, output, 0, length);
+        endState.set(slot.endState);
+        hits++;
+        return true;
+    }
+
+
+    /**
+     * Speichert eine Kopie der Samples und des Zustands in einem Platz. Übersteigt der Speicherbedarf das
+     * Budget, werden die ältesten Einträge verworfen und ihr Platz wiederverwendet.
+     */
+    synchronized void put(Object lineage, int channel, int from, int[] output, int length, AudioEffect.State endState) {
+        Slot slot = entries.get(probe.set(lineage, channel, from, length));
+        probe.lineage = null;
+
+        if (slot == null) {
+            slot = takeSlot(length);
+            entries.put(slot.key.set(lineage, channel, from, length), slot);
+        }
+
+        System.arraycopy(output, 0, slot.output, 0, length);
+        if (slot.endState != null && slot.endState.getClass() == endState.getClass())
+            slot.endState.set(endState);
+        else slot.endState = endState.copy();
+    }
+
+
+    /**
+     * Verwirft die ältesten Einträge, bis ein Block der angegebenen Länge in das Budget passt.
+     * @return Ein verworfener Platz gleicher Länge oder ein neuer Platz
+     */
+    private Slot takeSlot(int length) {
+        Slot reused = null;
+
+        Iterator<Slot> iterator = entries.values().iterator();
+        while (bytes + (long) length * Integer.BYTES > budgetBytes && iterator.hasNext()) {
+            Slot old = iterator.next();
+            iterator.remove();
+            bytes -= (long) old.output.length * Integer.BYTES;
+            if (reused == null && old.output.length == length)
+                reused = old;
+        }
+
+        if (reused == null) {
+            reused = new Slot();
+            reused.output = new int[length];
+        }
+        bytes += (long) length * Integer.BYTES;
+        return reused;
+    }
+
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+
+    public synchronized String toString() {
+        return "StageCache: " + entries.size() + " Blöcke (" + bytes / 1024 + " kB), " + hits + " Treffer, " + misses + " Fehlschläge";
+    }
+}
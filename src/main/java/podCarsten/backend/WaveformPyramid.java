@@ -0,0 +1,434 @@
+package podCarsten.backend;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static podCarsten.backend.AudioProcessor.CHUNK_FRAMES;
+import static podCarsten.backend.AudioProcessor.HEADROOM_DIVISOR;
+import static podCarsten.backend.AudioProcessor.intTOdBFS;
+
+/**
+ * Übersicht eines Audiosignals in mehreren Auflösungen (Mip-Pyramide) für die Darstellung der Wellenform.
+ * Ebene 0 speichert für je LEAF_FRAMES Frames das Minimum, das Maximum und die Summe der Quadrate aller
+ * Kanäle, jede weitere Ebene fasst zwei Einträge der vorherigen zusammen.
+ *      <br><br>
+ * Die Pyramide wird in einem einzigen Durchlauf aufgebaut, während das Signal dekodiert wird: Jedes Sample
+ * wird genau einmal gelesen, danach werden nur noch Einträge zusammengefasst. Eine Abfrage für N Spalten
+ * wählt pro Spalte die gröbste Ebene, deren Einträge höchstens so breit sind wie die Spalte, und liest daher
+ * höchstens drei Einträge pro Spalte, unabhängig von Zoomstufe und Fensterbreite (O(N)).
+ *      <br><br>
+ * Im selben Durchlauf werden die Analysen aus AnalysisPipeline.STANDARD berechnet (siehe shareAnalysis()).
+ *      <br><br>
+ * Es darf nur ein Thread schreiben (append() und finish()), lesen dürfen beliebig viele gleichzeitig.
+ * Eine Abfrage sieht dabei immer nur vollständig aufgebaute Einträge.
+ */
+public final class WaveformPyramid {
+
+    // Anzahl der Frames pro Eintrag der untersten Ebene
+    public static final int LEAF_FRAMES = 256;
+
+    private final int channels;
+
+    // Pro Ebene und Eintrag; die Arrays wachsen mit, falls das Signal länger ist als angegeben
+    private int[][] min = new int[1][];
+    private int[][] max = new int[1][];
+    private double[][] squares = new double[1][];
+    private int[] counts = new int[1];
+
+    // Das Blatt, das gerade gefüllt wird
+    private int leafMin = Integer.MAX_VALUE;
+    private int leafMax = Integer.MIN_VALUE;
+    private double leafSquares;
+    private int leafFrames;
+
+    private int appended;                       // Anzahl der bisher übergebenen Frames
+    private int[][] buffer = new int[0][];      // Für update()
+    // Die Analysen, die mit denselben Samples gefüttert werden (null, sobald sie übergeben wurden)
+    private AnalysisPipeline.Run analysis;
+
+    // Anzahl der Frames, die in vollständigen Einträgen stecken. Wird erst nach den Einträgen geschrieben
+    private volatile int frames;
+    private volatile boolean finished;
+
+
+    /**
+     * @param channels Anzahl der Kanäle
+     * @param expectedFrames Voraussichtliche Länge des Signals, nach der die Arrays angelegt werden
+     */
+    public WaveformPyramid(int channels, int expectedFrames) {
+        assert channels > 0 && expectedFrames >= 0 : "Das Format ist ungültig! Kanäle: " + channels + " | Länge: " + expectedFrames;
+
+        this.channels = channels;
+        int leaves = Math.max(1, (expectedFrames + LEAF_FRAMES - 1) / LEAF_FRAMES);
+        min[0] = new int[leaves];
+        max[0] = new int[leaves];
+        squares[0] = new double[leaves];
+        analysis = AnalysisPipeline.STANDARD.start();
+    }
+
+
+    /**
+     * Eine abgeschlossene Pyramide aus bereits berechneten Ebenen, z.B. aus dem AnalysisCache.
+     */
+    private WaveformPyramid(int channels, int[][] min, int[][] max, double[][] squares, int frames) {
+        this.channels = channels;
+        this.min = min;
+        this.max = max;
+        this.squares = squares;
+        this.counts = Arrays.stream(min).mapToInt(level -> level.length).toArray();
+        this.appended = frames;
+        this.finished = true;
+        this.frames = frames;
+    }
+
+
+    /**
+     * Baut die Pyramide für ein vollständiges Audiosignal auf.
+     */
+    public static WaveformPyramid of(Audible audible) {
+        WaveformPyramid pyramid = new WaveformPyramid(audible.getAudioEffects().length, audible.getLength());
+        pyramid.update(audible, audible.getLength());
+        pyramid.finish();
+        return pyramid;
+    }
+
+
+
+    // AUFBAU
+
+    /**
+     * Übernimmt die Samples, die seit dem letzten Aufruf dazugekommen sind, z.B. aus einem LoadListener.
+     * @param audible Das Audiosignal, das gerade geladen wird
+     * @param loadedSamples Anzahl der bereits dekodierten Samples pro Kanal
+     */
+    public void update(Audible audible, int loadedSamples) {
+        if (buffer.length != channels)
+            buffer = new int[channels][CHUNK_FRAMES];
+
+        while (appended < loadedSamples) {
+            // An den Abschnitten der AnalysisPipeline ausgerichtet, damit diese nicht kopiert werden müssen
+            int length = Math.min(CHUNK_FRAMES - appended % CHUNK_FRAMES, loadedSamples - appended);
+            audible.copySamples(appended, length, buffer);
+            append(buffer, length);
+        }
+    }
+
+
+    /**
+     * Übernimmt die nächsten Samples des Signals.
+     * @param samples Die Samples pro Kanal ab Index 0
+     * @param length Anzahl der Samples pro Kanal
+     */
+    public void append(int[][] samples, int length) {
+        assert samples.length == channels : "Die Anzahl der Kanäle stimmt nicht! Kanäle: " + samples.length;
+        assert !finished : "Die Pyramide ist bereits abgeschlossen!";
+
+        int from = 0;
+        while (from < length) {
+            int to = Math.min(length, from + LEAF_FRAMES - leafFrames);
+
+            for (int[] channel : samples) {
+                for (int i = from; i < to; i++) {
+                    int sample = channel[i];
+                    leafMin = Math.min(leafMin, sample);
+                    leafMax = Math.max(leafMax, sample);
+                    leafSquares += (double) sample * sample;
+                }
+            }
+            leafFrames += to - from;
+            from = to;
+
+            if (leafFrames == LEAF_FRAMES)
+                completeLeaf();
+        }
+        if (analysis != null)
+            analysis.append(samples, length);
+
+        appended += length;
+        frames = counts[0] * LEAF_FRAMES;
+    }
+
+
+    /**
+     * Schließt die Pyramide ab, nachdem das gesamte Signal übergeben wurde. Das letzte, unvollständige Blatt
+     * und alle Einträge ohne Partner werden dabei in die höheren Ebenen übernommen.
+     */
+    public void finish() {
+        if (finished)
+            return;
+
+        if (leafFrames > 0)
+            completeLeaf();
+
+        // Fehlende Einträge der höheren Ebenen ergänzen; ein Eintrag ohne Partner bildet allein den nächsten
+        for (int level = 0; counts[level] > 1; level++) {
+            int parents = level + 1 < counts.length ? counts[level + 1] : 0;
+            for (int first = 2 * parents; first < counts[level]; first += 2)
+                combine(level, first, Math.min(2, counts[level] - first));
+        }
+
+        finished = true;
+        frames = appended;
+    }
+
+
+    private void completeLeaf() {
+        add(0, leafMin, leafMax, leafSquares);
+
+        leafMin = Integer.MAX_VALUE;
+        leafMax = Integer.MIN_VALUE;
+        leafSquares = 0;
+        leafFrames = 0;
+
+        // Sobald ein Eintrag einen Partner hat, entsteht der Eintrag der nächsten Ebene
+        for (int level = 0; counts[level] % 2 == 0; level++)
+            combine(level, counts[level] - 2, 2);
+    }
+
+
+    /**
+     * Fasst die angegebenen Einträge einer Ebene zum nächsten Eintrag der Ebene darüber zusammen.
+     */
+    private void combine(int level, int first, int count) {
+        if (level + 1 == counts.length) {
+            min = Arrays.copyOf(min, level + 2);
+            max = Arrays.copyOf(max, level + 2);
+            squares = Arrays.copyOf(squares, level + 2);
+            counts = Arrays.copyOf(counts, level + 2);
+            int length = Math.max(1, (min[level].length + 1) / 2);
+            min[level + 1] = new int[length];
+            max[level + 1] = new int[length];
+            squares[level + 1] = new double[length];
+        }
+
+        int lower = Integer.MAX_VALUE;
+        int upper = Integer.MIN_VALUE;
+        double sum = 0;
+        for (int entry = first; entry < first + count; entry++) {
+            lower = Math.min(lower, min[level][entry]);
+            upper = Math.max(upper, max[level][entry]);
+            sum += squares[level][entry];
+        }
+        add(level + 1, lower, upper, sum);
+    }
+
+
+    private void add(int level, int lower, int upper, double sum) {
+        int entry = counts[level];
+        if (entry == min[level].length) {
+            int length = 2 * min[level].length;
+            min[level] = Arrays.copyOf(min[level], length);
+            max[level] = Arrays.copyOf(max[level], length);
+            squares[level] = Arrays.copyOf(squares[level], length);
+        }
+
+        min[level][entry] = lower;
+        max[level][entry] = upper;
+        squares[level][entry] = sum;
+        counts[level] = entry + 1;
+    }
+
+
+
+    // ABFRAGE
+
+    /**
+     * Teilt den Bereich [fromFrame, toFrame) in gleich breite Spalten auf (Anzahl = Länge der Arrays) und
+     * ermittelt für jede Spalte Minimum, Maximum und RMS aller Kanäle. Einträge am Rand einer Spalte werden
+     * ganz gezählt, eine Spalte kann also bis zu einem Eintrag ihrer Ebene über ihren Bereich hinaus reichen.
+     * Spalten, die noch nicht geladen wurden, erhalten 0.
+     * @param min Ziel für das Minimum pro Spalte (darf null sein)
+     * @param max Ziel für das Maximum pro Spalte (darf null sein)
+     * @param rms Ziel für den RMS pro Spalte in Sample-Einheiten (darf null sein)
+     * @return Anzahl der Spalten von vorne, die bereits vollständig geladen sind
+     */
+    public int query(int fromFrame, int toFrame, int[] min, int[] max, double[] rms) {
+        int columns = min != null ? min.length : max != null ? max.length : rms.length;
+        assert (min == null || min.length == columns) && (max == null || max.length == columns) && (rms == null || rms.length == columns) : "Die Arrays müssen gleich lang sein!";
+        assert fromFrame >= 0 && fromFrame <= toFrame : "Der Bereich ist ungültig! Von: " + fromFrame + " | Bis: " + toFrame;
+
+        // Reihenfolge wie beim Schreiben umgekehrt: Ist finished gesetzt, ist frames bereits endgültig
+        boolean complete = finished;
+        int covered = frames;
+        int[][] minLevels = this.min;
+        int[][] maxLevels = this.max;
+        double[][] squareLevels = this.squares;
+
+        int loaded = 0;
+        for (int column = 0; column < columns; column++) {
+            int from = (int) (fromFrame + (long) (toFrame - fromFrame) * column / columns);
+            int to = Math.max(from + 1, (int) (fromFrame + (long) (toFrame - fromFrame) * (column + 1) / columns));
+
+            if (to > covered) {
+                if (min != null) min[column] = 0;
+                if (max != null) max[column] = 0;
+                if (rms != null) rms[column] = 0;
+                continue;
+            }
+            if (loaded == column)
+                loaded++;
+
+            // Gröbste Ebene, deren Einträge nicht breiter als die Spalte und bereits vollständig sind
+            int level = Math.min(31 - Integer.numberOfLeadingZeros(Math.max(1, (to - from) / LEAF_FRAMES)), minLevels.length - 1);
+            while (level > 0 && (to - 1) / (LEAF_FRAMES << level) >= available(level, covered, complete))
+                level--;
+
+            int width = LEAF_FRAMES << level;
+            int lower = Integer.MAX_VALUE;
+            int upper = Integer.MIN_VALUE;
+            double sum = 0;
+            for (int entry = from / width; entry <= (to - 1) / width; entry++) {
+                lower = Math.min(lower, minLevels[level][entry]);
+                upper = Math.max(upper, maxLevels[level][entry]);
+                sum += squareLevels[level][entry];
+            }
+
+            if (min != null) min[column] = lower;
+            if (max != null) max[column] = upper;
+            if (rms != null) {
+                int first = from / width * width;
+                int frameCount = Math.min(((to - 1) / width + 1) * width, covered) - first;
+                rms[column] = Math.sqrt(sum / ((double) frameCount * channels));
+            }
+        }
+        return loaded;
+    }
+
+
+    /**
+     * @return Anzahl der vollständigen Einträge der Ebene
+     */
+    private static int available(int level, int covered, boolean complete) {
+        int width = LEAF_FRAMES << level;
+        return complete ? (covered + width - 1) / width : covered / width;
+    }
+
+
+    /**
+     * @param thresholdDBFS Grenze für den RMS eines Blatts in dBFS
+     * @return Die Blätter (je LEAF_FRAMES Frames), deren RMS unter der Grenze liegt
+     */
+    public BitSet silence(double thresholdDBFS) {
+        int leaves = available(0, frames, finished);
+        BitSet silence = new BitSet(leaves);
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            int leafFrames = Math.min(LEAF_FRAMES, frames - leaf * LEAF_FRAMES);
+            if (toDBFS(Math.sqrt(squares[0][leaf] / ((double) leafFrames * channels))) < thresholdDBFS)
+                silence.set(leaf);
+        }
+        return silence;
+    }
+
+
+    /**
+     * Übergibt die Analysen, die beim Aufbau der Pyramide berechnet wurden, an die AnalysisPipeline. Egal ob
+     * das Signal dekodiert oder abgebildet wurde, wird es beim Laden damit nur einmal gelesen; getPeakInDBFS(),
+     * normalize() und AnalysisPipeline.STANDARD schlagen danach nur noch nach. Stammt die Pyramide aus dem
+     * AnalysisCache, wurde kein Sample gelesen: Dann wird nur ihr höchster Ausschlag übergeben, die übrigen
+     * Analysen werden erst bei Bedarf berechnet. Passt die Pyramide nicht zum Signal, geschieht nichts.
+     * @param audible Das Signal, aus dem die Pyramide aufgebaut wurde
+     */
+    public void shareAnalysis(Audible audible) {
+        if (!finished || frames == 0 || frames != audible.getLength() || channels != audible.getAudioEffects().length)
+            return;
+
+        if (analysis != null) {
+            analysis.finish(audible);
+            analysis = null;
+            return;
+        }
+
+        int top = counts.length - 1;
+        int peak = 0;
+        for (int entry = 0; entry < counts[top]; entry++)
+            peak = Math.max(peak, Math.max(max[top][entry], -min[top][entry]));
+        AnalysisPipeline.store(audible, SignalAnalysers.PEAK, peak);
+    }
+
+
+    /**
+     * Rechnet einen Ausschlag (z.B. max(max, -min) einer Spalte) wie getPeakInDBFS() in dBFS um.
+     */
+    public static double toDBFS(double sample) {
+        return intTOdBFS((int) Math.min(Math.abs(sample) * HEADROOM_DIVISOR, Integer.MAX_VALUE));
+    }
+
+
+
+    // SPEICHERN
+
+    /**
+     * @return Größe der abgeschlossenen Pyramide in bytes, wie sie von writeTo() geschrieben wird
+     */
+    int serializedBytes() {
+        assert finished : "Es können nur abgeschlossene Pyramiden gespeichert werden!";
+
+        int bytes = 3 * Integer.BYTES;
+        for (int level = 0; level < counts.length; level++)
+            bytes += Integer.BYTES + counts[level] * (2 * Integer.BYTES + Double.BYTES);
+        return bytes;
+    }
+
+    /**
+     * Schreibt Kanäle, Länge und alle Ebenen (Anzahl, Minima, Maxima, Quadratsummen) in den Puffer.
+     */
+    void writeTo(ByteBuffer buffer) {
+        assert finished : "Es können nur abgeschlossene Pyramiden gespeichert werden!";
+
+        buffer.putInt(channels).putInt(frames).putInt(counts.length);
+        for (int level = 0; level < counts.length; level++) {
+            buffer.putInt(counts[level]);
+            buffer.asIntBuffer().put(min[level], 0, counts[level]);
+            buffer.position(buffer.position() + counts[level] * Integer.BYTES);
+            buffer.asIntBuffer().put(max[level], 0, counts[level]);
+            buffer.position(buffer.position() + counts[level] * Integer.BYTES);
+            buffer.asDoubleBuffer().put(squares[level], 0, counts[level]);
+            buffer.position(buffer.position() + counts[level] * Double.BYTES);
+        }
+    }
+
+    /**
+     * Liest eine mit writeTo() geschriebene Pyramide. Die Ebenen werden am Stück aus dem Puffer kopiert.
+     */
+    static WaveformPyramid readFrom(ByteBuffer buffer) {
+        int channels = buffer.getInt();
+        int frames = buffer.getInt();
+        int levels = buffer.getInt();
+        assert channels > 0 && frames >= 0 && levels > 0 : "Die gespeicherte Pyramide ist ungültig!";
+
+        int[][] min = new int[levels][];
+        int[][] max = new int[levels][];
+        double[][] squares = new double[levels][];
+        for (int level = 0; level < levels; level++) {
+            int count = buffer.getInt();
+            min[level] = new int[count];
+            max[level] = new int[count];
+            squares[level] = new double[count];
+            buffer.asIntBuffer().get(min[level]);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            buffer.asIntBuffer().get(max[level]);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            buffer.asDoubleBuffer().get(squares[level]);
+            buffer.position(buffer.position() + count * Double.BYTES);
+        }
+        return new WaveformPyramid(channels, min, max, squares, frames);
+    }
+
+
+
+    /**
+     * @return Anzahl der Frames, die bereits abgefragt werden können
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+}
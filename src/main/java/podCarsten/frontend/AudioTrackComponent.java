@@ -6,15 +6,13 @@ import aj.frame.components.Component;
 import aj.vector.BindableVector;
 import podCarsten.backend.Audible;
 import podCarsten.backend.AudioEffect;
+import podCarsten.backend.EffectMailbox;
+import podCarsten.backend.WaveformPyramid;
 import processing.core.PConstants;
 import processing.core.PGraphics;
 import processing.event.MouseEvent;
 
 import javax.sound.sampled.*;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.stream.IntStream;
 
 import static podCarsten.frontend.Main.*;
 
@@ -22,24 +20,30 @@ public class AudioTrackComponent extends Component implements Clickable {
 
     static final float DB_DRAW_MIN = -30;
     static final int BUFFER_SIZE = 2048;
-
-    int analyserAccuracy = 1000;
+    // Number of buffers rendered ahead of the line
+    static final int LOOKAHEAD_BUFFERS = 4;
+    // Samples added to the waveform at once when all samples are already there (mapped files)
+    static final int WAVEFORM_CHUNK = 1 << 16;
 
     Audible audible = null;
     double seconds;
     int sampleLength = 0;
     float sampleRate;
-    float[] amounts;
+    // Built by the loader while decoding, queried for the current width on every draw
+    WaveformPyramid waveform;
+    int[] columnMin = new int[0];
+    int[] columnMax = new int[0];
     AudioFormat format;
     Button playButton;
     boolean bypassed = false;
 
     boolean playing;
     int samplePosition = 0;
+    volatile int loadedSamples = 0;
     SourceDataLine line;
-    AudioPlayerThread thread;
-    AudioEffect[] audioEffects = new AudioEffect[7];
-    CompletableFuture<Boolean> amountCalculator;
+    // Effects are only published here, the engine picks them up between two buffers
+    final EffectMailbox effects = new EffectMailbox(7);
+    final PlaybackEngine engine = new PlaybackEngine(effects, BUFFER_SIZE, LOOKAHEAD_BUFFERS);
 
 
     public AudioTrackComponent(BindableVector position, BindableVector size, Button playButton) {
@@ -47,7 +51,8 @@ public class AudioTrackComponent extends Component implements Clickable {
         this.playButton = playButton;
     }
 
-    public AudioTrackComponent loadAudible(Audible audible, double seconds, float sampleRate, AudioFormat format) {
+    // A finished waveform from the analysis cache may be passed in, otherwise it is built while loading
+    public AudioTrackComponent loadAudible(Audible audible, double seconds, float sampleRate, AudioFormat format, WaveformPyramid cachedWaveform) {
         this.audible = audible;
         this.seconds = seconds;
         this.sampleRate = sampleRate;
@@ -55,63 +60,95 @@ public class AudioTrackComponent extends Component implements Clickable {
 
         sampleLength = (int) (seconds * sampleRate);
 
-        analyserAccuracy = (int)size.getX();
-        amounts = new float[analyserAccuracy];
+        waveform = cachedWaveform != null && cachedWaveform.getChannels() == format.getChannels()
+                ? cachedWaveform : new WaveformPyramid(format.getChannels(), sampleLength);
+        loadedSamples = 0;
 
-        amountCalculator = CompletableFuture.supplyAsync(() -> {
-            IntStream.range(0, amounts.length).parallel().forEach(i -> {
-                int startPos = (int) (i / (analyserAccuracy + 1.0) * sampleLength);
-                amounts[i] = (float) -((audible.splice(startPos, (int) (sampleLength / (analyserAccuracy + 1.0)), null).getPeakInDBFS() - DB_DRAW_MIN) / DB_DRAW_MIN);
-            });
-            return true;
-        });
         drawOnNextCall();
 
-        // Layout AudioFile Visualisation
-        /*amounts = DoubleStream.iterate(0, s -> s + (double) sampleLength / analyserAccuracy).limit(analyserAccuracy)
-                .map(s -> audible.splice((int) s, (int) ((double) sampleLength / analyserAccuracy), null).getPeakInDBFS()).toArray();*/
-
         DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
         if (!AudioSystem.isLineSupported(info)) {
             // Handle the error.
         }
-        // Obtain and open the line.
+        // Obtain and open the line. Without one the file is still shown, the engine then refuses to play
         try {
             line = (SourceDataLine) AudioSystem.getLine(info);
-            line.open(format, BUFFER_SIZE * format.getFrameSize());
-        } catch (LineUnavailableException ex) {
-            // Handle the error.
-            //...
+            // Two buffers, so the line does not run dry while the sink thread wakes up
+            line.open(format, 2 * BUFFER_SIZE * format.getFrameSize());
+        } catch (LineUnavailableException | IllegalArgumentException ex) {
+            LOGGER.error("Die Soundkarte konnte nicht geöffnet werden: {}", ex.toString());
+            line = null;
         }
+        engine.load(line, audible, sampleLength, format);
 
         drawOnNextCall();
         return this;
     }
 
+    // Called by the loader after every decoded chunk; only the new samples are added to the waveform.
+    // The waveform is finished by finishLoading(), the header may have announced fewer samples than follow.
+    public void setLoadedSamples(int loadedSamples) {
+        updateWaveform(loadedSamples);
+        engine.loadedSamples = loadedSamples;
+    }
+
+    private void updateWaveform(int loadedSamples) {
+        if (!waveform.isFinished())
+            waveform.update(audible, loadedSamples);
+
+        this.loadedSamples = loadedSamples;
+        drawOnNextCall();
+    }
+
+    // The decoder hands out a new instance whenever it copied its arrays: grown while loading a stream that is
+    // longer than announced, or shortened at the end. It holds the same samples loaded so far and replaces the old one.
+    public void replaceAudible(Audible audible) {
+        if (audible != this.audible) {
+            this.audible = audible;
+            sampleLength = audible.getLength();
+            seconds = sampleLength / sampleRate;
+            samplePosition = Math.min(samplePosition, sampleLength);
+            engine.reload(audible, sampleLength);
+        }
+    }
+
+    // Called by the loader once decoding is done, with the final instance
+    public void finishLoading(Audible audible) {
+        replaceAudible(audible);
+
+        // All samples can be read now, so playback does not wait for the waveform. For mapped files it is still
+        // built from the whole file here, chunk by chunk so the track fills in while the rest is read.
+        engine.loadedSamples = sampleLength;
+        for (int loaded = loadedSamples; loaded < sampleLength; )
+            updateWaveform(loaded = (int) Math.min(sampleLength, (long) loaded + WAVEFORM_CHUNK));
+        updateWaveform(sampleLength);
+        if (!waveform.isFinished())
+            waveform.finish();
+        // The analyses computed while building the waveform, so peak and statistics are not scanned again
+        waveform.shareAnalysis(audible);
+    }
+
     public boolean togglePlay() {
         return playing = playing ? stop() : play();
     }
 
     public boolean play() {
         if (audible != null) {
-            if (thread != null) thread.pause();
-            thread = new AudioPlayerThread(line, audible, sampleLength, format);
-            thread.audible = thread.audible.setEffects(audioEffects);
             if (samplePosition + BUFFER_SIZE >= sampleLength) samplePosition = 0;
+            engine.play(samplePosition);
             drawOnNextCall();
 
             playButton.setColor(COLOR_PRIMARY);
             playButton.setIcon(SHAPE_PAUSE);
-            return playing = thread.play(samplePosition);
+            return playing = true;
         } else {
             return playing = false;
         }
     }
 
     public boolean stop() {
-        if (thread != null && playing) {
-            samplePosition = thread.pause();
-            thread = null;
+        if (playing) {
+            samplePosition = Math.min(engine.pause(), sampleLength);
         }
 
         playButton.setColor(COLOR_ELEMENTS);
@@ -137,7 +174,7 @@ public class AudioTrackComponent extends Component implements Clickable {
                 if (samplePosition < 0)
                     samplePosition = 0;
                 if (playing)
-                    thread.samplePosition = samplePosition;
+                    engine.seek(samplePosition);
             }
 
             drawOnNextCall();
@@ -174,31 +211,22 @@ public class AudioTrackComponent extends Component implements Clickable {
     }
 
     public void setEffect(int index, AudioEffect audioEffect) {
-        audioEffects[index] = audioEffect;
-        if (!bypassed && Arrays.stream(audioEffects).noneMatch(Objects::isNull))
-            audible = audible.setEffects(audioEffects);
-        if (thread != null) {
-            thread.audible = audible;
-        }
+        effects.publish(index, audioEffect);
     }
 
     public void bypass(boolean bypass) {
         bypassed = bypass;
-        if (audible != null) {
-            if (bypass) {
-                audible = audible.setEffects();
-            } else if (Arrays.stream(audioEffects).noneMatch(Objects::isNull)) {
-                audible = audible.setEffects(audioEffects);
-            }
-            if (thread != null) {
-                thread.audible = audible;
-            }
-        }
+        effects.bypass(bypass);
+    }
+
+    // The loaded audible with the currently published effects, e.g. for saving
+    public Audible getAudibleWithEffects() {
+        return audible == null ? null : audible.setEffects(effects.snapshot().audioEffects());
     }
 
     @Override
     protected void drawComponent(PGraphics g) {
-        if (amountCalculator != null && !amountCalculator.isDone()) {
+        if (audible != null && loadedSamples < sampleLength) {
             drawOnNextCall();
         }
 
@@ -208,19 +236,28 @@ public class AudioTrackComponent extends Component implements Clickable {
 
         if (audible != null) {
             // QUERY FROM THREAD
-            if (thread == null || thread.playing != playing) {
+            if (engine.playing != playing) {
                 stop();
-            } if (playing && thread != null) {
-                samplePosition = thread.samplePosition;
+            } if (playing) {
+                samplePosition = engine.getPosition();
+            }
+
+            // Audio File, one column per pixel of the current width
+            int columns = Math.max(1, (int) size.getX());
+            if (columnMax.length != columns) {
+                columnMin = new int[columns];
+                columnMax = new int[columns];
             }
+            waveform.query(0, sampleLength, columnMin, columnMax, null);
 
-            // Audio File
-            float xOffset = size.getX() / amounts.length;
+            float xOffset = size.getX() / columns;
             g.rectMode(PConstants.CENTER);
             g.fill(COLOR_PRIMARY);
             g.noStroke();
-            for (int i = 0; i < amounts.length; i++) {
-                g.rect((i + 0.5f) * xOffset, 0.5f * size.getY(), xOffset+1f, Math.max(0.8f * amounts[i] * size.getY(), xOffset));
+            for (int i = 0; i < columns; i++) {
+                int peak = Math.max(columnMax[i], -columnMin[i]);
+                float amount = peak == 0 ? 0 : (float) -((WaveformPyramid.toDBFS(peak) - DB_DRAW_MIN) / DB_DRAW_MIN);
+                g.rect((i + 0.5f) * xOffset, 0.5f * size.getY(), xOffset+1f, Math.max(0.8f * amount * size.getY(), xOffset));
             }
 
             // Position Marker
@@ -3,7 +3,8 @@ package podCarsten.frontend;
 import aj.frame.AJFrame;
 import aj.frame.components.Component;
 import aj.vector.BindableVector;
-import podCarsten.backend.Audible;
+import podCarsten.backend.AnalysisTap;
+import podCarsten.backend.FilterBankAnalyzer;
 import processing.core.PFont;
 import processing.core.PGraphics;
 
@@ -25,6 +26,15 @@ public class FFTComponent extends Component {
     double[] dryAmount = new double[wetAmount.length];
     final double factor = Math.pow(END_FREQUENCY / START_FREQUENCY, 1.0 / (wetAmount.length - 1));
     final double difference = (END_FREQUENCY - START_FREQUENCY) / wetAmount.length;
+    final double[] frequencies;
+    final double[] levels;
+
+    // Consumer of the engine's analysis tap, recreated when another file is loaded
+    AnalysisTap tap;
+    AnalysisTap.Reader reader;
+    AnalysisTap.Block block;
+    FilterBankAnalyzer dryAnalyzer;
+    FilterBankAnalyzer wetAnalyzer;
 
     float boxHeight;
 
@@ -33,6 +43,8 @@ public class FFTComponent extends Component {
         this.audioTrack = audioTrack;
         Arrays.fill(wetAmount, MIN_DB);
         Arrays.fill(dryAmount, MIN_DB);
+        frequencies = IntStream.range(0, wetAmount.length).mapToDouble(this::freq).toArray();
+        levels = new double[frequencies.length];
     }
 
     @Override
@@ -64,24 +76,21 @@ public class FFTComponent extends Component {
 
 
 
-        IntStream.range(0, wetAmount.length * 2).parallel().forEach(i -> {
-            double[] setArray = i < wetAmount.length ? dryAmount : wetAmount;
-            int index = i % wetAmount.length;
-            if (audioTrack.playing && audioTrack.thread != null) {
-                double frequency = freq(index);
-                double fftResult = MIN_DB - 1;
-                Audible audible = i < wetAmount.length ? audioTrack.thread.playingAudibleClean : audioTrack.thread.playingAudibleWet;
-
-                if (audible != null)
-                    fftResult = audible.fade(100 / audioTrack.format.getSampleRate()).getFFTdBFS(frequency);
-                setArray[index] = Math.max(fftResult, setArray[index] - DECAY_PER_FRAME);
-
-            } else {
-                setArray[index] = setArray[index] - DECAY_PER_FRAME;
+        // Takes over all blocks played since the last frame, the audio path never waits for this
+        analyse();
+        if (audioTrack.playing && dryAnalyzer != null) {
+            dryAnalyzer.levels(levels);
+            updateAmount(dryAmount, levels);
+            wetAnalyzer.levels(levels);
+            updateAmount(wetAmount, levels);
+        } else {
+            for (int i = 0; i < wetAmount.length; i++) {
+                dryAmount[i] -= DECAY_PER_FRAME;
+                wetAmount[i] -= DECAY_PER_FRAME;
             }
-        });
+        }
 
-        boolean isRunning = audioTrack.playing && audioTrack.thread != null;
+        boolean isRunning = audioTrack.playing;
 
         g.strokeWeight(WIDTH);
         g.stroke(Main.COLOR_ELEMENTS);
@@ -102,6 +111,29 @@ public class FFTComponent extends Component {
         }
     }
 
+    private void analyse() {
+        AnalysisTap current = audioTrack.engine.getAnalysisTap();
+        if (current == null)
+            return;
+        if (current != tap) {
+            tap = current;
+            reader = tap.reader();
+            block = tap.newBlock();
+            dryAnalyzer = new FilterBankAnalyzer(frequencies, tap.getSampleRate());
+            wetAnalyzer = new FilterBankAnalyzer(frequencies, tap.getSampleRate());
+        }
+
+        while (reader.poll(block)) {
+            dryAnalyzer.process(block.getDry(), block.getLength());
+            wetAnalyzer.process(block.getWet(), block.getLength());
+        }
+    }
+
+    private void updateAmount(double[] amount, double[] levels) {
+        for (int i = 0; i < amount.length; i++)
+            amount[i] = Math.max(levels[i], amount[i] - DECAY_PER_FRAME);
+    }
+
     private boolean drawFFT(PGraphics g, double[] amount, boolean isRunning) {
         for (int i = 1; i < amount.length; i++) {
             if (amount[i - 1] > MIN_DB || amount[i] > MIN_DB) {
@@ -5,14 +5,20 @@ import aj.frame.components.*;
 import aj.vector.BindableVector;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import podCarsten.backend.AnalysisCache;
 import podCarsten.backend.Audible;
 import podCarsten.backend.AudioEffect;
+import podCarsten.backend.AudioExporter;
+import podCarsten.backend.DecodedCache;
+import podCarsten.backend.PcmFile;
+import podCarsten.backend.WaveformPyramid;
 import processing.core.*;
 
 import javax.sound.sampled.*;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.UnaryOperator;
 
 public class Main {
@@ -38,6 +44,7 @@ public class Main {
     final static String[] TEXT_MUSIC = new String[]{"doesn't contain \nmusic", "contains \nmusic"};
     final static String[] TEXT_VOICE = new String[]{"male voices \nonly", "different \nregisters", "female voices \nonly"};
     final static String[] TEXT_BYPASS = new String[]{"effects bypassed", "effects active"};
+    final static String[] TEXT_EXPORT = new String[]{"normalise \npeak", "normalise \nloudness"};
     final static String TEXT_LIGHTNESS = "lightness";
     final static String TEXT_TONE = "tone";
     final static String TEXT_CLARITY = "clarity";
@@ -56,6 +63,17 @@ public class Main {
     final static String ICON_PROXIMITY = "src/img/icon_proximity.svg";
     final static String ICON_LEVELING = "src/img/icon_leveling.svg";
 
+    // Integrated loudness (EBU R128) of exported files, if selected instead of the peak
+    final static double EXPORT_LOUDNESS_LUFS = -16;
+    // Files above this size are memory-mapped instead of decoded into memory
+    final static long MAPPED_FILE_THRESHOLD = 512L << 20;
+    // Analysis results of recently opened files, so their waveform is shown at once when reopened
+    final static Path ANALYSIS_CACHE_DIRECTORY = Path.of(System.getProperty("user.home"), ".podcarsten", "cache");
+    final static long ANALYSIS_CACHE_BYTES = 256L << 20;
+    // Decoded samples of recently opened files, so they are mapped instead of decoded again when reopened
+    final static Path DECODED_CACHE_DIRECTORY = Path.of(System.getProperty("user.home"), ".podcarsten", "decoded");
+    final static long DECODED_CACHE_BYTES = Long.getLong("podcarsten.decodedCache.bytes", 8L << 30);
+
     static PShape SHAPE_PLAY;
     static PShape SHAPE_PAUSE;
 
@@ -64,9 +82,10 @@ public class Main {
 
 
     File audioFile = null;
-    byte[] sampleBytes = null;
     AudioFormat format = null;
     Audible rootAudible;
+    final AnalysisCache analysisCache = new AnalysisCache(ANALYSIS_CACHE_DIRECTORY, ANALYSIS_CACHE_BYTES);
+    final DecodedCache decodedCache = new DecodedCache(DECODED_CACHE_DIRECTORY, DECODED_CACHE_BYTES);
 
     AJFrame frame;
 
@@ -74,6 +93,7 @@ public class Main {
     Switch switchMusic;
     Switch switchVoice;
     Switch switchBypass;
+    Switch switchExport;
 
     Holder barBottom;
     Slider sliderLightness;
@@ -118,6 +138,20 @@ public class Main {
                 16
         ).addListener(() -> frame.selectOutputFile(this::saveFile)).addTo(barTop);
 
+        // Exports are normalised to the peak by default, or to the loudness podcast platforms expect
+        switchExport = (Switch) new Switch(
+                new BindableVector().bind(barTop.getSize(), 0.62f, 0.15f),
+                new BindableVector().bind(barTop.getSize(), 0.075f, 0.7f),
+                new int[]{COLOR_ELEMENTS, COLOR_PRIMARY},
+                new int[]{COLOR_BACKGROUND, COLOR_PRIMARY_DARK}
+        ).addDrawer((g, state) -> {
+            g.fill(COLOR_TEXT);
+            g.textAlign(PConstants.LEFT);
+            g.textFont(AJFrame.FONT_TEXT);
+            g.textLeading(30);
+            g.text(TEXT_EXPORT[state], 130, 30);
+        }).addTo(barTop);
+
         Button buttonStart = (Button) new Button(
                 new BindableVector(-32 - 128 - 10, -32).bind(barTop.getSize(), 0.5f, 0.5f),
                 new BindableVector(64, 64),
@@ -318,7 +352,7 @@ public class Main {
             audioFile = null;
             rootAudible = null;
             trackComponent.audible = null;
-            trackComponent.amounts = new float[0];
+            trackComponent.waveform = null;
             trackComponent.drawOnNextCall();
             return;
         }
@@ -328,19 +362,59 @@ public class Main {
         // Load File
         try {
             if (AudioSystem.getAudioFileFormat(file) != null) {
-                trackComponent.amounts = new float[0];
+                trackComponent.waveform = null;
+                trackComponent.audible = null;
                 trackComponent.drawOnNextCall();
                 barBottom.drawOnNextCall();
-                AudioInputStream audioStream = AudioSystem.getAudioInputStream(file);
-                sampleBytes = audioStream.readAllBytes();
-                format = audioStream.getFormat();
                 trackComponent.samplePosition = 0;
 
-                // Create first instance of Audible Interface
-                rootAudible = Audible.of(sampleBytes, format);
-                trackComponent.loadAudible(rootAudible, sampleBytes.length / (format.getSampleSizeInBits() / 8.0) / format.getChannels() / format.getSampleRate(), format.getFrameRate(), format);
+                // The sidecar has the waveform of the whole file, decoding only has to build it on a miss
+                AnalysisCache.Key cacheKey = AnalysisCache.keyOf(file);
+                AnalysisCache.Entry cached = analysisCache.load(cacheKey);
+                WaveformPyramid waveform = cached == null ? null : cached.waveform();
+
+                // Files decoded before are mapped from the decoded cache
+                Audible decoded = decodedCache.open(file, cacheKey);
+
+                // Very long recordings are mapped into memory and only decoded where they are used
+                if (decoded != null || file.length() >= MAPPED_FILE_THRESHOLD) {
+                    format = PcmFile.read(file).format();
+                    Audible audible = decoded != null ? decoded : Audible.of(file);
+                    rootAudible = audible;
+                    trackComponent.loadAudible(audible, audible.getLength() / format.getFrameRate(), format.getFrameRate(), format, waveform);
+                    setEffects();
+                    CompletableFuture.runAsync(() -> {
+                        trackComponent.finishLoading(audible);
+                        storeAnalysis(cacheKey, cached);
+                    });
+                    return;
+                }
 
-                setEffects();
+                AudioInputStream audioStream = AudioSystem.getAudioInputStream(file);
+                format = audioStream.getFormat();
+
+                // Create first instance of Audible Interface.
+                // The file is decoded chunk by chunk, the track can be shown and played as soon as the first chunk arrived.
+                rootAudible = Audible.of(audioStream, (audible, loadedSamples) -> {
+                    if (trackComponent.audible == null) {
+                        trackComponent.loadAudible(audible, Math.max(audioStream.getFrameLength(), loadedSamples) / format.getFrameRate(), format.getFrameRate(), format, waveform);
+                        setEffects();
+                    } else {
+                        trackComponent.replaceAudible(audible);
+                    }
+                    trackComponent.setLoadedSamples(loadedSamples);
+                });
+                audioStream.close();
+
+                // The listener did not run at all (empty stream), so the track is set up with the final instance here.
+                // Replacing a zero-padded or grown instance by the final one is done by finishLoading().
+                if (trackComponent.audible == null) {
+                    trackComponent.loadAudible(rootAudible, rootAudible.getLength() / format.getFrameRate(), format.getFrameRate(), format, waveform);
+                    setEffects();
+                }
+                trackComponent.finishLoading(rootAudible);
+                storeAnalysis(cacheKey, cached);
+                storeDecoded(file, cacheKey, rootAudible);
             }
 
         } catch (UnsupportedAudioFileException | IOException e) {
@@ -350,8 +424,31 @@ public class Main {
         }
     }
 
+    private void storeAnalysis(AnalysisCache.Key cacheKey, AnalysisCache.Entry cached) {
+        WaveformPyramid waveform = trackComponent.waveform;
+        if (cached != null || waveform == null || !waveform.isFinished())
+            return;
+
+        try {
+            analysisCache.store(cacheKey, waveform);
+        } catch (IOException e) {
+            LOGGER.info("Die Analyse konnte nicht gespeichert werden: {}", e.toString());
+        }
+    }
+
+    private void storeDecoded(File file, AnalysisCache.Key cacheKey, Audible audible) {
+        // Writing takes a while for long files and must not block loading
+        CompletableFuture.runAsync(() -> {
+            try {
+                decodedCache.store(file, cacheKey, audible);
+            } catch (IOException e) {
+                LOGGER.info("Das dekodierte Signal konnte nicht gespeichert werden: {}", e.toString());
+            }
+        });
+    }
+
     private void saveFile(File file) {
-        Audible audible = trackComponent.audible;
+        Audible audible = trackComponent.getAudibleWithEffects();
 
         if (audible != null) {
             if (!file.getName().endsWith(".wav") && !file.getName().endsWith(".aiff")) {
@@ -365,20 +462,16 @@ public class Main {
             }
 
 
-            byte[] bytes = audible.processEffects().fade(0.01).normalize().getOutput(format);
-
+            AudioFileFormat.Type type = file.getName().endsWith(".aiff") ? AudioFileFormat.Type.AIFF : AudioFileFormat.Type.WAVE;
 
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-            AudioInputStream audioInputStream =  new AudioInputStream(inputStream, format, bytes.length / format.getFrameSize());
-
-
-            // Writing output file
+            // Writing output file block by block, normalised as selected
             try {
-                file.delete();
-                AudioSystem.write(audioInputStream, AudioFileFormat.Type.WAVE, file);
-                audioInputStream.close();
+                if (switchExport.getState() == 1)
+                    AudioExporter.export(audible, file, type, format, 0.01, EXPORT_LOUDNESS_LUFS);
+                else
+                    AudioExporter.export(audible, file, type, format, 0.01);
             } catch (IOException e) {
-
+                LOGGER.error("Die Datei konnte nicht gespeichert werden: {}", e.getMessage());
             }
         }
     }
@@ -0,0 +1,412 @@
+package podCarsten.frontend;
+
+import podCarsten.backend.AnalysisTap;
+import podCarsten.backend.Audible;
+import podCarsten.backend.BlockRenderer;
+import podCarsten.backend.EffectMailbox;
+import podCarsten.backend.PcmRing;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.SourceDataLine;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static podCarsten.frontend.Main.LOGGER;
+
+// One render thread and one sink thread for the whole session. The ui only enqueues commands,
+// the render thread applies them between two buffers and renders ahead into a ring buffer,
+// the sink thread writes the finished buffers to the line.
+// Every command starts a new generation on the ui thread, so the sink drops the queued blocks at once. The
+// generation and the position are kept in one atomic cursor: the sink only writes a block after moving the
+// cursor past it, so a command always sees exactly where the audio handed to the line ends.
+public class PlaybackEngine {
+
+    // Length of the crossfade when the effects change or when jumping, shorter than one buffer
+    static final double CROSSFADE_SECONDS = 0.01;
+    // How long a waiting thread sleeps before looking again
+    static final long WAIT_NANOS = 1_000_000;
+    // Largest supported frame: 8 channels with 32 bit
+    static final int MAX_FRAME_BYTES = 8 * 4;
+    // How many blocks an analyser may fall behind before the oldest are overwritten
+    static final int TAP_BLOCKS = 16;
+
+    sealed interface Command permits Load, Reload, Play, Pause, Seek {}
+    record Load(SourceDataLine line, Audible source, int sampleLength, AudioFormat format, AnalysisTap tap, int generation) implements Command {}
+    record Reload(Audible source, int sampleLength) implements Command {}
+    // from: where the sink had arrived when the command was given
+    record Play(int position, int from, int generation) implements Command {}
+    record Pause(int from, int generation) implements Command {}
+    record Seek(int position, int from, int generation) implements Command {}
+
+    // Dry and wet samples per slot of the ring, copied into the tap by the sink once the block is played
+    private record Staging(AnalysisTap tap, int[][][][] blocks) {}
+
+    final int bufferSize;
+    final EffectMailbox effects;
+    private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final Thread renderThread;
+    private final Thread sinkThread;
+
+    // Blocks rendered ahead, the dry and wet samples for the analysis tap are kept per slot
+    private final PcmRing ring;
+    private final Staging[] slotStaging;
+    // Generation (upper 32 bits) and position (lower 32 bits). A command starts a new generation at its position,
+    // the sink moves the position to the end of every block of that generation before writing it.
+    // Blocks of an older generation are dropped by the sink
+    private final AtomicLong cursor = new AtomicLong();
+    final PlaybackMetrics metrics;
+    private volatile long playPressedNanos;     // 0 once the latency of the last play press has been recorded
+
+    // Shared between the threads
+    // Every block written to the line is published here for the analysers
+    private volatile AnalysisTap tap;
+    volatile boolean playing = false;
+    volatile int loadedSamples;
+    private volatile SourceDataLine line;
+    private volatile AudioFormat format;
+    private volatile boolean lineAvailable;     // Set by load() on the ui thread, so play() can refuse at once
+
+    // Only used by the render thread
+    private Audible source;
+    private int sampleLength;
+    private BlockRenderer renderer;
+    private long effectsVersion;
+    private boolean sourceChanged;
+    private boolean rendering = false;
+    private int position;
+    private int renderGeneration;
+    private boolean resetStates;
+    private boolean fadeIn;
+    private boolean fadeOut;
+    private int jumpFrom = -1;
+    private Staging staging;
+
+    // Only used by the sink thread
+    private SourceDataLine activeLine;
+    private boolean dry;
+
+    public PlaybackEngine(EffectMailbox effects, int bufferSize, int lookahead) {
+        this.effects = effects;
+        this.bufferSize = bufferSize;
+        this.ring = new PcmRing(lookahead, bufferSize * MAX_FRAME_BYTES);
+        this.slotStaging = new Staging[lookahead];
+        this.metrics = new PlaybackMetrics(ring);
+
+        renderThread = new Thread(this::render, "Audio Renderer");
+        sinkThread = new Thread(this::drain, "Audio Sink");
+        for (Thread thread : new Thread[] {renderThread, sinkThread}) {
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+        }
+    }
+
+
+
+    // COMMANDS (called by the ui)
+
+    // line may be null if no line could be opened, the file is then shown but cannot be played
+    public void load(SourceDataLine line, Audible source, int sampleLength, AudioFormat format) {
+        assert format.getFrameSize() <= MAX_FRAME_BYTES : "Das Format wird nicht unterstützt: " + format;
+
+        playing = false;
+        lineAvailable = line != null;
+        loadedSamples = 0;
+        tap = new AnalysisTap(TAP_BLOCKS, format.getChannels(), bufferSize, format.getSampleRate());
+        submit(new Load(line, source, sampleLength, format, tap, generation(startGeneration(0)) + 1));
+    }
+
+    // Replaces the samples of the loaded file, e.g. when the stream turned out shorter than announced
+    public void reload(Audible source, int sampleLength) {
+        submit(new Reload(source, sampleLength));
+    }
+
+    public void play(int startSample) {
+        if (!lineAvailable) {
+            LOGGER.info("Es ist keine Soundkarte für die Wiedergabe geöffnet!");
+            return;
+        }
+        playPressedNanos = System.nanoTime();
+        playing = true;
+        long previous = startGeneration(startSample);
+        submit(new Play(startSample, position(previous), generation(previous) + 1));
+    }
+
+    // Returns position to stop, the end of the fade out. Playing stays true until the fade out is queued
+    public int pause() {
+        long next = cursor.updateAndGet(c -> pack(generation(c) + 1, position(c) + bufferSize));
+        submit(new Pause(position(next) - bufferSize, generation(next)));
+        return position(next);
+    }
+
+    public void seek(int sampleNr) {
+        long previous = startGeneration(sampleNr);
+        submit(new Seek(sampleNr, position(previous), generation(previous) + 1));
+    }
+
+    // Position after the last block handed to the line, or the position of the last command until its first block is
+    public int getPosition() {
+        return position(cursor.get());
+    }
+
+    // Drops the queued blocks, returns the previous cursor
+    private long startGeneration(int position) {
+        return cursor.getAndUpdate(c -> pack(generation(c) + 1, position));
+    }
+
+    private static long pack(int generation, int position) {
+        return (long) generation << 32 | position & 0xFFFF_FFFFL;
+    }
+
+    private static int generation(long cursor) {
+        return (int) (cursor >>> 32);
+    }
+
+    private static int position(long cursor) {
+        return (int) cursor;
+    }
+
+    private void submit(Command command) {
+        commands.add(command);
+        LockSupport.unpark(renderThread);
+    }
+
+    public PlaybackMetrics getMetrics() {
+        return metrics;
+    }
+
+    // The tap of the loaded file, replaced on every load. Null until the first load
+    public AnalysisTap getAnalysisTap() {
+        return tap;
+    }
+
+
+
+    // RENDER THREAD
+
+    private void render() {
+        while (true) {
+            try {
+                renderNext();
+            } catch (RuntimeException e) {
+                // The thread lives for the whole session, a failing block only stops the current playback
+                LOGGER.error("Die Wiedergabe konnte nicht berechnet werden: {}", e.toString());
+                rendering = false;
+                fadeOut = false;
+                playing = false;
+            }
+        }
+    }
+
+    // Applies the pending commands and renders the next block, if there is one
+    private void renderNext() {
+        Command command;
+        while ((command = commands.poll()) != null)
+            apply(command);
+
+        if (!rendering) {
+            LockSupport.park(this);
+            return;
+        }
+
+        int bufferLength = fadeOut ? Math.min(bufferSize, sampleLength - position) : bufferSize;
+        boolean last = fadeOut || position + bufferSize >= sampleLength;
+        if (last && !fadeOut)
+            bufferLength = sampleLength - position;
+
+        // Wait until the file has been loaded up to this block and the sink has freed a slot
+        int slot = ring.claim();
+        if (bufferLength > 0 && (slot < 0 || position + bufferLength > loadedSamples)) {
+            LockSupport.parkNanos(WAIT_NANOS);
+            return;
+        }
+
+        if (bufferLength > 0)
+            processBuffer(slot, bufferLength, last ? Boolean.FALSE : fadeIn ? Boolean.TRUE : null);
+
+        position += bufferLength;
+        fadeIn = false;
+        jumpFrom = -1;
+        if (last) {
+            rendering = false;
+            fadeOut = false;
+            if (commands.isEmpty())
+                playing = false;
+            LOGGER.info("{}", metrics);
+        }
+    }
+
+    private void apply(Command command) {
+        if (command instanceof Load load) {
+            renderGeneration = load.generation();
+            if (line != null && line != load.line()) {
+                line.stop();
+                line.flush();
+            }
+            source = load.source();
+            sampleLength = load.sampleLength();
+            format = load.format();
+            line = load.line();
+            metrics.setBufferNanos((long) (bufferSize / format.getSampleRate() * 1e9));
+            renderer = null;
+            rendering = false;
+            staging = new Staging(load.tap(), new int[ring.capacity()][2][format.getChannels()][bufferSize]);
+
+        } else if (command instanceof Reload reload) {
+            source = reload.source();
+            sampleLength = reload.sampleLength();
+            position = Math.min(position, sampleLength);
+            sourceChanged = true;
+
+        } else if (command instanceof Play play) {
+            if (rendering && !fadeOut) {
+                apply(new Seek(play.position(), play.from(), play.generation()));
+            } else if (source != null) {
+                // The effects start over, their states belong to where playback stopped
+                renderGeneration = play.generation();
+                position = play.position();
+                rendering = true;
+                resetStates = true;
+                fadeIn = true;
+                fadeOut = false;
+                jumpFrom = -1;
+                playing = true;
+            }
+
+        } else if (command instanceof Pause pause) {
+            // The queued blocks are dropped, the fade out starts where the sink has arrived
+            if (rendering && !fadeOut) {
+                renderGeneration = pause.generation();
+                position = pause.from();
+                fadeOut = true;
+                jumpFrom = -1;
+            }
+
+        } else if (command instanceof Seek seek) {
+            // The queued blocks are dropped, the next block is crossfaded from where the sink has arrived
+            if (rendering && !fadeOut) {
+                renderGeneration = seek.generation();
+                if (jumpFrom < 0 && !fadeIn)
+                    jumpFrom = seek.from();
+                position = seek.position();
+                resetStates = true;
+            }
+        }
+    }
+
+    // fade: true to fade in, false to fade out, null for neither. Applied in place to the buffers of the renderer
+    private void processBuffer(int slot, int bufferLength, Boolean fade) {
+        long start = System.nanoTime();
+
+        // Only the latest effects are taken over at the block boundary, the states are carried over and crossfaded
+        int crossfadeSamples = (int) (CROSSFADE_SECONDS * format.getSampleRate());
+        if (renderer == null || sourceChanged || effects.changedSince(effectsVersion)) {
+            EffectMailbox.Snapshot snapshot = effects.snapshot();
+            effectsVersion = snapshot.version();
+            Audible audible = source.setEffects(snapshot.audioEffects());
+            renderer = renderer == null ? new BlockRenderer(audible) : renderer.withAudible(audible, crossfadeSamples);
+            sourceChanged = false;
+        }
+
+        // A jump resets the states itself after the crossfade source has been rendered
+        boolean jump = jumpFrom >= 0 && jumpFrom + crossfadeSamples <= loadedSamples;
+        if (resetStates && !jump)
+            renderer.reset();
+        resetStates = false;
+        int[][] output = jump
+                ? renderer.renderJump(jumpFrom, position, bufferLength, crossfadeSamples)
+                : renderer.renderBlock(position, bufferLength);
+
+        int[][] input = renderer.getInput();
+        for (int channel = 0; channel < input.length; channel++) {
+            System.arraycopy(input[channel], 0, staging.blocks()[slot][0][channel], 0, bufferLength);
+            System.arraycopy(output[channel], 0, staging.blocks()[slot][1][channel], 0, bufferLength);
+        }
+        slotStaging[slot] = staging;
+
+        if (fade != null)
+            renderer.fadeOutput(fade);
+        renderer.encodeOutput(format, ring.bytes(slot));
+
+        metrics.renderNanos.record(System.nanoTime() - start);
+        ring.publish(slot, bufferLength, position, renderGeneration);
+    }
+
+
+
+    // SINK THREAD
+
+    private void drain() {
+        while (true) {
+            try {
+                drainNext();
+            } catch (RuntimeException e) {
+                // The thread lives for the whole session, a failing line only loses the current block
+                LOGGER.error("Die Wiedergabe konnte nicht an die Soundkarte übergeben werden: {}", e.toString());
+                activeLine = null;
+            }
+        }
+    }
+
+    // Writes the next finished block to the line, or waits for one
+    private void drainNext() {
+        int slot = ring.peek();
+
+        if (slot < 0) {
+            if (activeLine != null && !playing) {
+                // Let the fade out play before the line is stopped
+                SourceDataLine stopping = activeLine;
+                activeLine = null;
+                stopping.drain();
+                stopping.stop();
+            } else if (activeLine != null && !dry && activeLine.available() >= activeLine.getBufferSize()) {
+                // The line has run dry, although the next block should have been there
+                ring.recordUnderrun();
+                dry = true;
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+            return;
+        }
+        dry = false;
+
+        try {
+            // Without a line the block is dropped
+            SourceDataLine line = this.line;
+            if (line != null && advance(ring.generation(slot), ring.position(slot) + ring.frames(slot))) {
+                int frameSize = format.getFrameSize();
+                metrics.lineHeadroomMicros.record((long) ((line.getBufferSize() - line.available()) / frameSize / format.getSampleRate() * 1e6));
+
+                Staging staged = slotStaging[slot];
+                staged.tap().publish(ring.position(slot), staged.blocks()[slot][0], staged.blocks()[slot][1], ring.frames(slot));
+
+                line.write(ring.bytes(slot), 0, ring.frames(slot) * frameSize);
+                if (activeLine != line) {
+                    line.start();
+                    activeLine = line;
+                }
+                long pressed = playPressedNanos;
+                if (pressed != 0) {
+                    metrics.playLatencyNanos.record(System.nanoTime() - pressed);
+                    playPressedNanos = 0;
+                }
+            }
+        } finally {
+            ring.release();
+        }
+    }
+
+    // Moves the cursor to the end of a block, unless a command has started a new generation since it was rendered
+    private boolean advance(int blockGeneration, int end) {
+        long current;
+        do {
+            current = cursor.get();
+            if (generation(current) != blockGeneration)
+                return false;
+        } while (!cursor.compareAndSet(current, pack(blockGeneration, end)));
+        return true;
+    }
+
+
+}
@@ -0,0 +1,66 @@
+package podCarsten.frontend;
+
+import podCarsten.backend.LatencyHistogram;
+import podCarsten.backend.PcmRing;
+
+// Measurements of the playback path, recorded by the engine threads and readable at any time by the ui and the logs
+public class PlaybackMetrics {
+
+    // Time to render and encode one buffer, in nanoseconds
+    final LatencyHistogram renderNanos = new LatencyHistogram();
+    // Audio still queued in the line before a buffer is written, in microseconds. Low values mean the sink is late
+    final LatencyHistogram lineHeadroomMicros = new LatencyHistogram();
+    // Time from pressing play until the first buffer has been handed to the line, in nanoseconds
+    final LatencyHistogram playLatencyNanos = new LatencyHistogram();
+
+    private final PcmRing ring;
+    private volatile long bufferNanos = 1;      // Playback time of one buffer, the deadline for rendering it
+
+    PlaybackMetrics(PcmRing ring) {
+        this.ring = ring;
+    }
+
+    void setBufferNanos(long bufferNanos) {
+        this.bufferNanos = Math.max(1, bufferNanos);
+    }
+
+    public LatencyHistogram getRenderNanos() {
+        return renderNanos;
+    }
+
+    public LatencyHistogram getLineHeadroomMicros() {
+        return lineHeadroomMicros;
+    }
+
+    public LatencyHistogram getPlayLatencyNanos() {
+        return playLatencyNanos;
+    }
+
+    // Share of the deadline used by rendering at the given percentile, 1 means the render thread has no time left
+    public double getDeadlineRatio(double percentile) {
+        return renderNanos.percentile(percentile) / (double) bufferNanos;
+    }
+
+    public long getUnderruns() {
+        return ring.underruns();
+    }
+
+    public void reset() {
+        renderNanos.reset();
+        lineHeadroomMicros.reset();
+        playLatencyNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("""
+                Wiedergabe:
+                Rechenzeit pro Puffer (ms): %s
+                Anteil an der Deadline: p50=%.2f, p99=%.2f, Max=%.2f
+                Puffer in der Line (ms): %s
+                Latenz beim Starten (ms): %s
+                Unterläufe: %d""",
+                renderNanos.toString(1e6), getDeadlineRatio(50), getDeadlineRatio(99), getDeadlineRatio(100),
+                lineHeadroomMicros.toString(1e3), playLatencyNanos.toString(1e6), getUnderruns());
+    }
+}
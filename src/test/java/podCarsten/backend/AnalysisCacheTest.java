@@ -0,0 +1,127 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisCacheTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Ein gespeichertes Sidecar muss dieselbe Übersicht und Stille-Karte liefern; nach einer Änderung der
+     * Audiodatei darf es nicht mehr gefunden werden.
+     */
+    @Test
+    void storeAndLoad(@TempDir Path directory) throws IOException {
+        LOGGER.info("Starte den Test für das Speichern in AnalysisCache...\n");
+
+        AnalysisCache cache = new AnalysisCache(directory, 1L << 30);
+        File file = audioFile(directory, 1);
+
+        AnalysisCache.Key key = AnalysisCache.keyOf(file);
+        assertEquals(key, AnalysisCache.keyOf(file), "Der Schlüssel muss reproduzierbar sein!");
+        assertNull(cache.load(key));
+
+        WaveformPyramid waveform = waveform();
+        AnalysisCache.Entry stored = cache.store(key, waveform);
+        AnalysisCache.Entry loaded = cache.load(key);
+        assertNotNull(loaded);
+        assertEquals(stored.silence(), loaded.silence());
+        assertTrue(loaded.silence().get(0) && !loaded.silence().get(300), "Die Stille wurde falsch erkannt!");
+
+        int[] expectedMin = new int[777], expectedMax = new int[777], min = new int[777], max = new int[777];
+        double[] expectedRms = new double[777], rms = new double[777];
+        waveform.query(0, waveform.getFrames(), expectedMin, expectedMax, expectedRms);
+        assertEquals(777, loaded.waveform().query(0, waveform.getFrames(), min, max, rms));
+        assertArrayEquals(expectedMin, min);
+        assertArrayEquals(expectedMax, max);
+        for (int column = 0; column < rms.length; column++)
+            assertEquals(expectedRms[column], rms[column]);
+
+        Files.write(file.toPath(), new byte[] {1}, StandardOpenOption.APPEND);
+        assertNull(cache.load(AnalysisCache.keyOf(file)), "Eine geänderte Datei darf nicht gefunden werden!");
+
+        LOGGER.info("Das Speichern in AnalysisCache funktioniert!\n\n\n");
+    }
+
+
+    /**
+     * Passt das Verzeichnis nicht mehr in seine Größe, muss das am längsten nicht verwendete Sidecar gelöscht
+     * werden. Ein Treffer zählt dabei als Verwendung.
+     */
+    @Test
+    void leastRecentlyUsed(@TempDir Path directory) throws IOException {
+        LOGGER.info("Starte den Test für die LRU-Verdrängung in AnalysisCache...\n");
+
+        WaveformPyramid waveform = waveform();
+        AnalysisCache.Key[] keys = new AnalysisCache.Key[3];
+        for (int nr = 0; nr < keys.length; nr++)
+            keys[nr] = AnalysisCache.keyOf(audioFile(directory, nr));
+
+        // Platz für genau zwei Sidecars
+        AnalysisCache unbounded = new AnalysisCache(directory.resolve("probe"), 1L << 30);
+        unbounded.store(keys[0], waveform);
+        long sidecarBytes = unbounded.size();
+        AnalysisCache cache = new AnalysisCache(directory.resolve("cache"), 2 * sidecarBytes + sidecarBytes / 2);
+
+        cache.store(keys[0], waveform);
+        cache.store(keys[1], waveform);
+        age(cache, keys[0], 20_000);
+        age(cache, keys[1], 10_000);
+
+        // Das ältere Sidecar wird verwendet und ist damit das neuere
+        assertNotNull(cache.load(keys[0]));
+        cache.store(keys[2], waveform);
+
+        assertNotNull(cache.load(keys[0]), "Das zuletzt verwendete Sidecar wurde gelöscht!");
+        assertNull(cache.load(keys[1]), "Das am längsten nicht verwendete Sidecar wurde nicht gelöscht!");
+        assertNotNull(cache.load(keys[2]));
+        assertTrue(cache.size() <= cache.getMaxBytes());
+
+        LOGGER.info("Die LRU-Verdrängung in AnalysisCache funktioniert!\n\n\n");
+    }
+
+
+
+    private static File audioFile(Path directory, int seed) throws IOException {
+        byte[] bytes = new byte[300_000];
+        new Random(seed).nextBytes(bytes);
+        Path path = directory.resolve("episode" + seed + ".wav");
+        Files.write(path, bytes);
+        return path.toFile();
+    }
+
+    /**
+     * Eine Übersicht, deren erste 100 Blätter still sind.
+     */
+    private static WaveformPyramid waveform() {
+        Random random = new Random(7);
+        int frames = 123_457;
+        int[][] samples = new int[2][frames];
+        for (int[] channel : samples) {
+            for (int i = 100 * WaveformPyramid.LEAF_FRAMES; i < frames; i++)
+                channel[i] = (int) (random.nextGaussian() * 1e8);
+        }
+
+        WaveformPyramid waveform = new WaveformPyramid(2, frames);
+        waveform.append(samples, frames);
+        waveform.finish();
+        return waveform;
+    }
+
+    private static void age(AnalysisCache cache, AnalysisCache.Key key, long millis) throws IOException {
+        Path path = cache.getDirectory().resolve(key.fileName() + AnalysisCache.SUFFIX);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - millis));
+    }
+}
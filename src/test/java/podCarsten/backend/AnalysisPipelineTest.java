@@ -0,0 +1,201 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static podCarsten.backend.AudioProcessor.CHUNK_FRAMES;
+import static podCarsten.backend.SignalAnalysers.*;
+
+class AnalysisPipelineTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    private static final int FRAMES = 3 * CHUNK_FRAMES + 777;
+
+
+    /**
+     * Die parallel ausgewerteten und zusammengeführten Abschnitte müssen exakt dasselbe ergeben wie ein
+     * einzelner Durchlauf über alle Samples, auch für übersteuerte Stellen über die Grenzen der Abschnitte
+     * und wenn die Samples erst kopiert werden müssen.
+     */
+    @Test
+    void matchesSinglePass() {
+        LOGGER.info("Starte den Test für die Analysen der AnalysisPipeline...\n");
+
+        int[][] samples = testSamples();
+        Audible audible = new AudioProcessor(samples, 44100, new AudioEffect[2][0]);
+        assertResults(samples, new AnalysisPipeline(PEAK, BLOCK_RMS, DC_OFFSET, CLIPPING, HISTOGRAM).analyse(audible));
+        assertResults(samples, new AnalysisPipeline(PEAK, BLOCK_RMS, DC_OFFSET, CLIPPING, HISTOGRAM).analyse(audible.lazy()));
+
+        LOGGER.info("Die Analysen der AnalysisPipeline funktionieren!\n\n\n");
+    }
+
+
+    /**
+     * Ein Run muss bei beliebig langen Blöcken dieselben Ergebnisse liefern, und diese müssen danach für alle
+     * Instanzen mit denselben Samples zwischengespeichert sein.
+     */
+    @Test
+    void duringLoad() {
+        LOGGER.info("Starte den Test für die Analyse während des Ladens...\n");
+
+        int[][] samples = testSamples();
+        Audible audible = new AudioProcessor(samples, 44100, new AudioEffect[2][0]);
+        AnalysisPipeline.Run run = AnalysisPipeline.STANDARD.start();
+
+        // Zuerst ganze Abschnitte (direkt ausgewertet) und ein Rest, danach nur noch kurze Blöcke (kopiert)
+        Random random = new Random(3);
+        int[][] block = new int[2][2 * CHUNK_FRAMES];
+        int[] lengths = {CHUNK_FRAMES + 5, CHUNK_FRAMES - 5, CHUNK_FRAMES};
+        for (int loaded = 0, nr = 0; loaded < FRAMES; nr++) {
+            int length = Math.min(FRAMES - loaded, nr < lengths.length ? lengths[nr] : 1 + random.nextInt(3000));
+            for (int channel = 0; channel < 2; channel++)
+                System.arraycopy(samples[channel], loaded, block[channel], 0, length);
+            run.append(block, length);
+            loaded += length;
+        }
+        AnalysisPipeline.Results results = run.finish(audible);
+        assertResults(samples, results);
+
+        // Nach setEffects() teilen sich die Instanzen die Samples und damit die Ergebnisse
+        Audible withEffects = audible.setEffects(AudioEffect.bell(44100, 200, 1, -9));
+        assertSame(results.get(BLOCK_RMS), new AnalysisPipeline(BLOCK_RMS).analyse(withEffects).get(BLOCK_RMS), "Das Ergebnis wurde erneut berechnet!");
+        assertEquals(AudioProcessor.intTOdBFS(results.get(PEAK) * AudioProcessor.HEADROOM_DIVISOR), withEffects.getPeakInDBFS());
+
+        LOGGER.info("Die Analyse während des Ladens funktioniert!\n\n\n");
+    }
+
+
+    /**
+     * Das Zusammenführen muss für jede Analyse assoziativ sein, auch wenn ein Abschnitt vollständig
+     * übersteuert ist oder der letzte Abschnitt kürzer ist.
+     */
+    @Test
+    void associativeMerge() {
+        LOGGER.info("Starte den Test für das Zusammenführen der Analysen...\n");
+
+        int[][] samples = testSamples();
+        for (SignalAnalyser<?> analyser : new SignalAnalyser<?>[] {PEAK, BLOCK_RMS, DC_OFFSET, CLIPPING, HISTOGRAM}) {
+            assertAssociative(analyser, samples, 0);
+            assertAssociative(analyser, samples, CHUNK_FRAMES);
+        }
+
+        LOGGER.info("Das Zusammenführen der Analysen funktioniert!\n\n\n");
+    }
+
+
+    /**
+     * Ein gespeichertes Ergebnis muss für alle Instanzen mit denselben Samples verwendet werden, statt es
+     * erneut zu berechnen.
+     */
+    @Test
+    void sharedResults() {
+        LOGGER.info("Starte den Test für gespeicherte Ergebnisse der AnalysisPipeline...\n");
+
+        Audible audible = new AudioProcessor(testSamples(), 44100, new AudioEffect[2][0]);
+        // Ein Wert, der sich aus den Samples nicht ergeben kann, zeigt, dass nur nachgeschlagen wurde
+        AnalysisPipeline.store(audible, PEAK, 12345);
+
+        Audible withEffects = audible.setEffects(AudioEffect.bell(44100, 200, 1, -9));
+        assertEquals(12345, (int) AnalysisPipeline.PEAK.analyse(withEffects).get(PEAK), "Das Ergebnis wurde erneut berechnet!");
+        assertEquals(AudioProcessor.intTOdBFS(12345 * AudioProcessor.HEADROOM_DIVISOR), withEffects.getPeakInDBFS());
+
+        LOGGER.info("Gespeicherte Ergebnisse der AnalysisPipeline werden verwendet!\n\n\n");
+    }
+
+
+
+    /**
+     * Rauschen mit übersteuerten Stellen: eine über die Grenze des ersten Abschnitts, eine zu kurze, eine
+     * über den gesamten dritten Abschnitt und eine am Ende des Signals.
+     */
+    static int[][] testSamples() {
+        Random random = new Random(42);
+        int[][] samples = new int[2][FRAMES];
+        for (int[] channel : samples) {
+            for (int i = 0; i < FRAMES; i++)
+                channel[i] = (int) (random.nextGaussian() * 1e7) + 20_000;
+        }
+
+        int[][] runs = {{CHUNK_FRAMES - 2, CHUNK_FRAMES + 2}, {1000, 1002}, {5000, 5005}, {2 * CHUNK_FRAMES - 10, 3 * CHUNK_FRAMES + 5}, {FRAMES - 4, FRAMES}};
+        for (int[] run : runs) {
+            for (int i = run[0]; i < run[1]; i++)
+                samples[i % 2][i] = i % 3 == 0 ? -CLIP_LEVEL : CLIP_LEVEL + 100;
+        }
+        return samples;
+    }
+
+    static void assertResults(int[][] samples, AnalysisPipeline.Results results) {
+        int peak = Integer.MIN_VALUE;
+        double[] squares = new double[(FRAMES + RMS_BLOCK_FRAMES - 1) / RMS_BLOCK_FRAMES];
+        long[] sums = new long[2];
+        long[] counts = new long[HISTOGRAM_BINS];
+        for (int channel = 0; channel < 2; channel++) {
+            for (int i = 0; i < FRAMES; i++) {
+                int sample = samples[channel][i];
+                peak = Math.max(peak, Math.abs(sample));
+                sums[channel] += sample;
+                counts[32 - Integer.numberOfLeadingZeros(Math.abs(sample))]++;
+            }
+        }
+        for (int block = 0; block < squares.length; block++) {
+            for (int[] channel : samples) {
+                double sum = 0;
+                for (int i = block * RMS_BLOCK_FRAMES; i < Math.min(FRAMES, (block + 1) * RMS_BLOCK_FRAMES); i++)
+                    sum += (double) channel[i] * channel[i];
+                squares[block] += sum;
+            }
+        }
+
+        long clippedFrames = 0;
+        long runs = 0;
+        int run = 0;
+        for (int i = 0; i <= FRAMES; i++) {
+            if (i < FRAMES && (Math.abs(samples[0][i]) >= CLIP_LEVEL || Math.abs(samples[1][i]) >= CLIP_LEVEL)) {
+                clippedFrames++;
+                run++;
+                continue;
+            }
+            if (run >= CLIP_RUN_FRAMES)
+                runs++;
+            run = 0;
+        }
+
+        assertEquals(peak, (int) results.get(PEAK));
+        assertArrayEquals(squares, results.get(BLOCK_RMS).squares(), 0, "Der RMS weicht ab!");
+        assertArrayEquals(sums, results.get(DC_OFFSET).sums());
+        assertEquals(FRAMES, results.get(DC_OFFSET).frames());
+        assertArrayEquals(counts, results.get(HISTOGRAM).counts());
+        assertEquals(clippedFrames, results.get(CLIPPING).clippedFrames());
+        assertEquals(4, runs);
+        assertEquals(runs, results.get(CLIPPING).runs(), "Die übersteuerten Stellen wurden falsch gezählt!");
+    }
+
+    /**
+     * Vergleicht beide Reihenfolgen, drei aufeinanderfolgende Abschnitte ab der angegebenen Position
+     * zusammenzuführen.
+     */
+    private static <R> void assertAssociative(SignalAnalyser<R> analyser, int[][] samples, int from) {
+        R first = analyser.analyse(samples, from, from + CHUNK_FRAMES);
+        R second = analyser.analyse(samples, from + CHUNK_FRAMES, from + 2 * CHUNK_FRAMES);
+        R third = analyser.analyse(samples, from + 2 * CHUNK_FRAMES, Math.min(FRAMES, from + 3 * CHUNK_FRAMES));
+
+        Object left = analyser.merge(analyser.merge(first, second), third);
+        Object right = analyser.merge(first, analyser.merge(second, third));
+        String message = "Das Zusammenführen ist nicht assoziativ! Position: " + from;
+        if (left instanceof BlockEnergy energy) {
+            assertArrayEquals(energy.squares(), ((BlockEnergy) right).squares(), 0, message);
+            assertEquals(energy.frames(), ((BlockEnergy) right).frames(), message);
+        } else if (left instanceof DcOffset offset) {
+            assertArrayEquals(offset.sums(), ((DcOffset) right).sums(), message);
+            assertEquals(offset.frames(), ((DcOffset) right).frames(), message);
+        } else if (left instanceof Histogram histogram) {
+            assertArrayEquals(histogram.counts(), ((Histogram) right).counts(), message);
+        } else {
+            assertEquals(left, right, message);
+        }
+    }
+}
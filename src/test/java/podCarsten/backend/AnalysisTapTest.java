@@ -0,0 +1,115 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisTapTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Jeder Leser erhält alle Blöcke ab seiner Erstellung in der richtigen Reihenfolge. Ein Leser, der zu weit
+     * zurückliegt, überspringt die überschriebenen Blöcke, ohne die anderen Leser zu beeinflussen.
+     */
+    @Test
+    void overwriteOldest() {
+        LOGGER.info("Starte den Test für das Überschreiben in AnalysisTap...\n");
+
+        AnalysisTap tap = new AnalysisTap(4, 2, 8, 44100);
+        AnalysisTap.Reader slow = tap.reader();
+        AnalysisTap.Reader fast = tap.reader();
+        AnalysisTap.Block block = tap.newBlock();
+
+        for (int nr = 0; nr < 10; nr++) {
+            publish(tap, nr);
+            assertTrue(fast.poll(block));
+            assertEquals(nr * 8, block.getPosition());
+            assertFalse(fast.poll(block), "Es darf nur einmal gelesen werden!");
+        }
+
+        for (int nr = 6; nr < 10; nr++) {
+            assertTrue(slow.poll(block));
+            assertEquals(nr, block.getSequence(), "Es müssen die neuesten Blöcke übrig sein!");
+            assertEquals(nr, block.getDry()[1][block.getLength() - 1]);
+            assertEquals(-nr, block.getWet()[0][0]);
+        }
+        assertFalse(slow.poll(block));
+        assertEquals(6, slow.skipped());
+        assertEquals(0, fast.skipped());
+
+        AnalysisTap.Reader late = tap.reader();
+        assertFalse(late.poll(block), "Ein neuer Leser darf erst ab dem nächsten Block lesen!");
+
+        LOGGER.info("Das Überschreiben in AnalysisTap funktioniert!\n\n\n");
+    }
+
+    /**
+     * Ein Thread schreibt ohne Pause, ein anderer liest langsamer. Jeder gelesene Block muss vollständig zu
+     * genau einem geschriebenen Block gehören, die Nummern müssen streng steigen.
+     */
+    @Test
+    void consistentBlocks() throws InterruptedException {
+        LOGGER.info("Starte den Test für die Konsistenz von AnalysisTap...\n");
+
+        int blocks = 50_000;
+        AnalysisTap tap = new AnalysisTap(4, 2, 256, 44100);
+        AnalysisTap.Reader reader = tap.reader();
+        AnalysisTap.Block block = tap.newBlock();
+
+        Thread producer = new Thread(() -> {
+            int[][] dry = new int[2][256];
+            int[][] wet = new int[2][256];
+            for (int nr = 0; nr < blocks; nr++) {
+                for (int channel = 0; channel < 2; channel++) {
+                    Arrays.fill(dry[channel], nr);
+                    Arrays.fill(wet[channel], -nr);
+                }
+                tap.publish(nr, dry, wet, 1 + nr % 256);
+            }
+        });
+        producer.start();
+
+        long last = -1;
+        long read = 0;
+        while (true) {
+            boolean finished = !producer.isAlive();
+            if (!reader.poll(block)) {
+                if (finished)
+                    break;
+                continue;
+            }
+            int nr = block.getPosition();
+            assertTrue(block.getSequence() > last, "Die Reihenfolge der Blöcke stimmt nicht!");
+            assertEquals(nr, block.getSequence());
+            assertEquals(1 + nr % 256, block.getLength());
+            for (int channel = 0; channel < 2; channel++) {
+                for (int i = 0; i < block.getLength(); i++) {
+                    assertEquals(nr, block.getDry()[channel][i], "Der Block wurde beim Lesen überschrieben!");
+                    assertEquals(-nr, block.getWet()[channel][i], "Der Block wurde beim Lesen überschrieben!");
+                }
+            }
+            last = block.getSequence();
+            read++;
+        }
+        producer.join();
+
+        assertEquals(blocks, read + reader.skipped(), "Jeder Block muss gelesen oder übersprungen werden!");
+        LOGGER.info("{} Blöcke gelesen, {} übersprungen", read, reader.skipped());
+        LOGGER.info("Die Konsistenz von AnalysisTap funktioniert!\n\n\n");
+    }
+
+
+    private static void publish(AnalysisTap tap, int nr) {
+        int[][] dry = new int[2][8];
+        int[][] wet = new int[2][8];
+        for (int channel = 0; channel < 2; channel++) {
+            Arrays.fill(dry[channel], nr);
+            Arrays.fill(wet[channel], -nr);
+        }
+        tap.publish(nr * 8, dry, wet, 8);
+    }
+}
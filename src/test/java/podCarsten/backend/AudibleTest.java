@@ -94,6 +94,22 @@ public class AudibleTest {
         LOGGER.info("Die Methode getFFTdBFS() funktioniert!\n\n\n");
     }
 
+    /**
+     * Die Frequenzanalyse muss auch für Mono-Signale funktionieren (bisher wurde immer der zweite Kanal gelesen).
+     */
+    @Test
+    void getFFTdBFSMono() {
+        LOGGER.info("Starte den Test für getFFTdBFS() mit einem Mono-Signal...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        Audible audible = Audible.of(FilterBankAnalyzerTest.sine(format, 1000, 0.5, 4410), format);
+
+        assertEquals(-6, audible.getFFTdBFS(1000), 0.2, "1000 Hz wurde falsch gemessen");
+        assertTrue(audible.getFFTdBFS(3000) < -30, "3000 Hz wurde zu laut gemessen");
+
+        LOGGER.info("Die Methode getFFTdBFS() funktioniert auch für Mono-Signale!\n\n\n");
+    }
+
     @Test
     void getEffects() {
         LOGGER.info("Starte den Test für getEffects(). Nutze bereits getestete Methode setEffects()...\n");
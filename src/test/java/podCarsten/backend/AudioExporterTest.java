@@ -0,0 +1,79 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioExporterTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    @Test
+    void exportWave() {
+        LOGGER.info("Starte den Test für den blockweisen Export in WAV-Dateien...\n");
+        testExport(AudioFileFormat.Type.WAVE, new AudioFormat(44100, 16, 2, true, false));
+        testExport(AudioFileFormat.Type.WAVE, new AudioFormat(48000, 24, 1, true, false));
+        LOGGER.info("WAV-Dateien werden korrekt exportiert!\n\n\n");
+    }
+
+    @Test
+    void exportAiff() {
+        LOGGER.info("Starte den Test für den blockweisen Export in AIFF-Dateien...\n");
+        testExport(AudioFileFormat.Type.AIFF, new AudioFormat(44100, 16, 2, true, true));
+        testExport(AudioFileFormat.Type.AIFF, new AudioFormat(96000, 32, 1, true, true));
+        LOGGER.info("AIFF-Dateien werden korrekt exportiert!\n\n\n");
+    }
+
+    /**
+     * Vergleicht die exportierte Datei mit dem vollständig im Speicher verarbeiteten Signal.
+     * Die IIR-Filter liefern blockweise exakt das gleiche Ergebnis wie auf dem gesamten Signal, sofern die
+     * Referenz sie wie der BlockRenderer zu einer BiquadCascade zusammenfasst.
+     */
+    void testExport(AudioFileFormat.Type type, AudioFormat format) {
+        byte[] bytes = new byte[(LazyAudible.BLOCK_FRAMES * 2 + 333) * format.getFrameSize()];
+        new Random(11).nextBytes(bytes);
+
+        Audible audible = Audible.of(bytes, format,
+                AudioEffect.highPass(format.getSampleRate(), 80, 0.71),
+                AudioEffect.bell(format.getSampleRate(), 3000, 1, 4));
+        Audible reference = audible.setEffects(BiquadCascade.fuse(audible.getAudioEffects()[0]));
+        byte[] expected = reference.processEffects().fade(0.01).normalize().getOutput(format);
+        byte[] expectedReversed = reference.processEffects().reverse().fadeIn(0.5).normalize().getOutput(format);
+
+        File file = assertDoesNotThrow(() -> File.createTempFile("audioExporter", "." + type.getExtension()));
+        file.deleteOnExit();
+
+        try {
+            AudioExporter.export(audible, file, type, format, 0.01);
+
+            AudioInputStream stream = AudioSystem.getAudioInputStream(file);
+            assertEquals(type, AudioSystem.getAudioFileFormat(file).getType(), "Der Dateityp ist falsch!");
+            assertEquals(format.getSampleRate(), stream.getFormat().getSampleRate(), "Die Samplerate wurde nicht korrekt geschrieben!");
+            assertEquals(bytes.length / format.getFrameSize(), stream.getFrameLength(), "Die Länge wurde nicht korrekt geschrieben!");
+            assertArrayEquals(expected, stream.readAllBytes(), "Die exportierten Samples weichen ab!");
+            stream.close();
+
+            // Beim Umkehren werden die Blöcke von hinten nach vorne in die Datei geschrieben
+            AudioExporter.export(audible.lazy().processEffects().reverse().fadeIn(0.5).normalize(), file, type, format);
+            stream = AudioSystem.getAudioInputStream(file);
+            assertEquals(bytes.length / format.getFrameSize(), stream.getFrameLength(), "Die Länge wurde nicht korrekt geschrieben!");
+            assertArrayEquals(expectedReversed, stream.readAllBytes(), "Die umgekehrt exportierten Samples weichen ab!");
+            stream.close();
+
+            LOGGER.info("Test mit folgenden Werten erfolgreich: Typ: {}; Kanäle: {}; Samplegröße in Bits: {}", type, format.getChannels(), format.getSampleSizeInBits());
+
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            file.delete();
+        }
+    }
+}
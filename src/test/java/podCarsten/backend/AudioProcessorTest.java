@@ -8,9 +8,11 @@ import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -105,6 +107,70 @@ class AudioProcessorTest {
         LOGGER.info("Die Methode setInput() funktioniert!\n\n\n");
     }
 
+    @Test
+    void setInputFromStream() {
+        LOGGER.info("Starte den Test für setInput() mit einem Stream...\n");
+
+        // Mehrere Blöcke und ein unvollständiger letzter Block
+        AudioFormat testFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, 16, 2, 4, 44100, false);
+        byte[] bytes = new byte[(AudioProcessor.CHUNK_FRAMES * 2 + 123) * testFormat.getFrameSize()];
+        new Random(42).nextBytes(bytes);
+
+        AudioProcessor reference = (AudioProcessor) Audible.of(bytes, testFormat);
+        int[] lastLoaded = new int[]{0};
+
+        AudioProcessor testProcessor = assertDoesNotThrow(() -> (AudioProcessor) Audible.of(
+                new AudioInputStream(new ByteArrayInputStream(bytes), testFormat, bytes.length / testFormat.getFrameSize()),
+                (audible, loadedSamples) -> {
+                    assertTrue(loadedSamples > lastLoaded[0], "Die Anzahl geladener Samples muss steigen!");
+                    lastLoaded[0] = loadedSamples;
+                }));
+
+        assertEquals(reference.channelSamples[0].length, lastLoaded[0], "Der Listener wurde nicht für den letzten Block aufgerufen!");
+        assertTrue(IntStream.range(0, reference.channelSamples.length).allMatch(i -> Arrays.equals(reference.channelSamples[i], testProcessor.channelSamples[i])));
+        LOGGER.info("Blockweises Laden liefert die gleichen Samples, wie das Laden aus einem byte-Array.");
+
+        // Unbekannte Länge
+        AudioProcessor unknownLength = assertDoesNotThrow(() -> (AudioProcessor) Audible.of(
+                new AudioInputStream(new ByteArrayInputStream(bytes), testFormat, AudioSystem.NOT_SPECIFIED), null));
+        assertTrue(IntStream.range(0, reference.channelSamples.length).allMatch(i -> Arrays.equals(reference.channelSamples[i], unknownLength.channelSamples[i])));
+        LOGGER.info("Blockweises Laden funktioniert auch bei unbekannter Länge.");
+
+        // Unbekannte Länge, die genau die Größe der verdoppelten Arrays erreicht, sodass nicht gekürzt wird
+        byte[] exact = Arrays.copyOf(bytes, AudioProcessor.CHUNK_FRAMES * 2 * testFormat.getFrameSize());
+        AudioProcessor exactReference = (AudioProcessor) Audible.of(exact, testFormat);
+        Audible[] notified = new Audible[1];
+        AudioProcessor exactLength = assertDoesNotThrow(() -> (AudioProcessor) Audible.of(
+                new AudioInputStream(new ByteArrayInputStream(exact), testFormat, AudioSystem.NOT_SPECIFIED),
+                (audible, loadedSamples) -> {
+                    assertNull(notified[0], "Bei unbekannter Länge darf der Listener nur einmal aufgerufen werden!");
+                    assertEquals(audible.getLength(), loadedSamples);
+                    notified[0] = audible;
+                }));
+        assertEquals(AudioProcessor.CHUNK_FRAMES * 2, exactLength.getLength(), "Es wurde eine veraltete Instanz zurückgegeben!");
+        assertSame(exactLength.channelSamples, ((AudioProcessor) notified[0]).channelSamples, "Der Listener hat nicht die endgültige Instanz erhalten!");
+        assertTrue(IntStream.range(0, exactReference.channelSamples.length).allMatch(i -> Arrays.equals(exactReference.channelSamples[i], exactLength.channelSamples[i])));
+
+        // Ein Header, der weniger Samples angibt als der Stream enthält
+        int[] longest = new int[]{0};
+        AudioInputStream shortHeader = new AudioInputStream(new ByteArrayInputStream(bytes), testFormat, bytes.length / testFormat.getFrameSize()) {
+            @Override
+            public long getFrameLength() {
+                return AudioProcessor.CHUNK_FRAMES;
+            }
+        };
+        AudioProcessor tooShort = assertDoesNotThrow(() -> (AudioProcessor) Audible.of(shortHeader,
+                (audible, loadedSamples) -> {
+                    assertTrue(loadedSamples <= audible.getLength(), "Der Listener hat eine zu kurze Instanz erhalten!");
+                    longest[0] = loadedSamples;
+                }));
+        assertEquals(reference.getLength(), longest[0]);
+        assertTrue(IntStream.range(0, reference.channelSamples.length).allMatch(i -> Arrays.equals(reference.channelSamples[i], tooShort.channelSamples[i])));
+        LOGGER.info("Blockweises Laden funktioniert auch, wenn die Arrays genau ausgefüllt sind oder der Header zu kurz ist.");
+
+        LOGGER.info("Die Methode setInput() mit einem Stream funktioniert!\n\n\n");
+    }
+
     String toHexString(int[] array) {
         return "[" + String.join(", ", Arrays.stream(array).mapToObj(Integer::toHexString).toArray(String[]::new)) + "]";
     }
@@ -223,6 +289,91 @@ class AudioProcessorTest {
         LOGGER.info("Die Methode getOutput() funktioniert!\n\n\n");
     }
 
+    /**
+     * fadeOut() und fade() werden mit einem vorberechneten Verlauf umgesetzt und müssen exakt dem Ergebnis
+     * der ursprünglichen Definition über reverse() und fadeIn() entsprechen.
+     */
+    @Test
+    void fadeOut() {
+        LOGGER.info("Starte den Test für fadeOut() und fade()...\n");
+        AudioProcessor testProcessor = getTestProcessor();
+
+        for (double seconds : new double[]{0.001, 0.01, 0.5}) {
+            int[][] expectedOut = ((AudioProcessor) testProcessor.reverse().fadeIn(seconds).reverse()).channelSamples;
+            int[][] expectedFade = ((AudioProcessor) ((AudioProcessor) testProcessor.fadeIn(seconds)).reverse().fadeIn(seconds).reverse()).channelSamples;
+
+            assertArrayEquals(expectedOut, ((AudioProcessor) testProcessor.fadeOut(seconds)).channelSamples, "fadeOut() weicht ab!");
+            assertArrayEquals(expectedFade, ((AudioProcessor) testProcessor.fade(seconds)).channelSamples, "fade() weicht ab!");
+            LOGGER.info("Test mit folgender Fade-Zeit erfolgreich: {} s", seconds);
+        }
+
+        LOGGER.info("Die Methoden fadeOut() und fade() funktionieren!\n\n\n");
+    }
+
+    /**
+     * Die abschnittsweise Verarbeitung muss exakt dem Ergebnis entsprechen, bei dem jeder Effekt
+     * nacheinander auf das gesamte Signal angewendet wird.
+     */
+    @Test
+    void processEffects() {
+        LOGGER.info("Starte den Test für processEffects()...\n");
+
+        Random random = new Random(8);
+        int length = AudioProcessor.TILE_SAMPLES * 40 + 123;
+        int[][] channelSamples = new int[2][length];
+        for (int[] samples : channelSamples)
+            for (int i = 0; i < length; i++)
+                samples[i] = random.nextInt() / AudioProcessor.HEADROOM_DIVISOR / 2;
+
+        AudioEffect[] effects = {
+                AudioEffect.highPass(44100, 80, 0.71),
+                AudioEffect.bell(44100, 200, 1, -4),
+                AudioEffect.rmsCompressor(3, -20, 0.01, 0.06, 44100),
+                AudioEffect.bell(44100, 3000, 1, 5)
+        };
+        AudioProcessor processor = (AudioProcessor) new AudioProcessor(channelSamples, 44100, new AudioEffect[2][0]).setEffects(effects);
+        AudioProcessor processed = (AudioProcessor) processor.processEffects();
+
+        for (int channel = 0; channel < channelSamples.length; channel++) {
+            // Referenz: Jeder Effekt verarbeitet nacheinander das gesamte Signal
+            int[] expected = channelSamples[channel];
+            for (AudioEffect effect : processor.audioEffects[channel])
+                expected = effect.processSamples(expected).getProcessedSamples();
+
+            assertArrayEquals(expected, processed.channelSamples[channel], "Die abschnittsweise Verarbeitung weicht ab!");
+        }
+
+        LOGGER.info("Die Methode processEffects() funktioniert!\n\n\n");
+    }
+
+    /**
+     * splice() teilt sich die Arrays mit der ursprünglichen Instanz. Alle Operationen auf dem Ausschnitt
+     * müssen das gleiche Ergebnis liefern wie auf einer Instanz mit kopierten Samples.
+     */
+    @Test
+    void splice() {
+        LOGGER.info("Starte den Test für splice()...\n");
+        AudioProcessor testProcessor = (AudioProcessor) getTestProcessor().setEffects(
+                AudioEffect.highPass(44100, 80, 0.71), AudioEffect.bell(44100, 3000, 1, 5));
+        int from = 1234;
+        int length = 5000;
+
+        AudioProcessor view = (AudioProcessor) testProcessor.splice(from, length, null);
+        AudioProcessor copy = new AudioProcessor(Arrays.stream(testProcessor.channelSamples).map(samples ->
+                Arrays.copyOfRange(samples, from, from + length)).toArray(int[][]::new), testProcessor.sampleRate, testProcessor.getAudioEffects());
+        AudioFormat format = new AudioFormat(testProcessor.sampleRate, 24, testProcessor.channelSamples.length, true, false);
+
+        assertSame(testProcessor.channelSamples, view.channelSamples, "Die Samples wurden kopiert!");
+        assertEquals(length, view.getLength());
+        assertArrayEquals(copy.getOutput(format), view.getOutput(format), "getOutput() weicht ab!");
+        assertEquals(copy.getPeakInDBFS(), view.getPeakInDBFS(), "getPeakInDBFS() weicht ab!");
+        assertArrayEquals(copy.processEffects().getOutput(format), view.processEffects().getOutput(format), "processEffects() weicht ab!");
+        assertArrayEquals(copy.reverse().fade(0.01).normalize().getOutput(format), view.reverse().fade(0.01).normalize().getOutput(format), "Die Änderungen weichen ab!");
+        assertArrayEquals(copy.splice(100, 200, null).getOutput(format), view.splice(100, 200, null).getOutput(format), "Der Ausschnitt eines Ausschnitts weicht ab!");
+
+        LOGGER.info("Die Methode splice() funktioniert!\n\n\n");
+    }
+
     AudioProcessor getTestProcessor() {
         File file = new File("testSine1kHz-1dB.wav");
         AudioInputStream audioStream = null;
@@ -0,0 +1,112 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BiquadCascadeTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    // Die einzelnen Filter runden nach jedem Abschnitt auf ein int, die Kaskade nur am Ende.
+    // Die Rundungsfehler werden durch die Rückkopplung verstärkt, bleiben aber weit unter -120 dBFS.
+    static final double SAMPLE_TOLERANCE = Integer.MAX_VALUE * 1e-6;
+
+    IIRFilter[] equalizer() {
+        return new IIRFilter[]{
+                (IIRFilter) AudioEffect.highPass(44100, 80, 0.71),
+                (IIRFilter) AudioEffect.bell(44100, 200, 1, -4),
+                (IIRFilter) AudioEffect.bell(44100, 1000, 1, 0),
+                (IIRFilter) AudioEffect.bell(44100, 3000, 2, 5),
+                (IIRFilter) AudioEffect.bell(44100, 8000, 1, -2)
+        };
+    }
+
+    int[] signal(int length, long seed) {
+        Random random = new Random(seed);
+        int[] signal = new int[length];
+        for (int i = 0; i < signal.length; i++)
+            signal[i] = random.nextInt() / AudioProcessor.HEADROOM_DIVISOR / 4;
+        return signal;
+    }
+
+    @Test
+    void fuse() {
+        LOGGER.info("Starte den Test für BiquadCascade.fuse()...\n");
+
+        AudioEffect compressor = AudioEffect.rmsCompressor(3, -20, 0.01, 0.06, 44100);
+        IIRFilter[] filters = equalizer();
+        AudioEffect[] fused = BiquadCascade.fuse(filters[0], filters[1], compressor, filters[2], filters[3], filters[4], compressor, filters[0]);
+
+        assertEquals(5, fused.length, "Es wurden nicht alle Filterketten zusammengefasst!");
+        assertTrue(fused[0] instanceof BiquadCascade);
+        assertSame(compressor, fused[1]);
+        assertEquals(3 * BiquadCascade.COEFFICIENTS_PER_SECTION, ((BiquadCascade) fused[2]).coefficients().length);
+        assertSame(filters[0], fused[4], "Einzelne Filter sollen nicht zusammengefasst werden!");
+
+        // Zusammengefasst wird erst beim Verarbeiten, getAudioEffects() liefert die gesetzten Effekte
+        Audible audible = new AudioProcessor(new int[][] {signal(100, 1)}, 44100, new AudioEffect[1][0]).setEffects(filters);
+        assertArrayEquals(filters, audible.getAudioEffects()[0], "Die Effektkette wurde beim Setzen verändert!");
+
+        LOGGER.info("Die Methode fuse() funktioniert!\n\n\n");
+    }
+
+    /**
+     * Die Kaskade muss bis auf Rundungsfehler das gleiche Ergebnis wie die einzelnen Filter liefern,
+     * auch wenn das Signal blockweise verarbeitet wird.
+     */
+    @Test
+    void process() {
+        LOGGER.info("Starte den Test für BiquadCascade.process()...\n");
+
+        IIRFilter[] filters = equalizer();
+        int[] signal = signal(20000, 1);
+
+        int[] expected = signal;
+        for (IIRFilter filter : filters)
+            expected = filter.processSamples(expected).getProcessedSamples();
+
+        BiquadCascade cascade = BiquadCascade.of(filters);
+        AudioEffect.State state = cascade.createState();
+        int[] processed = new int[signal.length];
+        cascade.process(signal, 0, processed, 0, 7000, state);
+        cascade.process(signal, 7000, processed, 7000, signal.length - 7000, state);
+
+        for (int i = 0; i < signal.length; i++)
+            assertEquals(expected[i], processed[i], SAMPLE_TOLERANCE, "Abweichung bei Sample " + i);
+
+        LOGGER.info("Die Methode process() funktioniert!\n\n\n");
+    }
+
+    /**
+     * Filter, die bereits Samples verarbeitet haben, werden mit ihrem Zustand in die Kaskade übernommen.
+     */
+    @Test
+    void stateConversion() {
+        LOGGER.info("Starte den Test für die Übernahme der Filterzustände...\n");
+
+        IIRFilter[] filters = equalizer();
+        int[] first = signal(3000, 2);
+        int[] second = signal(3000, 3);
+
+        AudioEffect[] warmFilters = new AudioEffect[filters.length];
+        int[] expected = first;
+        for (int i = 0; i < filters.length; i++) {
+            warmFilters[i] = filters[i].processSamples(expected);
+            expected = warmFilters[i].getProcessedSamples();
+        }
+        expected = second;
+        for (AudioEffect filter : warmFilters)
+            expected = filter.processSamples(expected).getProcessedSamples();
+
+        int[] processed = BiquadCascade.fuse(warmFilters)[0].processSamples(second).getProcessedSamples();
+
+        for (int i = 0; i < second.length; i++)
+            assertEquals(expected[i], processed[i], SAMPLE_TOLERANCE, "Abweichung bei Sample " + i);
+
+        LOGGER.info("Die Zustände der Filter werden korrekt übernommen!\n\n\n");
+    }
+}
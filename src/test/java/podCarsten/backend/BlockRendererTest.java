@@ -0,0 +1,280 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockRendererTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Vergleicht die blockweise Verarbeitung mit wiederverwendeten Puffern und veränderlichen Zuständen
+     * mit der unveränderlichen Schnittstelle (splice() mit vorheriger Instanz und processEffects()).
+     */
+    @Test
+    void renderBlock() {
+        LOGGER.info("Starte den Test für renderBlock()...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        byte[] bytes = new byte[44100 * format.getFrameSize()];
+        new Random(5).nextBytes(bytes);
+
+        Audible audible = Audible.of(bytes, format,
+                AudioEffect.highPass(44100, 80, 0.71),
+                AudioEffect.bell(44100, 200, 1, -9),
+                AudioEffect.rmsCompressor(3, -20, 0.01, 0.06, 44100),
+                AudioEffect.bell(44100, 5000, 2, 6));
+
+        BlockRenderer renderer = new BlockRenderer(audible);
+        // Der BlockRenderer fasst die beiden ersten Filter zusammen, die Referenz muss dasselbe rechnen
+        Audible reference = audible.setEffects(BiquadCascade.fuse(audible.getAudioEffects()[0]));
+        Audible lastAudible = null;
+        int blockSize = 2048;
+
+        for (int from = 0; from < audible.getLength(); from += blockSize) {
+            int numSamples = Math.min(blockSize, audible.getLength() - from);
+            lastAudible = reference.splice(from, numSamples, lastAudible).processEffects();
+            int[][] expected = ((AudioProcessor) lastAudible).channelSamples;
+            int[][] block = renderer.renderBlock(from, numSamples);
+
+            for (int channel = 0; channel < expected.length; channel++)
+                assertArrayEquals(expected[channel], Arrays.copyOf(block[channel], numSamples), "Abweichung im Block ab Sample " + from);
+        }
+
+        LOGGER.info("Die blockweise Verarbeitung stimmt mit processEffects() überein!\n\n\n");
+    }
+
+    /**
+     * Beim Austauschen der Effekte müssen die Zustände erhalten bleiben, wie bei readFromPreviousEffect().
+     */
+    @Test
+    void withAudible() {
+        LOGGER.info("Starte den Test für withAudible()...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        byte[] bytes = new byte[8192 * format.getFrameSize()];
+        new Random(6).nextBytes(bytes);
+
+        Audible first = Audible.of(bytes, format, AudioEffect.bell(44100, 200, 1, -9));
+        Audible second = first.setEffects(AudioEffect.bell(44100, 300, 1, 3));
+
+        BlockRenderer renderer = new BlockRenderer(first);
+        renderer.renderBlock(0, 4096);
+        int[] block = Arrays.copyOf(renderer.withAudible(second).renderBlock(4096, 4096)[0], 4096);
+
+        Audible lastAudible = first.splice(0, 4096, null).processEffects();
+        int[] expected = ((AudioProcessor) second.splice(4096, 4096, lastAudible).processEffects()).channelSamples[0];
+
+        assertArrayEquals(expected, block, "Die Zustände der Effekte wurden nicht übernommen!");
+        LOGGER.info("Die Methode withAudible() funktioniert!\n\n\n");
+    }
+
+    /**
+     * Bei einem Wechsel mit Überblendung wird linear von der Ausgabe der alten in die Ausgabe der neuen Effekte
+     * übergeblendet. Danach muss das Signal exakt dem eines sofortigen Wechsels entsprechen.
+     */
+    @Test
+    void crossfade() {
+        LOGGER.info("Starte den Test für die Überblendung in withAudible()...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        byte[] bytes = new byte[8192 * format.getFrameSize()];
+        new Random(7).nextBytes(bytes);
+
+        Audible first = Audible.of(bytes, format, AudioEffect.bell(44100, 200, 1, -9));
+        Audible second = first.setEffects(AudioEffect.bell(44100, 300, 1, 3));
+        int fadeLength = 500;
+
+        BlockRenderer renderer = new BlockRenderer(first);
+        renderer.renderBlock(0, 4096);
+        int[] block = Arrays.copyOf(renderer.withAudible(second, fadeLength).renderBlock(4096, 4096)[0], 4096);
+
+        Audible lastAudible = first.splice(0, 4096, null).processEffects();
+        int[] oldEffects = ((AudioProcessor) first.splice(4096, 4096, lastAudible).processEffects()).channelSamples[0];
+        int[] newEffects = ((AudioProcessor) second.splice(4096, 4096, lastAudible).processEffects()).channelSamples[0];
+
+        for (int i = 0; i < fadeLength; i++) {
+            double amount = (i + 1) / (double) (fadeLength + 1);
+            assertEquals(Math.round(oldEffects[i] + (newEffects[i] - (double) oldEffects[i]) * amount), block[i], "Abweichung in der Überblendung bei Sample " + i);
+        }
+        assertArrayEquals(Arrays.copyOfRange(newEffects, fadeLength, 4096), Arrays.copyOfRange(block, fadeLength, 4096), "Nach der Überblendung weicht das Signal ab!");
+
+        LOGGER.info("Die Überblendung funktioniert!\n\n\n");
+    }
+
+    /**
+     * Bei einem Sprung wird aus dem Signal ab der bisherigen Position übergeblendet. Danach muss das Signal
+     * dem eines Sprungs ohne Überblendung entsprechen.
+     */
+    @Test
+    void renderJump() {
+        LOGGER.info("Starte den Test für renderJump()...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        byte[] bytes = new byte[16384 * format.getFrameSize()];
+        new Random(8).nextBytes(bytes);
+        Audible audible = Audible.of(bytes, format, AudioEffect.bell(44100, 200, 1, -9));
+        int fadeLength = 300;
+
+        BlockRenderer renderer = new BlockRenderer(audible);
+        renderer.renderBlock(0, 4096);
+        int[] block = Arrays.copyOf(renderer.renderJump(4096, 10000, 2048, fadeLength)[0], 2048);
+
+        BlockRenderer expectedRenderer = new BlockRenderer(audible);
+        expectedRenderer.renderBlock(0, 4096);
+        int[] previous = Arrays.copyOf(expectedRenderer.renderBlock(4096, fadeLength)[0], fadeLength);
+        // Ab der neuen Position mit neuen Zuständen, wie beim Abspielen ab dieser Position
+        int[] next = Arrays.copyOf(new BlockRenderer(audible).renderBlock(10000, 2048)[0], 2048);
+
+        for (int i = 0; i < fadeLength; i++) {
+            double amount = (i + 1) / (double) (fadeLength + 1);
+            assertEquals(Math.round(previous[i] + (next[i] - (double) previous[i]) * amount), block[i], "Abweichung in der Überblendung bei Sample " + i);
+        }
+        assertArrayEquals(Arrays.copyOfRange(next, fadeLength, 2048), Arrays.copyOfRange(block, fadeLength, 2048), "Nach der Überblendung weicht das Signal ab!");
+
+        LOGGER.info("Die Methode renderJump() funktioniert!\n\n\n");
+    }
+
+    /**
+     * Nach einer Änderung am Kompressor werden die unveränderten Filter aus dem Cache übernommen. Das Ergebnis
+     * muss dabei exakt dem eines Signals ohne zwischengespeicherte Blöcke entsprechen (eigene Kopie der Bytes).
+     */
+    @Test
+    void stageCache() {
+        LOGGER.info("Starte den Test für den StageCache...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        byte[] bytes = new byte[44100 * format.getFrameSize()];
+        new Random(7).nextBytes(bytes);
+        int blockSize = 4096;
+        int blocks = (44100 + blockSize - 1) / blockSize;
+
+        Audible audible = Audible.of(bytes, format, filters());
+        Audible changed = audible.setEffects(append(filters(), AudioEffect.rmsCompressor(4, -24, 0.01, 0.2, 44100)));
+        Audible reference = Audible.of(bytes.clone(), format, filters());
+        Audible referenceChanged = reference.setEffects(append(filters(), AudioEffect.rmsCompressor(4, -24, 0.01, 0.2, 44100)));
+        StageCache cache = StageCache.of(audible);
+
+        // Erster Durchlauf füllt den Cache, der zweite übernimmt die Filter und berechnet nur den Kompressor
+        assertArrayEquals(render(reference, null, blockSize), render(audible, null, blockSize), "Der erste Durchlauf weicht ab!");
+        long hits = cache.hits();
+        assertArrayEquals(render(referenceChanged, null, blockSize), render(changed, null, blockSize), "Der Durchlauf mit geändertem Kompressor weicht ab!");
+        assertEquals(hits + 2L * blocks, cache.hits(), "Die Filter wurden nicht aus dem Cache übernommen!");
+
+        // Wechsel der Effekte während des Durchlaufs: Beim Wiederholen liegen alle Stufen im Cache
+        int[][] expected = render(reference, referenceChanged, blockSize);
+        assertArrayEquals(expected, render(audible, changed, blockSize), "Der Wechsel der Effekte weicht ab!");
+        hits = cache.hits();
+        assertArrayEquals(expected, render(audible, changed, blockSize), "Die Wiederholung aus dem Cache weicht ab!");
+        assertEquals(hits + 2L * 2 * blocks, cache.hits(), "Die Wiederholung wurde nicht aus dem Cache übernommen!");
+
+        LOGGER.info("{}", cache);
+        LOGGER.info("Der StageCache funktioniert!\n\n\n");
+    }
+
+    /**
+     * Ein voller Cache verwirft die ältesten Blöcke und verwendet deren Plätze für neue Blöcke weiter.
+     * get() kopiert Samples und Zustand in die Puffer des Aufrufers.
+     */
+    @Test
+    void stageCacheSlots() {
+        LOGGER.info("Starte den Test für die Plätze des StageCache...\n");
+
+        int blockSize = 1024;
+        StageCache cache = new StageCache(2L * blockSize * Integer.BYTES);
+        AudioEffect compressor = AudioEffect.rmsCompressor(3, -20, 0.01, 0.06, 44100);
+        AudioEffect.State state = compressor.createState();
+        int[] block = new Random(3).ints(blockSize).toArray();
+        compressor.process(block, 0, new int[blockSize], 0, blockSize, state);
+
+        for (int from = 0; from < 3 * blockSize; from += blockSize)
+            cache.put("Verlauf", 0, from, block, blockSize, state);
+
+        int[] target = new int[blockSize];
+        AudioEffect.State targetState = compressor.createState();
+        assertFalse(cache.get("Verlauf", 0, 0, blockSize, target, targetState), "Der älteste Block wurde nicht verworfen!");
+        assertTrue(cache.get("Verlauf", 0, 2 * blockSize, blockSize, target, targetState));
+        assertArrayEquals(block, target);
+
+        // Der übernommene Zustand muss dasselbe Ergebnis liefern wie der ursprüngliche
+        int[] expected = new int[blockSize];
+        int[] actual = new int[blockSize];
+        compressor.process(block, 0, expected, 0, blockSize, state);
+        compressor.process(block, 0, actual, 0, blockSize, targetState);
+        assertArrayEquals(expected, actual, "Der Zustand wurde nicht vollständig übernommen!");
+
+        LOGGER.info("Die Plätze des StageCache funktionieren!\n\n\n");
+    }
+
+
+    /**
+     * fadeOutput() muss in den Puffern des Renderers dasselbe ergeben wie fadeIn()/fadeOut() über den Block.
+     */
+    @Test
+    void fadeOutput() {
+        LOGGER.info("Starte den Test für fadeOutput()...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        byte[] bytes = new byte[4096 * format.getFrameSize()];
+        new Random(11).nextBytes(bytes);
+        Audible audible = Audible.of(bytes, format, filters());
+        BlockRenderer renderer = new BlockRenderer(audible);
+        int blockSize = 1000;
+
+        for (boolean in : new boolean[] {true, false}) {
+            int[][] block = renderer.renderBlock(in ? 0 : blockSize, blockSize);
+            Audible unfaded = new AudioProcessor(Arrays.stream(block).map(samples -> Arrays.copyOf(samples, blockSize)).toArray(int[][]::new), 44100, new AudioEffect[2][0]);
+            double seconds = (blockSize - 1) / 44100f;
+            Audible expected = in ? unfaded.fadeIn(seconds) : unfaded.fadeOut(seconds);
+
+            int[][] expectedSamples = new int[2][blockSize];
+            expected.copySamples(0, blockSize, expectedSamples);
+
+            renderer.fadeOutput(in);
+            for (int channel = 0; channel < 2; channel++)
+                assertArrayEquals(expectedSamples[channel], Arrays.copyOf(block[channel], blockSize), "Der Fade weicht ab!");
+        }
+
+        LOGGER.info("Die Methode fadeOutput() funktioniert!\n\n\n");
+    }
+
+    // Drei IIR-Filter, die zu einer Stufe zusammengefasst werden, und ein Kompressor
+    AudioEffect[] filters() {
+        return new AudioEffect[]{
+                AudioEffect.highPass(44100, 80, 0.71),
+                AudioEffect.bell(44100, 200, 1, -9),
+                AudioEffect.bell(44100, 5000, 2, 6),
+                AudioEffect.rmsCompressor(3, -20, 0.01, 0.06, 44100)};
+    }
+
+    AudioEffect[] append(AudioEffect[] effects, AudioEffect effect) {
+        effects[effects.length - 1] = effect;
+        return effects;
+    }
+
+    /**
+     * Verarbeitet das gesamte Signal blockweise und wechselt nach der Hälfte zu den Effekten von second (falls nicht null).
+     */
+    int[][] render(Audible first, Audible second, int blockSize) {
+        int length = first.getLength();
+        int[][] result = new int[2][length];
+        BlockRenderer renderer = new BlockRenderer(first);
+
+        for (int from = 0; from < length; from += blockSize) {
+            if (second != null && from >= length / 2)
+                renderer = renderer.withAudible(second);
+
+            int numSamples = Math.min(blockSize, length - from);
+            int[][] block = renderer.renderBlock(from, numSamples);
+            for (int channel = 0; channel < result.length; channel++)
+                System.arraycopy(block[channel], 0, result[channel], from, numSamples);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodedCacheTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    private static final int FRAMES = 3 * AudioProcessor.CHUNK_FRAMES + 1234;
+
+
+    /**
+     * Ein abgebildetes Signal muss dieselben Samples liefern wie das gespeicherte; nach einer Änderung der
+     * Audiodatei muss die veraltete Cache-Datei gelöscht werden.
+     */
+    @Test
+    void storeAndOpen(@TempDir Path directory) throws IOException {
+        LOGGER.info("Starte den Test für das Speichern in DecodedCache...\n");
+
+        DecodedCache cache = new DecodedCache(directory.resolve("cache"), 1L << 30);
+        File file = audioFile(directory, 1);
+        AnalysisCache.Key key = AnalysisCache.keyOf(file);
+        assertNull(cache.open(file, key));
+
+        Audible audible = new AudioProcessor(randomSamples(FRAMES), 44100, new AudioEffect[2][0]);
+        cache.store(file, key, audible);
+        Audible opened = cache.open(file, key);
+        assertNotNull(opened);
+        assertEquals(FRAMES, opened.getLength());
+        assertEquals(44100, opened.getSampleRate());
+        assertEquals(2, opened.getAudioEffects().length);
+        assertEquals(audible.getPeakInDBFS(), opened.getPeakInDBFS(), 1e-9);
+
+        int[][] expected = new int[2][FRAMES];
+        int[][] actual = new int[2][FRAMES];
+        audible.copySamples(0, FRAMES, expected);
+        opened.copySamples(0, FRAMES, actual);
+        assertArrayEquals(expected[0], actual[0]);
+        assertArrayEquals(expected[1], actual[1]);
+
+        // Ein Bereich über die Grenze zweier Blöcke
+        int[][] range = new int[2][1000];
+        opened.copySamples(AudioProcessor.CHUNK_FRAMES - 500, 1000, range);
+        for (int i = 0; i < 1000; i++)
+            assertEquals(expected[1][AudioProcessor.CHUNK_FRAMES - 500 + i], range[1][i]);
+
+        // Block 2 und 3 laufen blockweise über lazy(), ohne das Signal in den Speicher zu kopieren
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        assertArrayEquals(audible.fade(0.01).reverse().getOutput(format), opened.fade(0.01).reverse().getOutput(format), "Die Verarbeitung weicht ab!");
+        assertEquals(audible.getFFTdBFS(1000), opened.getFFTdBFS(1000), 1e-6, "Die Frequenzanalyse weicht ab!");
+
+        Files.write(file.toPath(), new byte[] {1}, StandardOpenOption.APPEND);
+        assertNull(cache.open(file, AnalysisCache.keyOf(file)), "Eine geänderte Datei darf nicht gefunden werden!");
+        assertEquals(0, cache.size(), "Die veraltete Cache-Datei wurde nicht gelöscht!");
+
+        LOGGER.info("Das Speichern in DecodedCache funktioniert!\n\n\n");
+    }
+
+
+    /**
+     * Passt das Verzeichnis nicht mehr in seine Größe, muss das am längsten nicht verwendete Signal gelöscht
+     * werden.
+     */
+    @Test
+    void leastRecentlyUsed(@TempDir Path directory) throws IOException {
+        LOGGER.info("Starte den Test für die LRU-Verdrängung in DecodedCache...\n");
+
+        Audible audible = new AudioProcessor(randomSamples(10_000), 44100, new AudioEffect[2][0]);
+        long fileBytes = DecodedCache.HEADER_BYTES + 2L * 10_000 * Integer.BYTES;
+        DecodedCache cache = new DecodedCache(directory.resolve("cache"), 2 * fileBytes + fileBytes / 2);
+
+        File[] files = new File[3];
+        AnalysisCache.Key[] keys = new AnalysisCache.Key[3];
+        for (int nr = 0; nr < files.length; nr++) {
+            files[nr] = audioFile(directory, nr);
+            keys[nr] = AnalysisCache.keyOf(files[nr]);
+        }
+
+        cache.store(files[0], keys[0], audible);
+        cache.store(files[1], keys[1], audible);
+        age(cache, files[0], 20_000);
+        age(cache, files[1], 10_000);
+
+        // Das ältere Signal wird verwendet und ist damit das neuere
+        assertNotNull(cache.open(files[0], keys[0]));
+        cache.store(files[2], keys[2], audible);
+
+        assertNotNull(cache.open(files[0], keys[0]), "Das zuletzt verwendete Signal wurde gelöscht!");
+        assertNull(cache.open(files[1], keys[1]), "Das am längsten nicht verwendete Signal wurde nicht gelöscht!");
+        assertNotNull(cache.open(files[2], keys[2]));
+        assertTrue(cache.size() <= cache.getMaxBytes());
+
+        LOGGER.info("Die LRU-Verdrängung in DecodedCache funktioniert!\n\n\n");
+    }
+
+
+
+    private static int[][] randomSamples(int frames) {
+        Random random = new Random(42);
+        int[][] samples = new int[2][frames];
+        for (int[] channel : samples) {
+            for (int i = 0; i < frames; i++)
+                channel[i] = (int) (random.nextGaussian() * 1e8);
+        }
+        return samples;
+    }
+
+    private static File audioFile(Path directory, int seed) throws IOException {
+        byte[] bytes = new byte[10_000];
+        new Random(seed).nextBytes(bytes);
+        Path path = directory.resolve("episode" + seed + ".wav");
+        Files.write(path, bytes);
+        return path.toFile();
+    }
+
+    private static void age(DecodedCache cache, File file, long millis) throws IOException {
+        Path path = cache.getDirectory().resolve(DecodedCache.fileName(file) + DecodedCache.SUFFIX);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - millis));
+    }
+}
@@ -0,0 +1,86 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EffectMailboxTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Eine unvollständige oder umgangene Effektkette ergibt eine leere Kette, jede Veröffentlichung eine neue Version.
+     */
+    @Test
+    void snapshot() {
+        LOGGER.info("Starte den Test für EffectMailbox...\n");
+
+        AudioEffect highPass = AudioEffect.highPass(44100, 80, 0.71);
+        AudioEffect bell = AudioEffect.bell(44100, 200, 1, -9);
+        EffectMailbox mailbox = new EffectMailbox(2);
+
+        mailbox.publish(0, highPass);
+        EffectMailbox.Snapshot snapshot = mailbox.snapshot();
+        assertEquals(0, snapshot.audioEffects().length, "Eine unvollständige Kette darf nicht übernommen werden!");
+        assertFalse(mailbox.changedSince(snapshot.version()));
+
+        mailbox.publish(1, bell);
+        assertTrue(mailbox.changedSince(snapshot.version()), "Die Änderung wurde nicht erkannt!");
+        snapshot = mailbox.snapshot();
+        assertArrayEquals(new AudioEffect[] {highPass, bell}, snapshot.audioEffects());
+
+        mailbox.bypass(true);
+        assertEquals(0, mailbox.snapshot().audioEffects().length, "Die Effekte wurden nicht umgangen!");
+        mailbox.bypass(false);
+        assertArrayEquals(new AudioEffect[] {highPass, bell}, mailbox.snapshot().audioEffects());
+
+        LOGGER.info("EffectMailbox funktioniert!\n\n\n");
+    }
+
+    /**
+     * Während ein Thread schnell hintereinander veröffentlicht, darf ein Leser nur vollständige und
+     * fortschreitende Stände sehen.
+     */
+    @Test
+    void concurrentPublish() throws InterruptedException {
+        LOGGER.info("Starte den Test für gleichzeitiges Veröffentlichen in EffectMailbox...\n");
+
+        AudioEffect[] gains = new AudioEffect[10_000];
+        for (int i = 0; i < gains.length; i++)
+            gains[i] = AudioEffect.bell(44100, 1000, 1, i / 1000.0);
+
+        EffectMailbox mailbox = new EffectMailbox(3);
+        for (int slot = 0; slot < 3; slot++)
+            mailbox.publish(slot, gains[0]);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i < gains.length; i++)
+                for (int slot = 0; slot < 3; slot++)
+                    mailbox.publish(slot, gains[i]);
+        });
+        writer.start();
+
+        int[] last = new int[3];
+        long lastVersion = -1;
+        while (writer.isAlive()) {
+            EffectMailbox.Snapshot snapshot = mailbox.snapshot();
+            assertEquals(0, snapshot.version() % 2, "Der Stand wurde während des Schreibens gelesen!");
+            assertTrue(snapshot.version() >= lastVersion);
+            assertEquals(3, snapshot.audioEffects().length);
+
+            for (int slot = 0; slot < 3; slot++) {
+                int index = Arrays.asList(gains).indexOf(snapshot.audioEffects()[slot]);
+                assertTrue(index >= last[slot], "Ein älterer Effekt wurde gelesen!");
+                last[slot] = index;
+            }
+            lastVersion = snapshot.version();
+        }
+        writer.join();
+
+        assertSame(gains[gains.length - 1], mailbox.snapshot().audioEffects()[2]);
+        LOGGER.info("Gleichzeitiges Veröffentlichen funktioniert!\n\n\n");
+    }
+}
@@ -0,0 +1,82 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterBankAnalyzerTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Ein Sinus muss nach dem Einschwingen bei seiner Frequenz mit seinem Pegel gemessen werden, entfernte
+     * Frequenzen deutlich leiser. Die blockweise Verarbeitung muss dabei exakt der am Stück entsprechen.
+     */
+    @Test
+    void levels() {
+        LOGGER.info("Starte den Test für FilterBankAnalyzer...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        int frames = 22050;
+        int[][] samples = new int[2][frames];
+        Audible.of(sine(format, 1000, 0.5, frames), format).copySamples(0, frames, samples);
+
+        // Zwölftel-Oktaven wie bei den Balken der Anzeige; 1000 Hz ist Index 48, 30 kHz liegt über dem Nyquist-Limit
+        double[] frequencies = IntStream.rangeClosed(-48, 60).mapToDouble(i -> 1000 * Math.pow(2, i / 12.0)).toArray();
+        FilterBankAnalyzer blockwise = new FilterBankAnalyzer(frequencies, 44100);
+        int[][] block = new int[2][2048];
+        for (int from = 0; from < frames; from += 2048) {
+            int length = Math.min(2048, frames - from);
+            for (int channel = 0; channel < 2; channel++)
+                System.arraycopy(samples[channel], from, block[channel], 0, length);
+            blockwise.process(block, length);
+        }
+        FilterBankAnalyzer whole = new FilterBankAnalyzer(frequencies, 44100);
+        whole.process(samples, frames);
+
+        double[] levels = new double[frequencies.length];
+        double[] expected = new double[frequencies.length];
+        blockwise.levels(levels);
+        whole.levels(expected);
+        for (int bin = 0; bin < frequencies.length; bin++)
+            assertEquals(expected[bin], levels[bin], 1e-9, "Die blockweise Verarbeitung weicht ab!");
+
+        assertEquals(-6, levels[48], 0.5, "Der Pegel des Sinus wurde falsch gemessen");
+        for (int bin = 0; bin < frequencies.length; bin++) {
+            int distance = Math.abs(bin - 48);
+            if (distance >= 24)
+                assertTrue(levels[bin] < -30, frequencies[bin] + " Hz ist zu laut: " + levels[bin]);
+            else if (distance >= 12)
+                assertTrue(levels[bin] < -20, frequencies[bin] + " Hz ist zu laut: " + levels[bin]);
+            else if (distance > 0)
+                assertTrue(levels[bin] < levels[48], frequencies[bin] + " Hz ist lauter als der Sinus!");
+        }
+        assertEquals(Double.NEGATIVE_INFINITY, levels[frequencies.length - 1], "Über dem Nyquist-Limit darf nichts gemessen werden!");
+
+        LOGGER.info("FilterBankAnalyzer funktioniert!\n\n\n");
+    }
+
+
+    /**
+     * Ein Sinus auf allen Kanälen als 16-Bit-Signal (Little Endian).
+     * @param amplitude Amplitude relativ zum Vollausschlag
+     */
+    static byte[] sine(AudioFormat format, double frequency, double amplitude, int frames) {
+        assert format.getSampleSizeInBits() == 16 && !format.isBigEndian();
+
+        byte[] bytes = new byte[frames * format.getFrameSize()];
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(amplitude * Short.MAX_VALUE * Math.sin(2 * Math.PI * frequency * i / format.getSampleRate()));
+            for (int channel = 0; channel < format.getChannels(); channel++) {
+                int index = (i * format.getChannels() + channel) * 2;
+                bytes[index] = (byte) sample;
+                bytes[index + 1] = (byte) (sample >> 8);
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,63 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Die Fächer müssen lückenlos aneinander anschließen, damit jeder Wert genau einem Fach zugeordnet wird.
+     */
+    @Test
+    void buckets() {
+        LOGGER.info("Starte den Test für die Fächer von LatencyHistogram...\n");
+
+        for (int index = 1; index < LatencyHistogram.indexOf(Long.MAX_VALUE); index++) {
+            long lowest = LatencyHistogram.highestValueAt(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.indexOf(lowest), "Lücke vor Fach " + index);
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.highestValueAt(index)), "Falsches Ende von Fach " + index);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+
+        LOGGER.info("Die Fächer von LatencyHistogram funktionieren!\n\n\n");
+    }
+
+    /**
+     * Die Perzentile dürfen höchstens um die Breite eines Fachs (1 / SUB_BUCKETS) über den exakten Werten liegen.
+     */
+    @Test
+    void percentiles() {
+        LOGGER.info("Starte den Test für die Perzentile von LatencyHistogram...\n");
+
+        Random random = new Random(9);
+        long[] values = new long[100_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] {1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long value = histogram.percentile(percentile);
+            assertTrue(value >= exact && value <= exact + exact / LatencyHistogram.SUB_BUCKETS + 1,
+                    "Perzentil " + percentile + ": " + value + " statt " + exact);
+        }
+        assertEquals(values[values.length - 1], histogram.max());
+        assertEquals(Arrays.stream(values).average().orElseThrow(), histogram.mean(), 1e-6);
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+
+        LOGGER.info("Die Perzentile von LatencyHistogram funktionieren!\n\n\n");
+    }
+}
@@ -0,0 +1,67 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyAudibleTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    static final AudioFormat FORMAT = new AudioFormat(44100, 24, 2, true, false);
+
+    /**
+     * Vergleicht verschiedene Pläne mit den direkt berechneten Änderungen. Da die Schritte mit den gleichen
+     * Rundungen berechnet werden, müssen die Ergebnisse exakt übereinstimmen. Die Länge ist so gewählt,
+     * dass das Signal in mehrere Blöcke aufgeteilt wird und der Fade über eine Blockgrenze reicht.
+     */
+    @Test
+    void plans() {
+        LOGGER.info("Starte den Test für LazyAudible...\n");
+
+        byte[] bytes = new byte[(LazyAudible.BLOCK_FRAMES * 2 + 777) * FORMAT.getFrameSize()];
+        new Random(5).nextBytes(bytes);
+        Audible audible = Audible.of(bytes, FORMAT,
+                AudioEffect.highPass(FORMAT.getSampleRate(), 80, 0.71),
+                AudioEffect.rmsCompressor(3, -20, 0.01, 0.06, FORMAT.getSampleRate()));
+
+        testPlan(audible, "processEffects().fade().normalize()", a -> a.processEffects().fade(0.01).normalize());
+        testPlan(audible, "reverse()", Audible::reverse);
+        testPlan(audible, "fadeIn().reverse().fadeIn()", a -> a.fadeIn(2).reverse().fadeIn(0.3));
+        testPlan(audible, "processEffects().normalize().fadeOut().reverse()", a -> a.processEffects().normalize().fadeOut(1.7).reverse());
+        testPlan(audible, "fadeOut().normalize().reverse().fadeIn().normalize()", a -> a.fadeOut(0.2).normalize().reverse().fadeIn(0.1).normalize());
+        testPlan(audible, "reverse().processEffects()", a -> a.reverse().processEffects());
+
+        LOGGER.info("LazyAudible funktioniert!\n\n\n");
+    }
+
+
+    void testPlan(Audible audible, String name, UnaryOperator<Audible> plan) {
+        Audible expected = plan.apply(audible);
+        Audible lazy = plan.apply(audible.lazy());
+
+        assertTrue(lazy instanceof LazyAudible, "Der Plan wurde sofort ausgeführt: " + name);
+        assertEquals(expected.getPeakInDBFS(), lazy.getPeakInDBFS(), "Der höchste Ausschlag weicht ab: " + name);
+        assertArrayEquals(expected.getOutput(FORMAT), lazy.getOutput(FORMAT), "Die Samples weichen ab: " + name);
+
+        int[][] expectedSamples = new int[2][1000];
+        int[][] lazySamples = new int[2][1000];
+        expected.copySamples(LazyAudible.BLOCK_FRAMES - 500, 1000, expectedSamples);
+        lazy.copySamples(LazyAudible.BLOCK_FRAMES - 500, 1000, lazySamples);
+        assertArrayEquals(expectedSamples, lazySamples, "Der Teilabschnitt weicht ab: " + name);
+        expected.splice(10, 1000, null).copySamples(0, 1000, expectedSamples);
+        lazy.splice(10, 1000, null).copySamples(0, 1000, lazySamples);
+        assertArrayEquals(expectedSamples, lazySamples, "Der Ausschnitt weicht ab: " + name);
+        assertEquals(expected.getFFTdBFS(1000), lazy.getFFTdBFS(1000), 1e-6, "Die Frequenzanalyse weicht ab: " + name);
+
+        // Ohne processEffects() wird nur der angeforderte Bereich berechnet
+        assertEquals(((LazyAudible) lazy).processed, ((LazyAudible) lazy).materialized != null, "Der Plan wurde unnötig ausgeführt: " + name);
+
+        LOGGER.info("Plan erfolgreich getestet: {}", name);
+    }
+}
@@ -0,0 +1,116 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoudnessMeterTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+
+    /**
+     * Testfälle aus EBU Tech 3341: Ein Sinus mit 1 kHz und -23 dBFS auf beiden Kanälen hat -23 LUFS. Leise
+     * Passagen, die mehr als 10 LU unter dem Mittel liegen, werden vom relativen Gate ausgeschlossen.
+     */
+    @Test
+    void referenceSignals() {
+        LOGGER.info("Starte den Test für die Lautheit von Referenzsignalen...\n");
+
+        Audible sine = new AudioProcessor(sine(48000, 20, -23), 48000, new AudioEffect[2][0]);
+        LoudnessMeter.Loudness loudness = LoudnessMeter.measure(sine);
+        assertEquals(-23, loudness.integrated(), 0.1, "Die Integrated Loudness ist falsch!");
+        assertEquals(-23, loudness.maxMomentary(), 0.1);
+        assertEquals(-23, loudness.maxShortTerm(), 0.1);
+
+        // -36 dBFS für 10 s, -23 dBFS für 60 s, -36 dBFS für 10 s
+        int[][] quiet = sine(48000, 10, -36);
+        int[][] loud = sine(48000, 60, -23);
+        int[][] gated = new int[2][2 * quiet[0].length + loud[0].length];
+        for (int channel = 0; channel < 2; channel++) {
+            System.arraycopy(quiet[channel], 0, gated[channel], 0, quiet[0].length);
+            System.arraycopy(loud[channel], 0, gated[channel], quiet[0].length, loud[0].length);
+            System.arraycopy(quiet[channel], 0, gated[channel], quiet[0].length + loud[0].length, quiet[0].length);
+        }
+        assertEquals(-23, LoudnessMeter.measure(new AudioProcessor(gated, 48000, new AudioEffect[2][0])).integrated(), 0.1, "Das relative Gate funktioniert nicht!");
+
+        // Stille liegt unter dem absoluten Gate
+        assertEquals(Double.NEGATIVE_INFINITY, LoudnessMeter.measure(new AudioProcessor(new int[2][48000], 48000, new AudioEffect[2][0])).integrated());
+
+        LOGGER.info("Die Lautheit von Referenzsignalen wird korrekt gemessen!\n\n\n");
+    }
+
+
+    /**
+     * Die parallel gemessenen und zusammengeführten Abschnitte müssen dasselbe ergeben wie eine fortlaufende
+     * Messung, in der die aktuellen Werte jederzeit abgefragt werden können.
+     */
+    @Test
+    void parallelMatchesStreaming() {
+        LOGGER.info("Starte den Test für die parallele Messung der Lautheit...\n");
+
+        int rate = 8000;
+        int frames = 100 * rate + 1234;
+        Random random = new Random(5);
+        int[][] samples = new int[2][frames];
+        for (int i = 0; i < frames; i++) {
+            // Lautstärke wechselt alle 7 s, damit beide Gates und die Grenzen der Abschnitte beteiligt sind
+            double level = i / (7 * rate) % 3 == 0 ? 1e6 : i / (7 * rate) % 3 == 1 ? 1e8 : 0;
+            samples[0][i] = (int) (random.nextGaussian() * level);
+            samples[1][i] = (int) (random.nextGaussian() * level / 2);
+        }
+
+        LoudnessMeter meter = new LoudnessMeter(2, rate);
+        for (int from = 0; from < frames; from += 1000) {
+            meter.process(samples, from, Math.min(frames, from + 1000));
+            assertTrue(meter.momentary() <= meter.result().maxMomentary() && meter.shortTerm() <= meter.result().maxShortTerm(), "Die aktuelle Lautheit liegt über dem Maximum!");
+        }
+        LoudnessMeter.Loudness streamed = meter.result();
+        LoudnessMeter.Loudness parallel = LoudnessMeter.measure(new AudioProcessor(samples, rate, new AudioEffect[2][0]));
+
+        assertEquals(frames / (rate / 10), streamed.getHops());
+        assertEquals(streamed.getHops(), parallel.getHops());
+        assertEquals(streamed.integrated(), parallel.integrated(), 1e-6, "Die Integrated Loudness weicht ab!");
+        assertEquals(streamed.maxMomentary(), parallel.maxMomentary(), 1e-6, "Die Momentary Loudness weicht ab!");
+        assertEquals(streamed.maxShortTerm(), parallel.maxShortTerm(), 1e-6, "Die Short-Term Loudness weicht ab!");
+
+        LOGGER.info("Die parallele Messung der Lautheit funktioniert!\n\n\n");
+    }
+
+
+    /**
+     * normalizeLoudness() muss die Ziel-Lautheit erreichen, ohne dass der höchste Ausschlag über
+     * RECOMMENDED_PEAK steigt.
+     */
+    @Test
+    void normalizeLoudness() {
+        LOGGER.info("Starte den Test für normalizeLoudness()...\n");
+
+        Audible sine = new AudioProcessor(sine(48000, 5, -30), 48000, new AudioEffect[2][0]);
+        Audible normalized = LazyAudible.of(sine.lazy().fade(0.01)).normalizeLoudness(-16);
+        assertEquals(-16, LoudnessMeter.measure(((LazyAudible) normalized).materialize()).integrated(), 0.1, "Die Ziel-Lautheit wurde nicht erreicht!");
+
+        // Für -0,5 LUFS müsste der Sinus übersteuern
+        Audible limited = LazyAudible.of(sine.lazy()).normalizeLoudness(-0.5);
+        assertEquals(AudioProcessor.RECOMMENDED_PEAK, limited.getPeakInDBFS(), 0.01, "Der höchste Ausschlag wurde nicht begrenzt!");
+
+        LOGGER.info("Die Methode normalizeLoudness() funktioniert!\n\n\n");
+    }
+
+
+
+    /**
+     * Ein Sinus mit 1 kHz auf beiden Kanälen.
+     * @param dBFS Amplitude in dBFS (20 * log10)
+     */
+    private static int[][] sine(int rate, int seconds, double dBFS) {
+        double amplitude = Math.pow(10, dBFS / 20) * Integer.MAX_VALUE / AudioProcessor.HEADROOM_DIVISOR;
+        int[][] samples = new int[2][rate * seconds];
+        for (int i = 0; i < samples[0].length; i++)
+            samples[0][i] = samples[1][i] = (int) (amplitude * Math.sin(2 * Math.PI * 1000 * i / rate));
+        return samples;
+    }
+}
@@ -0,0 +1,85 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedAudibleTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    @Test
+    void readWave() {
+        LOGGER.info("Starte den Test für das Abbilden von WAV-Dateien...\n");
+        testFileType(AudioFileFormat.Type.WAVE, new AudioFormat(48000, 24, 2, true, false));
+        testFileType(AudioFileFormat.Type.WAVE, new AudioFormat(44100, 16, 1, true, false));
+        LOGGER.info("WAV-Dateien werden korrekt abgebildet!\n\n\n");
+    }
+
+    @Test
+    void readAiff() {
+        LOGGER.info("Starte den Test für das Abbilden von AIFF-Dateien...\n");
+        testFileType(AudioFileFormat.Type.AIFF, new AudioFormat(44100, 16, 2, true, true));
+        testFileType(AudioFileFormat.Type.AIFF, new AudioFormat(96000, 32, 2, true, true));
+        LOGGER.info("AIFF-Dateien werden korrekt abgebildet!\n\n\n");
+    }
+
+    /**
+     * Schreibt zufällige Samples mit javax.sound in eine Datei und vergleicht die abgebildete Instanz
+     * mit einer aus denselben bytes dekodierten Instanz.
+     */
+    void testFileType(AudioFileFormat.Type type, AudioFormat format) {
+        byte[] bytes = new byte[(AudioProcessor.CHUNK_FRAMES + 1000) * format.getFrameSize()];
+        new Random(7).nextBytes(bytes);
+
+        File file = assertDoesNotThrow(() -> File.createTempFile("mappedAudible", "." + type.getExtension()));
+        file.deleteOnExit();
+
+        try {
+            AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(bytes), format, bytes.length / format.getFrameSize()), type, file);
+            AudioProcessor reference = (AudioProcessor) Audible.of(bytes, format);
+            MappedAudible mapped = (MappedAudible) Audible.of(file);
+
+            assertEquals(format.getSampleRate(), mapped.pcmFile.format().getSampleRate(), "Die Samplerate wurde nicht korrekt gelesen!");
+            assertEquals(reference.getLength(), mapped.getLength(), "Die Länge wurde nicht korrekt gelesen!");
+
+            // Teilabschnitt über eine Blockgrenze hinweg
+            AudioProcessor splice = (AudioProcessor) mapped.splice(AudioProcessor.CHUNK_FRAMES - 100, 600, null);
+            assertTrue(IntStream.range(0, reference.channelSamples.length).allMatch(i -> Arrays.equals(
+                    Arrays.copyOfRange(reference.channelSamples[i], AudioProcessor.CHUNK_FRAMES - 100, AudioProcessor.CHUNK_FRAMES + 500),
+                    splice.channelSamples[i])));
+
+            // Vollständig dekodiertes Signal und Ausschlag
+            int[][] decoded = new int[format.getChannels()][mapped.getLength()];
+            mapped.copySamples(0, mapped.getLength(), decoded);
+            assertTrue(IntStream.range(0, reference.channelSamples.length).allMatch(i -> Arrays.equals(reference.channelSamples[i], decoded[i])));
+            assertEquals(reference.getPeakInDBFS(), mapped.getPeakInDBFS());
+            assertEquals(reference.getFFTdBFS(1000), mapped.getFFTdBFS(1000), "Die Frequenzanalyse weicht ab!");
+
+            // Verarbeitung blockweise über einen Plan statt über das gesamte dekodierte Signal
+            AudioEffect bell = AudioEffect.bell(format.getSampleRate(), 1000, 1, 6);
+            Audible processed = mapped.setEffects(bell).processEffects().fade(0.01).normalize();
+            assertInstanceOf(LazyAudible.class, processed, "Das Signal wurde vollständig dekodiert!");
+            assertArrayEquals(reference.setEffects(bell).processEffects().fade(0.01).normalize().getOutput(format), processed.getOutput(format), "Die Verarbeitung weicht ab!");
+
+            LOGGER.info("Test mit folgenden Werten erfolgreich: Typ: {}; Kanäle: {}; Samplegröße in Bits: {}", type, format.getChannels(), format.getSampleSizeInBits());
+
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            file.delete();
+        }
+    }
+}
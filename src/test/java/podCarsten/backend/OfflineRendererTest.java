@@ -0,0 +1,52 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OfflineRendererTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    // Untergrenze für den Echtzeitfaktor. Bewusst niedrig, damit der Test auch auf langsamen Rechnern
+    // nur bei einer deutlichen Verlangsamung fehlschlägt (üblich sind Faktoren über 100)
+    static final double MIN_REAL_TIME_FACTOR = 4;
+
+    /**
+     * Die Effektkette aus Main.setEffects() muss beim blockweisen Abspielen deutlich schneller als in Echtzeit sein.
+     */
+    @Test
+    void realTimeFactor() {
+        LOGGER.info("Starte den Test für den Echtzeitfaktor...\n");
+
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
+        byte[] bytes = new byte[20 * 44100 * format.getFrameSize()];
+        new Random(10).nextBytes(bytes);
+
+        Audible audible = Audible.of(bytes, format,
+                AudioEffect.highPass(44100, 90, 0.71),
+                AudioEffect.bell(44100, 3000, 2, -6),
+                AudioEffect.bell(44100, 200, 2, -7),
+                AudioEffect.bell(44100, 1800, 2, 6),
+                AudioEffect.bell(44100, 3500, 2, 6),
+                AudioEffect.bell(44100, 8000, 1, 5),
+                AudioEffect.rmsCompressor(4.5, -24, 0.01, 0.6, 44100));
+
+        List<OfflineRenderer.Result> results = new OfflineRenderer(format, 2048).profile(audible, 3);
+        // Gesamte Kette, ohne Effekte und die sieben gesetzten Effekte einzeln
+        assertEquals(2 + 7, results.size(), "Es wurde nicht jeder Effekt gemessen!");
+        assertTrue(results.get(2).name().endsWith("IIRFilter") && results.get(8).name().endsWith("RMSCompressor"));
+
+        for (OfflineRenderer.Result result : results) {
+            assertEquals(20, result.audioSeconds(), 1e-9);
+            assertTrue(result.realTimeFactor() > MIN_REAL_TIME_FACTOR, "Zu langsam: " + result);
+        }
+
+        LOGGER.info("Der Echtzeitfaktor liegt über der Untergrenze!\n\n\n");
+    }
+}
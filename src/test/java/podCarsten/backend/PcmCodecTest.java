@@ -0,0 +1,88 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmCodecTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Vergleicht alle Kodierungen mit einer byteweisen Referenzimplementierung. Die Länge ist so gewählt,
+     * dass das Signal in mehrere parallel verarbeitete Bereiche aufgeteilt wird.
+     */
+    @Test
+    void decodeAndEncode() {
+        LOGGER.info("Starte den Test für PcmCodec...\n");
+        Random random = new Random(3);
+        int frames = PcmCodec.RANGE_FRAMES * 3 + 17;
+
+        for (int bits : new int[]{16, 24, 32}) {
+            for (boolean bigEndian : new boolean[]{false, true}) {
+                for (int channels = 1; channels <= 3; channels++) {
+                    AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, bits, channels, channels * bits / 8, 44100, bigEndian);
+                    byte[] bytes = new byte[frames * format.getFrameSize()];
+                    random.nextBytes(bytes);
+
+                    int[][] samples = new int[channels][frames + 5];
+                    PcmCodec.decode(bytes, frames, format, samples, 5);
+                    int[][] expected = referenceDecode(bytes, format);
+                    for (int channel = 0; channel < channels; channel++)
+                        assertArrayEquals(expected[channel], Arrays.copyOfRange(samples[channel], 5, frames + 5), "Dekodieren fehlgeschlagen: " + format);
+
+                    byte[] encoded = new byte[bytes.length];
+                    PcmCodec.encode(samples, 5, frames, format, encoded);
+                    assertArrayEquals(referenceEncode(expected, format), encoded, "Kodieren fehlgeschlagen: " + format);
+
+                    LOGGER.info("Test mit folgenden Werten erfolgreich: Kanäle: {}; Samplegröße in Bits: {}; isBigEndian: {}", channels, bits, bigEndian);
+                }
+            }
+        }
+
+        LOGGER.info("PcmCodec funktioniert!\n\n\n");
+    }
+
+
+    // Byteweise Referenzimplementierungen
+    int[][] referenceDecode(byte[] bytes, AudioFormat format) {
+        int bytesPerSample = format.getSampleSizeInBits() / 8;
+        int[][] samples = new int[format.getChannels()][bytes.length / format.getFrameSize()];
+
+        for (int channel = 0; channel < samples.length; channel++) {
+            for (int sample = 0; sample < samples[channel].length; sample++) {
+                int index = sample * format.getFrameSize() + channel * bytesPerSample;
+                int value = 0;
+                for (int byteNr = 0; byteNr < bytesPerSample; byteNr++)
+                    value |= (bytes[index + byteNr] & 0xff) << shift(format, byteNr);
+                samples[channel][sample] = value / AudioProcessor.HEADROOM_DIVISOR;
+            }
+        }
+        return samples;
+    }
+
+    byte[] referenceEncode(int[][] samples, AudioFormat format) {
+        int bytesPerSample = format.getSampleSizeInBits() / 8;
+        byte[] bytes = new byte[samples[0].length * format.getFrameSize()];
+
+        for (int channel = 0; channel < samples.length; channel++) {
+            for (int sample = 0; sample < samples[channel].length; sample++) {
+                int index = sample * format.getFrameSize() + channel * bytesPerSample;
+                int value = samples[channel][sample] * AudioProcessor.HEADROOM_DIVISOR;
+                for (int byteNr = 0; byteNr < bytesPerSample; byteNr++)
+                    bytes[index + byteNr] = (byte) (value >>> shift(format, byteNr));
+            }
+        }
+        return bytes;
+    }
+
+    int shift(AudioFormat format, int byteNr) {
+        int bytesPerSample = format.getSampleSizeInBits() / 8;
+        return format.isBigEndian() ? (4 - 1 - byteNr) * 8 : (4 - bytesPerSample + byteNr) * 8;
+    }
+}
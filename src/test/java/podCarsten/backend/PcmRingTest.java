@@ -0,0 +1,77 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcmRingTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Ein voller Puffer gibt kein Fach mehr heraus, ein leerer keinen Block.
+     */
+    @Test
+    void capacity() {
+        LOGGER.info("Starte den Test für die Kapazität von PcmRing...\n");
+
+        PcmRing ring = new PcmRing(2, 4);
+        assertEquals(-1, ring.peek(), "Ein leerer Puffer darf keinen Block herausgeben!");
+
+        for (int block = 0; block < 2; block++) {
+            int slot = ring.claim();
+            assertTrue(slot >= 0);
+            ring.publish(slot, 1, block, 0);
+        }
+        assertEquals(-1, ring.claim(), "Ein voller Puffer darf kein Fach herausgeben!");
+        assertEquals(2, ring.size());
+
+        assertEquals(0, ring.position(ring.peek()));
+        ring.release();
+        assertTrue(ring.claim() >= 0, "Nach dem Lesen muss ein Fach frei sein!");
+
+        LOGGER.info("Die Kapazität von PcmRing funktioniert!\n\n\n");
+    }
+
+    /**
+     * Ein Thread schreibt fortlaufende Blöcke, ein anderer liest sie. Jeder Block muss genau einmal, in der
+     * richtigen Reihenfolge und mit vollständigem Inhalt ankommen.
+     */
+    @Test
+    void transfer() throws InterruptedException {
+        LOGGER.info("Starte den Test für die Übergabe in PcmRing...\n");
+
+        int blocks = 20_000;
+        PcmRing ring = new PcmRing(4, 64);
+
+        Thread producer = new Thread(() -> {
+            for (int block = 0; block < blocks; block++) {
+                int slot;
+                while ((slot = ring.claim()) < 0)
+                    Thread.onSpinWait();
+                Arrays.fill(ring.bytes(slot), (byte) block);
+                ring.publish(slot, 64, block, block / 1000);
+            }
+        });
+        producer.start();
+
+        for (int block = 0; block < blocks; block++) {
+            int slot;
+            while ((slot = ring.peek()) < 0)
+                Thread.onSpinWait();
+
+            assertEquals(block, ring.position(slot), "Die Reihenfolge der Blöcke stimmt nicht!");
+            assertEquals(block / 1000, ring.generation(slot));
+            for (byte b : ring.bytes(slot))
+                assertEquals((byte) block, b, "Der Block wurde vor dem Freigeben gelesen!");
+            ring.release();
+        }
+        producer.join();
+
+        assertEquals(0, ring.size());
+        LOGGER.info("Die Übergabe in PcmRing funktioniert!\n\n\n");
+    }
+}
@@ -0,0 +1,54 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RMSDetectorTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+    // Nach lauten Abschnitten bleiben bis zur nächsten Synchronisierung Rundungsfehler relativ zur
+    // Vollaussteuerung übrig (hier etwa -120 dBFS)
+    static final double TOLERANCE = Integer.MAX_VALUE * 1e-6;
+
+    /**
+     * Vergleicht den laufenden RMS-Wert mit einer vollständigen Berechnung über das Fenster. Das Signal ist
+     * so lang, dass mehrfach neu synchronisiert wird, und wechselt zwischen lauten und leisen Abschnitten.
+     */
+    @Test
+    void add() {
+        LOGGER.info("Starte den Test für RMSDetector...\n");
+        Random random = new Random(9);
+
+        for (int windowLength : new int[]{1, 96, 4800, 24000}) {
+            RMSDetector detector = new RMSDetector(windowLength);
+            int[] signal = new int[RMSDetector.RESYNC_SAMPLES * 2 + windowLength];
+            for (int i = 0; i < signal.length; i++)
+                signal[i] = (i / 5000) % 2 == 0 ? random.nextInt() : random.nextInt(64) - 32;
+
+            for (int i = 0; i < signal.length; i++) {
+                double rms = detector.add(signal[i]);
+                if (i % 997 == 0 || i == signal.length - 1) {
+                    double expected = referenceRms(signal, i, windowLength);
+                    assertEquals(expected, rms, TOLERANCE, "Abweichung bei Sample " + i + " und Fenstergröße " + windowLength);
+                }
+            }
+
+            LOGGER.info("Test mit folgender Fenstergröße erfolgreich: {}", windowLength);
+        }
+
+        LOGGER.info("RMSDetector funktioniert!\n\n\n");
+    }
+
+
+    // Vollständige Berechnung über die letzten windowLength Samples bis einschließlich end
+    double referenceRms(int[] signal, int end, int windowLength) {
+        double sum = 0;
+        for (int i = Math.max(0, end - windowLength + 1); i <= end; i++)
+            sum += (double) signal[i] * signal[i];
+        return Math.sqrt(sum / windowLength);
+    }
+}
@@ -0,0 +1,77 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleKernelsTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Vergleicht die ausgewählte Implementierung (bei verfügbarem Modul die Vector API) mit der skalaren.
+     * Die Bereiche haben ungerade Längen und Startpositionen, damit auch die Reste nach den Vektoren geprüft werden.
+     */
+    @Test
+    void kernels() {
+        LOGGER.info("Starte den Test für {}...\n", SampleKernels.INSTANCE);
+
+        SampleKernels scalar = new ScalarKernels();
+        Random random = new Random(4);
+        int[] samples = new int[1000];
+        double[] gains = new double[1000];
+
+        for (int run = 0; run < 200; run++) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = random.nextInt();
+                gains[i] = random.nextDouble() * 4 - 2;
+            }
+            // Randwerte, bei denen Math.abs() und der Cast nach int besonders sind
+            samples[random.nextInt(samples.length)] = Integer.MIN_VALUE;
+            samples[random.nextInt(samples.length)] = Integer.MAX_VALUE;
+
+            int from = random.nextInt(50);
+            int to = from + random.nextInt(samples.length - from);
+            double factor = random.nextDouble() * 3;
+
+            assertEquals(scalar.maxAbs(samples, from, to), SampleKernels.INSTANCE.maxAbs(samples, from, to), "maxAbs() weicht ab!");
+
+            int[] expected = samples.clone();
+            int[] actual = samples.clone();
+            scalar.gain(expected, from, to, factor);
+            SampleKernels.INSTANCE.gain(actual, from, to, factor);
+            assertArrayEquals(expected, actual, "gain() weicht ab!");
+
+            expected = samples.clone();
+            actual = samples.clone();
+            scalar.multiply(expected, from, gains, 7, to - from);
+            SampleKernels.INSTANCE.multiply(actual, from, gains, 7, to - from);
+            assertArrayEquals(expected, actual, "multiply() weicht ab!");
+        }
+
+        assertEquals(Integer.MIN_VALUE, SampleKernels.INSTANCE.maxAbs(samples, 5, 5), "Ein leerer Bereich muss Integer.MIN_VALUE ergeben!");
+        LOGGER.info("Die Implementierung {} funktioniert!\n\n\n", SampleKernels.INSTANCE);
+    }
+
+    /**
+     * Die skalare Implementierung entspricht den Java-Ausdrücken aus der Dokumentation.
+     */
+    @Test
+    void scalarKernels() {
+        LOGGER.info("Starte den Test für ScalarKernels...\n");
+
+        int[] samples = {3, -7, Integer.MIN_VALUE, 12, -1};
+        SampleKernels scalar = new ScalarKernels();
+
+        assertEquals(12, scalar.maxAbs(samples, 0, samples.length));
+        scalar.gain(samples, 0, 2, 0.5);
+        assertArrayEquals(new int[]{1, -3, Integer.MIN_VALUE, 12, -1}, samples);
+        scalar.multiply(samples, 3, new double[]{2, -1}, 0, 2);
+        assertArrayEquals(new int[]{1, -3, Integer.MIN_VALUE, 24, 1}, samples);
+
+        LOGGER.info("ScalarKernels funktioniert!\n\n\n");
+    }
+}
@@ -0,0 +1,74 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpectrumAnalyzerTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    /**
+     * Die reelle FFT muss dieselben Beträge wie eine direkt berechnete DFT des gefensterten Signals liefern.
+     */
+    @Test
+    void transform() {
+        LOGGER.info("Starte den Test für die FFT des SpectrumAnalyzers...\n");
+
+        int size = 256;
+        Random random = new Random(11);
+        int[][] samples = new int[2][size];
+        for (int[] channel : samples)
+            for (int i = 0; i < size; i++)
+                channel[i] = random.nextInt(1 << 20) - (1 << 19);
+
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(size, 44100);
+        analyzer.analyze(samples, size);
+
+        for (int k = 0; k <= size / 2; k++) {
+            double expected = 0;
+            for (int[] channel : samples) {
+                double real = 0, imaginary = 0;
+                for (int i = 0; i < size; i++) {
+                    double sample = channel[i] * (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+                    real += sample * Math.cos(2 * Math.PI * k * i / size);
+                    imaginary -= sample * Math.sin(2 * Math.PI * k * i / size);
+                }
+                expected += Math.hypot(real, imaginary) / samples.length;
+            }
+            assertEquals(expected, analyzer.magnitudes()[k], expected * 1e-9 + 1e-6, "Abweichung bei Frequenz " + k);
+        }
+
+        LOGGER.info("Die FFT des SpectrumAnalyzers funktioniert!\n\n\n");
+    }
+
+    /**
+     * Ein Sinus muss im Band seiner Frequenz mit seinem Pegel und in entfernten Bändern deutlich leiser erscheinen,
+     * bei Mono wie bei Stereo.
+     */
+    @Test
+    void bands() {
+        LOGGER.info("Starte den Test für die Bänder des SpectrumAnalyzers...\n");
+
+        double[] frequencies = {100, 250, 1000, 4000, 10000};
+        double[] bands = new double[frequencies.length];
+
+        for (int channels = 1; channels <= 2; channels++) {
+            AudioFormat format = new AudioFormat(44100, 16, channels, true, false);
+            Audible audible = Audible.of(FilterBankAnalyzerTest.sine(format, 1000, 0.5, 2048), format);
+
+            SpectrumAnalyzer analyzer = new SpectrumAnalyzer(2048, 44100);
+            analyzer.analyze(audible);
+            analyzer.toBands(frequencies, bands);
+
+            assertEquals(-6, bands[2], 1.5, "Der Pegel des Sinus wurde falsch gemessen (" + channels + " Kanäle)");
+            assertTrue(bands[0] < -60 && bands[4] < -60, "Entfernte Frequenzen sind zu laut (" + channels + " Kanäle)");
+        }
+
+        LOGGER.info("Die Bänder des SpectrumAnalyzers funktionieren!\n\n\n");
+    }
+}
@@ -0,0 +1,212 @@
+package podCarsten.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WaveformPyramidTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    private static final int FRAMES = 100_003;
+
+
+    /**
+     * Spalten, die genau einem Eintrag entsprechen, und eine Spalte über das gesamte Signal müssen exakt mit
+     * einer direkten Berechnung über die Samples übereinstimmen.
+     */
+    @Test
+    void exactColumns() {
+        LOGGER.info("Starte den Test für exakte Spalten von WaveformPyramid...\n");
+
+        int[][] samples = randomSamples();
+        WaveformPyramid pyramid = build(samples, new Random(1));
+
+        int columns = FRAMES / WaveformPyramid.LEAF_FRAMES;
+        int[] min = new int[columns];
+        int[] max = new int[columns];
+        double[] rms = new double[columns];
+        assertEquals(columns, pyramid.query(0, columns * WaveformPyramid.LEAF_FRAMES, min, max, rms));
+        for (int column = 0; column < columns; column++) {
+            int from = column * WaveformPyramid.LEAF_FRAMES;
+            assertColumn(samples, from, from + WaveformPyramid.LEAF_FRAMES, min[column], max[column], rms[column]);
+        }
+
+        int[] totalMin = new int[1];
+        int[] totalMax = new int[1];
+        double[] totalRms = new double[1];
+        assertEquals(1, pyramid.query(0, FRAMES, totalMin, totalMax, totalRms));
+        assertColumn(samples, 0, FRAMES, totalMin[0], totalMax[0], totalRms[0]);
+
+        LOGGER.info("Exakte Spalten von WaveformPyramid funktionieren!\n\n\n");
+    }
+
+
+    /**
+     * Bei beliebigen Bereichen und Spaltenzahlen muss jede Spalte ihren eigenen Bereich vollständig
+     * enthalten und darf höchstens um ihre eigene Breite (mindestens ein Blatt) darüber hinausreichen.
+     */
+    @Test
+    void anyZoom() {
+        LOGGER.info("Starte den Test für beliebige Zoomstufen von WaveformPyramid...\n");
+
+        int[][] samples = randomSamples();
+        WaveformPyramid pyramid = build(samples, new Random(2));
+
+        for (int[] query : new int[][] {{0, FRAMES, 1000}, {0, FRAMES, 37}, {12_345, 13_000, 50}, {50_000, 99_999, 613}}) {
+            int from = query[0];
+            int to = query[1];
+            int columns = query[2];
+            int[] min = new int[columns];
+            int[] max = new int[columns];
+            assertEquals(columns, pyramid.query(from, to, min, max, null));
+
+            for (int column = 0; column < columns; column++) {
+                int a = (int) (from + (long) (to - from) * column / columns);
+                int b = Math.max(a + 1, (int) (from + (long) (to - from) * (column + 1) / columns));
+                int reach = Math.max(b - a, WaveformPyramid.LEAF_FRAMES);
+
+                assertTrue(max[column] >= max(samples, a, b) && min[column] <= min(samples, a, b), "Die Spalte enthält ihren Bereich nicht!");
+                assertTrue(max[column] <= max(samples, a - reach, b + reach) && min[column] >= min(samples, a - reach, b + reach), "Die Spalte reicht zu weit!");
+            }
+        }
+
+        LOGGER.info("Beliebige Zoomstufen von WaveformPyramid funktionieren!\n\n\n");
+    }
+
+
+    /**
+     * Während des Ladens dürfen nur vollständig geladene Spalten Werte erhalten.
+     */
+    @Test
+    void partiallyLoaded() {
+        LOGGER.info("Starte den Test für teilweise geladene Signale in WaveformPyramid...\n");
+
+        int[][] samples = randomSamples();
+        Audible audible = new AudioProcessor(samples, 44100, new AudioEffect[2][0]);
+        WaveformPyramid pyramid = new WaveformPyramid(2, FRAMES);
+        pyramid.update(audible, FRAMES / 2);
+
+        int[] max = new int[10];
+        assertEquals(4, pyramid.query(0, FRAMES, null, max, null), "Die halb geladene Spalte darf nicht zählen!");
+        assertEquals(0, max[5]);
+        assertTrue(max[3] > 0);
+
+        pyramid.update(audible, FRAMES);
+        pyramid.finish();
+        assertEquals(10, pyramid.query(0, FRAMES, null, max, null));
+        assertEquals(FRAMES, pyramid.getFrames());
+
+        LOGGER.info("Teilweise geladene Signale in WaveformPyramid funktionieren!\n\n\n");
+    }
+
+
+    /**
+     * Die beim Aufbau berechneten Analysen müssen exakt denen eines eigenen Durchlaufs entsprechen und danach
+     * ohne eigenen Durchlauf verwendet werden. Eine Pyramide aus dem AnalysisCache übergibt nur ihren höchsten
+     * Ausschlag, eine Pyramide anderer Länge nichts.
+     */
+    @Test
+    void shareAnalysis() {
+        LOGGER.info("Starte den Test für shareAnalysis() von WaveformPyramid...\n");
+
+        int[][] samples = AnalysisPipelineTest.testSamples();
+        int frames = samples[0].length;
+        Audible audible = new AudioProcessor(samples, 44100, new AudioEffect[2][0]);
+        WaveformPyramid pyramid = new WaveformPyramid(2, 1000);
+        pyramid.update(audible, 12_345);
+        pyramid.update(audible, frames);
+        pyramid.finish();
+        pyramid.shareAnalysis(audible);
+        AnalysisPipelineTest.assertResults(samples, AnalysisPipeline.STANDARD.analyse(audible));
+
+        // Eine Pyramide aus halb so lauten Samples zeigt, dass nur nachgeschlagen wird
+        int[][] quiet = new int[2][frames];
+        for (int channel = 0; channel < 2; channel++) {
+            for (int i = 0; i < frames; i++)
+                quiet[channel][i] = samples[channel][i] / 2;
+        }
+        int quietPeak = AnalysisPipeline.PEAK.analyse(new AudioProcessor(quiet, 44100, new AudioEffect[2][0])).get(SignalAnalysers.PEAK);
+        Audible other = new AudioProcessor(samples.clone(), 44100, new AudioEffect[2][0]);
+        WaveformPyramid quietPyramid = WaveformPyramid.of(new AudioProcessor(quiet, 44100, new AudioEffect[2][0]));
+        quietPyramid.shareAnalysis(other);
+        assertEquals(quietPeak, (int) AnalysisPipeline.STANDARD.analyse(other).get(SignalAnalysers.PEAK), "Der höchste Ausschlag wurde erneut berechnet!");
+
+        // Aus dem AnalysisCache gelesen: Nur der höchste Ausschlag stammt aus der Pyramide
+        ByteBuffer buffer = ByteBuffer.allocate(quietPyramid.serializedBytes());
+        quietPyramid.writeTo(buffer);
+        Audible cached = new AudioProcessor(samples.clone(), 44100, new AudioEffect[2][0]);
+        WaveformPyramid.readFrom(buffer.flip()).shareAnalysis(cached);
+        AnalysisPipeline.Results results = AnalysisPipeline.STANDARD.analyse(cached);
+        assertEquals(quietPeak, (int) results.get(SignalAnalysers.PEAK), "Der höchste Ausschlag wurde erneut berechnet!");
+        assertArrayEquals(AnalysisPipeline.STANDARD.analyse(audible).get(SignalAnalysers.HISTOGRAM).counts(), results.get(SignalAnalysers.HISTOGRAM).counts());
+
+        Audible longer = new AudioProcessor(new int[2][frames + 1], 44100, new AudioEffect[2][0]);
+        pyramid.shareAnalysis(longer);
+        assertEquals(0, (int) AnalysisPipeline.PEAK.analyse(longer).get(SignalAnalysers.PEAK), "Eine unpassende Pyramide wurde verwendet!");
+
+        LOGGER.info("Die Methode shareAnalysis() von WaveformPyramid funktioniert!\n\n\n");
+    }
+
+
+
+    private static int[][] randomSamples() {
+        Random random = new Random(42);
+        int[][] samples = new int[2][FRAMES];
+        for (int[] channel : samples) {
+            for (int i = 0; i < FRAMES; i++)
+                channel[i] = (int) (random.nextGaussian() * 1e7 * (1 + Math.sin(i / 5000.0)));
+        }
+        return samples;
+    }
+
+    /**
+     * Übergibt das Signal in zufällig langen Stücken wie beim blockweisen Dekodieren.
+     */
+    private static WaveformPyramid build(int[][] samples, Random random) {
+        WaveformPyramid pyramid = new WaveformPyramid(samples.length, 1000);
+        int[][] chunk = new int[samples.length][5000];
+        for (int from = 0; from < FRAMES; ) {
+            int length = Math.min(FRAMES - from, 1 + random.nextInt(5000));
+            for (int channel = 0; channel < samples.length; channel++)
+                System.arraycopy(samples[channel], from, chunk[channel], 0, length);
+            pyramid.append(chunk, length);
+            from += length;
+        }
+        pyramid.finish();
+        return pyramid;
+    }
+
+    private static void assertColumn(int[][] samples, int from, int to, int min, int max, double rms) {
+        double squares = 0;
+        for (int[] channel : samples) {
+            for (int i = from; i < to; i++)
+                squares += (double) channel[i] * channel[i];
+        }
+        assertEquals(min(samples, from, to), min, "Das Minimum stimmt nicht! Bereich: " + from);
+        assertEquals(max(samples, from, to), max, "Das Maximum stimmt nicht! Bereich: " + from);
+        assertEquals(Math.sqrt(squares / ((to - from) * samples.length)), rms, 1e-6 * rms, "Der RMS stimmt nicht! Bereich: " + from);
+    }
+
+    private static int min(int[][] samples, int from, int to) {
+        int min = Integer.MAX_VALUE;
+        for (int[] channel : samples) {
+            for (int i = Math.max(0, from); i < Math.min(FRAMES, to); i++)
+                min = Math.min(min, channel[i]);
+        }
+        return min;
+    }
+
+    private static int max(int[][] samples, int from, int to) {
+        int max = Integer.MIN_VALUE;
+        for (int[] channel : samples) {
+            for (int i = Math.max(0, from); i < Math.min(FRAMES, to); i++)
+                max = Math.max(max, channel[i]);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,278 @@
+package podCarsten.frontend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+import podCarsten.backend.AudioEffect;
+import podCarsten.backend.Audible;
+import podCarsten.backend.EffectMailbox;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaybackEngineTest {
+    private static final Logger LOGGER = LogManager.getLogger("monitoring");
+
+    static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    static final int BUFFER_SIZE = 1024;
+    static final int LENGTH = 64 * BUFFER_SIZE;
+    static final long TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Play → Pause → Seek → Play: Die Position entspricht immer dem Ende des Signals, das an die Soundkarte
+     * übergeben wurde. Nach dem erneuten Abspielen beginnen die Effekte mit neuen Zuständen an der neuen Position.
+     */
+    @Test
+    void playPauseSeekPlay() {
+        LOGGER.info("Starte den Test für die Positionen beim Abspielen...\n");
+
+        AudioEffect bell = AudioEffect.bell(44100, 200, 1, -9);
+        EffectMailbox effects = new EffectMailbox(1);
+        effects.publish(0, bell);
+        PlaybackEngine engine = new PlaybackEngine(effects, BUFFER_SIZE, 4);
+        FakeLine line = new FakeLine();
+        byte[] bytes = positionSignal();
+        load(engine, line, Audible.of(bytes, FORMAT));
+
+        engine.play(0);
+        await(() -> engine.getPosition() >= 8 * BUFFER_SIZE);
+        int stop = engine.pause();
+        await(() -> !engine.playing && line.stoppedAfter >= 0);
+        assertEquals(stop, line.frames(), "Die Position nach dem Pausieren entspricht nicht dem abgespielten Signal!");
+
+        int target = 40 * BUFFER_SIZE;
+        engine.seek(target);
+        assertEquals(target, engine.getPosition());
+        int before = line.count();
+        engine.play(target);
+        assertEquals(target, engine.getPosition(), "Die Position muss sofort der neuen Startposition entsprechen!");
+        await(() -> line.count() > before && engine.getPosition() >= target + 2 * BUFFER_SIZE);
+
+        // Der erste Block wird eingeblendet und mit neuen Zuständen berechnet, wie beim Abspielen ab dieser Position
+        byte[] block = Arrays.copyOfRange(bytes, target * FORMAT.getFrameSize(), (target + BUFFER_SIZE) * FORMAT.getFrameSize());
+        byte[] expected = Audible.of(block, FORMAT, bell).processEffects().fadeIn((BUFFER_SIZE - 1) / FORMAT.getSampleRate()).getOutput(FORMAT);
+        assertArrayEquals(expected, line.block(before), "Der erste Block nach dem Abspielen weicht ab!");
+
+        engine.pause();
+        LOGGER.info("Die Positionen beim Abspielen stimmen!\n\n\n");
+    }
+
+
+    /**
+     * Nach einem Sprung verwirft die Soundkarten-Seite alle Blöcke, die noch für die alte Position berechnet
+     * wurden. Nur der Block, der gerade geschrieben wird, läuft noch zu Ende.
+     */
+    @Test
+    void dropsOldGeneration() {
+        LOGGER.info("Starte den Test für das Verwerfen veralteter Blöcke...\n");
+
+        PlaybackEngine engine = new PlaybackEngine(new EffectMailbox(0), BUFFER_SIZE, 4);
+        FakeLine line = new FakeLine();
+        line.gate = new Semaphore(0);
+        load(engine, line, Audible.of(positionSignal(), FORMAT));
+
+        engine.play(0);
+        await(() -> line.waiting);
+        // Der Renderer füllt währenddessen den Ringpuffer mit Blöcken der alten Position
+        sleep(100);
+
+        int target = 32 * BUFFER_SIZE;
+        engine.seek(target);
+        assertEquals(target, engine.getPosition());
+        line.gate.release(Integer.MAX_VALUE / 2);
+        await(() -> line.count() >= 3);
+
+        int crossfade = (int) (PlaybackEngine.CROSSFADE_SECONDS * FORMAT.getSampleRate());
+        assertEquals(target + crossfade, position(line.block(1), crossfade), "Es wurde ein veralteter Block abgespielt!");
+        assertEquals(target + BUFFER_SIZE, position(line.block(2), 0));
+
+        engine.pause();
+        LOGGER.info("Veraltete Blöcke werden verworfen!\n\n\n");
+    }
+
+
+    /**
+     * Beim Pausieren wird der ausgeblendete Block noch abgespielt, bevor die Soundkarte angehalten wird.
+     */
+    @Test
+    void fadesOutBeforeStopping() {
+        LOGGER.info("Starte den Test für das Ausblenden beim Pausieren...\n");
+
+        PlaybackEngine engine = new PlaybackEngine(new EffectMailbox(0), BUFFER_SIZE, 4);
+        FakeLine line = new FakeLine();
+        byte[] bytes = positionSignal();
+        load(engine, line, Audible.of(bytes, FORMAT));
+
+        engine.play(0);
+        await(() -> engine.getPosition() >= 4 * BUFFER_SIZE);
+        int stop = engine.pause();
+        await(() -> !engine.playing && line.stoppedAfter >= 0);
+
+        byte[] block = Arrays.copyOfRange(bytes, (stop - BUFFER_SIZE) * FORMAT.getFrameSize(), stop * FORMAT.getFrameSize());
+        byte[] expected = Audible.of(block, FORMAT).fadeOut((BUFFER_SIZE - 1) / FORMAT.getSampleRate()).getOutput(FORMAT);
+        assertArrayEquals(expected, line.block(line.count() - 1), "Der letzte Block wurde nicht ausgeblendet!");
+        assertEquals(line.count(), line.stoppedAfter, "Die Soundkarte wurde vor dem Ausblenden angehalten!");
+        assertEquals(1, line.stops, "Die Soundkarte wurde zwischendurch angehalten!");
+
+        LOGGER.info("Das Ausblenden beim Pausieren funktioniert!\n\n\n");
+    }
+
+
+    /**
+     * Ohne Soundkarte wird nicht abgespielt. Wirft die Soundkarte einen Fehler, geht nur dieser Block verloren;
+     * die Threads der Engine laufen in beiden Fällen weiter.
+     */
+    @Test
+    void survivesMissingAndFailingLine() {
+        LOGGER.info("Starte den Test für fehlende und fehlerhafte Soundkarten...\n");
+
+        PlaybackEngine engine = new PlaybackEngine(new EffectMailbox(0), BUFFER_SIZE, 4);
+        Audible audible = Audible.of(positionSignal(), FORMAT);
+        engine.load(null, audible, audible.getLength(), FORMAT);
+        engine.loadedSamples = audible.getLength();
+        engine.play(0);
+        assertFalse(engine.playing, "Ohne Soundkarte darf nicht abgespielt werden!");
+
+        FakeLine line = new FakeLine();
+        line.failures = 1;
+        load(engine, line, audible);
+        engine.play(0);
+        await(() -> line.count() >= 4);
+        assertEquals(0, line.failures);
+        assertEquals(BUFFER_SIZE, position(line.block(0), 0), "Der fehlerhafte Block wurde nicht übersprungen!");
+
+        engine.pause();
+        LOGGER.info("Fehlende und fehlerhafte Soundkarten beenden die Wiedergabe nicht!\n\n\n");
+    }
+
+
+
+    /**
+     * Jedes Frame enthält seine eigene Position: die unteren 15 Bit im linken Kanal, die oberen im rechten.
+     */
+    static byte[] positionSignal() {
+        byte[] bytes = new byte[LENGTH * FORMAT.getFrameSize()];
+        for (int i = 0; i < LENGTH; i++) {
+            int low = i & 0x7FFF;
+            int high = i >> 15;
+            bytes[4 * i] = (byte) low;
+            bytes[4 * i + 1] = (byte) (low >> 8);
+            bytes[4 * i + 2] = (byte) high;
+            bytes[4 * i + 3] = (byte) (high >> 8);
+        }
+        return bytes;
+    }
+
+    static int position(byte[] block, int frame) {
+        int low = (block[4 * frame] & 0xFF) | (block[4 * frame + 1] & 0xFF) << 8;
+        int high = (block[4 * frame + 2] & 0xFF) | (block[4 * frame + 3] & 0xFF) << 8;
+        return low | high << 15;
+    }
+
+    static void load(PlaybackEngine engine, FakeLine line, Audible audible) {
+        engine.load(line, audible, audible.getLength(), FORMAT);
+        engine.loadedSamples = audible.getLength();
+    }
+
+    static void await(BooleanSupplier condition) {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end)
+                fail("Die Bedingung wurde nicht rechtzeitig erfüllt!");
+            sleep(1);
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            fail(e);
+        }
+    }
+
+
+    /**
+     * Soundkarte, die alle geschriebenen Blöcke speichert. Ist gate gesetzt, wartet write() auf eine Freigabe.
+     */
+    static class FakeLine implements SourceDataLine {
+        final List<byte[]> writes = new ArrayList<>();
+        volatile Semaphore gate;
+        volatile boolean waiting;
+        volatile int stoppedAfter = -1;     // Anzahl der Blöcke beim letzten stop()
+        volatile int stops;
+        volatile int failures;              // Anzahl der nächsten write()-Aufrufe, die einen Fehler werfen
+        private volatile boolean running;
+
+        synchronized int count() {
+            return writes.size();
+        }
+
+        synchronized byte[] block(int index) {
+            return writes.get(index);
+        }
+
+        synchronized int frames() {
+            return writes.stream().mapToInt(block -> block.length / FORMAT.getFrameSize()).sum();
+        }
+
+        public int write(byte[] bytes, int offset, int length) {
+            if (gate != null) {
+                waiting = true;
+                gate.acquireUninterruptibly();
+            }
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("Die Soundkarte ist nicht verfügbar");
+            }
+            synchronized (this) {
+                writes.add(Arrays.copyOfRange(bytes, offset, offset + length));
+            }
+            return length;
+        }
+
+        public void start() {
+            running = true;
+            stoppedAfter = -1;
+        }
+
+        public synchronized void stop() {
+            running = false;
+            stoppedAfter = writes.size();
+            stops++;
+        }
+
+        public void open(AudioFormat format, int bufferSize) {}
+        public void open(AudioFormat format) {}
+        public void open() {}
+        public void close() {}
+        public void drain() {}
+        public void flush() {}
+        public boolean isRunning() { return running; }
+        public boolean isActive() { return running; }
+        public boolean isOpen() { return true; }
+        public AudioFormat getFormat() { return FORMAT; }
+        public int getBufferSize() { return 2 * BUFFER_SIZE * FORMAT.getFrameSize(); }
+        public int available() { return getBufferSize(); }
+        public int getFramePosition() { return 0; }
+        public long getLongFramePosition() { return 0; }
+        public long getMicrosecondPosition() { return 0; }
+        public float getLevel() { return 0; }
+        public Line.Info getLineInfo() { return new Line.Info(SourceDataLine.class); }
+        public Control[] getControls() { return new Control[0]; }
+        public boolean isControlSupported(Control.Type control) { return false; }
+        public Control getControl(Control.Type control) { throw new IllegalArgumentException(); }
+        public void addLineListener(LineListener listener) {}
+        public void removeLineListener(LineListener listener) {}
+    }
+}
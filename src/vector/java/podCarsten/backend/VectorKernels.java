@@ -0,0 +1,36 @@
+package podCarsten.backend;
+
+import jdk.incubator.vector.*;
+
+/**
+ * Umsetzung von SampleKernels mit der Vector API. Vektorisiert wird nur maxAbs(): Die für gain() und
+ * multiply() nötigen Umwandlungen zwischen int und double (I2D, D2I) werden von der JVM (JDK 17) nicht in
+ * SIMD-Befehle übersetzt und waren in Messungen etwa doppelt so langsam wie die skalaren Schleifen.
+ * Diese werden daher von ScalarKernels übernommen.
+ *      <br><br>
+ * Diese Klasse wird nur über SampleKernels.load() geladen, wenn das Modul jdk.incubator.vector vorhanden ist.
+ * Sie liegt daher in einem eigenen Quellordner, der zusätzlich zu src/main/java mit
+ * --add-modules jdk.incubator.vector kompiliert wird.
+ */
+final class VectorKernels extends ScalarKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+
+    public int maxAbs(int[] samples, int from, int to) {
+        IntVector max = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+        int i = from;
+
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length())
+            max = max.max(IntVector.fromArray(INTS, samples, i).lanewise(VectorOperators.ABS));
+
+        int result = max.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++)
+            result = Math.max(result, Math.abs(samples[i]));
+        return result;
+    }
+
+    public String toString() {
+        return "VectorKernels (" + INTS.length() + " ints pro Vektor)";
+    }
+}